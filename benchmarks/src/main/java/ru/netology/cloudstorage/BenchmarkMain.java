@@ -0,0 +1,33 @@
+package ru.netology.cloudstorage;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс BenchmarkMain запускает бенчмарки JMH модуля benchmarks так же, как org.openjdk.jmh.Main, но по умолчанию
+ * записывает результаты в машиночитаемом формате JSON в файл DEFAULT_RESULT_FILE, чтобы результаты разных выпусков
+ * можно было сохранять и сравнивать. Формат и файл можно изменить обычными параметрами JMH -rf и -rff, остальные
+ * параметры (например, регулярное выражение с именами бенчмарков, -p size=10) передаются JMH без изменений.
+ * <p>
+ * Запуск: mvn install в корне проекта, затем mvn -f benchmarks/pom.xml package и
+ * java -jar benchmarks/target/benchmarks.jar [параметры JMH].
+ */
+public class BenchmarkMain {
+    public static final String DEFAULT_RESULT_FORMAT = "json";
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(List.of(args));
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add(DEFAULT_RESULT_FORMAT);
+        }
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add(DEFAULT_RESULT_FILE);
+        }
+        Main.main(options.toArray(String[]::new));
+    }
+}
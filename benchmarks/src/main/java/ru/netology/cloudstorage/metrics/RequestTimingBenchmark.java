@@ -0,0 +1,75 @@
+package ru.netology.cloudstorage.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH стоимости разбивки времени запроса по этапам RequestTiming.
+ * <p>
+ * - request: учет одного запроса так, как его выполняют OperationMetricsFilter, JWTFilter, RequestTimingAspect и
+ * TimedJacksonHttpMessageConverter при запросе GET /list: открытие контекста, этап AUTH с вложенным этапом
+ * METADATA (загрузка пользователя), этап SESSION, два этапа METADATA, этап SERIALIZATION и закрытие контекста.
+ * - phaseWithoutContext: тот же набор вызовов begin и end без открытого контекста (фоновые задачи).
+ * - nanoTime: два вызова System.nanoTime для сравнения.
+ * <p>
+ * Бенчмарк выполняется в 4 потока, потому что контекст хранится в ThreadLocal. Учет запроса стоит меньше
+ * микросекунды, и большую часть этого времени занимают вызовы System.nanoTime (на виртуальной машине около 50 нс
+ * каждый, см. nanoTime). Это на несколько порядков меньше самого быстрого запроса к API (проверка JWT и запрос к
+ * базе данных занимают сотни микросекунд), поэтому разбивку можно не отключать в рабочем окружении.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RequestTimingBenchmark {
+
+    @Benchmark
+    public long request() {
+        RequestTiming timing = RequestTiming.open();
+        try {
+            phases();
+            return timing.getNanos(RequestTiming.Phase.METADATA);
+        } finally {
+            RequestTiming.close();
+        }
+    }
+
+    @Benchmark
+    public void phaseWithoutContext() {
+        phases();
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime() - System.nanoTime();
+    }
+
+    private static void phases() {
+        RequestTiming.begin(RequestTiming.Phase.AUTH);
+        RequestTiming.begin(RequestTiming.Phase.METADATA);
+        RequestTiming.end();
+        RequestTiming.setUserId(1L);
+        RequestTiming.end();
+        RequestTiming.begin(RequestTiming.Phase.SESSION);
+        RequestTiming.end();
+        RequestTiming.begin(RequestTiming.Phase.METADATA);
+        RequestTiming.end();
+        RequestTiming.begin(RequestTiming.Phase.METADATA);
+        RequestTiming.end();
+        RequestTiming.begin(RequestTiming.Phase.SERIALIZATION);
+        RequestTiming.end();
+    }
+}
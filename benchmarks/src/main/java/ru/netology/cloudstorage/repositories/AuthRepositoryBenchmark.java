@@ -0,0 +1,110 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH поиска сессии по токену в AuthRepository при одновременных запросах. Этот поиск выполняется на
+ * каждом запросе к API файлов (FileService.getUserByToken).
+ * <p>
+ * - lookup: 8 потоков ищут случайные сессии из SESSIONS существующих.
+ * - mixed: 7 потоков ищут сессии (mixedLookup), а один поток в это время создает и удаляет сессии, как при входе
+ * и выходе пользователей (mixedLoginLogout).
+ * <p>
+ * Параметр store задает хранилище сессий: memory - InMemorySessionStore, jdbc - ближний кэш JdbcSessionStore
+ * (запросы к базе данных заменены заглушкой JdbcTemplate, поэтому измеряется только попадание в ближний кэш и
+ * конкуренция за его блокировку, а не сама база данных).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthRepositoryBenchmark {
+    private static final int SESSIONS = 10000;
+    private static final long TTL = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"memory", "jdbc"})
+    private String store;
+
+    private AuthRepository authRepository;
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        SessionStore sessionStore;
+        if ("jdbc".equals(store)) {
+            sessionStore = new JdbcSessionStore(new StubJdbcTemplate(), null);
+            ReflectionTestUtils.setField(sessionStore, "nearCacheTtl", TTL);
+        } else {
+            sessionStore = new InMemorySessionStore();
+        }
+        ReflectionTestUtils.setField(sessionStore, "maxEntries", SESSIONS * 2);
+        authRepository = new AuthRepository(sessionStore);
+        long expiresAt = System.currentTimeMillis() + TTL;
+        tokens = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            tokens[i] = UUID.randomUUID().toString();
+            authRepository.saveAuthenticationUser(tokens[i], (long) i, expiresAt);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long lookup() {
+        return authRepository.getAuthenticationUserIdByToken(randomToken());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public Long mixedLookup() {
+        return authRepository.getAuthenticationUserIdByToken(randomToken());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedLoginLogout() {
+        String token = UUID.randomUUID().toString();
+        authRepository.saveAuthenticationUser(token, 0L, System.currentTimeMillis() + TTL);
+        authRepository.deleteAuthenticationUserByToken(token);
+    }
+
+    private String randomToken() {
+        return tokens[ThreadLocalRandom.current().nextInt(SESSIONS)];
+    }
+
+    private static class StubJdbcTemplate extends JdbcTemplate {
+        @Override
+        public int update(String sql, Object... args) {
+            return 1;
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) {
+            return List.of();
+        }
+    }
+}
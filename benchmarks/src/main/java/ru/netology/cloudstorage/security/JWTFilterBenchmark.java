@@ -0,0 +1,80 @@
+package ru.netology.cloudstorage.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH проверки JWT токена в JWTFilter.
+ * <p>
+ * - legacyFilterPath: прежний путь фильтра, при котором токен разбирается и подпись HS512 проверяется три раза
+ * (getUsernameFromToken, затем getUsernameFromToken и isTokenExpired внутри isValidateToken).
+ * - verifyWithoutCache: одна проверка токена через JWTUtils.verifyToken с отключенным кэшем (первый запрос с
+ * новым токеном).
+ * - verifyCached: повторный запрос с тем же токеном, результат берется из кэша проверенных токенов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTFilterBenchmark {
+    private static final String SECRET = "secret";
+
+    private JWTUtils cached;
+    private JWTUtils uncached;
+    private UserPrincipal principal;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cached = jwtUtils(10000);
+        uncached = jwtUtils(0);
+        principal = new UserPrincipal(1L, "benchmark_user");
+        token = cached.generateToken(principal);
+        cached.verifyToken(token);
+    }
+
+    @Benchmark
+    public boolean legacyFilterPath() {
+        String username = parse(token).getSubject();
+        boolean valid = parse(token).getSubject().equals(principal.getUsername())
+                && !parse(token).getExpiration().before(new Date());
+        return username != null && valid;
+    }
+
+    @Benchmark
+    public boolean verifyWithoutCache() {
+        return uncached.isValidateToken(uncached.verifyToken(token), principal);
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        return cached.isValidateToken(cached.verifyToken(token), principal);
+    }
+
+    private static Claims parse(String token) {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+    }
+
+    private static JWTUtils jwtUtils(int cacheSize) {
+        JWTUtils jwtUtils = new JWTUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheMaxSize", cacheSize);
+        return jwtUtils;
+    }
+}
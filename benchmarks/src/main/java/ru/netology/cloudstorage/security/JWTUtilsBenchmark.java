@@ -0,0 +1,68 @@
+package ru.netology.cloudstorage.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH методов JWTUtils, которые выполняются при входе пользователя и на каждом запросе в JWTFilter.
+ * <p>
+ * - generateToken: выпуск токена HS512 при входе пользователя.
+ * - getUsernameFromToken: получение имени пользователя из токена.
+ * - isValidateToken: проверка токена для пользователя по строке токена.
+ * <p>
+ * Параметр verifiedCacheMaxSize задает размер кэша проверенных токенов: при 0 каждый вызов разбирает токен и
+ * проверяет подпись (первый запрос с новым токеном), при 10000 повторные вызовы с тем же токеном берут результат
+ * из кэша (как в рабочем окружении).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTUtilsBenchmark {
+    private static final String SECRET = "secret";
+
+    @Param({"0", "10000"})
+    private int verifiedCacheMaxSize;
+
+    private JWTUtils jwtUtils;
+    private UserPrincipal principal;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtils = new JWTUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheMaxSize", verifiedCacheMaxSize);
+        principal = new UserPrincipal(1L, "benchmark_user");
+        token = jwtUtils.generateToken(principal);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtils.generateToken(principal);
+    }
+
+    @Benchmark
+    public String getUsernameFromToken() {
+        return jwtUtils.getUsernameFromToken(token);
+    }
+
+    @Benchmark
+    public Boolean isValidateToken() {
+        return jwtUtils.isValidateToken(token, principal);
+    }
+}
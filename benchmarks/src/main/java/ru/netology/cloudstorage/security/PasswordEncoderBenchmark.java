@@ -0,0 +1,57 @@
+package ru.netology.cloudstorage.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH проверки пароля BCryptPasswordEncoder при входе пользователя (POST /login).
+ * <p>
+ * - matches: проверка верного пароля.
+ * - mismatches: проверка неверного пароля (стоимость та же, BCrypt всегда вычисляет хэш целиком).
+ * <p>
+ * Параметр strength - стоимость BCrypt (log2 числа раундов). Приложение использует BCryptPasswordEncoder со
+ * стоимостью по умолчанию 10, остальные значения показывают, как изменится время входа при ее изменении.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+    private static final String PASSWORD = "benchmark_password";
+
+    @Param({"10", "12"})
+    private int strength;
+
+    private BCryptPasswordEncoder passwordEncoder;
+    private String encodedPassword;
+
+    @Setup
+    public void setUp() {
+        passwordEncoder = new BCryptPasswordEncoder(strength);
+        encodedPassword = passwordEncoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches(PASSWORD, encodedPassword);
+    }
+
+    @Benchmark
+    public boolean mismatches() {
+        return passwordEncoder.matches("wrong_password", encodedPassword);
+    }
+}
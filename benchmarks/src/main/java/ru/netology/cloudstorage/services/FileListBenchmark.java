@@ -0,0 +1,100 @@
+package ru.netology.cloudstorage.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.AuthRepository;
+import ru.netology.cloudstorage.repositories.FileListItem;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.InMemorySessionStore;
+import ru.netology.cloudstorage.repositories.UserRepository;
+import ru.netology.cloudstorage.response.ResponseFilePage;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH получения списка файлов (GET /list) без базы данных.
+ * <p>
+ * - getAllFiles: FileService.getAllFiles - поиск сессии по токену, разбор сортировки, преобразование строк
+ * FileListItem в ResponseFile и вычисление курсора следующей страницы.
+ * - getAllFilesJson: то же самое и преобразование ResponseFilePage в JSON с помощью Jackson, как в ответе
+ * контроллера.
+ * <p>
+ * Параметр size - количество файлов на странице. Репозитории FileRepository и UserRepository заменены
+ * заглушками, которые возвращают заранее построенные объекты, поэтому измеряется только работа приложения, а не
+ * запрос к базе данных. Предел files.list.max-limit увеличен до наибольшего значения size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileListBenchmark {
+    private static final String TOKEN = "benchmark-token";
+    private static final int MAX_SIZE = 100000;
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private FileService fileService;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        User user = new User(1L, "benchmark_user", "password", null);
+        List<FileListItem> items = new ArrayList<>(size + 1);
+        LocalDateTime editedAt = LocalDateTime.now();
+        for (int i = 0; i <= size; i++) {
+            items.add(new FileListItem((long) i, String.format("file_%06d.txt", i), 1024L * i, editedAt));
+        }
+        FileRepository fileRepository = stub(FileRepository.class, "findPageByUser", items);
+        UserRepository userRepository = stub(UserRepository.class, "getReferenceById", user);
+        AuthRepository authRepository = new AuthRepository(new InMemorySessionStore());
+        authRepository.saveAuthenticationUser(TOKEN, user.getId(), Long.MAX_VALUE);
+
+        fileService = new FileService(authRepository, userRepository, fileRepository, null, null, null, null);
+        ReflectionTestUtils.setField(fileService, "maxListLimit", MAX_SIZE);
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public ResponseFilePage getAllFiles() {
+        return fileService.getAllFiles("Bearer " + TOKEN, size, null, null);
+    }
+
+    @Benchmark
+    public byte[] getAllFilesJson() throws Exception {
+        return objectMapper.writeValueAsBytes(fileService.getAllFiles("Bearer " + TOKEN, size, null, null));
+    }
+
+    private static <T> T stub(Class<T> repository, String method, Object result) {
+        return repository.cast(Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository},
+                (proxy, invoked, args) -> {
+                    if (invoked.getName().equals(method)) {
+                        return result;
+                    }
+                    if (invoked.getDeclaringClass() == Object.class) {
+                        return invoked.getName().equals("equals") ? proxy == args[0]
+                                : invoked.getName().equals("hashCode") ? System.identityHashCode(proxy)
+                                : repository.getSimpleName();
+                    }
+                    throw new UnsupportedOperationException(invoked.getName());
+                }));
+    }
+}
@@ -0,0 +1,134 @@
+package ru.netology.cloudstorage.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import ru.netology.cloudstorage.DiplomaCloudStorageApplication;
+import ru.netology.cloudstorage.request.RequestAuth;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Бенчмарк JMH загрузки большого количества мелких файлов.
+ * <p>
+ * - sequentialUploads: files файлов загружаются по одному запросом POST /file (на каждый файл - проверка JWT,
+ * отдельная транзакция и однострочный INSERT).
+ * - batchUpload: те же файлы загружаются одним запросом POST /files с телом multipart/form-data, строки files
+ * вставляются пакетами JDBC.
+ * <p>
+ * Бенчмарк поднимает приложение с настройками из application.properties, поэтому требует запущенной базы данных
+ * PostgreSQL с примененными миграциями и пользователем bershovAl1@mail.ru. Запросы выполняются через MockMvc с
+ * фильтрами Spring Security, имена файлов уникальны для каждого вызова, а загруженные строки удаляются после него.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileUploadBenchmark {
+    private static final String BOUNDARY = "----CloudStorageBenchmarkBoundary";
+    private static final String LOGIN = "bershovAl1@mail.ru";
+    private static final String PASSWORD = "bershov1";
+    private static final byte[] CONTENT = "Small file content".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10000"})
+    private int files;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private JdbcTemplate jdbcTemplate;
+    private String authToken;
+    private String prefix;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = SpringApplication.run(DiplomaCloudStorageApplication.class, "--logging.level.root=WARN");
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+                .build();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        String response = mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new RequestAuth(LOGIN, PASSWORD))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        authToken = "Bearer " + objectMapper.readTree(response).get("auth-token").asText();
+    }
+
+    @Setup(Level.Invocation)
+    public void newPrefix() {
+        prefix = "benchmark-" + UUID.randomUUID() + "-";
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanUp() {
+        jdbcTemplate.update("delete from files where filename like ?", prefix + "%");
+        jdbcTemplate.update("update blobs set ref_count = (select count(*) from files where files.blob_key = "
+                + "blobs.blob_key) where ref_count > 0");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void sequentialUploads() throws Exception {
+        for (int i = 0; i < files; i++) {
+            mockMvc.perform(post("/file")
+                            .header("auth-token", authToken)
+                            .param("filename", prefix + i)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .content(CONTENT))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    @Benchmark
+    public void batchUpload() throws Exception {
+        mockMvc.perform(post("/files")
+                        .header("auth-token", authToken)
+                        .contentType("multipart/form-data; boundary=" + BOUNDARY)
+                        .content(multipartBody()))
+                .andExpect(status().isOk());
+    }
+
+    private byte[] multipartBody() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(files * (CONTENT.length + 128));
+        for (int i = 0; i < files; i++) {
+            body.writeBytes(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\""
+                    + prefix + i + "\"\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(CONTENT);
+            body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+}
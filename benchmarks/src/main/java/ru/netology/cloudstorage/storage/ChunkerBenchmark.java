@@ -0,0 +1,78 @@
+package ru.netology.cloudstorage.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк JMH скорости деления содержимого на блоки FastCdcChunker в одном потоке (на одно ядро).
+ * <p>
+ * - cut: только поиск границ блоков в буфере DATA_MB мегабайт случайных байтов;
+ * - cutAndHash: поиск границ и SHA-256 каждого блока, как при сохранении в ChunkedBlobStore.
+ * <p>
+ * Один вызов обрабатывает DATA_MB мегабайт, а @OperationsPerInvocation делает операцией один мегабайт, поэтому
+ * результат в ops/s равен скорости в МБ/с на ядро. Параметр avgSize задает средний размер блока.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class ChunkerBenchmark {
+    private static final int DATA_MB = 64;
+
+    @Param({"8192", "65536"})
+    private int avgSize;
+
+    private FastCdcChunker chunker;
+    private MessageDigest digest;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        chunker = new FastCdcChunker(avgSize / 4, avgSize, avgSize * 4);
+        digest = MessageDigest.getInstance("SHA-256");
+        data = new byte[DATA_MB * 1024 * 1024];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATA_MB)
+    public int cut() {
+        int chunks = 0;
+        for (int offset = 0; offset < data.length; chunks++) {
+            offset += chunker.cut(data, offset, data.length - offset);
+        }
+        return chunks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATA_MB)
+    public byte[] cutAndHash() {
+        byte[] last = null;
+        for (int offset = 0; offset < data.length; ) {
+            int length = chunker.cut(data, offset, data.length - offset);
+            digest.update(data, offset, length);
+            last = digest.digest();
+            offset += length;
+        }
+        return last;
+    }
+}
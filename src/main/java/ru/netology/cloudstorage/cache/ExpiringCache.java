@@ -0,0 +1,173 @@
+package ru.netology.cloudstorage.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Класс ExpiringCache является ограниченным по размеру кэшем с временем жизни записей, который используют кэши на
+ * пути каждого запроса: проверенные JWT (JWTUtils), принципалы пользователей (UserService) и сессии
+ * (InMemorySessionStore и ближний кэш JdbcSessionStore), а также хэши частей загрузок (UploadSessionService).
+ * <p>
+ * Записи хранятся в ConcurrentHashMap, поэтому чтение не берет блокировок и не изменяет структуру map: при
+ * попадании у записи только обновляется время последнего обращения (System.nanoTime). Вытеснение приближенное
+ * (approximate LRU): когда после добавления размер превышает maxSize, один поток под отдельной блокировкой (ее
+ * берут только добавляющие потоки, читающие - никогда) сначала удаляет просроченные записи, а если их не хватило,
+ * удаляет записи с самым старым временем обращения так, чтобы освободить еще около 10% от maxSize. Поэтому
+ * сортировка записей выполняется не на каждое добавление, а примерно один раз на maxSize / 10 добавлений.
+ * <p>
+ * - get: возвращает значение или null, если записи нет или время ее жизни истекло (просроченная запись удаляется).
+ * - put: добавляет или заменяет запись со временем истечения expiresAt (в миллисекундах) и возвращает количество
+ * записей, вытесненных из-за ограничения размера. Значение maxSize передается при каждом вызове, так как оно
+ * задается свойством владельца кэша; maxSize <= 0 означает отсутствие ограничения.
+ * - replace: то же, что put, но запись заменяется, только если в ней хранится ожидаемое значение expected
+ * (сравнение по ссылке; null означает, что записи нет или время ее жизни истекло). Возвращает false, если запись
+ * не заменена.
+ * - remove: удаляет запись по ключу; вариант с значением удаляет запись, только если в ней хранится именно это
+ * значение (сравнение по ссылке).
+ * - removeIf, removeExpired: удаляют записи по условию на значение или все просроченные записи и возвращают их
+ * количество.
+ * - clear: удаляет все записи.
+ * - size: текущее количество записей.
+ */
+public class ExpiringCache<K, V> {
+    private static final int EVICTION_SLACK_PERCENT = 10;
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public V get(K key, long now) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= now) {
+            entries.remove(key, entry);
+            return null;
+        }
+        entry.accessedAt = System.nanoTime();
+        return entry.value;
+    }
+
+    public int put(K key, V value, long expiresAt, int maxSize) {
+        entries.put(key, new Entry<>(value, expiresAt));
+        if (maxSize <= 0 || entries.size() <= maxSize) {
+            return 0;
+        }
+        evictionLock.lock();
+        try {
+            return evict(maxSize);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public boolean replace(K key, V expected, V value, long expiresAt, int maxSize) {
+        long now = System.currentTimeMillis();
+        boolean[] replaced = new boolean[1];
+        entries.compute(key, (k, entry) -> {
+            V current = entry != null && entry.expiresAt > now ? entry.value : null;
+            if (current != expected) {
+                return entry;
+            }
+            replaced[0] = true;
+            return new Entry<>(value, expiresAt);
+        });
+        if (replaced[0] && maxSize > 0 && entries.size() > maxSize) {
+            evictionLock.lock();
+            try {
+                evict(maxSize);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return replaced[0];
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public boolean remove(K key, V value) {
+        boolean[] removed = new boolean[1];
+        entries.computeIfPresent(key, (k, entry) -> {
+            if (entry.value == value) {
+                removed[0] = true;
+                return null;
+            }
+            return entry;
+        });
+        return removed[0];
+    }
+
+    public int removeIf(Predicate<V> predicate) {
+        int removed = 0;
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (predicate.test(entry.getValue().value) && entries.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int removeExpired(long now) {
+        int removed = 0;
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (entry.getValue().expiresAt <= now && entries.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private int evict(int maxSize) {
+        if (entries.size() <= maxSize) {
+            return 0;
+        }
+        removeExpired(System.currentTimeMillis());
+        int excess = entries.size() - maxSize;
+        if (excess <= 0) {
+            return 0;
+        }
+        List<Candidate<K, V>> candidates = new ArrayList<>(entries.size());
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            candidates.add(new Candidate<>(entry.getKey(), entry.getValue(), entry.getValue().accessedAt));
+        }
+        candidates.sort(Comparator.comparingLong(Candidate::accessedAt));
+        int target = Math.min(candidates.size(), excess + maxSize * EVICTION_SLACK_PERCENT / 100);
+        int evicted = 0;
+        for (int i = 0; i < target; i++) {
+            Candidate<K, V> candidate = candidates.get(i);
+            if (entries.remove(candidate.key(), candidate.entry())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private record Candidate<K, V>(K key, Entry<V> entry, long accessedAt) {
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+        private volatile long accessedAt = System.nanoTime();
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
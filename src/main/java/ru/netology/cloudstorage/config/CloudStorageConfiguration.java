@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -20,6 +21,7 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import ru.netology.cloudstorage.controller.FileStorageController;
 import ru.netology.cloudstorage.security.JWTFilter;
 import ru.netology.cloudstorage.services.UserService;
 
@@ -40,7 +42,9 @@ import java.util.List;
  * В методе filterChain определяются основные настройки безопасности. Здесь отключается CSRF защита,
  * включается поддержка CORS (C+Origin Resource Sharing) для обработки запросов из разных источников,
  * устанавливается политика управления сессиями (без сохранения состояния) и задаются правила авторизации
- * для различных HTTP-запросов.
+ * для различных HTTP-запросов. Без аутентификации доступны вход (/login) и конечные точки Actuator /actuator/health,
+ * /actuator/prometheus и /actuator/allocations, которые слушают отдельный порт management.server.port. Поэтому этот
+ * порт должен быть доступен только изнутри: по умолчанию он слушает 127.0.0.1 (management.server.address).
  * <p>
  * Метод authenticationProvider создает объект DaoAuthenticationProvider, который используется для аутентификации
  * пользователей. Он устанавливает сервис пользователя (userService) для получения информации о пользователях и
@@ -54,7 +58,8 @@ import java.util.List;
  * <p>
  * Метод corsConfigurationSource создает объект CorsConfigurationSource, который определяет настройки CORS для
  * приложения. Здесь задаются разрешенные источники (allowedOrigins), методы (allowedMethods) и
- * заголовки (allowedHeaders) для CORS.
+ * заголовки (allowedHeaders) для CORS, а также заголовки ответа, доступные клиенту (exposedHeaders), например
+ * X-Next-Cursor с курсором следующей страницы списка файлов и ETag для условных запросов.
  * <p>
  * Также в классе определены поля userService и jwtFilter, которые внедряются через конструктор.
  * userService используется для получения информации о пользователях, а jwtFilter - для обработки
@@ -107,7 +112,8 @@ public class CloudStorageConfiguration {
                 .cors().and()
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth ->
-                        auth.requestMatchers("/login").permitAll()
+                        auth.requestMatchers("/login", "/actuator/health", "/actuator/prometheus",
+                                        "/actuator/allocations").permitAll()
                                 .anyRequest().authenticated()
                 );
 
@@ -144,6 +150,7 @@ public class CloudStorageConfiguration {
         configuration.setAllowedOrigins(List.of(origins));
         configuration.setAllowedMethods(List.of(methods));
         configuration.setAllowedHeaders(List.of(headers));
+        configuration.setExposedHeaders(List.of(FileStorageController.NEXT_CURSOR_HEADER, HttpHeaders.ETAG));
         final UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
         return source;
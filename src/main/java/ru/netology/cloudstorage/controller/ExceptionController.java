@@ -1,10 +1,12 @@
 package ru.netology.cloudstorage.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.netology.cloudstorage.exceptions.*;
+import ru.netology.cloudstorage.metrics.CloudStorageMetrics;
 import ru.netology.cloudstorage.response.ResponseError;
 
 /**
@@ -23,6 +25,9 @@ import ru.netology.cloudstorage.response.ResponseError;
  * Затем создается объект ResponseEntity, в котором передается объект errorResponse и статус
  * ответа HttpStatus.BAD_REQUEST. Этот объект ResponseEntity будет возвращен клиенту как ответ на запрос.
  * <p>
+ * Каждый обработчик также записывает тип ошибки в атрибут запроса (CloudStorageMetrics.setOutcome), чтобы
+ * OperationMetricsFilter учел операцию в метриках с соответствующим результатом (например, bad_credentials).
+ * <p>
  * Таким образом, данный класс позволяет обрабатывать исключения и возвращать соответствующие ответы с ошибками,
  * что улучшает обработку ошибок в приложении.
  */
@@ -30,32 +35,44 @@ import ru.netology.cloudstorage.response.ResponseError;
 public class ExceptionController {
 
     @ExceptionHandler(BadCredentialsExceptionError.class)
-    public ResponseEntity<?> handlerBadCredentials() {
+    public ResponseEntity<?> handlerBadCredentials(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "bad_credentials");
         ResponseError errorResponse = new ResponseError("Error Bad Credentials", 0);
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(UnauthorizedExceptionError.class)
-    public ResponseEntity<?> handlerErrorUnauthorized() {
+    public ResponseEntity<?> handlerErrorUnauthorized(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "unauthorized");
         ResponseError errorResponse = new ResponseError("Error Unauthorized", 0);
         return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
     }
 
     @ExceptionHandler(InputDataExceptionError.class)
-    public ResponseEntity<?> handlerErrorInputData() {
+    public ResponseEntity<?> handlerErrorInputData(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "input_data");
         ResponseError errorResponse = new ResponseError("Error Input Data", 0);
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(DeleteFileExceptionError.class)
-    public ResponseEntity<?> handlerDeleteFile() {
+    public ResponseEntity<?> handlerDeleteFile(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "delete_file");
         ResponseError errorResponse = new ResponseError("Error Delete File", 0);
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
     @ExceptionHandler(UploadFileExceptionError.class)
-    public ResponseEntity<?> handlerUploadFile() {
+    public ResponseEntity<?> handlerUploadFile(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "upload_file");
         ResponseError errorResponse = new ResponseError("Error Upload File", 0);
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    @ExceptionHandler(PreconditionFailedExceptionError.class)
+    public ResponseEntity<?> handlerPreconditionFailed(HttpServletRequest request) {
+        CloudStorageMetrics.setOutcome(request, "precondition_failed");
+        ResponseError errorResponse = new ResponseError("Error Precondition Failed", 0);
+        return new ResponseEntity<>(errorResponse, HttpStatus.PRECONDITION_FAILED);
+    }
 }
\ No newline at end of file
@@ -1,15 +1,49 @@
 package ru.netology.cloudstorage.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.exceptions.PreconditionFailedExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.request.MultipartStreamReader;
+import ru.netology.cloudstorage.request.RequestDeleteFiles;
 import ru.netology.cloudstorage.request.RequestEditFileName;
+import ru.netology.cloudstorage.request.RequestInstantUpload;
+import ru.netology.cloudstorage.request.RequestRenameFiles;
 import ru.netology.cloudstorage.response.ResponseFile;
+import ru.netology.cloudstorage.response.ResponseFileResult;
+import ru.netology.cloudstorage.response.ResponseFilePage;
+import ru.netology.cloudstorage.response.ResponseInstantUpload;
+import ru.netology.cloudstorage.response.ResponseUploadFile;
+import ru.netology.cloudstorage.response.ResponseUploadPart;
+import ru.netology.cloudstorage.services.FileArchiveService;
+import ru.netology.cloudstorage.services.FileBatchService;
 import ru.netology.cloudstorage.services.FileService;
+import ru.netology.cloudstorage.services.UploadSessionService;
 import org.springframework.http.ResponseEntity;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Данный класс представляет контроллер для обработки HTTP-запросов, связанных с операциями над файлами в облачном
@@ -30,22 +64,89 @@ import java.util.List;
  * запроса с именем "auth-token".
  * Аргумент @RequestParam("filename") указывает на то, что входной параметр filename будет получен из параметра
  * запроса с именем "filename".
- * Параметр MultipartFile file представляет сам загружаемый файл. Он будет автоматически привязан к загруженному
- * файлу из запроса.
+ * Содержимое файла читается потоком прямо из тела запроса (HttpServletRequest): для multipart/form-data
+ * с помощью MultipartStreamReader находится часть с именем "file", для остальных типов содержимым считается
+ * все тело запроса. Если перед файлом пришло поле "hash", его значение передается сервису для проверки
+ * содержимого. Разбор multipart средствами Spring отключен (spring.servlet.multipart.enabled=false),
+ * поэтому файл не копируется ни во временный файл, ни в память целиком.
+ * <p>
+ * 1.1. Метод uploadFileByHash обрабатывает POST-запрос "мгновенной" загрузки файла (/file/instant). Он принимает
+ * заголовок auth-token, параметр filename и тело запроса RequestInstantUpload с хэшем SHA-256 и размером файла.
+ * Если такое содержимое уже есть на сервере, файл создается ссылкой на него без передачи байтов, и в ответе
+ * ResponseInstantUpload возвращается uploaded = true. Иначе возвращается uploaded = false, и клиент загружает
+ * файл обычным запросом POST /file.
+ * <p>
+ * 1.2. Метод uploadFiles обрабатывает POST-запрос пакетной загрузки файлов (/files). Он принимает заголовок auth-token
+ * и тело multipart/form-data с любым количеством файловых частей (имя файла берется из filename части), перед
+ * каждой из которых может идти поле "hash". Тело передается потоком в FileBatchService, который сохраняет файлы
+ * пачками и возвращает список ResponseUploadFile с результатом по каждому файлу.
+ * <p>
+ * 1.3. Методы startUpload, uploadPart, getUpload, completeUpload и abortUpload реализуют загрузку большого файла
+ * по частям (/uploads). POST /uploads?filename= открывает сессию и возвращает ResponseUploadSession с uploadId,
+ * PUT /uploads/{uploadId}/parts/{partNumber} принимает тело части потоком (части можно загружать параллельно и в
+ * любом порядке, повторная загрузка заменяет часть), GET /uploads/{uploadId} возвращает список принятых частей,
+ * POST /uploads/{uploadId}/complete собирает файл из частей, а DELETE /uploads/{uploadId} отменяет загрузку.
+ * Работа с сессиями делегируется сервису UploadSessionService.
  * <p>
  * 2. Метод deleteFile обрабатывает DELETE-запрос на удаление файла. Он принимает заголовок auth-token и параметр
  * filename. Удаление файла также делегируется сервису fileService.
  * <p>
+ * 2.1. Метод deleteFiles обрабатывает POST-запрос пакетного удаления файлов (/files/delete). Он принимает заголовок
+ * auth-token и тело запроса RequestDeleteFiles со списком имен. FileBatchService удаляет файлы одним запросом в одной
+ * транзакции и возвращает список ResponseFileResult с результатом по каждому имени.
+ * <p>
  * 3. Метод downloadFile обрабатывает GET-запрос на скачивание файла. Он принимает заголовок auth-token и параметр
- * filename. Сервис fileService выполняет операцию загрузки файла и возвращает его в виде массива байтов.
+ * filename. Сервис fileService возвращает метаданные файла, по которым выставляются заголовки Content-Length,
+ * Accept-Ranges и Last-Modified, после чего содержимое передается потоком прямо в ответ. Если сервер поддерживает
+ * sendfile (атрибут запроса org.apache.tomcat.sendfile.support) и содержимое лежит в локальном файле, байты
+ * отдает сам Tomcat без копирования через кучу; иначе содержимое пишется через FileChannel.transferTo или буфер.
+ * Поддерживается заголовок Range с одним диапазоном (ответ 206 Partial Content с Content-Range) и условие
+ * If-Range: диапазон отдается, только если валидатор совпадает с Last-Modified файла, иначе отдается файл
+ * целиком. Для недопустимого диапазона возвращается 416 Range Not Satisfiable. Несколько диапазонов в одном
+ * запросе не поддерживаются, и тогда файл также отдается целиком.
+ * Если содержимое хранится сжатым, а клиент принимает gzip или deflate (заголовок Accept-Encoding) и не
+ * запрашивает диапазон, сжатые байты отдаются как есть с заголовком Content-Encoding, без распаковки на сервере
+ * (для gzip - тоже через sendfile). Для такого файла в ответе всегда выставляется Vary: Accept-Encoding.
+ * Ответ содержит строгий валидатор ETag, равный ключу содержимого (хэшу SHA-256), с суффиксом "-gzip" или
+ * "-deflate" для сжатого представления, и Last-Modified по времени изменения файла. Если ETag из заголовка
+ * If-None-Match (или, если его нет, дата If-Modified-Since) совпадает с файлом, возвращается 304 Not Modified без
+ * тела: для этого достаточно метаданных файла, к содержимому в BlobStore запрос не обращается. Заголовок
+ * Cache-Control: private, no-cache заставляет клиента каждый раз проверять свою копию таким условным запросом.
+ * Условие If-Range тоже может быть строгим ETag.
+ * Необязательный параметр version позволяет скачать прежнюю версию файла (если включено хранение версий) с теми же
+ * заголовками, диапазонами и условными запросами: ETag версии равен ключу ее содержимого.
+ * <p>
+ * 3.0. Метод getVersions обрабатывает GET-запрос истории версий файла (/file/versions). Он принимает заголовок
+ * auth-token и параметр filename и возвращает список ResponseFileVersion от новой версии к старой.
+ * <p>
+ * 3.1. Метод downloadArchive обрабатывает GET-запрос на скачивание нескольких файлов одним ZIP-архивом
+ * (/files/zip). Он принимает заголовок auth-token и либо повторяющийся параметр filename, либо параметр prefix.
+ * Сначала FileArchiveService находит файлы (ошибки возвращаются обычным ответом), затем архив собирается на лету
+ * прямо в поток ответа без Content-Length.
+ * <p>
+ * 3.2. Методы getSignature и uploadFileDelta позволяют перезаписать большой файл, передав только измененные блоки
+ * (как в rsync). GET-запрос /file/signature принимает заголовок auth-token, параметр filename и необязательный
+ * параметр blockSize и возвращает ResponseFileSignature с контрольными суммами блоков хранимого файла и заголовок
+ * ETag хранимой версии. PUT-запрос /file/delta принимает тот же ETag в заголовке If-Match, параметр blockSize,
+ * необязательный параметр hash (SHA-256 новой версии) и дельту в теле запроса (формат описан в DeltaInputStream).
+ * Без заголовка If-Match возвращается ошибка 400, а если хранимая версия уже не совпадает с ним - 412 Precondition
+ * Failed, и клиент должен заново получить сигнатуру.
  * <p>
  * 4. Метод editFile обрабатывает PUT-запрос на изменение имени файла. Он принимает заголовок auth-token, параметр
  * filename и тело запроса requestEditFileName, содержащее новое имя файла. Сервис fileService выполняет операцию
  * изменения имени файла.
  * <p>
- * 5. Метод getAllFiles обрабатывает GET-запрос на получение списка всех файлов. Он принимает заголовок auth-token
- * и параметр limit, указывающий максимальное количество файлов, которые нужно вернуть. Сервис fileService выполняет
- * операцию получения списка файлов и возвращает список объектов ResponseFile.
+ * 4.1. Метод renameFiles обрабатывает POST-запрос пакетного переименования файлов (/files/rename). Он принимает
+ * заголовок auth-token и тело запроса RequestRenameFiles со списком пар имен или правилом замены префикса.
+ * FileBatchService переименовывает файлы одним запросом и возвращает список ResponseFileResult.
+ * <p>
+ * 5. Метод getAllFiles обрабатывает GET-запрос на получение списка файлов. Он принимает заголовок auth-token,
+ * параметр limit, указывающий максимальное количество файлов, которые нужно вернуть, а также необязательные
+ * параметры sort (name, size, edited_at, "-" для убывания) и cursor (курсор следующей страницы). Сервис fileService
+ * возвращает одну страницу списка: тело ответа остается списком объектов ResponseFile, а курсор следующей
+ * страницы передается в заголовке X-Next-Cursor (заголовка нет на последней странице). ETag страницы вычисляется
+ * по именам и размерам файлов на ней и курсору следующей страницы, поэтому при неизменном списке запрос с
+ * If-None-Match получает 304 Not Modified с пустым телом (проверку выполняет Spring по ETag в ResponseEntity).
  * <p>
  * Каждый метод контроллера возвращает объект ResponseEntity, который представляет ответ HTTP-запроса. В случае
  * успешного выполнения операции, возвращается статус HttpStatus.OK. Если операция завершилась с ошибкой, можно
@@ -57,23 +158,112 @@ import java.util.List;
 
 @RestController
 public class FileStorageController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String FILE_PART = "file";
+    private static final String HASH_PART = "hash";
+    private static final int MAX_HASH_LENGTH = 256;
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String CACHE_CONTROL = "private, no-cache";
+    private static final String ARCHIVE_FILENAME = "files.zip";
 
     private final FileService fileService;
+    private final FileBatchService fileBatchService;
+    private final FileArchiveService fileArchiveService;
+    private final UploadSessionService uploadSessionService;
 
     @Autowired
-    public FileStorageController(FileService fileService) {
+    public FileStorageController(FileService fileService, FileBatchService fileBatchService,
+                                 FileArchiveService fileArchiveService, UploadSessionService uploadSessionService) {
         this.fileService = fileService;
+        this.fileBatchService = fileBatchService;
+        this.fileArchiveService = fileArchiveService;
+        this.uploadSessionService = uploadSessionService;
     }
 
 
     @PostMapping("/file")
     public ResponseEntity<?> uploadFile(@RequestHeader("auth-token") String authToken,
                                         @RequestParam("filename") String filename,
-                                        MultipartFile file) {
-        fileService.uploadFile(authToken, filename, file);
+                                        HttpServletRequest request) {
+        try (UploadBody body = openUploadBody(request)) {
+            fileService.uploadFile(authToken, filename, body.hash(), body.content());
+        } catch (IOException e) {
+            throw new InputDataExceptionError();
+        }
+        return new ResponseEntity<>("Success upload", HttpStatus.OK);
+    }
+
+    @PostMapping("/file/instant")
+    public ResponseEntity<?> uploadFileByHash(@RequestHeader("auth-token") String authToken,
+                                              @RequestParam("filename") String filename,
+                                              @RequestBody RequestInstantUpload requestInstantUpload) {
+        boolean uploaded = fileService.uploadFileByHash(authToken, filename, requestInstantUpload.getHash(),
+                requestInstantUpload.getSize());
+        return new ResponseEntity<>(new ResponseInstantUpload(uploaded), HttpStatus.OK);
+    }
+
+    @PostMapping("/files")
+    public ResponseEntity<?> uploadFiles(@RequestHeader("auth-token") String authToken,
+                                         HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (!MultipartStreamReader.isMultipart(contentType)) {
+            throw new InputDataExceptionError();
+        }
+        List<ResponseUploadFile> results;
+        try (InputStream body = request.getInputStream()) {
+            results = fileBatchService.uploadFiles(authToken,
+                    new MultipartStreamReader(body, MultipartStreamReader.boundaryOf(contentType)));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new InputDataExceptionError();
+        }
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    @PostMapping("/uploads")
+    public ResponseEntity<?> startUpload(@RequestHeader("auth-token") String authToken,
+                                         @RequestParam("filename") String filename) {
+        return new ResponseEntity<>(uploadSessionService.initiate(authToken, filename), HttpStatus.OK);
+    }
+
+    @PutMapping("/uploads/{uploadId}/parts/{partNumber}")
+    public ResponseEntity<?> uploadPart(@RequestHeader("auth-token") String authToken,
+                                        @PathVariable("uploadId") String uploadId,
+                                        @PathVariable("partNumber") int partNumber,
+                                        HttpServletRequest request) {
+        ResponseUploadPart part;
+        try (InputStream body = request.getInputStream()) {
+            part = uploadSessionService.uploadPart(authToken, uploadId, partNumber, body);
+        } catch (IOException e) {
+            throw new InputDataExceptionError();
+        }
+        return new ResponseEntity<>(part, HttpStatus.OK);
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> getUpload(@RequestHeader("auth-token") String authToken,
+                                       @PathVariable("uploadId") String uploadId) {
+        return new ResponseEntity<>(uploadSessionService.getSession(authToken, uploadId), HttpStatus.OK);
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(@RequestHeader("auth-token") String authToken,
+                                            @PathVariable("uploadId") String uploadId) {
+        uploadSessionService.complete(authToken, uploadId);
         return new ResponseEntity<>("Success upload", HttpStatus.OK);
     }
 
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> abortUpload(@RequestHeader("auth-token") String authToken,
+                                         @PathVariable("uploadId") String uploadId) {
+        uploadSessionService.abort(authToken, uploadId);
+        return new ResponseEntity<>("Upload aborted", HttpStatus.OK);
+    }
+
     @DeleteMapping("/file")
     public ResponseEntity<?> deleteFile(@RequestHeader("auth-token") String authToken,
                                         @RequestParam("filename") String filename) {
@@ -81,11 +271,130 @@ public class FileStorageController {
         return new ResponseEntity<>("Success delete", HttpStatus.OK);
     }
 
+    @PostMapping("/files/delete")
+    public ResponseEntity<?> deleteFiles(@RequestHeader("auth-token") String authToken,
+                                         @RequestBody RequestDeleteFiles requestDeleteFiles) {
+        List<ResponseFileResult> results = fileBatchService.deleteFiles(authToken, requestDeleteFiles.getFilenames());
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
     @GetMapping("/file")
-    public ResponseEntity<?> downloadFile(@RequestHeader("auth-token") String authToken,
-                                          @RequestParam("filename") String filename) {
-        byte[] file = fileService.downloadFile(authToken, filename);
-        return new ResponseEntity<>(file, HttpStatus.OK);
+    public void downloadFile(@RequestHeader("auth-token") String authToken,
+                             @RequestParam("filename") String filename,
+                             @RequestParam(value = "version", required = false) Integer version,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        File file = version == null ? fileService.downloadFile(authToken, filename)
+                : fileService.downloadFileVersion(authToken, filename, version);
+        long size = file.getSize();
+        long lastModified = lastModified(file);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        if (lastModified >= 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        if (isNotModified(request, response, file.getBlobKey(), lastModified)) {
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        String storedEncoding = fileService.getStoredEncoding(file);
+        if (storedEncoding != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        long start = 0;
+        long end = size - 1;
+        HttpRange range = requestedRange(request, file.getBlobKey(), lastModified);
+        if (range == null && storedEncoding != null) {
+            String encoding = acceptedEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            if (encoding != null) {
+                response.setHeader(HttpHeaders.ETAG, entityTag(file.getBlobKey(), encoding));
+                writeEncoded(file, storedEncoding, encoding, request, response);
+                return;
+            }
+        }
+        response.setHeader(HttpHeaders.ETAG, entityTag(file.getBlobKey(), null));
+        if (range != null) {
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                start = size;
+            }
+            if (start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            response.setHeader(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, size));
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if (length == 0 || HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        Path localPath = fileService.getLocalPath(file);
+        if (localPath != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, localPath.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        fileService.writeContent(file, start, length, response.getOutputStream());
+    }
+
+    @GetMapping("/file/versions")
+    public ResponseEntity<?> getVersions(@RequestHeader("auth-token") String authToken,
+                                         @RequestParam("filename") String filename) {
+        return new ResponseEntity<>(fileService.getVersions(authToken, filename), HttpStatus.OK);
+    }
+
+    @GetMapping("/files/zip")
+    public void downloadArchive(@RequestHeader("auth-token") String authToken,
+                                @RequestParam(value = "filename", required = false) List<String> filenames,
+                                @RequestParam(value = "prefix", required = false) String prefix,
+                                HttpServletResponse response) throws IOException {
+        List<File> files = fileArchiveService.findFiles(authToken, filenames, prefix);
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(ARCHIVE_FILENAME).build().toString());
+        fileArchiveService.writeArchive(files, response.getOutputStream());
+    }
+
+    @GetMapping("/file/signature")
+    public ResponseEntity<?> getSignature(@RequestHeader("auth-token") String authToken,
+                                          @RequestParam("filename") String filename,
+                                          @RequestParam(value = "blockSize", required = false) Integer blockSize)
+            throws IOException {
+        File file = fileService.downloadFile(authToken, filename);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(entityTag(file.getBlobKey(), null));
+        headers.setCacheControl(CACHE_CONTROL);
+        return new ResponseEntity<>(fileService.getSignature(file, blockSize), headers, HttpStatus.OK);
+    }
+
+    @PutMapping("/file/delta")
+    public ResponseEntity<?> uploadFileDelta(@RequestHeader("auth-token") String authToken,
+                                             @RequestParam("filename") String filename,
+                                             @RequestParam("blockSize") int blockSize,
+                                             @RequestParam(value = "hash", required = false) String hash,
+                                             HttpServletRequest request) {
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        if (ifMatch == null) {
+            throw new InputDataExceptionError();
+        }
+        File file = fileService.downloadFile(authToken, filename);
+        if (matchingTag(ifMatch, file.getBlobKey()) == null) {
+            throw new PreconditionFailedExceptionError();
+        }
+        try (InputStream body = request.getInputStream()) {
+            fileService.uploadFileDelta(authToken, file, blockSize, hash, body);
+        } catch (IOException e) {
+            throw new InputDataExceptionError();
+        }
+        return new ResponseEntity<>("Success upload", HttpStatus.OK);
     }
 
     @PutMapping("/file")
@@ -96,10 +405,211 @@ public class FileStorageController {
         return new ResponseEntity<>("Edit file name", HttpStatus.OK);
     }
 
+    @PostMapping("/files/rename")
+    public ResponseEntity<?> renameFiles(@RequestHeader("auth-token") String authToken,
+                                         @RequestBody RequestRenameFiles requestRenameFiles) {
+        List<ResponseFileResult> results = fileBatchService.renameFiles(authToken, requestRenameFiles);
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
     @GetMapping("/list")
     public ResponseEntity<?> getAllFiles(@RequestHeader("auth-token") String authToken,
-                                         @RequestParam("limit") Integer limit) {
-        List<ResponseFile> rp = fileService.getAllFiles(authToken, limit);
-        return new ResponseEntity<>(rp, HttpStatus.OK);
+                                         @RequestParam("limit") Integer limit,
+                                         @RequestParam(value = "sort", required = false) String sort,
+                                         @RequestParam(value = "cursor", required = false) String cursor) {
+        ResponseFilePage page = fileService.getAllFiles(authToken, limit, sort, cursor);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(listEntityTag(page));
+        headers.setCacheControl(CACHE_CONTROL);
+        if (page.getNextCursor() != null) {
+            headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return new ResponseEntity<>(page.getFiles(), headers, HttpStatus.OK);
+    }
+
+    private void writeEncoded(File file, String storedEncoding, String encoding, HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
+        long length = fileService.getEncodedLength(file, encoding);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        Path storedPath = encoding.equals(storedEncoding) ? fileService.getStoredPath(file) : null;
+        if (storedPath != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, storedPath.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+        fileService.writeEncodedContent(file, encoding, response.getOutputStream());
+    }
+
+    static String acceptedEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parameters = token.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (name) {
+                case GZIP, "x-gzip" -> gzip = Math.max(gzip, quality);
+                case DEFLATE -> deflate = Math.max(deflate, quality);
+                case "*" -> any = Math.max(any, quality);
+                default -> {
+                }
+            }
+        }
+        gzip = gzip >= 0 ? gzip : any;
+        deflate = deflate >= 0 ? deflate : any;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private HttpRange requestedRange(HttpServletRequest request, String blobKey, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !(ifRange.startsWith("\"") ? ifRange.equals(entityTag(blobKey, null))
+                : isSameDate(ifRange, lastModified))) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String blobKey,
+                                         long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            String matched = matchingTag(ifNoneMatch, blobKey);
+            if (matched == null) {
+                return false;
+            }
+            response.setHeader(HttpHeaders.ETAG, matched);
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return true;
+        }
+        String ifModifiedSince = request.getHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || lastModified < 0) {
+            return false;
+        }
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            if (lastModified / 1000 > since) {
+                return false;
+            }
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+        return true;
+    }
+
+    static String matchingTag(String ifNoneMatch, String blobKey) {
+        for (String token : ifNoneMatch.split(",")) {
+            String tag = token.trim();
+            if (tag.equals("*")) {
+                return entityTag(blobKey, null);
+            }
+            String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+            if (opaque.equals(entityTag(blobKey, null)) || opaque.equals(entityTag(blobKey, GZIP))
+                    || opaque.equals(entityTag(blobKey, DEFLATE))) {
+                return opaque;
+            }
+        }
+        return null;
+    }
+
+    static String entityTag(String blobKey, String encoding) {
+        return encoding == null ? "\"" + blobKey + "\"" : "\"" + blobKey + "-" + encoding + "\"";
+    }
+
+    static String listEntityTag(ResponseFilePage page) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (ResponseFile file : page.getFiles()) {
+            digest.update(file.getFilename().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(file.getSize()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        if (page.getNextCursor() != null) {
+            digest.update(page.getNextCursor().getBytes(StandardCharsets.UTF_8));
+        }
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    private static boolean isSameDate(String httpDate, long millis) {
+        if (millis < 0) {
+            return false;
+        }
+        try {
+            return ZonedDateTime.parse(httpDate, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() == millis / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static long lastModified(File file) {
+        if (file.getEditedAt() == null) {
+            return -1;
+        }
+        return file.getEditedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private UploadBody openUploadBody(HttpServletRequest request) throws IOException {
+        String contentType = request.getContentType();
+        if (!MultipartStreamReader.isMultipart(contentType)) {
+            return new UploadBody(null, request.getInputStream());
+        }
+        MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(),
+                MultipartStreamReader.boundaryOf(contentType));
+        String hash = null;
+        for (MultipartStreamReader.Part part = reader.nextPart(); part != null; part = reader.nextPart()) {
+            if (HASH_PART.equals(part.getName())) {
+                hash = part.readString(MAX_HASH_LENGTH).trim();
+            } else if (FILE_PART.equals(part.getName())) {
+                return new UploadBody(hash, part.getContent());
+            }
+        }
+        throw new InputDataExceptionError();
+    }
+
+    /**
+     * Тело запроса загрузки: значение поля hash (если оно пришло раньше файла) и поток содержимого файла.
+     */
+    private record UploadBody(String hash, InputStream content) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
     }
 }
\ No newline at end of file
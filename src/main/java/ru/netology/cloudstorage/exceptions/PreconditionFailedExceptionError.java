@@ -0,0 +1,7 @@
+package ru.netology.cloudstorage.exceptions;
+
+public class PreconditionFailedExceptionError extends RuntimeException {
+    public PreconditionFailedExceptionError() {
+        super("Error precondition failed");
+    }
+}
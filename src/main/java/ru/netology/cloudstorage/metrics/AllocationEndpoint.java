@@ -0,0 +1,49 @@
+package ru.netology.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.netology.cloudstorage.response.ResponseAllocation;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Класс AllocationEndpoint является конечной точкой Actuator /actuator/allocations, которая показывает конечные
+ * точки API с наибольшим объемом памяти, выделенной при обработке запросов (распределение cloud.request.allocated,
+ * которое записывает OperationMetricsFilter). Конечная точка доступна на порту management.server.port и
+ * предназначена для администраторов: по ней видно, на каких путях выросло выделение памяти после выпуска новой
+ * версии.
+ * <p>
+ * - allocations: возвращает не более limit (по умолчанию DEFAULT_LIMIT) конечных точек в порядке убывания
+ * суммарного объема выделенной памяти с количеством запросов, средним и наибольшим объемом на запрос.
+ */
+@Component
+@Endpoint(id = "allocations")
+public class AllocationEndpoint {
+    public static final int DEFAULT_LIMIT = 10;
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public AllocationEndpoint(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public List<ResponseAllocation> allocations(@Nullable Integer limit) {
+        return registry.find(CloudStorageMetrics.ALLOCATED).summaries().stream()
+                .filter(summary -> summary.count() > 0)
+                .sorted(Comparator.comparingDouble(DistributionSummary::totalAmount).reversed())
+                .limit(limit != null && limit > 0 ? limit : DEFAULT_LIMIT)
+                .map(summary -> new ResponseAllocation(
+                        summary.getId().getTag("method") + " " + summary.getId().getTag("uri"),
+                        summary.count(), (long) summary.totalAmount(), (long) summary.mean(),
+                        (long) summary.max()))
+                .toList();
+    }
+}
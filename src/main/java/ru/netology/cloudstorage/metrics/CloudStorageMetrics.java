@@ -0,0 +1,190 @@
+package ru.netology.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс CloudStorageMetrics регистрирует метрики операций с файлами и аутентификации в MeterRegistry (Micrometer).
+ * Метрики публикуются в формате Prometheus через конечную точку Actuator /actuator/prometheus.
+ * <p>
+ * - cloud.operation: таймер с гистограммой длительности операции (теги operation и outcome). Операции: upload,
+ * download, delete, rename, list, login, logout, а также versions (история версий) и signature (подписи блоков
+ * для передачи изменений). Результат outcome равен success, типу ошибки, которую вернул ExceptionController
+ * (например, input_data или unauthorized), http_<код> для прочих ответов с кодом 4xx/5xx или exception, если
+ * исключение не было обработано.
+ * - cloud.operation.errors: счетчик неуспешных операций с теми же тегами operation и outcome.
+ * - cloud.bytes.in, cloud.bytes.out: счетчики байтов тела запроса и тела ответа по операциям (тег operation).
+ * - cloud.jwt.filter: таймер с гистограммой длительности этапа JWTFilter (проверка токена и загрузка принципала
+ * пользователя), тег result: authenticated, rejected (токен передан, но не принят) или anonymous (токена нет).
+ * - cloud.request.allocated: распределение объема памяти, выделенной потоком обработки за время одного запроса
+ * (com.sun.management.ThreadMXBean), с гистограммой по конечным точкам API (теги method и uri - шаблон пути
+ * обработчика Spring MVC, например /uploads/{uploadId}/parts/{partNumber}).
+ * <p>
+ * Метрики пула соединений с базой данных (hikaricp.connections.*) и JVM регистрирует автоконфигурация Actuator,
+ * а счетчики кэша принципалов, сессий и экономии места - сами UserService, AuthRepository и BlobService
+ * (MeterBinder).
+ * <p>
+ * - operation: возвращает имя операции по HTTP-методу и пути запроса или null, если запрос не относится к API
+ * файлов и аутентификации.
+ * - setOutcome: сохраняет результат операции в атрибуте запроса, вызывается обработчиками ExceptionController.
+ * - getOutcome: возвращает результат операции по атрибуту запроса и коду ответа.
+ * - recordOperation: записывает длительность операции и количество переданных байтов.
+ * - recordJwtFilter: записывает длительность этапа JWTFilter.
+ * - allocatedBytes: возвращает объем памяти, выделенной текущим потоком с момента его запуска, или -1, если JVM
+ * не поддерживает такой учет или он выключен.
+ * - recordAllocation: записывает объем памяти, выделенной за время запроса к конечной точке.
+ * <p>
+ * Методы record* вызываются на каждом запросе, поэтому метрики не создаются через builder и не ищутся в MeterRegistry
+ * при каждом вызове: зарегистрированная метрика запоминается в ConcurrentHashMap по значениям ее тегов, и повторный
+ * вызов с теми же тегами только читает ее из карты.
+ */
+@Component
+public class CloudStorageMetrics {
+    public static final String OPERATION_TIMER = "cloud.operation";
+    public static final String OPERATION_ERRORS = "cloud.operation.errors";
+    public static final String BYTES_IN = "cloud.bytes.in";
+    public static final String BYTES_OUT = "cloud.bytes.out";
+    public static final String JWT_FILTER_TIMER = "cloud.jwt.filter";
+    public static final String ALLOCATED = "cloud.request.allocated";
+    public static final String OUTCOME_ATTRIBUTE = CloudStorageMetrics.class.getName() + ".outcome";
+    public static final String SUCCESS = "success";
+    public static final String EXCEPTION = "exception";
+    private static final double MIN_EXPECTED_ALLOCATION = 1024;
+    private static final double MAX_EXPECTED_ALLOCATION = 1L << 32;
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+    private final MeterRegistry registry;
+    private final Map<TagKey, Timer> operationTimers = new ConcurrentHashMap<>();
+    private final Map<TagKey, Counter> operationErrors = new ConcurrentHashMap<>();
+    private final Map<String, Counter> bytesInCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> bytesOutCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> jwtFilterTimers = new ConcurrentHashMap<>();
+    private final Map<TagKey, DistributionSummary> allocations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CloudStorageMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static String operation(String method, String path) {
+        switch (path) {
+            case "/login":
+                return "POST".equals(method) ? "login" : null;
+            case "/logout":
+                return "POST".equals(method) ? "logout" : null;
+            case "/list":
+                return "list";
+            case "/file":
+                switch (method) {
+                    case "POST":
+                        return "upload";
+                    case "GET":
+                    case "HEAD":
+                        return "download";
+                    case "PUT":
+                        return "rename";
+                    case "DELETE":
+                        return "delete";
+                    default:
+                        return null;
+                }
+            case "/file/instant":
+            case "/file/delta":
+            case "/files":
+                return "upload";
+            case "/files/zip":
+                return "download";
+            case "/files/delete":
+                return "delete";
+            case "/files/rename":
+                return "rename";
+            case "/file/versions":
+                return "versions";
+            case "/file/signature":
+                return "signature";
+            default:
+                return path.equals("/uploads") || path.startsWith("/uploads/") ? "upload" : null;
+        }
+    }
+
+    public static void setOutcome(HttpServletRequest request, String outcome) {
+        request.setAttribute(OUTCOME_ATTRIBUTE, outcome);
+    }
+
+    public static String getOutcome(HttpServletRequest request, int status) {
+        Object outcome = request.getAttribute(OUTCOME_ATTRIBUTE);
+        if (outcome != null) {
+            return outcome.toString();
+        }
+        return status >= 400 ? "http_" + status : SUCCESS;
+    }
+
+    public void recordOperation(String operation, String outcome, long nanos, long bytesIn, long bytesOut) {
+        TagKey key = new TagKey(operation, outcome);
+        operationTimers.computeIfAbsent(key, tags -> Timer.builder(OPERATION_TIMER)
+                .description("File and authentication operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+        if (!SUCCESS.equals(outcome)) {
+            operationErrors.computeIfAbsent(key, tags -> Counter.builder(OPERATION_ERRORS)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(registry)).increment();
+        }
+        if (bytesIn > 0) {
+            bytesInCounters.computeIfAbsent(operation, tag -> Counter.builder(BYTES_IN).baseUnit("bytes")
+                    .tag("operation", operation).register(registry)).increment(bytesIn);
+        }
+        if (bytesOut > 0) {
+            bytesOutCounters.computeIfAbsent(operation, tag -> Counter.builder(BYTES_OUT).baseUnit("bytes")
+                    .tag("operation", operation).register(registry)).increment(bytesOut);
+        }
+    }
+
+    public void recordJwtFilter(String result, long nanos) {
+        jwtFilterTimers.computeIfAbsent(result, tag -> Timer.builder(JWT_FILTER_TIMER)
+                .description("JWT verification and principal loading in JWTFilter")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static long allocatedBytes() {
+        return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    public void recordAllocation(String method, String uri, long bytes) {
+        allocations.computeIfAbsent(new TagKey(method, uri), tags -> DistributionSummary.builder(ALLOCATED)
+                .description("Memory allocated by the request thread")
+                .baseUnit("bytes")
+                .tag("method", method)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED_ALLOCATION)
+                .maximumExpectedValue(MAX_EXPECTED_ALLOCATION)
+                .register(registry)).record(bytes);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    private record TagKey(String first, String second) {
+    }
+}
@@ -0,0 +1,271 @@
+package ru.netology.cloudstorage.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс OperationMetricsFilter является фильтром, который измеряет каждый запрос к API файлов и аутентификации и
+ * передает результат в CloudStorageMetrics, а также записывает в журнал медленные запросы.
+ * <p>
+ * Фильтр стоит первым в цепочке (раньше фильтров Spring Security), поэтому длительность операции включает проверку
+ * JWT, работу контроллера и передачу тела ответа. Имя операции определяется по методу и пути запроса
+ * (CloudStorageMetrics.operation), запросы вне API (например, к Actuator) в метриках не учитываются.
+ * <p>
+ * На время запроса фильтр создает контекст RequestTiming, в котором этапы обработки (AUTH, SESSION, METADATA,
+ * BLOB_IO, SERIALIZATION) накапливают свое время. Если запрос выполнялся не меньше requests.slow-threshold
+ * миллисекунд (нулевое значение отключает журнал), в журнал записывается одна строка вида
+ * "Slow request: method=GET path=/file status=200 outcome=success user=1 total_ms=... auth_ms=... session_ms=...
+ * metadata_ms=... blob_io_ms=... serialization_ms=... other_ms=... bytes_in=... bytes_out=...", где other_ms -
+ * время вне перечисленных этапов, а user - идентификатор пользователя, прошедшего проверку JWT.
+ * <p>
+ * Если requests.allocation.enabled=true и JVM поддерживает учет памяти, выделенной потоком, фильтр записывает объем
+ * памяти, выделенной потоком обработки за время запроса, в распределение cloud.request.allocated по шаблону пути
+ * обработчика (запросы, не дошедшие до контроллера, не учитываются). Память, выделенная в других потоках (например,
+ * потоками параллельного сжатия), в этот объем не входит. Сводка по конечным точкам с наибольшим объемом выделенной
+ * памяти доступна через AllocationEndpoint.
+ * <p>
+ * Запрос и ответ оборачиваются так, что входной поток запроса и выходной поток ответа подсчитывают переданные
+ * байты, не копируя их. Если ответ отдается через sendfile Tomcat, байты тела ответа берутся из атрибутов
+ * org.apache.tomcat.sendfile.start и org.apache.tomcat.sendfile.end: Tomcat передает файл уже после выхода из
+ * фильтра, поэтому время самой передачи в этом случае в длительность операции не входит.
+ * <p>
+ * Результат операции берется из атрибута, который выставляет ExceptionController, или по коду ответа. Если
+ * исключение не было обработано и вышло из цепочки фильтров, результат равен exception.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class OperationMetricsFilter extends OncePerRequestFilter {
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    final static Logger logger = Logger.getLogger(OperationMetricsFilter.class);
+
+    private final CloudStorageMetrics metrics;
+
+    @Value("${requests.slow-threshold:1000}")
+    private long slowThreshold = 1000;
+
+    @Value("${requests.allocation.enabled:true}")
+    private boolean allocationEnabled = true;
+
+    @Autowired
+    public OperationMetricsFilter(CloudStorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String operation = CloudStorageMetrics.operation(request.getMethod(), request.getServletPath());
+        CountingRequest countingRequest = new CountingRequest(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        RequestTiming timing = RequestTiming.open();
+        long allocatedStart = allocationEnabled ? CloudStorageMetrics.allocatedBytes() : -1;
+        long start = System.nanoTime();
+        String outcome = CloudStorageMetrics.EXCEPTION;
+        try {
+            filterChain.doFilter(countingRequest, countingResponse);
+            outcome = CloudStorageMetrics.getOutcome(request, response.getStatus());
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedStart >= 0 ? CloudStorageMetrics.allocatedBytes() - allocatedStart : -1;
+            RequestTiming.close();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (allocated >= 0 && pattern != null) {
+                metrics.recordAllocation(request.getMethod(), pattern.toString(), allocated);
+            }
+            long bytesIn = countingRequest.getCount();
+            long bytesOut = countingResponse.getCount() + sendfileLength(request);
+            if (operation != null) {
+                metrics.recordOperation(operation, outcome, nanos, bytesIn, bytesOut);
+            }
+            if (slowThreshold > 0 && nanos >= TimeUnit.MILLISECONDS.toNanos(slowThreshold)) {
+                logSlowRequest(request, response.getStatus(), outcome, timing, nanos, bytesIn, bytesOut);
+            }
+        }
+    }
+
+    private static void logSlowRequest(HttpServletRequest request, int status, String outcome, RequestTiming timing,
+                                       long nanos, long bytesIn, long bytesOut) {
+        long other = nanos;
+        for (RequestTiming.Phase phase : RequestTiming.Phase.values()) {
+            other -= timing.getNanos(phase);
+        }
+        logger.warn(String.format("Slow request: method=%s path=%s status=%d outcome=%s user=%s total_ms=%d "
+                        + "auth_ms=%d session_ms=%d metadata_ms=%d blob_io_ms=%d serialization_ms=%d other_ms=%d "
+                        + "bytes_in=%d bytes_out=%d",
+                request.getMethod(), request.getServletPath(), status, outcome,
+                timing.getUserId() != null ? timing.getUserId() : "-", millis(nanos),
+                millis(timing.getNanos(RequestTiming.Phase.AUTH)), millis(timing.getNanos(RequestTiming.Phase.SESSION)),
+                millis(timing.getNanos(RequestTiming.Phase.METADATA)),
+                millis(timing.getNanos(RequestTiming.Phase.BLOB_IO)),
+                millis(timing.getNanos(RequestTiming.Phase.SERIALIZATION)), millis(Math.max(0, other)),
+                bytesIn, bytesOut));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long sendfileLength(HttpServletRequest request) {
+        if (request.getAttribute(SENDFILE_FILENAME) == null
+                || !(request.getAttribute(SENDFILE_START) instanceof Long start)
+                || !(request.getAttribute(SENDFILE_END) instanceof Long end)) {
+            return 0;
+        }
+        return Math.max(0, end - start);
+    }
+
+    static class CountingRequest extends HttpServletRequestWrapper {
+        private CountingServletInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingServletInputStream(super.getInputStream());
+            }
+            return inputStream;
+        }
+
+        long getCount() {
+            return inputStream != null ? inputStream.count : 0;
+        }
+    }
+
+    static class CountingResponse extends HttpServletResponseWrapper {
+        private CountingServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingServletOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        long getCount() {
+            return outputStream != null ? outputStream.count : 0;
+        }
+    }
+
+    private static class CountingServletInputStream extends ServletInputStream {
+        private final ServletInputStream in;
+        private long count;
+
+        CountingServletInputStream(ServletInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = in.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return in.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            in.setReadListener(readListener);
+        }
+    }
+
+    private static class CountingServletOutputStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+        private long count;
+
+        CountingServletOutputStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
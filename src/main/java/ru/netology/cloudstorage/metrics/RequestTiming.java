@@ -0,0 +1,104 @@
+package ru.netology.cloudstorage.metrics;
+
+/**
+ * Класс RequestTiming хранит разбивку времени обработки одного HTTP-запроса по этапам. Контекст создается фильтром
+ * OperationMetricsFilter в начале запроса, хранится в ThreadLocal потока, обрабатывающего запрос, и удаляется по
+ * окончании запроса. Если контекста нет (фоновые задачи, потоки сжатия), вызовы begin и end ничего не делают.
+ * <p>
+ * Этапы (Phase):
+ * - AUTH: проверка JWT в JWTFilter и вход/выход пользователя (AuthenticationService, включая проверку BCrypt).
+ * - SESSION: поиск сессии по токену (AuthRepository и хранилище сессий SessionStore).
+ * - METADATA: запросы к базе данных через остальные репозитории (FileRepository, UserRepository и т.д.).
+ * - BLOB_IO: чтение и запись содержимого файлов (BlobStore.save, передача содержимого в ответ).
+ * - SERIALIZATION: преобразование тела запроса и ответа из JSON и в JSON.
+ * <p>
+ * Этапы могут быть вложены друг в друга (например, загрузка пользователя из базы данных внутри JWTFilter): время
+ * вложенного этапа учитывается только в нем и не учитывается во внешнем этапе, поэтому сумма этапов не превышает
+ * длительности запроса. Время вне всех этапов (фильтры, контроллеры, вычисления) в разбивку не входит.
+ * <p>
+ * - open, close: создают контекст для текущего потока и удаляют его.
+ * - begin, end: начинают и заканчивают этап в контексте текущего потока; end вызывается в блоке finally.
+ * - setUserId: запоминает идентификатор аутентифицированного пользователя для журнала медленных запросов.
+ * - getNanos: возвращает время этапа в наносекундах.
+ * <p>
+ * Стоимость учета этапа - два вызова System.nanoTime и обращение к ThreadLocal (см. RequestTimingBenchmark).
+ */
+public final class RequestTiming {
+    public enum Phase { AUTH, SESSION, METADATA, BLOB_IO, SERIALIZATION }
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+    private static final Phase[] PHASES = Phase.values();
+    private static final int MAX_DEPTH = 8;
+
+    private final long[] nanos = new long[PHASES.length];
+    private final Phase[] stack = new Phase[MAX_DEPTH];
+    private int depth;
+    private long mark;
+    private Long userId;
+
+    private RequestTiming() {
+    }
+
+    public static RequestTiming open() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    public static void close() {
+        CURRENT.remove();
+    }
+
+    public static void begin(Phase phase) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.push(phase);
+        }
+    }
+
+    public static void end() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.pop();
+        }
+    }
+
+    public static void setUserId(Long userId) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.userId = userId;
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    private void push(Phase phase) {
+        long now = System.nanoTime();
+        if (depth > 0 && depth <= MAX_DEPTH) {
+            nanos[stack[depth - 1].ordinal()] += now - mark;
+        }
+        if (depth < MAX_DEPTH) {
+            stack[depth] = phase;
+        }
+        depth++;
+        mark = now;
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (depth <= MAX_DEPTH) {
+            nanos[stack[depth - 1].ordinal()] += now - mark;
+        }
+        depth--;
+        mark = now;
+    }
+}
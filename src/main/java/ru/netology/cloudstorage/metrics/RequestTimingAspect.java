@@ -0,0 +1,60 @@
+package ru.netology.cloudstorage.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Класс RequestTimingAspect относит время вызовов компонентов к этапам запроса RequestTiming, не изменяя код самих
+ * компонентов.
+ * <p>
+ * - authentication: вход и выход пользователя (AuthenticationService) - этап AUTH.
+ * - session: поиск, создание и удаление сессий (AuthRepository и реализации SessionStore) - этап SESSION.
+ * - metadata: вызовы остальных репозиториев Spring Data и компонентов пакета repositories - этап METADATA.
+ * - blobIo: сохранение содержимого в BlobStore и передача содержимого файлов и архивов в ответ (методы
+ * FileService.writeContent, writeEncodedContent, getSignature и FileArchiveService.writeArchive) - этап BLOB_IO.
+ * <p>
+ * Проверка JWT в JWTFilter и преобразование JSON учитываются напрямую в JWTFilter и TimedJacksonHttpMessageConverter.
+ * Ответы, которые Tomcat передает через sendfile уже после выхода из фильтров, в этап BLOB_IO не попадают.
+ */
+@Aspect
+@Component
+public class RequestTimingAspect {
+
+    @Around("execution(public * ru.netology.cloudstorage.services.AuthenticationService.*(..))")
+    public Object authentication(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(joinPoint, RequestTiming.Phase.AUTH);
+    }
+
+    @Around("within(ru.netology.cloudstorage.repositories.AuthRepository) "
+            + "|| this(ru.netology.cloudstorage.repositories.SessionStore)")
+    public Object session(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(joinPoint, RequestTiming.Phase.SESSION);
+    }
+
+    @Around("(this(org.springframework.data.repository.Repository) "
+            + "|| within(ru.netology.cloudstorage.repositories..*)) "
+            + "&& !within(ru.netology.cloudstorage.repositories.AuthRepository) "
+            + "&& !this(ru.netology.cloudstorage.repositories.SessionStore)")
+    public Object metadata(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(joinPoint, RequestTiming.Phase.METADATA);
+    }
+
+    @Around("execution(* ru.netology.cloudstorage.storage.BlobStore.save(..)) "
+            + "|| execution(* ru.netology.cloudstorage.services.FileService.write*Content(..)) "
+            + "|| execution(* ru.netology.cloudstorage.services.FileService.getSignature(..)) "
+            + "|| execution(* ru.netology.cloudstorage.services.FileArchiveService.writeArchive(..))")
+    public Object blobIo(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(joinPoint, RequestTiming.Phase.BLOB_IO);
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint, RequestTiming.Phase phase) throws Throwable {
+        RequestTiming.begin(phase);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            RequestTiming.end();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.netology.cloudstorage.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Класс TimedJacksonHttpMessageConverter заменяет стандартный конвертер JSON Spring Boot (автоконфигурация
+ * использует его вместо своего MappingJackson2HttpMessageConverter) и относит время разбора тела запроса и записи
+ * тела ответа к этапу SERIALIZATION контекста RequestTiming. ObjectMapper используется тот же, что настроен
+ * Spring Boot.
+ */
+@Component
+public class TimedJacksonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    @Autowired
+    public TimedJacksonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        RequestTiming.begin(RequestTiming.Phase.SERIALIZATION);
+        try {
+            return super.read(type, contextClass, inputMessage);
+        } finally {
+            RequestTiming.end();
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        RequestTiming.begin(RequestTiming.Phase.SERIALIZATION);
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            RequestTiming.end();
+        }
+    }
+}
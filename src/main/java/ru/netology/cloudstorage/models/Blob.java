@@ -0,0 +1,49 @@
+package ru.netology.cloudstorage.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс Blob является моделью уникального содержимого файла в хранилище BlobStore. Содержимое адресуется
+ * своим хэшем: ключ blob_key равен SHA-256 содержимого, поэтому одинаковые файлы разных пользователей (или один
+ * файл, загруженный несколько раз) хранятся на диске один раз.
+ * <p>
+ * - @Table(name = "blobs") - сущность хранится в таблице blobs.
+ * - blobKey - ключ содержимого в BlobStore (SHA-256 в шестнадцатеричном виде), первичный ключ таблицы.
+ * - size - размер исходного содержимого в байтах.
+ * - storedSize (stored_size) - сколько байтов содержимое занимает в хранилище. Меньше size, если BlobStore хранит
+ * содержимое сжатым.
+ * - refCount (ref_count) - количество строк таблиц files и file_versions, ссылающихся на это содержимое.
+ * - orphanedAt (orphaned_at) - время, когда на содержимое перестали ссылаться (refCount стал равен 0). Такое
+ * содержимое удаляет BlobService после истечения storage.gc.grace-period.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "blobs")
+public class Blob {
+
+    @Id
+    @Column(name = "blob_key")
+    private String blobKey;
+
+    @Column(name = "size")
+    private long size;
+
+    @Column(name = "stored_size")
+    private long storedSize;
+
+    @Column(name = "ref_count")
+    private int refCount;
+
+    @Column(name = "orphaned_at")
+    private LocalDateTime orphanedAt;
+}
@@ -1,9 +1,10 @@
 package ru.netology.cloudstorage.models;
 
-import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
@@ -18,19 +19,28 @@ import java.time.LocalDateTime;
  * - @NoArgsConstructor и @AllArgsConstructor - аннотации из Lombok, которые генерируют конструкторы без аргументов
  * (пустой конструктор) и конструкторы со всеми аргументами соответственно.
  * - @Table(name = "files") - аннотация, которая указывает, что сущность будет сохраняться в таблице с именем "files"
- * в базе данных.
+ * в базе данных. Ограничение @UniqueConstraint на паре столбцов user_id и filename: имя файла уникально только
+ * среди файлов одного пользователя, и разные пользователи могут хранить файлы с одинаковыми именами.
  * <p>
  * - @Id - аннотация, которая указывает, что это поле является первичным ключом в базе данных.
- * - @GeneratedValue(strategy = GenerationType.IDENTITY) - аннотация, которая указывает, что значение этого поля будет
- * генерироваться автоматически базой данных при вставке новой записи.
+ * - @GeneratedValue(strategy = GenerationType.SEQUENCE) и @SequenceGenerator - значение этого поля берется из
+ * последовательности files_id_seq. Последовательность увеличивается сразу на ID_ALLOCATION_SIZE, поэтому Hibernate
+ * получает блок идентификаторов одним вызовом nextval и раздает их новым строкам сам (оптимизатор pooled). В отличие
+ * от IDENTITY, идентификатор известен до INSERT, и Hibernate может отправлять вставки пачками
+ * (hibernate.jdbc.batch_size).
  * <p>
- * - @Column(name = "file_content") - аннотация, которая указывает, что это поле будет сохранено в столбце с именем
- * "file_content" в базе данных.
- * - @NotNull - аннотация, которая указывает, что это поле не может быть null в базе данных.
- * - private byte[] fileContent; - поле типа byte[], которое представляет содержимое файла.
+ * - @Column(name = "blob_key") - аннотация, которая указывает, что это поле будет сохранено в столбце с именем
+ * "blob_key" в базе данных.
+ * - private String blobKey; - ключ содержимого файла в хранилище BlobStore. Само содержимое в таблице files
+ * больше не хранится. Для строк, загруженных до перехода на BlobStore, ключ пуст до тех пор, пока
+ * BlobMigrationService не перенесет их содержимое из столбца file_content.
  * <p>
  * - @ManyToOne - аннотация, которая указывает на отношение "многие к одному" между таблицей файлов и таблицей
  * пользователей. Много файлов могут принадлежать одному пользователю.
+ * - fetch = FetchType.LAZY - пользователь загружается только при обращении к нему. Иначе каждая загрузка файла
+ * подтягивала бы пользователя, а вместе с ним и весь его список файлов.
+ * - @ToString.Exclude и @EqualsAndHashCode.Exclude - поле user не участвует в toString, equals и hashCode,
+ * чтобы эти методы не обращались к незагруженному пользователю.
  * - @JoinColumn(name = "user_id", referencedColumnName = "id") - аннотация, которая указывает, что поле "user" в
  * таблице файлов является внешним ключом, который ссылается на поле "id" в таблице пользователей.
  */
@@ -39,13 +49,16 @@ import java.time.LocalDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "files")
+@Table(name = "files", uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "filename"}))
 public class File {
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_id_seq")
+    @SequenceGenerator(name = "files_id_seq", sequenceName = "files_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @Column(name = "filename", unique = true)
+    @Column(name = "filename")
     @jakarta.validation.constraints.NotNull
     private String filename;
 
@@ -56,19 +69,20 @@ public class File {
     @jakarta.validation.constraints.NotNull
     private Long size;
 
-    @Column(name = "file_content")
-    @NotNull
-    private byte[] fileContent;
+    @Column(name = "blob_key")
+    private String blobKey;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", referencedColumnName = "id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private User user;
 
-    public File(String filename, LocalDateTime editedAt, long size, byte[] fileContent, User user) {
+    public File(String filename, LocalDateTime editedAt, long size, String blobKey, User user) {
         this.filename = filename;
         this.editedAt = editedAt;
         this.size = size;
-        this.fileContent = fileContent;
+        this.blobKey = blobKey;
         this.user = user;
     }
 }
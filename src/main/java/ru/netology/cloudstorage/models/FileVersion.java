@@ -0,0 +1,67 @@
+package ru.netology.cloudstorage.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс FileVersion является моделью прежней версии файла. Когда включено хранение версий
+ * (files.versioning.enabled), загрузка файла под уже существующим именем не создает новую строку files, а
+ * переносит текущее содержимое файла в таблицу file_versions и записывает новое содержимое в ту же строку files
+ * с номером версии на единицу больше.
+ * <p>
+ * - @Table(name = "file_versions") - сущность хранится в таблице file_versions. Уникальный индекс (file_id, version)
+ * позволяет найти версию файла по номеру, не читая остальные версии и не обращаясь к BlobStore.
+ * - file - файл, к которому относится версия, загружаемый лениво.
+ * - version - номер версии. Номер текущей версии хранится в столбце version таблицы files.
+ * - blobKey - ключ содержимого версии в BlobStore. Строка версии держит свою ссылку на содержимое в таблице blobs.
+ * - size - размер содержимого версии.
+ * - createdAt (created_at) - время, когда версия была загружена (прежнее время изменения файла).
+ * - archivedAt (archived_at) - время, когда версию заменила более новая. По нему FileVersionService удаляет версии
+ * старше files.versioning.keep-days дней.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_versions")
+public class FileVersion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id", referencedColumnName = "id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private File file;
+
+    @Column(name = "version")
+    private int version;
+
+    @Column(name = "blob_key")
+    private String blobKey;
+
+    @Column(name = "size")
+    private long size;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,58 @@
+package ru.netology.cloudstorage.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Данный класс UploadPart является моделью одной части файла, загруженной в сессии UploadSession. Содержимое части
+ * хранится в BlobStore как обычное содержимое и учитывается в таблице blobs (ссылка снимается, когда сессия
+ * завершена, отменена или истекла), поэтому части загружаются и хранятся независимо друг от друга.
+ * <p>
+ * - @Table(name = "upload_parts") - сущность хранится в таблице upload_parts с первичным ключом
+ * (session_id, part_number), описанным классом Key.
+ * - sessionId - идентификатор сессии загрузки.
+ * - partNumber - номер части, начиная с 1. Части собираются в файл в порядке номеров.
+ * - blobKey - ключ содержимого части в BlobStore.
+ * - size - размер части в байтах.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(UploadPart.Key.class)
+@Table(name = "upload_parts")
+public class UploadPart {
+
+    @Id
+    @Column(name = "session_id")
+    private String sessionId;
+
+    @Id
+    @Column(name = "part_number")
+    private Integer partNumber;
+
+    @Column(name = "blob_key")
+    private String blobKey;
+
+    @Column(name = "size")
+    private Long size;
+
+    /**
+     * Составной первичный ключ части: идентификатор сессии и номер части.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String sessionId;
+        private Integer partNumber;
+    }
+}
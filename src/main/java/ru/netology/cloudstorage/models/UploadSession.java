@@ -0,0 +1,56 @@
+package ru.netology.cloudstorage.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс UploadSession является моделью сессии загрузки большого файла по частям. Клиент открывает сессию,
+ * загружает пронумерованные части (UploadPart) в любом порядке и параллельно, а затем завершает сессию, и из частей
+ * собирается обычный файл File.
+ * <p>
+ * - @Table(name = "upload_sessions") - сущность хранится в таблице upload_sessions.
+ * - id - идентификатор сессии (UUID), который клиент передает в адресе запросов.
+ * - user - владелец сессии, загружаемый лениво.
+ * - filename - имя файла, который будет создан при завершении сессии.
+ * - createdAt - время открытия сессии.
+ * - expiresAt - время, после которого незавершенная сессия удаляется вместе с частями. Продлевается при загрузке
+ * каждой части.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", referencedColumnName = "id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private User user;
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+}
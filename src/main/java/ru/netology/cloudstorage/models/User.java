@@ -40,8 +40,11 @@ import jakarta.persistence.*;
  * - mappedBy = "user" - указывает на поле "user" в классе File, которое является владельцем отношения.
  * - cascade = CascadeType.ALL - указывает, что все операции (вставка, обновление, удаление) должны быть
  * применены ко всем связанным сущностям (файлам) при выполнении операции с пользователем.
- * - fetch = FetchType.EAGER - указывает, что все связанные сущности (файлы) должны быть загружены
- * немедленно при загрузке пользователя.
+ * - fetch = FetchType.LAZY - указывает, что связанные сущности (файлы) загружаются только при обращении к
+ * коллекции userFiles, а не при каждой загрузке пользователя (например, при входе в систему).
+ * <p>
+ * - @EntityListeners(UserEntityListener.class) - после изменения или удаления пользователя публикуется событие
+ * UserChangedEvent, по которому его принципал удаляется из кэша UserService.
  */
 
 
@@ -51,6 +54,7 @@ import jakarta.persistence.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "users")
+@EntityListeners(UserEntityListener.class)
 public class User implements UserDetails {
 
     @Id
@@ -65,7 +69,7 @@ public class User implements UserDetails {
     @NotNull
     private String password;
 
-    @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<File> userFiles;
 
     @Override
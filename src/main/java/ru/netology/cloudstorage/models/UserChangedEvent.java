@@ -0,0 +1,20 @@
+package ru.netology.cloudstorage.models;
+
+/**
+ * Событие UserChangedEvent публикуется в ApplicationEventPublisher после изменения или удаления пользователя.
+ * Подписчики (UserService) удаляют по нему устаревшие данные пользователя из своих кэшей.
+ * <p>
+ * - userId, login: идентификатор и логин измененного пользователя.
+ * - allUsers: событие массового изменения (userId и login равны null), после которого устаревшими считаются данные
+ * всех пользователей.
+ */
+public record UserChangedEvent(Long userId, String login) {
+
+    public static UserChangedEvent allUsers() {
+        return new UserChangedEvent(null, null);
+    }
+
+    public boolean isAllUsers() {
+        return userId == null && login == null;
+    }
+}
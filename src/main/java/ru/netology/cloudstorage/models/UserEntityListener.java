@@ -0,0 +1,29 @@
+package ru.netology.cloudstorage.models;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Данный класс UserEntityListener является JPA-слушателем сущности User. После изменения пользователя (например,
+ * смены пароля или логина) или его удаления он публикует событие UserChangedEvent, по которому UserService удаляет
+ * принципал пользователя из кэша, чтобы следующий запрос загрузил актуальные данные из базы. Слушатель не зависит от
+ * сервисов: сущность только сообщает об изменении, а что с ним делать, решают подписчики события.
+ * <p>
+ * Экземпляр слушателя создается Hibernate через контейнер бинов Spring.
+ */
+@Component
+public class UserEntityListener {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public UserEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void changed(User user) {
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user.getLogin()));
+    }
+}
@@ -1,41 +1,108 @@
 package ru.netology.cloudstorage.repositories;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
-import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.security.TokenDigest;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Данный класс AuthRepository является репозиторием для аутентификации пользователей.
  * Он предоставляет методы для сохранения, удаления и получения информации об аутентифицированных пользователях.
  * <p>
- * - Метод saveUserAuthentication сохраняет аутентификационный токен и соответствующего пользователя
- * в usersAuthenticationMap.
- * - Метод removeAuthenticationUserByToken удаляет аутентифицированного пользователя по заданному аутентификационному
- * токену из usersAuthenticationMap.
- * - Метод getAuthenticationUserByToken возвращает аутентифицированного пользователя по заданному аутентификационному
- * токену из usersAuthenticationMap.
+ * - Метод saveAuthenticationUser сохраняет сессию: хэш аутентификационного токена, id соответствующего пользователя и
+ * время истечения токена (exp). Сама сущность User и сам токен в сессии не хранятся.
+ * - Метод deleteAuthenticationUserByToken удаляет сессию по заданному аутентификационному токену.
+ * - Метод getAuthenticationUserIdByToken возвращает id аутентифицированного пользователя по заданному
+ * аутентификационному токену или null, если сессии нет или время действия токена истекло.
  * <p>
- * Таким образом, данный класс предоставляет удобный способ для управления аутентификацией пользователей, хранения
- * и получения информации о них.
+ * Ключом сессии служит SHA-256 от токена (TokenDigest.of): если JWTFilter уже вычислил хэш этого токена в текущем
+ * запросе, он используется повторно и не вычисляется второй раз.
+ * <p>
+ * Сессии хранятся в SessionStore: в памяти узла (InMemorySessionStore) или в общей для всех узлов таблице
+ * (JdbcSessionStore), реализация выбирается свойством auth.sessions.store. Сессия живет до времени истечения токена:
+ * просроченная сессия не возвращается, а все просроченные сессии периодически удаляет метод sweepExpired
+ * (период задается свойством auth.sessions.sweep-delay).
+ * <p>
+ * - Методы getLiveSessions, getExpiredSessions и getEvictedSessions возвращают текущее количество сессий,
+ * количество удаленных просроченных сессий и количество сессий, вытесненных из-за ограничения размера.
+ * - Метод bindTo публикует эти значения как метрики cloud.sessions.live, cloud.sessions.expired и
+ * cloud.sessions.evicted (AuthRepository является MeterBinder, и Spring Boot вызывает метод сам). Для общей таблицы
+ * сессий подсчет действующих сессий - это запрос count(*), поэтому метрика cloud.sessions.live не выполняет его при
+ * каждом сборе метрик, а показывает значение, которое sweepExpired запоминает после удаления просроченных сессий.
  */
 
 @Repository
-public class AuthRepository {
+public class AuthRepository implements MeterBinder {
+    final static Logger logger = Logger.getLogger(AuthRepository.class);
+    public static final String SESSIONS_LIVE = "cloud.sessions.live";
+    public static final String SESSIONS_EXPIRED = "cloud.sessions.expired";
+    public static final String SESSIONS_EVICTED = "cloud.sessions.evicted";
 
-    private static final Map<String, User> mapAuthenticationUsers = new ConcurrentHashMap<>();
+    private final SessionStore sessionStore;
+    private final AtomicLong expiredSessions = new AtomicLong();
+    private final AtomicInteger liveSessions = new AtomicInteger();
 
-    public void saveAuthenticationUser(String authToken, User user) {
-        mapAuthenticationUsers.put(authToken, user);
+    @Autowired
+    public AuthRepository(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    public void saveAuthenticationUser(String authToken, Long userId, long expiresAt) {
+        sessionStore.save(hash(authToken), userId, expiresAt);
     }
 
     public void deleteAuthenticationUserByToken(String authToken) {
-        mapAuthenticationUsers.remove(authToken);
+        sessionStore.delete(hash(authToken));
     }
 
-    public User getAuthenticationUserByToken(String authToken) {
-        return mapAuthenticationUsers.get(authToken);
+    public Long getAuthenticationUserIdByToken(String authToken) {
+        return sessionStore.findUserId(hash(authToken));
+    }
+
+    @Scheduled(fixedDelayString = "${auth.sessions.sweep-delay:60000}")
+    public void sweepExpired() {
+        int removed = sessionStore.deleteExpired();
+        if (removed > 0) {
+            expiredSessions.addAndGet(removed);
+            logger.info(String.format("Expired sessions removed: %d ", removed));
+        }
+        liveSessions.set(sessionStore.getLiveSessions());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(SESSIONS_LIVE, liveSessions, AtomicInteger::get)
+                .description("Sessions that have not expired, as of the last sweep")
+                .register(registry);
+        FunctionCounter.builder(SESSIONS_EXPIRED, expiredSessions, AtomicLong::get)
+                .description("Expired sessions removed by the sweeper")
+                .register(registry);
+        FunctionCounter.builder(SESSIONS_EVICTED, sessionStore, SessionStore::getEvictedSessions)
+                .description("Sessions evicted because of the size limit")
+                .register(registry);
     }
-}
 
+    public int getLiveSessions() {
+        return sessionStore.getLiveSessions();
+    }
+
+    public long getExpiredSessions() {
+        return expiredSessions.get();
+    }
+
+    public long getEvictedSessions() {
+        return sessionStore.getEvictedSessions();
+    }
+
+    static String hash(String authToken) {
+        return TokenDigest.of(authToken);
+    }
+}
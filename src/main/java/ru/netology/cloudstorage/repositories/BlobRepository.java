@@ -0,0 +1,83 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.netology.cloudstorage.models.Blob;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Данный класс является репозиторием для работы с сущностями Blob (счетчиками ссылок на содержимое в BlobStore).
+ * <p>
+ * 1. addReference(String blobKey, long size, long storedSize): увеличивает счетчик ссылок на содержимое или создает
+ * строку со счетчиком 1, исходным размером size и размером в хранилище storedSize, если содержимое загружено
+ * впервые. Выполняется одним запросом INSERT ... ON CONFLICT, поэтому параллельные загрузки одинакового содержимого
+ * не теряют ссылки.
+ * <p>
+ * 2. addExistingReference(String blobKey, long size): увеличивает счетчик ссылок, только если содержимое с таким
+ * ключом и размером уже учитывается в таблице blobs (в том числе содержимое без ссылок, которое еще не удалено
+ * сборщиком). Возвращает 0, если такого содержимого нет.
+ * <p>
+ * 3. removeReference(String blobKey): уменьшает счетчик ссылок. Когда счетчик становится равен 0, запоминается время
+ * orphaned_at. Возвращает 0, если содержимое не учитывается в таблице blobs (файлы, загруженные до дедупликации).
+ * <p>
+ * 4. addOrphan(String blobKey, long size, long storedSize): регистрирует содержимое без ссылок (например, если
+ * транзакция загрузки была отменена), чтобы его удалил BlobService. Если строка уже есть, ничего не меняет.
+ * <p>
+ * 5. findOrphanKeys(LocalDateTime before, int limit): возвращает ключи содержимого без ссылок, которое стало
+ * ненужным раньше указанного времени.
+ * <p>
+ * 6. deleteOrphan(String blobKey, LocalDateTime before): удаляет строку, только если на содержимое по-прежнему никто
+ * не ссылается и оно стало ненужным раньше указанного времени (время могло сдвинуть touchOrphan).
+ * <p>
+ * 7. touchOrphan(String blobKey): переносит время orphaned_at содержимого без ссылок на текущее, чтобы сборщик не
+ * удалил содержимое, которое сейчас сохраняется заново. Ждет завершения транзакции сборщика, если тот уже удаляет
+ * эту строку.
+ * <p>
+ * 8. sumSizes(): суммарный размер всех ссылок на содержимое (сколько занимали бы файлы без дедупликации),
+ * суммарный исходный размер хранимого содержимого (без повторов) и сколько это содержимое реально занимает в
+ * хранилище с учетом сжатия (BlobSizes). Все три суммы считаются за один проход по таблице blobs.
+ */
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO blobs (blob_key, size, stored_size, ref_count) VALUES (?1, ?2, ?3, 1) "
+            + "ON CONFLICT (blob_key) DO UPDATE SET ref_count = blobs.ref_count + 1, orphaned_at = NULL",
+            nativeQuery = true)
+    int addReference(String blobKey, long size, long storedSize);
+
+    @Modifying
+    @Query(value = "UPDATE blobs SET ref_count = ref_count + 1, orphaned_at = NULL WHERE blob_key = ?1 AND size = ?2",
+            nativeQuery = true)
+    int addExistingReference(String blobKey, long size);
+
+    @Modifying
+    @Query(value = "UPDATE blobs SET ref_count = ref_count - 1, "
+            + "orphaned_at = CASE WHEN ref_count = 1 THEN now() ELSE orphaned_at END "
+            + "WHERE blob_key = ?1 AND ref_count > 0", nativeQuery = true)
+    int removeReference(String blobKey);
+
+    @Modifying
+    @Query(value = "INSERT INTO blobs (blob_key, size, stored_size, ref_count, orphaned_at) "
+            + "VALUES (?1, ?2, ?3, 0, now()) ON CONFLICT (blob_key) DO NOTHING", nativeQuery = true)
+    int addOrphan(String blobKey, long size, long storedSize);
+
+    @Query(value = "SELECT blob_key FROM blobs WHERE ref_count = 0 AND orphaned_at < ?1 LIMIT ?2",
+            nativeQuery = true)
+    List<String> findOrphanKeys(LocalDateTime before, int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM blobs WHERE blob_key = ?1 AND ref_count = 0 AND orphaned_at < ?2", nativeQuery = true)
+    int deleteOrphan(String blobKey, LocalDateTime before);
+
+    @Modifying
+    @Query(value = "UPDATE blobs SET orphaned_at = now() WHERE blob_key = ?1 AND ref_count = 0", nativeQuery = true)
+    int touchOrphan(String blobKey);
+
+    @Query("SELECT new ru.netology.cloudstorage.repositories.BlobSizes(COALESCE(SUM(b.size * b.refCount), 0L), "
+            + "COALESCE(SUM(CASE WHEN b.refCount > 0 THEN b.size ELSE 0L END), 0L), "
+            + "COALESCE(SUM(CASE WHEN b.refCount > 0 THEN b.storedSize ELSE 0L END), 0L)) FROM Blob b")
+    BlobSizes sumSizes();
+}
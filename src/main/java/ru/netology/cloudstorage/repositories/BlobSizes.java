@@ -0,0 +1,17 @@
+package ru.netology.cloudstorage.repositories;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс BlobSizes является проекцией суммарных размеров содержимого из таблицы blobs: сколько занимали бы все
+ * файлы без дедупликации (logicalSize), исходный размер хранимого содержимого без повторов (uniqueSize) и сколько
+ * это содержимое реально занимает в хранилище с учетом сжатия (storedSize).
+ */
+@Data
+@AllArgsConstructor
+public class BlobSizes {
+    private Long logicalSize;
+    private Long uniqueSize;
+    private Long storedSize;
+}
@@ -0,0 +1,67 @@
+package ru.netology.cloudstorage.repositories;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Данный класс FileListCursor описывает позицию в постраничном списке файлов (keyset pagination): поле и
+ * направление сортировки, значение поля сортировки и id последнего файла предыдущей страницы.
+ * Следующая страница выбирается условием "(значение, id) после курсора", поэтому стоимость любой страницы
+ * такая же, как у первой, и не зависит от ее номера.
+ * <p>
+ * - encode: кодирует курсор в непрозрачную для клиента строку (Base64 URL-safe от "SORT:DIRECTION:ID:VALUE").
+ * - decode: разбирает строку курсора. Для некорректной строки выбрасывается IllegalArgumentException.
+ * - parseSort: разбирает параметр sort вида "name", "-size" (префикс "-" означает сортировку по убыванию).
+ */
+@Data
+@AllArgsConstructor
+public class FileListCursor {
+    private static final String ASC = "a";
+    private static final String DESC = "d";
+
+    private FileSort sort;
+    private boolean descending;
+    private Object value;
+    private Long id;
+
+    public static FileListCursor parseSort(String parameter) {
+        if (parameter == null || parameter.isEmpty()) {
+            return new FileListCursor(FileSort.NAME, false, null, null);
+        }
+        boolean descending = parameter.startsWith("-");
+        FileSort sort = FileSort.fromParameter(descending ? parameter.substring(1) : parameter);
+        return new FileListCursor(sort, descending, null, null);
+    }
+
+    public static FileListCursor after(FileListCursor order, FileListItem last) {
+        return new FileListCursor(order.sort, order.descending, last.getSortValue(order.sort), last.getId());
+    }
+
+    public boolean isStart() {
+        return id == null;
+    }
+
+    public String encode() {
+        String raw = String.join(":", sort.name(), descending ? DESC : ASC, String.valueOf(id), String.valueOf(value));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FileListCursor decode(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = raw.split(":", 4);
+        if (parts.length != 4 || !(ASC.equals(parts[1]) || DESC.equals(parts[1]))) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        FileSort sort = FileSort.valueOf(parts[0]);
+        Object value = switch (sort) {
+            case NAME -> parts[3];
+            case SIZE -> Long.valueOf(parts[3]);
+            case EDITED_AT -> LocalDateTime.parse(parts[3]);
+        };
+        return new FileListCursor(sort, DESC.equals(parts[1]), value, Long.valueOf(parts[2]));
+    }
+}
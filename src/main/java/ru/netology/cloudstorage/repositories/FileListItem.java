@@ -0,0 +1,28 @@
+package ru.netology.cloudstorage.repositories;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс FileListItem является проекцией строки таблицы files для постраничного вывода списка файлов.
+ * Содержит только метаданные, нужные для ответа (filename, size) и для построения курсора следующей
+ * страницы (id, editedAt).
+ */
+@Data
+@AllArgsConstructor
+public class FileListItem {
+    private Long id;
+    private String filename;
+    private Long size;
+    private LocalDateTime editedAt;
+
+    public Object getSortValue(FileSort sort) {
+        return switch (sort) {
+            case NAME -> filename;
+            case SIZE -> size;
+            case EDITED_AT -> editedAt;
+        };
+    }
+}
@@ -1,11 +1,15 @@
 package ru.netology.cloudstorage.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.FileVersion;
 import ru.netology.cloudstorage.models.User;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -28,11 +32,46 @@ import java.util.List;
  * Аннотация @Modifying(clearAutomatically = true) указывает, что после выполнения запроса
  * сущности будут очищены из контекста персистентности.
  * <p>
+ * 5. findBlobKeyByUserAndFilename(User user, String filename): Этот метод возвращает только ключ содержимого файла
+ * в хранилище BlobStore. Используется при удалении, чтобы после удаления строки удалить и само содержимое.
+ * <p>
+ * 6. findPageByUser(User user, FileListCursor cursor, int limit): Этот метод (из FileRepositoryCustom) возвращает
+ * страницу списка файлов пользователя в виде проекции FileListItem с keyset-пагинацией. Запрос выбирает только
+ * метаданные и не создает сущности File, поэтому не загружаются ни ключи содержимого, ни связанный пользователь.
+ * <p>
+ * 7. findExistingFilenames(User user, Collection<String> filenames): Этот метод возвращает те имена из переданных,
+ * которые уже заняты файлами пользователя (ограничение unique действует на пару user_id, filename, поэтому разные
+ * пользователи могут хранить файлы с одинаковыми именами). Используется пакетной загрузкой, чтобы одним запросом
+ * отсеять файлы, вставка которых нарушила бы ограничение и отменила бы всю пачку.
+ * <p>
+ * 8. findFilenamesByUserAndPattern(User user, String pattern, Pageable pageable): Этот метод возвращает имена файлов
+ * пользователя, подходящие под шаблон LIKE (символ экранирования "!"), в порядке имен. Используется пакетным
+ * переименованием по префиксу; размер выборки ограничивается параметром pageable.
+ * <p>
+ * 9. deleteByUserAndFilenames и renameByUser (из FileRepositoryCustom) удаляют и переименовывают сразу много файлов
+ * пользователя одним запросом и возвращают, какие файлы действительно затронуты.
+ * <p>
+ * 10. findAllByUserAndFilenameIn(User user, Collection<String> filenames) и findByUserAndPattern(User user,
+ * String pattern, Pageable pageable): Эти методы одним запросом возвращают метаданные файлов пользователя по списку
+ * имен или по шаблону LIKE (в порядке имен). Используются при сборке ZIP-архива из нескольких файлов.
+ * <p>
+ * 11. replaceContent(User user, String filename, String blobKey, String newBlobKey, long size, LocalDateTime editedAt):
+ * Этот метод заменяет содержимое файла (ключ, размер и время изменения) только если файл все еще ссылается на
+ * содержимое blobKey, и возвращает количество обновленных строк. Используется загрузкой дельты: если файл успели
+ * изменить после того, как клиент получил его сигнатуру, строка не обновляется.
+ * <p>
+ * 12. findVersionByUserAndFilename(User user, String filename, int version): Этот метод возвращает прежнюю версию
+ * файла с номером version (FileVersion) или null, если такой прежней версии нет. Версия ищется через строку файла по
+ * индексу (file_id, version).
+ * <p>
+ * 13. findCurrentVersion(Long userId, String filename): Этот метод возвращает номер текущей версии файла или null,
+ * если файла нет. Столбец version таблицы files не отображается в сущность File, поэтому запрос написан на SQL.
+ * <p>
  * Класс FileRepository позволяет выполнять различные операции с файлами в базе данных, такие как добавление,
  * удаление и поиск файлов, а также обновление имени файла.
  */
 
-public interface FileRepository extends JpaRepository<File, Long> {
+public interface FileRepository extends JpaRepository<File, Long>, FileRepositoryCustom {
     @Modifying
     @Query("DELETE FROM File f WHERE f.user = ?1 AND f.filename = ?2")
     int deleteByUserAndFilename(User user, String filename);
@@ -44,5 +83,30 @@ public interface FileRepository extends JpaRepository<File, Long> {
     @Modifying(clearAutomatically = true)
     @Query("UPDATE File f SET f.filename = ?1 WHERE f.user = ?2 AND f.filename = ?3")
     int setNewFilenameByUserAndFilename(String newFilename, User user, String filename);
-}
 
+    @Query("SELECT f.blobKey FROM File f WHERE f.user = ?1 AND f.filename = ?2")
+    String findBlobKeyByUserAndFilename(User user, String filename);
+
+    @Query("SELECT f.filename FROM File f WHERE f.user = ?1 AND f.filename IN ?2")
+    List<String> findExistingFilenames(User user, Collection<String> filenames);
+
+    @Query("SELECT f.filename FROM File f WHERE f.user = ?1 AND f.filename LIKE ?2 ESCAPE '!' ORDER BY f.filename")
+    List<String> findFilenamesByUserAndPattern(User user, String pattern, Pageable pageable);
+
+    List<File> findAllByUserAndFilenameIn(User user, Collection<String> filenames);
+
+    @Query("SELECT f FROM File f WHERE f.user = ?1 AND f.filename LIKE ?2 ESCAPE '!' ORDER BY f.filename")
+    List<File> findByUserAndPattern(User user, String pattern, Pageable pageable);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE File f SET f.blobKey = ?4, f.size = ?5, f.editedAt = ?6 "
+            + "WHERE f.user = ?1 AND f.filename = ?2 AND f.blobKey = ?3")
+    int replaceContent(User user, String filename, String blobKey, String newBlobKey, long size,
+                       LocalDateTime editedAt);
+
+    @Query("SELECT v FROM FileVersion v WHERE v.file.user = ?1 AND v.file.filename = ?2 AND v.version = ?3")
+    FileVersion findVersionByUserAndFilename(User user, String filename, int version);
+
+    @Query(value = "SELECT version FROM files WHERE user_id = ?1 AND filename = ?2", nativeQuery = true)
+    Integer findCurrentVersion(Long userId, String filename);
+}
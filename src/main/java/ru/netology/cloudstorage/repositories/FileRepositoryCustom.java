@@ -0,0 +1,49 @@
+package ru.netology.cloudstorage.repositories;
+
+import ru.netology.cloudstorage.models.User;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Интерфейс FileRepositoryCustom дополняет FileRepository запросами, которые строятся динамически и не
+ * выражаются одним методом Spring Data.
+ * <p>
+ * - findPageByUser: возвращает не более limit файлов пользователя, следующих после курсора cursor в порядке
+ * сортировки курсора. Если курсор указывает на начало списка, возвращается первая страница.
+ * <p>
+ * - deleteByUserAndFilenames: одним запросом удаляет файлы пользователя с переданными именами и возвращает имена
+ * действительно удаленных файлов вместе с ключами их содержимого (ключ равен null, если содержимое еще не перенесено
+ * в BlobStore).
+ * <p>
+ * - renameByUser: одним запросом переименовывает файлы пользователя: файл filenames[i] получает имя
+ * newFilenames[i]. Возвращает прежние имена действительно переименованных файлов.
+ * <p>
+ * - replaceContentKeepingVersion: одним запросом переносит текущее содержимое файла пользователя в таблицу
+ * file_versions и записывает в строку files новое содержимое с номером версии на единицу больше. Если передан
+ * expectedBlobKey, файл заменяется, только если он все еще ссылается на это содержимое. Возвращает номер новой
+ * версии или null, если подходящего файла нет (файлы, содержимое которых еще не перенесено в BlobStore, тоже
+ * не заменяются).
+ * <p>
+ * - deleteVersionsByUserAndFilenames: одним запросом удаляет все прежние версии файлов пользователя с переданными
+ * именами и возвращает ключи их содержимого (ключи могут повторяться). Вызывается перед удалением самих файлов.
+ * <p>
+ * - findVersionsByUser: возвращает текущую и все прежние версии файла пользователя в порядке убывания номера.
+ * Если файла нет, список пуст.
+ */
+public interface FileRepositoryCustom {
+
+    List<FileListItem> findPageByUser(User user, FileListCursor cursor, int limit);
+
+    Map<String, String> deleteByUserAndFilenames(User user, List<String> filenames);
+
+    List<String> renameByUser(User user, List<String> filenames, List<String> newFilenames);
+
+    Integer replaceContentKeepingVersion(User user, String filename, String expectedBlobKey, String blobKey, long size,
+                                         LocalDateTime editedAt);
+
+    List<String> deleteVersionsByUserAndFilenames(User user, List<String> filenames);
+
+    List<FileVersionItem> findVersionsByUser(User user, String filename);
+}
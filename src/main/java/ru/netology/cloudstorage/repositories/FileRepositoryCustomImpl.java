@@ -0,0 +1,141 @@
+package ru.netology.cloudstorage.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.netology.cloudstorage.models.User;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс FileRepositoryCustomImpl реализует FileRepositoryCustom с помощью EntityManager. Spring Data подключает
+ * его к FileRepository автоматически по суффиксу Impl.
+ * <p>
+ * Метод findPageByUser строит HQL-запрос с условием keyset-пагинации в виде сравнения кортежей
+ * (поле сортировки, id) > (значение курсора, id курсора), для убывания - через "<". Сортировка всегда дополняется
+ * полем id, чтобы порядок был однозначным при одинаковых значениях. Имя поля подставляется только из перечисления
+ * FileSort, значения передаются параметрами запроса. Сравнение кортежей передается в PostgreSQL как сравнение
+ * строк ROW(...) > ROW(...), которое планировщик использует как границу диапазона в индексах (user_id, поле
+ * сортировки, id), поэтому база данных начинает чтение индекса сразу с позиции курсора и читает только строки
+ * запрошенной страницы. Равносильное условие через OR (поле > значение OR (поле = значение AND id > id курсора))
+ * границей диапазона не является и приводит к чтению и фильтрации всех предыдущих строк пользователя.
+ * <p>
+ * Методы deleteByUserAndFilenames и renameByUser выполняются через JdbcTemplate в текущей транзакции: список имен
+ * передается одним параметром-массивом, поэтому на любое количество файлов приходится один запрос DELETE или UPDATE
+ * (по индексу на filename), а RETURNING сразу возвращает, какие строки затронуты, без отдельного SELECT.
+ * <p>
+ * Метод replaceContentKeepingVersion выполняет один запрос из трех частей: подзапрос WITH блокирует строку файла
+ * (FOR UPDATE), вторая часть копирует ее текущее содержимое в file_versions, а UPDATE записывает новое содержимое и
+ * увеличивает номер версии. Параллельные перезаписи одного файла выполняются по очереди на блокировке строки, и
+ * каждая архивирует результат предыдущей. Методы deleteVersionsByUserAndFilenames и findVersionsByUser находят
+ * версии через строку файла по индексу (file_id, version), не читая версии других файлов.
+ */
+public class FileRepositoryCustomImpl implements FileRepositoryCustom {
+
+    private static final String DELETE_BY_FILENAMES = "DELETE FROM files WHERE user_id = ? AND filename = ANY (?) "
+            + "RETURNING filename, blob_key";
+    private static final String RENAME_BY_FILENAMES = "UPDATE files f SET filename = r.new_name "
+            + "FROM unnest(?, ?) AS r(old_name, new_name) "
+            + "WHERE f.user_id = ? AND f.filename = r.old_name RETURNING r.old_name";
+    private static final String REPLACE_KEEPING_VERSION = "WITH old AS (SELECT id, version, blob_key, size, edited_at "
+            + "FROM files WHERE user_id = ? AND filename = ? AND blob_key IS NOT NULL "
+            + "AND blob_key = COALESCE(?, blob_key) FOR UPDATE), "
+            + "archived AS (INSERT INTO file_versions (file_id, version, blob_key, size, created_at, archived_at) "
+            + "SELECT id, version, blob_key, size, edited_at, ? FROM old) "
+            + "UPDATE files f SET blob_key = ?, size = ?, edited_at = ?, version = old.version + 1 FROM old "
+            + "WHERE f.id = old.id RETURNING f.version";
+    private static final String DELETE_VERSIONS_BY_FILENAMES = "DELETE FROM file_versions v USING files f "
+            + "WHERE v.file_id = f.id AND f.user_id = ? AND f.filename = ANY (?) RETURNING v.blob_key";
+    private static final String FIND_VERSIONS = "SELECT version, size, edited_at FROM files "
+            + "WHERE user_id = ? AND filename = ? "
+            + "UNION ALL SELECT v.version, v.size, v.created_at FROM file_versions v JOIN files f ON f.id = v.file_id "
+            + "WHERE f.user_id = ? AND f.filename = ? ORDER BY 1 DESC";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<FileListItem> findPageByUser(User user, FileListCursor cursor, int limit) {
+        String field = "f." + cursor.getSort().getProperty();
+        String compare = cursor.isDescending() ? "<" : ">";
+        String direction = cursor.isDescending() ? " DESC" : " ASC";
+        StringBuilder jpql = new StringBuilder("SELECT new ru.netology.cloudstorage.repositories.FileListItem(")
+                .append("f.id, f.filename, f.size, f.editedAt) FROM File f WHERE f.user = :user");
+        if (!cursor.isStart()) {
+            jpql.append(" AND (").append(field).append(", f.id) ").append(compare).append(" (:value, :id)");
+        }
+        jpql.append(" ORDER BY ").append(field).append(direction).append(", f.id").append(direction);
+
+        TypedQuery<FileListItem> query = entityManager.createQuery(jpql.toString(), FileListItem.class)
+                .setParameter("user", user)
+                .setMaxResults(limit);
+        if (!cursor.isStart()) {
+            query.setParameter("value", cursor.getValue());
+            query.setParameter("id", cursor.getId());
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public Map<String, String> deleteByUserAndFilenames(User user, List<String> filenames) {
+        Map<String, String> deleted = new HashMap<>();
+        jdbcTemplate.query(DELETE_BY_FILENAMES, ps -> {
+            ps.setLong(1, user.getId());
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", filenames.toArray()));
+        }, rs -> {
+            deleted.put(rs.getString(1), rs.getString(2));
+        });
+        return deleted;
+    }
+
+    @Override
+    public List<String> renameByUser(User user, List<String> filenames, List<String> newFilenames) {
+        return jdbcTemplate.query(RENAME_BY_FILENAMES, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("varchar", filenames.toArray()));
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", newFilenames.toArray()));
+            ps.setLong(3, user.getId());
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    @Override
+    public Integer replaceContentKeepingVersion(User user, String filename, String expectedBlobKey, String blobKey,
+                                                long size, LocalDateTime editedAt) {
+        List<Integer> versions = jdbcTemplate.query(REPLACE_KEEPING_VERSION, ps -> {
+            ps.setLong(1, user.getId());
+            ps.setString(2, filename);
+            ps.setString(3, expectedBlobKey);
+            ps.setObject(4, editedAt);
+            ps.setString(5, blobKey);
+            ps.setLong(6, size);
+            ps.setObject(7, editedAt);
+        }, (rs, rowNum) -> rs.getInt(1));
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    @Override
+    public List<String> deleteVersionsByUserAndFilenames(User user, List<String> filenames) {
+        return jdbcTemplate.query(DELETE_VERSIONS_BY_FILENAMES, ps -> {
+            ps.setLong(1, user.getId());
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", filenames.toArray()));
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    @Override
+    public List<FileVersionItem> findVersionsByUser(User user, String filename) {
+        return jdbcTemplate.query(FIND_VERSIONS, ps -> {
+            ps.setLong(1, user.getId());
+            ps.setString(2, filename);
+            ps.setLong(3, user.getId());
+            ps.setString(4, filename);
+        }, (rs, rowNum) -> new FileVersionItem(rs.getInt(1), rs.getLong(2),
+                rs.getObject(3, LocalDateTime.class)));
+    }
+}
\ No newline at end of file
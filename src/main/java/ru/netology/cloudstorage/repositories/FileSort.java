@@ -0,0 +1,41 @@
+package ru.netology.cloudstorage.repositories;
+
+import java.util.Arrays;
+
+/**
+ * Перечисление FileSort задает поля, по которым можно сортировать список файлов пользователя.
+ * <p>
+ * - parameter - значение параметра запроса sort (name, size, edited_at);
+ * - property - имя поля сущности File, по которому строится запрос.
+ * <p>
+ * Метод fromParameter разбирает значение параметра sort. Префикс "-" означает сортировку по убыванию
+ * (например, "-size"), разбор направления выполняется в FileListCursor.
+ */
+public enum FileSort {
+    NAME("name", "filename"),
+    SIZE("size", "size"),
+    EDITED_AT("edited_at", "editedAt");
+
+    private final String parameter;
+    private final String property;
+
+    FileSort(String parameter, String property) {
+        this.parameter = parameter;
+        this.property = property;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public static FileSort fromParameter(String parameter) {
+        return Arrays.stream(values())
+                .filter(sort -> sort.parameter.equals(parameter))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown sort: " + parameter));
+    }
+}
@@ -0,0 +1,18 @@
+package ru.netology.cloudstorage.repositories;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс FileVersionItem является проекцией одной версии файла для вывода истории версий: номер версии,
+ * размер и время, когда версия была загружена. Содержит только метаданные из таблиц files и file_versions.
+ */
+@Data
+@AllArgsConstructor
+public class FileVersionItem {
+    private int version;
+    private long size;
+    private LocalDateTime editedAt;
+}
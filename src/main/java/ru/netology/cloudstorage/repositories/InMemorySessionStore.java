@@ -0,0 +1,60 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.netology.cloudstorage.cache.ExpiringCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Данный класс InMemorySessionStore является реализацией SessionStore, которая хранит сессии в памяти одного узла.
+ * Используется по умолчанию (auth.sessions.store=memory) и в тестах.
+ * <p>
+ * Сессии хранятся в ExpiringCache, поэтому поиск сессии не берет блокировок. Количество сессий ограничено свойством
+ * auth.sessions.max-entries: при переполнении сначала удаляются просроченные сессии, а затем вытесняются сессии, к
+ * которым дольше всего не обращались (приближенный LRU). Просроченная сессия удаляется при обращении к ней или
+ * методом deleteExpired.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.sessions.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+    private final ExpiringCache<String, Long> sessions = new ExpiringCache<>();
+    private final AtomicLong evictedSessions = new AtomicLong();
+
+    @Value("${auth.sessions.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    @Override
+    public void save(String tokenHash, Long userId, long expiresAt) {
+        int evicted = sessions.put(tokenHash, userId, expiresAt, maxEntries);
+        if (evicted > 0) {
+            evictedSessions.addAndGet(evicted);
+        }
+    }
+
+    @Override
+    public Long findUserId(String tokenHash) {
+        return sessions.get(tokenHash, System.currentTimeMillis());
+    }
+
+    @Override
+    public void delete(String tokenHash) {
+        sessions.remove(tokenHash);
+    }
+
+    @Override
+    public int deleteExpired() {
+        return sessions.removeExpired(System.currentTimeMillis());
+    }
+
+    @Override
+    public int getLiveSessions() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getEvictedSessions() {
+        return evictedSessions.get();
+    }
+}
@@ -0,0 +1,187 @@
+package ru.netology.cloudstorage.repositories;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.netology.cloudstorage.cache.ExpiringCache;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Данный класс JdbcSessionStore является реализацией SessionStore, которая хранит сессии в таблице sessions
+ * базы данных Postgres (auth.sessions.store=jdbc). Таблица общая для всех узлов приложения, поэтому токен,
+ * выданный одним узлом, принимается любым другим, и балансировщику не нужно закреплять клиента за узлом.
+ * <p>
+ * Перед таблицей на каждом узле стоит ближний кэш (near-cache): найденная сессия хранится в памяти не дольше
+ * auth.sessions.near-cache-ttl миллисекунд и не дольше времени истечения токена, а количество записей ограничено
+ * свойством auth.sessions.max-entries (ExpiringCache, приближенный LRU, чтение без блокировок). Поэтому большинство
+ * запросов не обращается к базе.
+ * <p>
+ * При выходе из системы сессия удаляется из таблицы, и в канал session_logout отправляется уведомление
+ * (pg_notify) с хэшем токена. Каждый узел держит отдельное соединение, подписанное на этот канал (LISTEN), и
+ * по уведомлению удаляет сессию из своего ближнего кэша, так что выход действует на всех узлах сразу, а не через
+ * near-cache-ttl. Если соединение слушателя оборвалось, оно переоткрывается, а на время переподключения
+ * устаревание кэша по-прежнему ограничено near-cache-ttl.
+ * <p>
+ * Соединение слушателя открывается через DriverManager по свойствам spring.datasource.url, username и password, а
+ * не берется из пула Hikari: иначе слушатель навсегда занимал бы одно соединение пула.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.sessions.store", havingValue = "jdbc")
+public class JdbcSessionStore implements SessionStore {
+    final static Logger logger = Logger.getLogger(JdbcSessionStore.class);
+    public static final String LOGOUT_CHANNEL = "session_logout";
+    private static final int LISTEN_TIMEOUT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExpiringCache<String, Long> nearCache = new ExpiringCache<>();
+    private final AtomicLong evictedSessions = new AtomicLong();
+    private volatile boolean listening;
+    private Thread listener;
+
+    @Value("${auth.sessions.max-entries:100000}")
+    private int maxEntries = 100000;
+
+    @Value("${auth.sessions.near-cache-ttl:5000}")
+    private long nearCacheTtl = 5000;
+
+    @Value("${spring.datasource.url:}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Autowired
+    public JdbcSessionStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void save(String tokenHash, Long userId, long expiresAt) {
+        jdbcTemplate.update("INSERT INTO sessions (token_hash, user_id, expires_at) VALUES (?, ?, ?) "
+                        + "ON CONFLICT (token_hash) DO UPDATE SET user_id = excluded.user_id, expires_at = excluded.expires_at",
+                tokenHash, userId, new Timestamp(expiresAt));
+        cache(tokenHash, userId, expiresAt, System.currentTimeMillis());
+    }
+
+    @Override
+    public Long findUserId(String tokenHash) {
+        long now = System.currentTimeMillis();
+        Long cached = nearCache.get(tokenHash, now);
+        if (cached != null) {
+            return cached;
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT user_id, expires_at FROM sessions WHERE token_hash = ? AND expires_at > ?",
+                tokenHash, new Timestamp(now));
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Long userId = ((Number) rows.get(0).get("user_id")).longValue();
+        long expiresAt = ((Timestamp) rows.get(0).get("expires_at")).getTime();
+        cache(tokenHash, userId, expiresAt, now);
+        return userId;
+    }
+
+    @Override
+    public void delete(String tokenHash) {
+        jdbcTemplate.update("DELETE FROM sessions WHERE token_hash = ?", tokenHash);
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", LOGOUT_CHANNEL, tokenHash);
+        evictLocal(tokenHash);
+    }
+
+    @Override
+    public int deleteExpired() {
+        long now = System.currentTimeMillis();
+        nearCache.removeExpired(now);
+        return jdbcTemplate.update("DELETE FROM sessions WHERE expires_at <= ?", new Timestamp(now));
+    }
+
+    @Override
+    public int getLiveSessions() {
+        Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM sessions WHERE expires_at > ?",
+                Integer.class, new Timestamp(System.currentTimeMillis()));
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public long getEvictedSessions() {
+        return evictedSessions.get();
+    }
+
+    public void evictLocal(String tokenHash) {
+        nearCache.remove(tokenHash);
+    }
+
+    @PostConstruct
+    public void startListener() {
+        listening = true;
+        listener = new Thread(this::listen, "session-logout-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stopListener() throws InterruptedException {
+        listening = false;
+        if (listener != null) {
+            listener.interrupt();
+            listener.join(LISTEN_TIMEOUT * 2L);
+        }
+    }
+
+    private void listen() {
+        while (listening) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + LOGOUT_CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                logger.info(String.format("Listening for session logouts on channel: %s ", LOGOUT_CHANNEL));
+                while (listening) {
+                    PGNotification[] notifications = pgConnection.getNotifications(LISTEN_TIMEOUT);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        evictLocal(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!listening) {
+                    return;
+                }
+                logger.error("Session logout listener failed, reconnecting", e);
+                try {
+                    Thread.sleep(LISTEN_TIMEOUT);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void cache(String tokenHash, Long userId, long expiresAt, long now) {
+        int evicted = nearCache.put(tokenHash, userId, Math.min(expiresAt, now + nearCacheTtl), maxEntries);
+        if (evicted > 0) {
+            evictedSessions.addAndGet(evicted);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.netology.cloudstorage.repositories;
+
+/**
+ * Интерфейс SessionStore описывает хранилище сессий пользователей, которое использует AuthRepository. Сессия
+ * хранится по хэшу токена (SHA-256 в шестнадцатеричном виде, сам токен не хранится) и содержит id пользователя
+ * и время истечения токена в миллисекундах.
+ * <p>
+ * - save: сохраняет или заменяет сессию.
+ * - findUserId: возвращает id пользователя сессии или null, если сессии нет или она просрочена.
+ * - delete: удаляет сессию (выход из системы).
+ * - deleteExpired: удаляет просроченные сессии и возвращает их количество.
+ * - getLiveSessions, getEvictedSessions: количество действующих сессий и количество сессий (или записей кэша),
+ * вытесненных из-за ограничения размера.
+ * <p>
+ * Реализация выбирается свойством auth.sessions.store: memory (InMemorySessionStore, сессии видны только одному
+ * узлу) или jdbc (JdbcSessionStore, общая для всех узлов таблица sessions в Postgres).
+ */
+public interface SessionStore {
+
+    void save(String tokenHash, Long userId, long expiresAt);
+
+    Long findUserId(String tokenHash);
+
+    void delete(String tokenHash);
+
+    int deleteExpired();
+
+    int getLiveSessions();
+
+    long getEvictedSessions();
+}
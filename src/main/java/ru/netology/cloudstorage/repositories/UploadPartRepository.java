@@ -0,0 +1,32 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.netology.cloudstorage.models.UploadPart;
+
+import java.util.List;
+
+/**
+ * Данный класс является репозиторием для работы с частями файлов, загруженными в сессиях загрузки (сущностями
+ * UploadPart).
+ * <p>
+ * 1. findAllBySessionIdOrderByPartNumber(String sessionId): возвращает все части сессии в порядке номеров.
+ * <p>
+ * 2. findBlobKeysBySessionId(String sessionId): возвращает ключи содержимого частей сессии в порядке номеров.
+ * Запрос не создает сущности, поэтому всегда читает текущее состояние таблицы, даже если части сессии уже загружены
+ * в контекст персистентности.
+ * <p>
+ * 3. deleteBySessionId(String sessionId): удаляет все части сессии одним запросом.
+ */
+public interface UploadPartRepository extends JpaRepository<UploadPart, UploadPart.Key> {
+
+    List<UploadPart> findAllBySessionIdOrderByPartNumber(String sessionId);
+
+    @Query("SELECT p.blobKey FROM UploadPart p WHERE p.sessionId = ?1 ORDER BY p.partNumber")
+    List<String> findBlobKeysBySessionId(String sessionId);
+
+    @Modifying
+    @Query("DELETE FROM UploadPart p WHERE p.sessionId = ?1")
+    int deleteBySessionId(String sessionId);
+}
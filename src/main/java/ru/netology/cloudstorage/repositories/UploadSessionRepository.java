@@ -0,0 +1,31 @@
+package ru.netology.cloudstorage.repositories;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import ru.netology.cloudstorage.models.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Данный класс является репозиторием для работы с сессиями загрузки по частям (сущностями UploadSession).
+ * <p>
+ * 1. findForUpdate(String id): возвращает сессию и блокирует ее строку до конца транзакции (SELECT ... FOR UPDATE).
+ * Загрузка части, завершение, отмена и удаление истекшей сессии берут эту блокировку, поэтому завершение не может
+ * пропустить часть, загруженную одновременно с ним, а часть не может быть добавлена в уже удаленную сессию.
+ * <p>
+ * 2. findExpiredIds(LocalDateTime now, Pageable pageable): возвращает идентификаторы сессий, истекших к моменту now.
+ * Размер выборки ограничивается параметром pageable.
+ */
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.id = ?1")
+    UploadSession findForUpdate(String id);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < ?1")
+    List<String> findExpiredIds(LocalDateTime now, Pageable pageable);
+}
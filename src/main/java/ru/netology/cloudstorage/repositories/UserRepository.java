@@ -2,11 +2,16 @@ package ru.netology.cloudstorage.repositories;
 
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.security.UserPrincipal;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     User findUserByLogin(String login);
+
+    @Query("SELECT new ru.netology.cloudstorage.security.UserPrincipal(u.id, u.login) FROM User u WHERE u.login = ?1")
+    UserPrincipal findPrincipalByLogin(String login);
 }
 
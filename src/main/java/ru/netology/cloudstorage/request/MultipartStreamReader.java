@@ -0,0 +1,296 @@
+package ru.netology.cloudstorage.request;
+
+import org.springframework.http.MediaType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Класс MultipartStreamReader последовательно читает части (parts) тела запроса multipart/form-data прямо из
+ * входного потока, не сохраняя тело запроса ни в памяти, ни во временных файлах.
+ * <p>
+ * - nextPart: переходит к следующей части и возвращает объект Part с именем поля, именем файла и потоком
+ * содержимого части. Непрочитанное содержимое предыдущей части пропускается. Если частей больше нет,
+ * возвращается null.
+ * <p>
+ * - boundaryOf: извлекает значение boundary из заголовка Content-Type.
+ * <p>
+ * Для чтения используется один буфер фиксированного размера BUFFER_SIZE, поэтому объем памяти на один запрос
+ * не зависит от размера загружаемого файла. Поток содержимого части отдает байты до тех пор, пока в буфере
+ * не встретится разделитель "\r\n--boundary"; хвост буфера длиной в разделитель придерживается, чтобы не отдать
+ * начало разделителя, разрезанного между двумя чтениями. Результат поиска разделителя запоминается (позиция
+ * найденного разделителя или граница, до которой разделителя точно нет), поэтому каждый байт буфера
+ * просматривается один раз, сколько бы мелких чтений ни делал потребитель: после fill проверяются только
+ * поступившие байты и придержанный хвост.
+ */
+public class MultipartStreamReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+    private static final Pattern DISPOSITION_PARAMETER = Pattern.compile("(\\w+)=(?:\"([^\"]*)\"|([^;\\s]*))");
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int head;
+    private int tail;
+    private int scanned;
+    private int delimiterAt = -1;
+    private boolean finished;
+    private Part current;
+
+    public MultipartStreamReader(InputStream in, String boundary) {
+        if (boundary == null || boundary.isEmpty()) {
+            throw new IllegalArgumentException("Multipart boundary is missing");
+        }
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        // Первый разделитель может стоять в самом начале тела без предшествующего CRLF
+        System.arraycopy(CRLF, 0, buffer, 0, CRLF.length);
+        this.tail = CRLF.length;
+    }
+
+    public static String boundaryOf(String contentType) {
+        String boundary = MediaType.parseMediaType(contentType).getParameter("boundary");
+        if (boundary != null && boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary;
+    }
+
+    public static boolean isMultipart(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!skipDelimiter() || !ensure(CRLF.length) || (buffer[head] == '-' && buffer[head + 1] == '-')) {
+            finished = true;
+            return null;
+        }
+        int headerEnd;
+        while ((headerEnd = indexOf(HEADER_END, head, tail)) < 0) {
+            if (tail - head == buffer.length) {
+                throw new IOException("Multipart headers are too large");
+            }
+            if (!fill()) {
+                throw new EOFException("Unexpected end of multipart stream");
+            }
+        }
+        // Блок заголовков начинается с CRLF после разделителя, поэтому часть без заголовков тоже находится
+        Map<String, String> headers = parseHeaders(new String(buffer, head, headerEnd - head, StandardCharsets.UTF_8));
+        head = headerEnd + HEADER_END.length;
+        Map<String, String> disposition = parseDisposition(headers.get("content-disposition"));
+        current = new Part(disposition.get("name"), disposition.get("filename"), headers.get("content-type"));
+        return current;
+    }
+
+    private boolean skipDelimiter() throws IOException {
+        if (current != null) {
+            current.content.skipRemaining();
+            current = null;
+        }
+        while (true) {
+            int position = findDelimiter();
+            if (position >= 0) {
+                head = position + delimiter.length;
+                delimiterAt = -1;
+                return true;
+            }
+            head = Math.max(head, tail - delimiter.length + 1);
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private boolean ensure(int count) throws IOException {
+        while (tail - head < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            scanned = Math.max(0, scanned - head);
+            if (delimiterAt >= 0) {
+                delimiterAt -= head;
+            }
+            head = 0;
+        }
+        if (tail == buffer.length) {
+            return false;
+        }
+        int read = in.read(buffer, tail, buffer.length - tail);
+        if (read < 0) {
+            return false;
+        }
+        tail += read;
+        return true;
+    }
+
+    private int findDelimiter() {
+        if (delimiterAt < 0) {
+            int from = Math.max(head, scanned);
+            delimiterAt = indexOf(delimiter, from, tail);
+            scanned = delimiterAt >= 0 ? delimiterAt : Math.max(from, tail - delimiter.length + 1);
+        }
+        return delimiterAt;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parseHeaders(String block) {
+        Map<String, String> headers = new HashMap<>();
+        for (String line : block.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static Map<String, String> parseDisposition(String disposition) {
+        Map<String, String> parameters = new HashMap<>();
+        if (disposition == null) {
+            return parameters;
+        }
+        Matcher matcher = DISPOSITION_PARAMETER.matcher(disposition);
+        while (matcher.find()) {
+            String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            parameters.put(matcher.group(1).toLowerCase(Locale.ROOT), value);
+        }
+        return parameters;
+    }
+
+    /**
+     * Часть тела multipart/form-data: имя поля, имя файла (для файловых полей), тип содержимого и поток содержимого.
+     * Поток действителен только до следующего вызова nextPart.
+     */
+    public class Part {
+        private final String name;
+        private final String filename;
+        private final String contentType;
+        private final PartInputStream content = new PartInputStream();
+
+        private Part(String name, String filename, String contentType) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public InputStream getContent() {
+            return content;
+        }
+
+        public String readString(int maxLength) throws IOException {
+            byte[] value = content.readNBytes(maxLength + 1);
+            if (value.length > maxLength) {
+                throw new IOException("Multipart field is too large: " + name);
+            }
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private class PartInputStream extends InputStream {
+        private final byte[] single = new byte[1];
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int position = findDelimiter();
+                int available = position >= 0 ? position - head : tail - head - delimiter.length + 1;
+                if (available > 0) {
+                    int count = Math.min(available, len);
+                    System.arraycopy(buffer, head, b, off, count);
+                    head += count;
+                    return count;
+                }
+                if (position == head) {
+                    done = true;
+                    return -1;
+                }
+                if (!fill()) {
+                    throw new EOFException("Unexpected end of multipart stream");
+                }
+            }
+        }
+
+        @Override
+        public int available() {
+            int position = findDelimiter();
+            return done ? 0 : Math.max(0, position >= 0 ? position - head : tail - head - delimiter.length + 1);
+        }
+
+        @Override
+        public void close() {
+            // Поток части не закрывает тело запроса: оставшиеся байты пропускаются в nextPart
+        }
+
+        private void skipRemaining() throws IOException {
+            while (!done) {
+                int position = findDelimiter();
+                if (position >= 0) {
+                    head = position;
+                    done = true;
+                } else {
+                    head = Math.max(head, tail - delimiter.length + 1);
+                    if (!fill()) {
+                        throw new EOFException("Unexpected end of multipart stream");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.netology.cloudstorage.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Данный класс представляет модель запроса пакетного удаления файлов (POST /files/delete). Поле filenames содержит
+ * имена удаляемых файлов.
+ * <p>
+ * Аннотация @Data генерирует для данного класса геттеры, сеттеры, методы equals(), hashCode() и toString(), а
+ * аннотация @AllArgsConstructor - конструктор со всеми полями класса.
+ */
+@Data
+@AllArgsConstructor
+public class RequestDeleteFiles {
+
+    private List<String> filenames;
+}
@@ -0,0 +1,21 @@
+package ru.netology.cloudstorage.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс представляет модель запроса "мгновенной" загрузки файла (POST /file/instant). Он содержит два поля:
+ * "hash" - хэш SHA-256 содержимого файла в шестнадцатеричном виде, и "size" - размер файла в байтах.
+ * <p>
+ * Аннотация @Data генерирует для данного класса геттеры, сеттеры, методы equals(), hashCode() и toString(),
+ * а аннотация @AllArgsConstructor - конструктор со всеми полями класса.
+ * <p>
+ * Формат хэша и размер проверяются в FileService.uploadFileByHash.
+ */
+@Data
+@AllArgsConstructor
+public class RequestInstantUpload {
+
+    private String hash;
+    private Long size;
+}
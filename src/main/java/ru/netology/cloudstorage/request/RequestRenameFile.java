@@ -0,0 +1,19 @@
+package ru.netology.cloudstorage.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс представляет одно переименование в запросе пакетного переименования RequestRenameFiles: файл с
+ * именем filename получает имя newFilename.
+ * <p>
+ * Аннотация @Data генерирует для данного класса геттеры, сеттеры, методы equals(), hashCode() и toString(), а
+ * аннотация @AllArgsConstructor - конструктор со всеми полями класса.
+ */
+@Data
+@AllArgsConstructor
+public class RequestRenameFile {
+
+    private String filename;
+    private String newFilename;
+}
@@ -0,0 +1,27 @@
+package ru.netology.cloudstorage.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Данный класс представляет модель запроса пакетного переименования файлов (POST /files/rename). Переименования
+ * задаются одним из двух способов:
+ * <p>
+ * - files: список пар "старое имя - новое имя" (RequestRenameFile);
+ * <p>
+ * - prefix и newPrefix: правило, по которому у всех файлов пользователя, имена которых начинаются с prefix, этот
+ * префикс заменяется на newPrefix (например, переименование "папки").
+ * <p>
+ * Аннотация @Data генерирует для данного класса геттеры, сеттеры, методы equals(), hashCode() и toString(), а
+ * аннотация @AllArgsConstructor - конструктор со всеми полями класса.
+ */
+@Data
+@AllArgsConstructor
+public class RequestRenameFiles {
+
+    private List<RequestRenameFile> files;
+    private String prefix;
+    private String newPrefix;
+}
@@ -0,0 +1,24 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseAllocation используется в ответе конечной точки Actuator /actuator/allocations со сводкой
+ * по памяти, выделенной при обработке запросов к конечной точке API.
+ * <p>
+ * - endpoint - HTTP-метод и шаблон пути, например PUT /uploads/{uploadId}/parts/{partNumber}.
+ * - requests - количество учтенных запросов.
+ * - totalBytes - суммарный объем выделенной памяти.
+ * - meanBytes - средний объем памяти, выделенной за один запрос.
+ * - maxBytes - наибольший объем памяти, выделенной за один запрос за последние минуты.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseAllocation {
+    private String endpoint;
+    private long requests;
+    private long totalBytes;
+    private long meanBytes;
+    private long maxBytes;
+}
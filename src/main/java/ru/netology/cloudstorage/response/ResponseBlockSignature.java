@@ -0,0 +1,15 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseBlockSignature представляет сигнатуру одного блока хранимого файла: слабую скользящую
+ * контрольную сумму weak (см. RollingChecksum) и строгий хэш strong (MD5 блока в шестнадцатеричном виде).
+ */
+@Data
+@AllArgsConstructor
+public class ResponseBlockSignature {
+    private long weak;
+    private String strong;
+}
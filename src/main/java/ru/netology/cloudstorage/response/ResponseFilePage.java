@@ -0,0 +1,20 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Данный класс ResponseFilePage представляет одну страницу списка файлов: сами файлы (ResponseFile) и курсор
+ * следующей страницы nextCursor. Если следующей страницы нет, nextCursor равен null.
+ * <p>
+ * Контроллер отдает клиенту список files как тело ответа (формат, который ожидает FRONT), а nextCursor
+ * передает в заголовке X-Next-Cursor.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseFilePage {
+    private List<ResponseFile> files;
+    private String nextCursor;
+}
@@ -0,0 +1,19 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseFileResult представляет результат операции над одним файлом в пакетном удалении
+ * (POST /files/delete) или переименовании (POST /files/rename). Поле filename содержит исходное имя файла, поле
+ * success равно true, если операция выполнена. Иначе в поле error указывается причина: некорректные данные или
+ * файл не найден (Error Input Data), новое имя уже занято (File already exists) или файл не удален
+ * (Error delete file).
+ */
+@Data
+@AllArgsConstructor
+public class ResponseFileResult {
+    private String filename;
+    private boolean success;
+    private String error;
+}
@@ -0,0 +1,18 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Данный класс ResponseFileSignature представляет сигнатуру хранимого файла для загрузки дельты: размер блока
+ * blockSize, размер файла size и сигнатуры его блоков blocks по порядку (последний блок может быть короче).
+ */
+@Data
+@AllArgsConstructor
+public class ResponseFileSignature {
+    private int blockSize;
+    private long size;
+    private List<ResponseBlockSignature> blocks;
+}
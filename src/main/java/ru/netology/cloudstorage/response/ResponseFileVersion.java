@@ -0,0 +1,23 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Данный класс ResponseFileVersion используется в ответе на запрос истории версий файла (GET /file/versions).
+ * <p>
+ * - version - номер версии, по которому ее можно скачать запросом GET /file?filename=...&version=...
+ * - size - размер содержимого версии.
+ * - editedAt - время, когда версия была загружена.
+ * - current - true для текущей версии файла.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseFileVersion {
+    private int version;
+    private long size;
+    private LocalDateTime editedAt;
+    private boolean current;
+}
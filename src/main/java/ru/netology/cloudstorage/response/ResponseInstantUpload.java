@@ -0,0 +1,15 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseInstantUpload представляет ответ на запрос "мгновенной" загрузки файла (POST /file/instant).
+ * Поле uploaded равно true, если содержимое с указанным хэшем и размером уже есть на сервере и файл создан
+ * ссылкой на него. Если uploaded равно false, клиент должен загрузить файл целиком обычным запросом POST /file.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseInstantUpload {
+    private boolean uploaded;
+}
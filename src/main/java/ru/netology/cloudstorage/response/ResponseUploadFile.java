@@ -0,0 +1,18 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseUploadFile представляет результат загрузки одного файла в пакетной загрузке (POST /files).
+ * Поле uploaded равно true, если файл сохранен. Иначе в поле error указывается причина: некорректное имя файла или
+ * хэш (Error Input Data), файл с таким именем уже существует (File already exists) или ошибка сохранения
+ * (Error Upload File).
+ */
+@Data
+@AllArgsConstructor
+public class ResponseUploadFile {
+    private String filename;
+    private boolean uploaded;
+    private String error;
+}
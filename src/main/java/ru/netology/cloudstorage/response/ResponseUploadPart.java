@@ -0,0 +1,15 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Данный класс ResponseUploadPart представляет часть файла, принятую в сессии загрузки по частям: номер части
+ * partNumber и ее размер size в байтах.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseUploadPart {
+    private int partNumber;
+    private long size;
+}
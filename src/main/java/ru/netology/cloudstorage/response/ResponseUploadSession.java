@@ -0,0 +1,22 @@
+package ru.netology.cloudstorage.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Данный класс ResponseUploadSession представляет сессию загрузки файла по частям: идентификатор uploadId, который
+ * клиент передает в адресе запросов загрузки частей, имя создаваемого файла filename, время expiresAt, после которого
+ * незавершенная сессия удаляется, и список уже принятых частей parts в порядке номеров. По этому списку клиент
+ * после сбоя сети определяет, какие части нужно загрузить повторно.
+ */
+@Data
+@AllArgsConstructor
+public class ResponseUploadSession {
+    private String uploadId;
+    private String filename;
+    private LocalDateTime expiresAt;
+    private List<ResponseUploadPart> parts;
+}
@@ -8,10 +8,11 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import ru.netology.cloudstorage.metrics.CloudStorageMetrics;
+import ru.netology.cloudstorage.metrics.RequestTiming;
 import ru.netology.cloudstorage.services.UserService;
 
 import java.io.IOException;
@@ -23,17 +24,25 @@ import java.io.IOException;
  * 2. Проверяет, начинается ли значение заголовка с "Bearer " (requestTokenHeader.startsWith("Bearer ")).
  * 3. Если значение заголовка начинается с "Bearer ", то извлекает JWT токен из заголовка, удаляя префикс "Bearer
  * " (jwtToken = requestTokenHeader.substring(7)).
- * 4. Пытается извлечь имя пользователя из токена, используя метод getUsernameFromToken класса JWTUtils.
+ * 4. Один раз вычисляет SHA-256 от токена (TokenDigest.remember) и проверяет токен методом verifyToken класса
+ * JWTUtils (подпись проверяется только при первом обращении с этим токеном, дальше результат берется из кэша по
+ * этому хэшу) и получает из него имя пользователя. Тот же хэш используется как ключ сессии при поиске
+ * пользователя по токену (AuthRepository) до окончания запроса, после чего TokenDigest.clear удаляет его.
  * 5. Если удалось извлечь имя пользователя, то проверяет, что аутентификация не была уже установлена
  * (SecurityContextHolder.getContext().getAuthentication() == null).
- * 6. Загружает информацию о пользователе (UserDetails) из базы данных по имени пользователя, используя сервис
- * userService.loadUserByUsername.
- * 7. Проверяет, является ли токен действительным для указанного пользователя, используя метод isValidateToken
- * класса JWTUtils.
+ * 6. Загружает облегченный принципал пользователя (UserPrincipal: только id и логин) по имени пользователя,
+ * используя сервис userService.loadPrincipal. Принципал берется из кэша, а при промахе выбирается из базы без
+ * файлов пользователя, поэтому стоимость аутентификации не зависит от количества файлов.
+ * 7. Проверяет, является ли уже проверенный токен действительным для указанного пользователя, используя метод
+ * isValidateToken класса JWTUtils, без повторного разбора токена.
  * 8. Если токен действителен, то создает объект UsernamePasswordAuthenticationToken, который представляет
  * аутентификацию пользователя, и устанавливает его в контекст безопасности
  * (SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken)).
- * 9. Продолжает выполнение цепочки фильтров (filterChain.doFilter(request, response)).
+ * 9. Записывает длительность шагов 1-8 в метрику cloud.jwt.filter (CloudStorageMetrics.recordJwtFilter) с
+ * результатом authenticated, rejected (токен передан, но аутентификация не установлена) или anonymous (токена нет).
+ * Время шагов 1-8 также учитывается в этапе AUTH разбивки времени запроса RequestTiming, а идентификатор
+ * аутентифицированного пользователя запоминается в ней для журнала медленных запросов.
+ * 10. Продолжает выполнение цепочки фильтров (filterChain.doFilter(request, response)).
  * <p>
  * Таким образом, класс JWTFilter выполняет проверку и аутентификацию JWT токена для каждого запроса,
  * и если токен действителен, устанавливает аутентификацию пользователя в контекст безопасности.
@@ -45,23 +54,30 @@ public class JWTFilter extends OncePerRequestFilter {
 
     private final JWTUtils jwtUtils;
     private final UserService userService;
+    private final CloudStorageMetrics metrics;
 
-    public JWTFilter(JWTUtils jwtUtils, UserService userService) {
+    public JWTFilter(JWTUtils jwtUtils, UserService userService, CloudStorageMetrics metrics) {
         this.jwtUtils = jwtUtils;
         this.userService = userService;
+        this.metrics = metrics;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
+        final long start = System.nanoTime();
+        RequestTiming.begin(RequestTiming.Phase.AUTH);
+        String result = "anonymous";
         final String requestTokenHeader = request.getHeader("auth-token");
         String username = null;
-        String jwtToken = null;
+        VerifiedToken verifiedToken = null;
         if (requestTokenHeader != null && requestTokenHeader.startsWith("Bearer ")) {
-            jwtToken = requestTokenHeader.substring(7);
+            result = "rejected";
+            String jwtToken = requestTokenHeader.substring(7);
             try {
-                username = jwtUtils.getUsernameFromToken(jwtToken);
+                verifiedToken = jwtUtils.verifyToken(jwtToken, TokenDigest.remember(jwtToken));
+                username = verifiedToken.getUsername();
             } catch (IllegalArgumentException e) {
                 log.error("Unable to get JWT Token");
             } catch (ExpiredJwtException e) {
@@ -72,9 +88,9 @@ public class JWTFilter extends OncePerRequestFilter {
         }
 
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userService.loadUserByUsername(username);
+            UserPrincipal userDetails = userService.loadPrincipal(username);
 
-            if (jwtUtils.isValidateToken(jwtToken, userDetails)) {
+            if (jwtUtils.isValidateToken(verifiedToken, userDetails)) {
                 UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
@@ -84,9 +100,17 @@ public class JWTFilter extends OncePerRequestFilter {
                 usernamePasswordAuthenticationToken.setDetails(new WebAuthenticationDetailsSource()
                         .buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
+                RequestTiming.setUserId(userDetails.getId());
+                result = "authenticated";
             }
         }
-        filterChain.doFilter(request, response);
+        RequestTiming.end();
+        metrics.recordJwtFilter(result, System.nanoTime() - start);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            TokenDigest.clear();
+        }
     }
 }
 
@@ -6,6 +6,7 @@ import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
+import ru.netology.cloudstorage.cache.ExpiringCache;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -23,21 +24,26 @@ import java.util.function.Function;
  * время выдачи токена (setIssuedAt), устанавливает время истечения токена (setExpiration) и подписывает токен с
  * использованием секретного ключа (signWith). Возвращает сгенерированный токен.
  * <p>
- * 2. isValidateToken(String token, UserDetails userDetails) - проверяет, является ли переданный токен действительным
- * для указанного пользователя. Метод извлекает имя пользователя из токена (getUsernameFromToken) и проверяет, совпадает
- * ли оно с именем пользователя из UserDetails. Также метод проверяет, не истекло ли время действия токена
- * (isTokenExpired). Возвращает true, если токен действителен для указанного пользователя, иначе возвращает false.
+ * 2. verifyToken(String token) - разбирает токен и проверяет его подпись и срок действия один раз и возвращает
+ * неизменяемый объект VerifiedToken (имя пользователя и время истечения). Уже проверенные токены хранятся в кэше,
+ * ключом которого служит SHA-256 от токена (TokenDigest, сам токен в памяти не хранится), а запись живет до
+ * времени истечения токена (exp). Поэтому повторные запросы с тем же токеном не вычисляют HMAC и не разбирают
+ * JSON заново. Вариант verifyToken(String token, String digest) принимает уже вычисленный хэш: JWTFilter
+ * вычисляет его один раз, и тот же хэш служит ключом сессии в AuthRepository. Кэш является ExpiringCache (чтение
+ * без блокировок), его размер ограничен свойством jwt.verified-cache.max-size (0 отключает кэш), при
+ * переполнении вытесняются давно не использованные записи. Для недействительного токена выбрасываются исключения
+ * jjwt (например, ExpiredJwtException или SignatureException), такие токены в кэш не попадают.
  * <p>
- * 3. isTokenExpired(String token) - проверяет, истекло ли время действия токена. Метод извлекает время истечения
- * токена из утверждений (getClaimFromToken) и сравнивает его с текущим временем. Возвращает true, если время истекло,
- * иначе возвращает false.
+ * 3. isValidateToken(VerifiedToken token, UserDetails userDetails) - проверяет, что проверенный токен выдан
+ * указанному пользователю и его время действия не истекло. Вариант isValidateToken(String token, UserDetails
+ * userDetails) сначала получает VerifiedToken через verifyToken.
  * <p>
- * 4. getUsernameFromToken(String token) - извлекает имя пользователя из токена. Метод извлекает утверждение "subject"
- * из токена (getClaimFromToken) и возвращает его значение.
+ * 4. getUsernameFromToken(String token) - извлекает имя пользователя из токена через verifyToken.
  * <p>
  * 5. getClaimFromToken(String token, Function<Claims, T> claimsResolver) - извлекает указанное утверждение из токена.
  * Метод разбирает токен с использованием секретного ключа (jwtSecret), получает тело токена (getBody) и вызывает
  * переданную функцию (claimsResolver) для извлечения указанного утверждения. Возвращает значение утверждения.
+ * Этот метод всегда разбирает токен заново и не использует кэш.
  * <p>
  * Все методы используются для работы с JWT токенами, включая генерацию, проверку и извлечение информации из токена.
  */
@@ -46,6 +52,11 @@ public class JWTUtils {
     @Value("${jwt.secret}")
     private String jwtSecret;
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize = 10000;
+
+    private final ExpiringCache<String, VerifiedToken> verifiedCache = new ExpiringCache<>();
+
 
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
@@ -57,23 +68,47 @@ public class JWTUtils {
                 .signWith(SignatureAlgorithm.HS512, jwtSecret).compact();
     }
 
+    public VerifiedToken verifyToken(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("JWT token is empty");
+        }
+        return verifyToken(token, TokenDigest.of(token));
+    }
+
+    public VerifiedToken verifyToken(String token, String digest) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("JWT token is empty");
+        }
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = verifiedCache.get(digest, now);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(),
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+        if (verifiedCacheMaxSize > 0 && expiration != null) {
+            verifiedCache.put(digest, verified, verified.getExpiration(), verifiedCacheMaxSize);
+        }
+        return verified;
+    }
 
     public Boolean isValidateToken(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return isValidateToken(verifyToken(token), userDetails);
     }
 
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getClaimFromToken(token, Claims::getExpiration);
-        return expiration.before(new Date());
+    public Boolean isValidateToken(VerifiedToken token, UserDetails userDetails) {
+        return token.getUsername().equals(userDetails.getUsername())
+                && !token.isExpired(System.currentTimeMillis());
     }
 
     public String getUsernameFromToken(String token) {
-        return getClaimFromToken(token, Claims::getSubject);
+        return verifyToken(token).getUsername();
     }
 
     public <T> T getClaimFromToken(String token, Function<Claims, T> claimsResolver) {
         final Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody();
         return claimsResolver.apply(claims);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package ru.netology.cloudstorage.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Класс TokenDigest вычисляет SHA-256 от аутентификационного токена (в шестнадцатеричном виде). Этот хэш служит
+ * ключом и кэша проверенных токенов JWTUtils, и сессии в AuthRepository, поэтому сам токен нигде не хранится.
+ * <p>
+ * - remember: вычисляет хэш токена и запоминает пару (токен, хэш) в ThreadLocal потока, обрабатывающего запрос.
+ * Вызывается фильтром JWTFilter один раз на запрос.
+ * - of: возвращает запомненный хэш, если передан тот же токен, иначе вычисляет хэш заново. Поэтому проверка токена
+ * в JWTFilter и поиск сессии в FileService в одном запросе вычисляют SHA-256 только один раз.
+ * - clear: удаляет запомненную пару по окончании запроса.
+ */
+public final class TokenDigest {
+    private static final ThreadLocal<String[]> LAST = new ThreadLocal<>();
+
+    private TokenDigest() {
+    }
+
+    public static String remember(String token) {
+        String digest = compute(token);
+        LAST.set(new String[]{token, digest});
+        return digest;
+    }
+
+    public static String of(String token) {
+        String[] last = LAST.get();
+        if (last != null && last[0].equals(token)) {
+            return last[1];
+        }
+        return compute(token);
+    }
+
+    public static void clear() {
+        LAST.remove();
+    }
+
+    private static String compute(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.netology.cloudstorage.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Данный класс UserPrincipal является облегченным представлением аутентифицированного пользователя, которое
+ * JWTFilter кладет в контекст безопасности для каждого запроса. В отличие от сущности User, он содержит только
+ * id и логин пользователя: ни пароля, ни коллекции файлов. Поэтому загрузка принципала не зависит от количества
+ * файлов пользователя, а сам объект можно безопасно хранить в кэше UserService.
+ * <p>
+ * Пароль принципалу не нужен: он используется только для проверки JWT токена, а проверка пароля при входе
+ * выполняется по сущности User (loadUserByUsername).
+ */
+@Data
+@AllArgsConstructor
+public class UserPrincipal implements UserDetails {
+    private Long id;
+    private String login;
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of();
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getUsername() {
+        return login;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.netology.cloudstorage.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Данный класс VerifiedToken является неизменяемым результатом проверки JWT токена методом
+ * JWTUtils.verifyToken: подпись токена уже проверена, а из утверждений (claims) сохранены только имя пользователя
+ * (subject) и время истечения токена (expiration) в миллисекундах.
+ * <p>
+ * Объект создается один раз на токен и может храниться в кэше проверенных токенов и использоваться
+ * одновременно несколькими потоками.
+ */
+@Getter
+@AllArgsConstructor
+public final class VerifiedToken {
+    private final String username;
+    private final long expiration;
+
+    public boolean isExpired(long now) {
+        return expiration <= now;
+    }
+}
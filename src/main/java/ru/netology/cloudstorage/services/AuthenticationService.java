@@ -30,7 +30,8 @@ import ru.netology.cloudstorage.security.JWTUtils;
  * происходит попытка аутентификации пользователя с помощью authenticationManager.authenticate. Если аутентификация не
  * прошла успешно, то выбрасывается исключение ErrorBadCredentials. Если аутентификация прошла успешно, то происходит
  * поиск пользователя в репозитории userRepository по логину из requestAuth. Затем генерируется JWT-токен с помощью
- * jwtUtils.generateToken и сохраняется в репозитории authRepository вместе с информацией о пользователе. Наконец,
+ * jwtUtils.generateToken и сохраняется в репозитории authRepository вместе с id пользователя и временем истечения
+ * токена, после которого сессия будет удалена. Наконец,
  * метод возвращает объект ResponseJWT, содержащий сгенерированный токен.
  * <p>
  * - Метод logout принимает JWT-токен пользователя в виде строки authToken. Сначала из строки authToken извлекается
@@ -78,15 +79,15 @@ public class AuthenticationService {
         }
         User user = userRepository.findUserByLogin(requestAuth.getLogin());
         String token = jwtUtils.generateToken(user);
-        authRepository.saveAuthenticationUser(token, user);
+        authRepository.saveAuthenticationUser(token, user.getId(), jwtUtils.verifyToken(token).getExpiration());
         logger.info(String.format("Login  user name: %s ", user.getUsername()));
         return new JwtTokenResponse(token);
     }
 
     public void logout(String authToken) {
         String jwt = authToken.substring(7);
-        User user = authRepository.getAuthenticationUserByToken(authToken);
-        logger.info(String.format("User  logout: %s ", user.getUsername()));
+        Long userId = authRepository.getAuthenticationUserIdByToken(jwt);
+        logger.info(String.format("User  logout: %s ", userId));
         authRepository.deleteAuthenticationUserByToken(jwt);
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package ru.netology.cloudstorage.services;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.netology.cloudstorage.storage.BlobStore;
+import ru.netology.cloudstorage.storage.CountingInputStream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Класс BlobMigrationService переносит содержимое файлов, сохраненное ранее в столбце files.file_content (bytea),
+ * в хранилище BlobStore. Перенос выполняется в фоне, без остановки приложения.
+ * <p>
+ * - migrate: запускается по расписанию (storage.migration.delay) и обрабатывает строки пачками по
+ * storage.migration.batch-size штук, пока непереносенные строки не закончатся или пока пачка не перестанет
+ * давать прогресс (например, при ошибках записи на диск).
+ * <p>
+ * - migrateBatch: выбирает идентификаторы очередной пачки строк, у которых blob_key еще не заполнен,
+ * и переносит каждую строку отдельно. Содержимое строк пачки целиком в памяти не держится.
+ * <p>
+ * - migrateFile: переносит одну строку. Содержимое читается потоком из результата запроса и записывается
+ * в BlobStore, после чего в одной транзакции строка обновляется условным UPDATE (только если blob_key все еще пуст),
+ * file_content обнуляется и в BlobService добавляется ссылка на содержимое. Если строку за это время удалили или
+ * перенесли параллельно, записанное содержимое передается BlobService как не имеющее ссылок.
+ * Метод также вызывается из FileService при обращении к еще не перенесенному файлу.
+ */
+@Service
+public class BlobMigrationService {
+    final static Logger logger = Logger.getLogger(BlobMigrationService.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.migration.batch-size:100}")
+    private int batchSize;
+
+    @Autowired
+    public BlobMigrationService(JdbcTemplate jdbcTemplate, BlobStore blobStore, BlobService blobService,
+                                PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobStore = blobStore;
+        this.blobService = blobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(initialDelayString = "${storage.migration.initial-delay:10000}",
+            fixedDelayString = "${storage.migration.delay:60000}")
+    public void migrate() {
+        int total = 0;
+        int moved;
+        do {
+            moved = migrateBatch();
+            total += moved;
+        } while (moved == batchSize);
+        if (total > 0) {
+            logger.info(String.format("Migrated file contents to blob storage: %d ", total));
+        }
+    }
+
+    public int migrateBatch() {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM files WHERE blob_key IS NULL AND file_content IS NOT NULL ORDER BY id LIMIT ?",
+                Long.class, batchSize);
+        int moved = 0;
+        for (Long id : ids) {
+            try {
+                if (migrateFile(id) != null) {
+                    moved++;
+                }
+            } catch (RuntimeException e) {
+                logger.error(String.format("Error migrating file content, id: %d ", id), e);
+            }
+        }
+        return moved;
+    }
+
+    public String migrateFile(Long id) {
+        long[] size = new long[1];
+        String blobKey = jdbcTemplate.query(
+                "SELECT file_content FROM files WHERE id = ? AND blob_key IS NULL AND file_content IS NOT NULL",
+                rs -> {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    try (CountingInputStream content = new CountingInputStream(rs.getBinaryStream(1))) {
+                        String key = blobStore.save(content);
+                        size[0] = content.getCount();
+                        return key;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, id);
+        if (blobKey == null) {
+            return null;
+        }
+        Boolean updated = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(
+                    "UPDATE files SET blob_key = ?, file_content = NULL WHERE id = ? AND blob_key IS NULL",
+                    blobKey, id) == 0) {
+                return false;
+            }
+            blobService.addReference(blobKey, size[0]);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(updated)) {
+            blobService.releaseUnreferenced(blobKey, size[0]);
+            return null;
+        }
+        return blobKey;
+    }
+}
@@ -0,0 +1,246 @@
+package ru.netology.cloudstorage.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.repositories.BlobRepository;
+import ru.netology.cloudstorage.repositories.BlobSizes;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс BlobService ведет счетчики ссылок на содержимое в BlobStore (таблица blobs) и удаляет содержимое,
+ * на которое больше никто не ссылается.
+ * <p>
+ * - addReference: добавляет ссылку на содержимое. Вызывается в транзакции сохранения строки files. После того как
+ * INSERT ... ON CONFLICT заблокировал строку blobs, проверяется, что содержимое действительно лежит в BlobStore;
+ * если его нет, выбрасывается IllegalStateException и транзакция откатывается, чтобы не сохранить ссылку на
+ * удаленное содержимое. Вместе с
+ * исходным размером содержимого в таблицу blobs записывается и размер, который оно занимает в BlobStore (storedSize),
+ * чтобы было видно, сколько места экономит сжатие.
+ * - addReferences: добавляет ссылки на содержимое сразу для пачки новых файлов. Ссылки на одинаковое содержимое
+ * складываются, а запросы INSERT ... ON CONFLICT отправляются одним пакетом JDBC в порядке ключей, чтобы
+ * параллельные пачки блокировали строки blobs в одном и том же порядке и не приводили к взаимной блокировке.
+ * - addExistingReference: добавляет ссылку на содержимое, только если оно уже есть: строка blobs с таким ключом
+ * и размером существует, а само содержимое лежит в BlobStore. Строка blobs блокируется до конца транзакции, поэтому
+ * сборщик не может удалить содержимое, на которое только что сослались. Используется "мгновенной" загрузкой.
+ * - removeReference: убирает ссылку на содержимое. Возвращает false, если содержимое не учитывается в таблице
+ * blobs (файлы, загруженные до дедупликации), и тогда вызывающий удаляет его сам.
+ * - removeReferences: убирает сразу несколько ссылок (ключи могут повторяться) одним пакетом JDBC в порядке ключей.
+ * Возвращает ключи, которые не учитываются в таблице blobs, - их вызывающий удаляет сам, как и при removeReference.
+ * - releaseUnreferenced: регистрирует содержимое, для которого ссылка так и не была сохранена (например,
+ * транзакция загрузки отменена), чтобы его удалил сборщик. Выполняется в отдельной транзакции.
+ * - reclaimOrphans: запускается по расписанию (storage.gc.delay) и удаляет содержимое без ссылок, ставшее
+ * ненужным раньше, чем storage.gc.grace-period миллисекунд назад. Строка blobs удаляется (с повторной проверкой
+ * ref_count и orphaned_at) вместе с файлом в одной короткой транзакции.
+ * - protectOrphan: обработчик BlobStore.setSaveGuard. BlobStore.save вызывает его, когда ключ содержимого уже
+ * вычислен, но еще не проверено, хранится ли оно. В отдельной транзакции orphaned_at строки без ссылок переносится
+ * на текущее время (touchOrphan). Если сборщик уже удаляет эту строку, UPDATE ждет завершения его транзакции,
+ * и к моменту проверки в save файла уже нет - содержимое записывается заново. Если сборщик еще не начал удаление,
+ * новое orphaned_at не проходит его условие, и содержимое остается до сохранения ссылки (grace-period закрывает
+ * промежуток между записью содержимого и addReference). Так сборщик не может удалить файл, который загрузка
+ * посчитала уже сохраненным.
+ * - getDedupRatio: отношение суммарного размера всех файлов, ссылающихся на учитываемое содержимое, к исходному
+ * размеру хранимого содержимого без повторов (1.0 означает, что повторов нет).
+ * - getCompressionRatio: отношение исходного размера хранимого содержимого к размеру, который оно занимает в
+ * BlobStore (1.0 означает, что сжатие ничего не дает).
+ * - refreshSizes: запускается по расписанию (storage.stats.delay) и одним запросом sumSizes обновляет суммарные
+ * размеры, по которым считаются оба отношения. Суммы требуют прохода по всей таблице blobs, поэтому
+ * getDedupRatio и getCompressionRatio базу данных не читают, а возвращают значения на момент последнего обновления.
+ * - bindTo: публикует оба отношения как метрики cloud.blobs.dedup.ratio и cloud.blobs.compression.ratio
+ * (BlobService является MeterBinder, и Spring Boot вызывает метод сам).
+ */
+@Service
+public class BlobService implements MeterBinder {
+    final static Logger logger = Logger.getLogger(BlobService.class);
+    public static final String DEDUP_RATIO = "cloud.blobs.dedup.ratio";
+    public static final String COMPRESSION_RATIO = "cloud.blobs.compression.ratio";
+    private final BlobRepository blobRepository;
+    private final BlobStore blobStore;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile BlobSizes sizes = new BlobSizes(0L, 0L, 0L);
+
+    @Value("${storage.gc.grace-period:3600000}")
+    private long gracePeriod = 3600000;
+
+    @Value("${storage.gc.batch-size:100}")
+    private int batchSize = 100;
+
+    @Autowired
+    public BlobService(BlobRepository blobRepository, BlobStore blobStore,
+                       PlatformTransactionManager transactionManager, JdbcTemplate jdbcTemplate) {
+        this.blobRepository = blobRepository;
+        this.blobStore = blobStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void registerSaveGuard() {
+        blobStore.setSaveGuard(this::protectOrphan);
+    }
+
+    public void protectOrphan(String blobKey) {
+        newTransactionTemplate.executeWithoutResult(status -> blobRepository.touchOrphan(blobKey));
+    }
+
+    @Transactional
+    public void addReference(String blobKey, long size) {
+        blobRepository.addReference(blobKey, size, storedSize(blobKey, size));
+        checkStored(blobKey);
+    }
+
+    @Transactional
+    public void addReferences(Collection<File> files) {
+        Map<String, File> blobs = new TreeMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (File file : files) {
+            blobs.putIfAbsent(file.getBlobKey(), file);
+            counts.merge(file.getBlobKey(), 1, Integer::sum);
+        }
+        List<Object[]> arguments = new ArrayList<>(blobs.size());
+        for (File file : blobs.values()) {
+            arguments.add(new Object[]{file.getBlobKey(), file.getSize(), storedSize(file.getBlobKey(), file.getSize()),
+                    counts.get(file.getBlobKey())});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO blobs (blob_key, size, stored_size, ref_count) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (blob_key) DO UPDATE SET ref_count = blobs.ref_count + excluded.ref_count, "
+                + "orphaned_at = NULL", arguments);
+        blobs.keySet().forEach(this::checkStored);
+    }
+
+    @Transactional
+    public boolean addExistingReference(String blobKey, long size) {
+        if (blobRepository.addExistingReference(blobKey, size) == 0) {
+            return false;
+        }
+        if (!blobStore.exists(blobKey)) {
+            logger.error(String.format("Blob is registered but missing in storage: %s ", blobKey));
+            blobRepository.removeReference(blobKey);
+            return false;
+        }
+        return true;
+    }
+
+    @Transactional
+    public boolean removeReference(String blobKey) {
+        return blobRepository.removeReference(blobKey) > 0;
+    }
+
+    @Transactional
+    public List<String> removeReferences(Collection<String> blobKeys) {
+        Map<String, Integer> counts = new TreeMap<>();
+        blobKeys.forEach(blobKey -> counts.merge(blobKey, 1, Integer::sum));
+        List<String> keys = new ArrayList<>(counts.keySet());
+        List<Object[]> arguments = new ArrayList<>(keys.size());
+        for (String blobKey : keys) {
+            arguments.add(new Object[]{counts.get(blobKey), counts.get(blobKey), blobKey});
+        }
+        int[] updated = jdbcTemplate.batchUpdate("UPDATE blobs SET ref_count = GREATEST(ref_count - ?, 0), "
+                + "orphaned_at = CASE WHEN ref_count <= ? THEN now() ELSE orphaned_at END "
+                + "WHERE blob_key = ? AND ref_count > 0", arguments);
+        List<String> untracked = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                untracked.add(keys.get(i));
+            }
+        }
+        return untracked;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void releaseUnreferenced(String blobKey, long size) {
+        blobRepository.addOrphan(blobKey, size, storedSize(blobKey, size));
+    }
+
+    @Scheduled(initialDelayString = "${storage.gc.delay:600000}", fixedDelayString = "${storage.gc.delay:600000}")
+    public void reclaimOrphans() {
+        int total = 0;
+        List<String> orphans;
+        do {
+            LocalDateTime before = LocalDateTime.now().minusNanos(gracePeriod * 1_000_000);
+            orphans = blobRepository.findOrphanKeys(before, batchSize);
+            for (String blobKey : orphans) {
+                Boolean deleted = transactionTemplate.execute(status -> {
+                    if (blobRepository.deleteOrphan(blobKey, before) == 0) {
+                        return false;
+                    }
+                    blobStore.delete(blobKey);
+                    return true;
+                });
+                if (Boolean.TRUE.equals(deleted)) {
+                    total++;
+                }
+            }
+        } while (orphans.size() == batchSize);
+        if (total > 0) {
+            logger.info(String.format("Reclaimed unreferenced blobs: %d ", total));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.stats.delay:60000}")
+    public void refreshSizes() {
+        sizes = blobRepository.sumSizes();
+    }
+
+    public double getDedupRatio() {
+        BlobSizes current = sizes;
+        return current.getUniqueSize() == 0 ? 1.0 : (double) current.getLogicalSize() / current.getUniqueSize();
+    }
+
+    public double getCompressionRatio() {
+        BlobSizes current = sizes;
+        return current.getStoredSize() == 0 ? 1.0 : (double) current.getUniqueSize() / current.getStoredSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(DEDUP_RATIO, this, BlobService::getDedupRatio)
+                .description("Logical size of all files divided by the size of unique content")
+                .register(registry);
+        Gauge.builder(COMPRESSION_RATIO, this, BlobService::getCompressionRatio)
+                .description("Size of unique content divided by the size it takes in the blob store")
+                .register(registry);
+    }
+
+    private void checkStored(String blobKey) {
+        if (!blobStore.exists(blobKey)) {
+            logger.error(String.format("Blob is missing in storage, reference is not saved: %s ", blobKey));
+            throw new IllegalStateException("Blob is missing in storage: " + blobKey);
+        }
+    }
+
+    private long storedSize(String blobKey, long size) {
+        try {
+            return blobStore.storedSize(blobKey);
+        } catch (IOException e) {
+            logger.warn(String.format("Stored size is unknown, blob: %s ", blobKey));
+            return size;
+        }
+    }
+}
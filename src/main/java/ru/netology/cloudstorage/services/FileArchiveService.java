@@ -0,0 +1,199 @@
+package ru.netology.cloudstorage.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
+import ru.netology.cloudstorage.exceptions.UploadFileExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.storage.BlobCompressor;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Класс FileArchiveService отдает несколько файлов пользователя одним ZIP-архивом, который собирается на лету прямо
+ * в поток ответа: архив не создается ни в памяти, ни на диске.
+ * <p>
+ * - findFiles: проверяет, что пользователь авторизован, и одним запросом выбирает метаданные файлов по списку имен
+ * (в порядке списка, повторяющиеся имена пропускаются) или по префиксу имени (в порядке имен). Если какого-либо
+ * имени из списка нет, выбрасывается исключение ErrorInputData. В один архив входит не больше files.batch.max-items
+ * файлов. Содержимое файлов, которое еще не перенесено из столбца file_content, переносится через
+ * BlobMigrationService. Метод вызывается до записи ответа, поэтому ошибки возвращаются клиенту обычным ответом.
+ * <p>
+ * - writeArchive: записывает архив в выходной поток через ZipOutputStream. Содержимое каждого файла читается из
+ * BlobStore один раз через буфер фиксированного размера. Если файл уже сжат (сигнатура zip, gzip, jpeg, png, mp4 и
+ * других форматов, см. BlobCompressor.isCompressedFormat), он не сжимается повторно: файл, который целиком
+ * помещается в буфер, записывается записью STORED (размер и CRC-32, которые ZIP требует заранее, считаются по
+ * буферу), а файл больше буфера - записью DEFLATED с уровнем 0, для которой размер и CRC-32 записываются после
+ * содержимого. Остальные файлы сжимаются записями DEFLATED с уровнем files.archive.level. Метод выполняется вне
+ * транзакции, чтобы передача архива по сети не удерживала соединение с базой данных.
+ * <p>
+ * - entryName: строит имя записи архива из имени файла. Обратные косые черты заменяются на "/", а начальные "/",
+ * пустые сегменты и сегменты "." и ".." удаляются, чтобы при распаковке архива файл не оказался за пределами
+ * каталога распаковки. Если после этого имя совпадает с уже записанным, к нему перед расширением добавляется номер
+ * " (1)", " (2)" и т. д., так как ZIP не допускает повторяющихся имен записей.
+ */
+@Service
+public class FileArchiveService {
+    final static Logger logger = Logger.getLogger(FileArchiveService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SAMPLE_SIZE = 16;
+    private static final String DEFAULT_ENTRY_NAME = "file";
+
+    private final FileService fileService;
+    private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final BlobMigrationService blobMigrationService;
+
+    @Value("${files.batch.max-items:10000}")
+    private int maxItems = 10000;
+
+    @Value("${files.archive.level:6}")
+    private int level = 6;
+
+    @Autowired
+    public FileArchiveService(FileService fileService, FileRepository fileRepository, BlobStore blobStore,
+                              BlobMigrationService blobMigrationService) {
+        this.fileService = fileService;
+        this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.blobMigrationService = blobMigrationService;
+    }
+
+    public List<File> findFiles(String authToken, List<String> filenames, String prefix) {
+        User user = fileService.getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        List<File> files;
+        if (filenames != null && !filenames.isEmpty() && prefix == null) {
+            files = findByFilenames(user, filenames);
+        } else if (filenames == null && !StringUtils.isEmpty(prefix)) {
+            files = fileRepository.findByUserAndPattern(user, FileBatchService.likePrefix(prefix),
+                    PageRequest.of(0, maxItems + 1));
+            checkItems(files.size());
+        } else {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        for (File file : files) {
+            if (file.getBlobKey() == null) {
+                file.setBlobKey(blobMigrationService.migrateFile(file.getId()));
+            }
+            if (file.getBlobKey() == null) {
+                logger.error(String.format("Error loading file: %s ", file.getFilename()));
+                throw new UploadFileExceptionError();
+            }
+        }
+        logger.info(String.format("Download archive of %d files ", files.size()));
+        return files;
+    }
+
+    public void writeArchive(List<File> files, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Set<String> entryNames = new HashSet<>();
+        for (File file : files) {
+            ZipEntry entry = new ZipEntry(entryName(file.getFilename(), entryNames));
+            if (file.getEditedAt() != null) {
+                entry.setTimeLocal(file.getEditedAt());
+            }
+            try (InputStream content = blobStore.open(file.getBlobKey())) {
+                int head = content.readNBytes(buffer, 0, buffer.length);
+                boolean compressed = BlobCompressor.isCompressedFormat(buffer, Math.min(head, SAMPLE_SIZE));
+                if (compressed && head < buffer.length) {
+                    writeStored(zip, entry, buffer, head);
+                } else {
+                    zip.setLevel(compressed ? Deflater.NO_COMPRESSION : level);
+                    zip.putNextEntry(entry);
+                    zip.write(buffer, 0, head);
+                    for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+                        zip.write(buffer, 0, read);
+                    }
+                }
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    static String entryName(String filename, Set<String> entryNames) {
+        String name = Arrays.stream(filename.replace('\\', '/').split("/"))
+                .filter(segment -> !segment.isEmpty() && !".".equals(segment) && !"..".equals(segment))
+                .collect(Collectors.joining("/"));
+        if (name.isEmpty()) {
+            name = DEFAULT_ENTRY_NAME;
+        }
+        int extension = name.lastIndexOf('.');
+        if (extension <= name.lastIndexOf('/') + 1) {
+            extension = name.length();
+        }
+        String unique = name;
+        for (int i = 1; !entryNames.add(unique); i++) {
+            unique = name.substring(0, extension) + " (" + i + ")" + name.substring(extension);
+        }
+        if (!unique.equals(filename)) {
+            logger.warn(String.format("Archive entry renamed: %s -> %s ", filename, unique));
+        }
+        return unique;
+    }
+
+    private void writeStored(ZipOutputStream zip, ZipEntry entry, byte[] content, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(length);
+        entry.setCompressedSize(length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content, 0, length);
+    }
+
+    private List<File> findByFilenames(User user, List<String> filenames) {
+        Set<String> names = new LinkedHashSet<>(filenames);
+        checkItems(names.size());
+        Map<String, File> found = fileRepository.findAllByUserAndFilenameIn(user, names).stream()
+                .collect(Collectors.toMap(File::getFilename, Function.identity()));
+        List<File> files = new ArrayList<>(names.size());
+        for (String filename : names) {
+            File file = found.get(filename);
+            if (file == null) {
+                logger.error(String.format("File not found, incorrect input data: %s ", filename));
+                throw new InputDataExceptionError();
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private void checkItems(int count) {
+        if (count > maxItems) {
+            logger.error(String.format("Too many files for one archive, maximum %d ", maxItems));
+            throw new InputDataExceptionError();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package ru.netology.cloudstorage.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.request.MultipartStreamReader;
+import ru.netology.cloudstorage.request.RequestRenameFile;
+import ru.netology.cloudstorage.request.RequestRenameFiles;
+import ru.netology.cloudstorage.response.ResponseFileResult;
+import ru.netology.cloudstorage.response.ResponseUploadFile;
+import ru.netology.cloudstorage.storage.BlobStore;
+import ru.netology.cloudstorage.storage.CountingInputStream;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Класс FileBatchService выполняет пакетные операции над файлами, чтобы клиент, работающий с тысячами мелких файлов,
+ * не платил за каждый файл отдельным HTTP-запросом, проверкой JWT, транзакцией и однострочным INSERT.
+ * <p>
+ * - uploadFiles: загружает все файлы из одного тела multipart/form-data. Части читаются потоком по очереди: часть
+ * "hash" (необязательная) задает SHA-256 следующего за ней файла, каждая часть с именем файла (filename в
+ * Content-Disposition) сразу записывается в BlobStore, так что в памяти держатся только метаданные. Метаданные
+ * сохраняются пачками по files.upload.batch-size файлов: имена, которые уже заняты файлами пользователя, отсеиваются
+ * одним запросом findExistingFilenames, после чего в одной короткой транзакции строки files вставляются пакетом JDBC
+ * (идентификаторы берутся из последовательности с pooled-оптимизатором, hibernate.jdbc.batch_size), а ссылки на
+ * содержимое добавляются одним пакетом BlobService.addReferences. Если пакетная вставка не удалась (например,
+ * параллельный запрос занял то же имя), файлы пачки сохраняются по одному, чтобы ошибка коснулась только
+ * конфликтующего файла. Содержимое файлов, которые не удалось сохранить, передается BlobService как не имеющее
+ * ссылок.
+ * <p>
+ * Возвращается список ResponseUploadFile с результатом по каждому файлу в порядке частей запроса. Если само тело
+ * запроса прочитать не удалось, уже записанное содержимое несохраненных файлов освобождается, а исключение
+ * IOException передается контроллеру.
+ * <p>
+ * - deleteFiles: удаляет файлы пользователя по списку имен в одной транзакции: строки files удаляются одним запросом
+ * DELETE ... RETURNING (deleteByUserAndFilenames), а ссылки на содержимое удаленных файлов снимаются одним пакетом
+ * BlobService.removeReferences. Прежние версии файлов удаляются еще одним запросом перед самими файлами, и ссылки
+ * на их содержимое снимаются в том же пакете. Содержимое файлов, загруженных до дедупликации, удаляется из
+ * BlobStore после фиксации транзакции. Имя, которого нет среди удаленных (файл не найден или имя повторяется),
+ * получает ошибку Error delete file.
+ * <p>
+ * - renameFiles: переименовывает файлы пользователя по списку пар имен или по правилу замены префикса (имена файлов
+ * с префиксом выбираются одним запросом findFilenamesByUserAndPattern). Пары с пустым или неизмененным именем, а
+ * также повторяющиеся старые или новые имена отклоняются сразу. Новые имена, которые уже заняты, отсеиваются одним
+ * запросом findExistingFilenames среди файлов пользователя (в том числе имена файлов, которые переименовываются в
+ * этом же запросе: ограничение unique (user_id, filename) проверяется для каждой строки сразу, поэтому цепочки и
+ * обмены именами не поддерживаются). Остальные файлы переименовываются одним запросом UPDATE (renameByUser). Если он
+ * нарушил ограничение unique (параллельный запрос занял то же имя), файлы переименовываются по одному, чтобы ошибка
+ * коснулась только конфликтующего файла.
+ * <p>
+ * В одном запросе deleteFiles или renameFiles можно обработать не больше files.batch.max-items файлов, иначе
+ * выбрасывается исключение ErrorInputData. Возвращается список ResponseFileResult с результатом по каждому файлу
+ * в порядке запроса.
+ */
+@Service
+public class FileBatchService {
+    final static Logger logger = Logger.getLogger(FileBatchService.class);
+    public static final String ERROR_INPUT_DATA = "Error Input Data";
+    public static final String ERROR_FILE_EXISTS = "File already exists";
+    public static final String ERROR_UPLOAD_FILE = "Error Upload File";
+    public static final String ERROR_DELETE_FILE = "Error delete file";
+    private static final char LIKE_ESCAPE = '!';
+    private static final String HASH_PART = "hash";
+    private static final int MAX_HASH_LENGTH = 256;
+
+    private final FileService fileService;
+    private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${files.upload.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${files.batch.max-items:10000}")
+    private int maxItems = 10000;
+
+    @Autowired
+    public FileBatchService(FileService fileService, FileRepository fileRepository, BlobStore blobStore,
+                            BlobService blobService, PlatformTransactionManager transactionManager) {
+        this.fileService = fileService;
+        this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.blobService = blobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public List<ResponseUploadFile> uploadFiles(String authToken, MultipartStreamReader reader) throws IOException {
+        User user = getUser(authToken);
+        List<ResponseUploadFile> results = new ArrayList<>();
+        List<File> pending = new ArrayList<>();
+        List<ResponseUploadFile> pendingResults = new ArrayList<>();
+        String hash = null;
+        try {
+            for (MultipartStreamReader.Part part = reader.nextPart(); part != null; part = reader.nextPart()) {
+                if (HASH_PART.equals(part.getName())) {
+                    hash = part.readString(MAX_HASH_LENGTH).trim();
+                    continue;
+                }
+                if (part.getFilename() == null) {
+                    continue;
+                }
+                ResponseUploadFile result = new ResponseUploadFile(part.getFilename(), false, null);
+                results.add(result);
+                File file = store(user, part, hash, result);
+                hash = null;
+                if (file != null) {
+                    pending.add(file);
+                    pendingResults.add(result);
+                    if (pending.size() >= batchSize) {
+                        save(user, pending, pendingResults);
+                        pending.clear();
+                        pendingResults.clear();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.forEach(file -> blobService.releaseUnreferenced(file.getBlobKey(), file.getSize()));
+            throw e;
+        }
+        save(user, pending, pendingResults);
+        logger.info(String.format("uploadFiles: %d of %d files uploaded ",
+                results.stream().filter(ResponseUploadFile::isUploaded).count(), results.size()));
+        return results;
+    }
+
+    private File store(User user, MultipartStreamReader.Part part, String hash, ResponseUploadFile result)
+            throws IOException {
+        if (StringUtils.isEmpty(part.getFilename())) {
+            result.setError(ERROR_INPUT_DATA);
+            return null;
+        }
+        CountingInputStream content = new CountingInputStream(part.getContent());
+        String blobKey = blobStore.save(content);
+        if (!FileService.isSameHash(hash, blobKey)) {
+            logger.error(String.format("uploadFiles hash mismatch: %s ", part.getFilename()));
+            blobService.releaseUnreferenced(blobKey, content.getCount());
+            result.setError(ERROR_INPUT_DATA);
+            return null;
+        }
+        return new File(part.getFilename(), LocalDateTime.now(), content.getCount(), blobKey, user);
+    }
+
+    private void save(User user, List<File> files, List<ResponseUploadFile> results) {
+        if (files.isEmpty()) {
+            return;
+        }
+        Set<String> taken = new HashSet<>(fileRepository.findExistingFilenames(user,
+                files.stream().map(File::getFilename).toList()));
+        List<File> accepted = new ArrayList<>(files.size());
+        List<ResponseUploadFile> acceptedResults = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            if (!taken.add(file.getFilename())) {
+                results.get(i).setError(ERROR_FILE_EXISTS);
+                blobService.releaseUnreferenced(file.getBlobKey(), file.getSize());
+                continue;
+            }
+            accepted.add(file);
+            acceptedResults.add(results.get(i));
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                fileRepository.saveAll(accepted);
+                blobService.addReferences(accepted);
+            });
+            acceptedResults.forEach(result -> result.setUploaded(true));
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Batch insert failed, saving %d files one by one: %s ", accepted.size(),
+                    e.getMessage()));
+            for (int i = 0; i < accepted.size(); i++) {
+                saveOne(accepted.get(i), acceptedResults.get(i));
+            }
+        }
+    }
+
+    private void saveOne(File file, ResponseUploadFile result) {
+        file.setId(null);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                fileRepository.save(file);
+                blobService.addReference(file.getBlobKey(), file.getSize());
+            });
+            result.setUploaded(true);
+        } catch (RuntimeException e) {
+            logger.error(String.format("uploadFiles error: %s ", file.getFilename()), e);
+            result.setError(ERROR_UPLOAD_FILE);
+            blobService.releaseUnreferenced(file.getBlobKey(), file.getSize());
+        }
+    }
+
+    public List<ResponseFileResult> deleteFiles(String authToken, List<String> filenames) {
+        User user = getUser(authToken);
+        checkItems(filenames);
+        List<ResponseFileResult> results = new ArrayList<>(filenames.size());
+        Set<String> names = new HashSet<>();
+        for (String filename : filenames) {
+            ResponseFileResult result = new ResponseFileResult(filename, false, null);
+            results.add(result);
+            if (StringUtils.isEmpty(filename)) {
+                result.setError(ERROR_INPUT_DATA);
+            } else {
+                names.add(filename);
+            }
+        }
+        Set<String> deleted = new HashSet<>();
+        if (!names.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<String> references = new ArrayList<>(
+                        fileRepository.deleteVersionsByUserAndFilenames(user, new ArrayList<>(names)));
+                Map<String, String> blobKeys = fileRepository.deleteByUserAndFilenames(user, new ArrayList<>(names));
+                blobKeys.values().stream().filter(Objects::nonNull).forEach(references::add);
+                if (!references.isEmpty()) {
+                    blobService.removeReferences(references).forEach(fileService::deleteBlobAfterCommit);
+                }
+                deleted.addAll(blobKeys.keySet());
+            });
+        }
+        for (ResponseFileResult result : results) {
+            if (result.getError() == null) {
+                if (deleted.remove(result.getFilename())) {
+                    result.setSuccess(true);
+                } else {
+                    result.setError(ERROR_DELETE_FILE);
+                }
+            }
+        }
+        logger.info(String.format("deleteFiles: %d of %d files deleted ",
+                results.stream().filter(ResponseFileResult::isSuccess).count(), results.size()));
+        return results;
+    }
+
+    public List<ResponseFileResult> renameFiles(String authToken, RequestRenameFiles request) {
+        User user = getUser(authToken);
+        List<RequestRenameFile> renames = renamesOf(user, request);
+        List<ResponseFileResult> results = new ArrayList<>(renames.size());
+        List<RequestRenameFile> accepted = new ArrayList<>(renames.size());
+        List<ResponseFileResult> acceptedResults = new ArrayList<>(renames.size());
+        Set<String> sources = new HashSet<>();
+        Set<String> targets = new HashSet<>();
+        for (RequestRenameFile rename : renames) {
+            ResponseFileResult result = new ResponseFileResult(rename.getFilename(), false, null);
+            results.add(result);
+            if (StringUtils.isEmpty(rename.getFilename()) || StringUtils.isEmpty(rename.getNewFilename())
+                    || rename.getFilename().equals(rename.getNewFilename())
+                    || !sources.add(rename.getFilename()) || !targets.add(rename.getNewFilename())) {
+                result.setError(ERROR_INPUT_DATA);
+                continue;
+            }
+            accepted.add(rename);
+            acceptedResults.add(result);
+        }
+        if (!accepted.isEmpty()) {
+            rename(user, accepted, acceptedResults);
+        }
+        logger.info(String.format("renameFiles: %d of %d files renamed ",
+                results.stream().filter(ResponseFileResult::isSuccess).count(), results.size()));
+        return results;
+    }
+
+    private void rename(User user, List<RequestRenameFile> renames, List<ResponseFileResult> results) {
+        Set<String> taken = new HashSet<>(fileRepository.findExistingFilenames(user,
+                renames.stream().map(RequestRenameFile::getNewFilename).toList()));
+        List<String> filenames = new ArrayList<>(renames.size());
+        List<String> newFilenames = new ArrayList<>(renames.size());
+        for (int i = 0; i < renames.size(); i++) {
+            if (taken.contains(renames.get(i).getNewFilename())) {
+                results.get(i).setError(ERROR_FILE_EXISTS);
+            } else {
+                filenames.add(renames.get(i).getFilename());
+                newFilenames.add(renames.get(i).getNewFilename());
+            }
+        }
+        if (filenames.isEmpty()) {
+            return;
+        }
+        Set<String> renamed;
+        try {
+            renamed = new HashSet<>(Objects.requireNonNull(transactionTemplate.execute(
+                    status -> fileRepository.renameByUser(user, filenames, newFilenames))));
+        } catch (DataIntegrityViolationException e) {
+            logger.warn(String.format("Batch rename failed, renaming %d files one by one: %s ", filenames.size(),
+                    e.getMessage()));
+            renamed = new HashSet<>();
+            for (int i = 0; i < filenames.size(); i++) {
+                if (renameOne(user, filenames.get(i), newFilenames.get(i), results)) {
+                    renamed.add(filenames.get(i));
+                }
+            }
+        }
+        for (ResponseFileResult result : results) {
+            if (result.getError() == null) {
+                if (renamed.contains(result.getFilename())) {
+                    result.setSuccess(true);
+                } else {
+                    result.setError(ERROR_INPUT_DATA);
+                }
+            }
+        }
+    }
+
+    private boolean renameOne(User user, String filename, String newFilename, List<ResponseFileResult> results) {
+        try {
+            Integer updated = transactionTemplate.execute(
+                    status -> fileRepository.setNewFilenameByUserAndFilename(newFilename, user, filename));
+            return updated != null && updated > 0;
+        } catch (DataIntegrityViolationException e) {
+            logger.error(String.format("renameFiles error: %s ", filename));
+            results.stream().filter(result -> filename.equals(result.getFilename()))
+                    .forEach(result -> result.setError(ERROR_FILE_EXISTS));
+            return false;
+        }
+    }
+
+    private List<RequestRenameFile> renamesOf(User user, RequestRenameFiles request) {
+        if (request == null) {
+            throw new InputDataExceptionError();
+        }
+        boolean byPrefix = request.getPrefix() != null || request.getNewPrefix() != null;
+        if (request.getFiles() != null && !byPrefix) {
+            checkItems(request.getFiles());
+            return request.getFiles();
+        }
+        if (request.getFiles() != null || StringUtils.isEmpty(request.getPrefix()) || request.getNewPrefix() == null) {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        String prefix = request.getPrefix();
+        List<String> filenames = fileRepository.findFilenamesByUserAndPattern(user, likePrefix(prefix),
+                PageRequest.of(0, maxItems + 1));
+        if (filenames.size() > maxItems) {
+            logger.error(String.format("Too many files match the prefix, maximum %d ", maxItems));
+            throw new InputDataExceptionError();
+        }
+        return filenames.stream()
+                .map(filename -> new RequestRenameFile(filename,
+                        request.getNewPrefix() + filename.substring(prefix.length())))
+                .toList();
+    }
+
+    private void checkItems(List<?> items) {
+        if (items == null || items.isEmpty() || items.size() > maxItems) {
+            logger.error(String.format("Invalid number of files in a batch request, maximum %d ", maxItems));
+            throw new InputDataExceptionError();
+        }
+    }
+
+    private User getUser(String authToken) {
+        User user = fileService.getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        return user;
+    }
+
+    static String likePrefix(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 1);
+        for (char c : prefix.toCharArray()) {
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
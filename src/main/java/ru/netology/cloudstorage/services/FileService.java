@@ -4,20 +4,51 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.netology.cloudstorage.exceptions.*;
 import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.FileVersion;
 import ru.netology.cloudstorage.models.User;
 import ru.netology.cloudstorage.repositories.AuthRepository;
+import ru.netology.cloudstorage.repositories.FileListCursor;
+import ru.netology.cloudstorage.repositories.FileListItem;
 import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.FileVersionItem;
+import ru.netology.cloudstorage.repositories.UserRepository;
 import ru.netology.cloudstorage.request.RequestEditFileName;
+import ru.netology.cloudstorage.response.ResponseBlockSignature;
 import ru.netology.cloudstorage.response.ResponseFile;
+import ru.netology.cloudstorage.response.ResponseFilePage;
+import ru.netology.cloudstorage.response.ResponseFileSignature;
+import ru.netology.cloudstorage.response.ResponseFileVersion;
+import ru.netology.cloudstorage.storage.BlobStore;
+import ru.netology.cloudstorage.storage.CountingInputStream;
+import ru.netology.cloudstorage.storage.DeltaInputStream;
+import ru.netology.cloudstorage.storage.RollingChecksum;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Этот код представляет собой сервисный класс FileService, который предоставляет методы для работы с
@@ -26,70 +57,225 @@ import java.util.List;
  * Вот краткое описание каждого метода:
  * <p>
  * - uploadFile: загружает файл в облачное хранилище. Проверяет, что пользователь авторизован,
- * создает новый объект File с указанным именем файла, текущим временем, размером и содержимым файла,
- * а затем сохраняет его в репозитории файлов.
+ * потоком записывает содержимое файла в BlobStore (размер вычисляется во время записи через CountingInputStream),
+ * создает новый объект File с указанным именем файла, текущим временем, размером и ключом содержимого,
+ * а затем сохраняет его в репозитории файлов. Содержимое файла целиком в памяти не собирается. Ключ содержимого
+ * равен его хэшу SHA-256, поэтому одинаковое содержимое хранится один раз, а BlobService увеличивает счетчик ссылок
+ * на него. Если клиент передал поле hash в виде SHA-256, оно сверяется с вычисленным хэшем, и при расхождении
+ * выбрасывается исключение ErrorInputData. Если строку сохранить не удалось или транзакция откатилась, содержимое
+ * передается BlobService как не имеющее ссылок и будет удалено сборщиком, если на него никто не сошлется.
+ * Если включено хранение версий (files.versioning.enabled) и у пользователя уже есть файл с таким именем, новая
+ * строка не создается: текущее содержимое файла одним запросом переносится в прежние версии (file_versions), а
+ * файл получает новое содержимое и следующий номер версии (replaceContentKeepingVersion). Ссылка на прежнее
+ * содержимое остается за строкой версии. Если содержимое файла еще не перенесено из столбца file_content, оно
+ * сначала переносится через BlobMigrationService.
+ * <p>
+ * - uploadFileByHash: "мгновенная" загрузка файла без передачи содержимого. Проверяет, что пользователь авторизован,
+ * имя файла не пусто, хэш является SHA-256 в шестнадцатеричном виде, а размер не отрицателен. Если содержимое с
+ * таким хэшем и размером уже хранится (BlobService.addExistingReference проверяет и таблицу blobs, и наличие
+ * содержимого в BlobStore), создается новый объект File, ссылающийся на это содержимое, и возвращается true.
+ * Иначе возвращается false, и клиент должен загрузить файл целиком через uploadFile.
  * <p>
  * - deleteFile: удаляет файл из облачного хранилища. Проверяет, что пользователь авторизован, проверяет,
  * что имя файла не пусто, затем удаляет файл из репозитория по имени пользователя и имени файла.
  * Если удаление не удалось (например, файл не найден), выбрасывается исключение ErrorDeleteFile.
+ * Ссылка на содержимое снимается в BlobService, а само содержимое удаляет сборщик, когда на него не остается
+ * ссылок. Содержимое файлов, загруженных до дедупликации, удаляется из BlobStore после фиксации транзакции.
+ * Прежние версии файла удаляются вместе с ним, и ссылки на их содержимое тоже снимаются.
+ * <p>
+ * - downloadFile: подготавливает скачивание файла из облачного хранилища. Проверяет, что пользователь авторизован,
+ * находит файл в репозитории по имени пользователя и имени файла и возвращает его метаданные (размер, время
+ * изменения, ключ содержимого). Само содержимое здесь не читается. Если содержимое файла еще не перенесено
+ * из столбца file_content, оно переносится сразу через BlobMigrationService. Если файл не найден или его
+ * содержимое отсутствует, выбрасывается исключение ErrorInputData или ErrorUploadFile соответственно.
+ * <p>
+ * - downloadFileVersion: как downloadFile, но для версии файла с номером version. Прежняя версия ищется в
+ * file_versions по индексу (file_id, version) и возвращается как несохраняемый объект File с именем файла,
+ * содержимым, размером и временем изменения этой версии, поэтому скачивание, диапазоны и ETag работают для нее
+ * так же, как для текущей версии. Если номер равен номеру текущей версии, возвращается сам файл. Если такой
+ * версии нет, выбрасывается исключение ErrorInputData.
+ * <p>
+ * - getVersions: возвращает историю версий файла (ResponseFileVersion) от новой к старой: текущую версию и все
+ * прежние, которые еще не удалил FileVersionService. Читаются только метаданные. Если файл не найден,
+ * выбрасывается исключение ErrorInputData.
+ * <p>
+ * - writeContent: записывает в выходной поток диапазон содержимого файла (offset, length). Если BlobStore хранит
+ * содержимое в локальном файле, байты передаются через FileChannel.transferTo, иначе копируются через буфер
+ * фиксированного размера. Метод выполняется вне транзакции, чтобы передача по сети не удерживала соединение
+ * с базой данных.
+ * <p>
+ * - getLocalPath: возвращает путь к локальному файлу с содержимым (или null), чтобы контроллер мог отдать его
+ * через sendfile.
+ * <p>
+ * - getStoredEncoding, getStoredPath, getEncodedLength и writeEncodedContent: если BlobStore хранит содержимое
+ * сжатым, позволяют отдать его клиенту с заголовком Content-Encoding (gzip или deflate) прямо из хранимых байтов,
+ * без распаковки и повторного сжатия. Сжатый файл в формате gzip отдается через FileChannel.transferTo (или
+ * sendfile в контроллере), а для deflate BlobStore заменяет только заголовок и контрольную сумму.
+ * <p>
+ * - getSignature: возвращает сигнатуру хранимого файла для загрузки дельты (как в rsync): содержимое читается
+ * потоком блоками размера blockSize, и для каждого блока вычисляются слабая скользящая контрольная сумма
+ * (RollingChecksum) и строгий хэш MD5. Если размер блока не передан, он выбирается примерно равным квадратному
+ * корню из размера файла (кратно 1 КБ, от 2 КБ до 1 МБ), чтобы и сигнатура, и дельта оставались небольшими.
+ * Метод выполняется вне транзакции.
  * <p>
- * - downloadFile: загружает содержимое файла из облачного хранилища. Проверяет, что пользователь авторизован,
- * находит файл в репозитории по имени пользователя и имени файла, а затем возвращает его содержимое в
- * виде массива байтов. Если файл не найден или его содержимое пусто, выбрасывается исключение ErrorInputData
- * или ErrorUploadFile соответственно.
+ * - uploadFileDelta: перезаписывает существующий файл новой версией, переданной дельтой: ссылками на неизменные
+ * блоки хранимой версии и байтами измененных участков (формат дельты описан в DeltaInputStream). Новая версия
+ * собирается на лету и потоком записывается в BlobStore, как при uploadFile, и при переданном hash сверяется с ним.
+ * Затем строка файла одним запросом UPDATE переводится на новое содержимое, только если она все еще ссылается на
+ * ту версию, от которой построена дельта. Если файл за это время изменили, выбрасывается исключение
+ * ErrorPreconditionFailed, и клиент должен заново получить сигнатуру. Ссылка на прежнее содержимое снимается в
+ * BlobService, имя файла и его место в списке /list не меняются, меняются только размер и время изменения.
+ * Если включено хранение версий, прежнее содержимое не освобождается, а становится прежней версией файла
+ * (replaceContentKeepingVersion с ключом хранимой версии в качестве условия).
  * <p>
  * - editFileName: изменяет имя файла в облачном хранилище. Проверяет, что пользователь авторизован,
- * находит файл в репозитории по имени пользователя и имени файла, а затем изменяет его имя на новое имя из запроса
- * RequestEditFileName. Если имя файла не изменилось, выбрасывается исключение ErrorUploadFile.
+ * и одним запросом UPDATE изменяет имя файла на новое имя из запроса RequestEditFileName. Если ни одна строка
+ * не обновлена (файл не найден), выбрасывается исключение ErrorInputData. Если имя файла не изменилось,
+ * выбрасывается исключение ErrorUploadFile.
  * <p>
- * - getAllFiles: возвращает список всех файлов пользователя в облачном хранилище. Проверяет, что пользователь
- * авторизован, проверяет, что лимит не равен нулю, затем находит все файлы пользователя в репозитории и
- * возвращает список ResponseFile, содержащий имена и размеры файлов.
+ * - getAllFiles: возвращает одну страницу списка файлов пользователя в облачном хранилище. Проверяет, что
+ * пользователь авторизован и что лимит положителен (лимит ограничивается сверху значением files.list.max-limit),
+ * разбирает параметр сортировки sort (name, size, edited_at, с префиксом "-" для убывания) или курсор предыдущей
+ * страницы cursor. Затем выбирает из репозитория не более limit + 1 файлов после курсора (findPageByUser):
+ * лишняя строка показывает, что есть следующая страница, и тогда по последнему файлу страницы строится курсор
+ * nextCursor. Возвращается ResponseFilePage со списком ResponseFile и курсором следующей страницы. Если курсор
+ * или сортировка некорректны, выбрасывается исключение ErrorInputData.
  * <p>
- * Класс FileService также имеет конструктор, который принимает репозитории AuthRepository и FileRepository
- * в качестве зависимостей.
+ * Транзакции сервиса короткие и охватывают только работу с метаданными: методы, которые только читают или
+ * изменяют строки таблиц, помечены @Transactional по отдельности, а передача содержимого по сети выполняется вне
+ * транзакции и не удерживает соединение из пула. Загрузка (uploadFile, uploadFileDelta) следует порядку "сначала
+ * содержимое, потом строка": содержимое потоком записывается в BlobStore без транзакции (FileSystemBlobStore
+ * сбрасывает его на диск и только затем переносит на место), после чего в отдельной короткой транзакции
+ * (TransactionTemplate) добавляется ссылка на содержимое и сохраняется строка файла. Поэтому зафиксированная строка
+ * всегда ссылается на уже записанное содержимое, а если транзакция не зафиксирована, содержимое передается
+ * BlobService как не имеющее ссылок. Скачивание так же разделено: downloadFile в короткой транзакции возвращает
+ * метаданные, а writeContent передает байты без транзакции. Для этого в приложении отключен шаблон Open Session
+ * in View (spring.jpa.open-in-view=false), иначе соединение, полученное первым запросом к базе, удерживалось бы
+ * до конца передачи ответа.
+ * <p>
+ * Класс FileService также имеет конструктор, который принимает репозитории AuthRepository, UserRepository и
+ * FileRepository, хранилище BlobStore, сервисы BlobMigrationService и BlobService и менеджер транзакций
+ * PlatformTransactionManager в качестве зависимостей.
  * <p>
  * Данный метод getUserByToken принимает в качестве аргумента строку authToken и возвращает объект типа User.
  * <p>
  * Метод проверяет, начинается ли переданная строка authToken с подстроки "Bearer ". Если это условие выполняется,
  * метод обрезает строку authToken, удаляя первые 7 символов, и сохраняет результат в переменную tokenWithoutBearer.
  * <p>
- * Затем метод вызывает метод getAuthenticationUserByToken из объекта authRepository, передавая ему значение
- * tokenWithoutBearer. Результат этого вызова возвращается из метода getUserByToken.
+ * Затем метод вызывает метод getAuthenticationUserIdByToken из объекта authRepository, передавая ему значение
+ * tokenWithoutBearer, и получает id пользователя сессии. По этому id возвращается ссылка на пользователя
+ * (userRepository.getReferenceById), которая не выполняет запрос к базе и используется только как параметр
+ * запросов к таблице files. Если сессии нет, возвращается null.
  * <p>
  * Если переданная строка authToken не начинается с "Bearer ", то метод возвращает null.
  */
 @Service
-@Transactional
 public class FileService {
     final static Logger logger = Logger.getLogger(FileService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+    private static final int MIN_SIGNATURE_BLOCK_SIZE = 2 * 1024;
+    private static final int MAX_SIGNATURE_BLOCK_SIZE = 1024 * 1024;
     private final AuthRepository authRepository;
+    private final UserRepository userRepository;
     private final FileRepository fileRepository;
+    private final BlobStore blobStore;
+    private final BlobMigrationService blobMigrationService;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${files.list.max-limit:1000}")
+    private int maxListLimit = 1000;
+
+    @Value("${files.versioning.enabled:false}")
+    private boolean versioningEnabled = false;
 
     @Autowired
-    public FileService(AuthRepository authRepository, FileRepository fileRepository) {
+    public FileService(AuthRepository authRepository, UserRepository userRepository, FileRepository fileRepository,
+                       BlobStore blobStore, BlobMigrationService blobMigrationService, BlobService blobService,
+                       PlatformTransactionManager transactionManager) {
         this.authRepository = authRepository;
+        this.userRepository = userRepository;
         this.fileRepository = fileRepository;
+        this.blobStore = blobStore;
+        this.blobMigrationService = blobMigrationService;
+        this.blobService = blobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public boolean uploadFile(String authToken, String filename, InputStream content) {
+        return uploadFile(authToken, filename, null, content);
     }
 
-    public boolean uploadFile(String authToken, String filename, MultipartFile multipartFile) {
+    public boolean uploadFile(String authToken, String filename, String hash, InputStream content) {
         User user = getUserByToken(authToken);
         if (user == null) {
             logger.error("User is not found, no authorization!");
             throw new UnauthorizedExceptionError();
         }
+        if (StringUtils.isEmpty(filename)) {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        String blobKey;
+        long size;
         try {
-            File uploadFile = new File(filename, LocalDateTime.now(), multipartFile.getSize(), multipartFile.getBytes(), user);
-            fileRepository.save(uploadFile);
-            logger.info(String.format("uploadFile: %s ", uploadFile.getFilename()));
+            CountingInputStream countingContent = new CountingInputStream(content);
+            blobKey = blobStore.save(countingContent);
+            size = countingContent.getCount();
         } catch (IOException e) {
             logger.error("uploadFile warn: ", e);
             throw new InputDataExceptionError();
+        }
+        if (!isSameHash(hash, blobKey)) {
+            logger.error(String.format("uploadFile hash mismatch: %s ", filename));
+            blobService.releaseUnreferenced(blobKey, size);
+            throw new InputDataExceptionError();
+        }
+        Integer version;
+        try {
+            version = transactionTemplate.execute(status -> {
+                blobService.addReference(blobKey, size);
+                Integer replaced = versioningEnabled ? replaceKeepingVersion(user, filename, blobKey, size) : null;
+                if (replaced == null) {
+                    fileRepository.save(new File(filename, LocalDateTime.now(), size, blobKey, user));
+                }
+                releaseBlobOnRollback(blobKey, size);
+                return replaced;
+            });
+        } catch (RuntimeException e) {
+            blobService.releaseUnreferenced(blobKey, size);
+            throw e;
+        }
+        logger.info(version == null ? String.format("uploadFile: %s ", filename)
+                : String.format("uploadFile: %s, version %d ", filename, version));
+        return true;
+    }
 
+    @Transactional
+    public boolean uploadFileByHash(String authToken, String filename, String hash, Long size) {
+        User user = getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        if (StringUtils.isEmpty(filename) || hash == null || !SHA256_HEX.matcher(hash).matches()
+                || size == null || size < 0) {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        String blobKey = hash.toLowerCase();
+        if (!blobService.addExistingReference(blobKey, size)) {
+            logger.info(String.format("uploadFileByHash, content is not found: %s ", filename));
+            return false;
         }
+        File uploadFile = new File(filename, LocalDateTime.now(), size, blobKey, user);
+        fileRepository.save(uploadFile);
+        logger.info(String.format("uploadFileByHash: %s ", uploadFile.getFilename()));
         return true;
     }
 
+    @Transactional
     public void deleteFile(String authToken, String filename) {
         User user = getUserByToken(authToken);
         if (user == null) {
@@ -100,15 +286,24 @@ public class FileService {
             logger.error("Invalid input data!");
             throw new InputDataExceptionError();
         }
+        String blobKey = fileRepository.findBlobKeyByUserAndFilename(user, filename);
+        List<String> versionBlobKeys = fileRepository.deleteVersionsByUserAndFilenames(user, List.of(filename));
         long deletedCount = fileRepository.deleteByUserAndFilename(user, filename);
         if (deletedCount == 0) {
             logger.error("Error when deleting a file!");
             throw new DeleteFileExceptionError();
         }
+        if (blobKey != null && !blobService.removeReference(blobKey)) {
+            deleteBlobAfterCommit(blobKey);
+        }
+        if (!versionBlobKeys.isEmpty()) {
+            blobService.removeReferences(versionBlobKeys).forEach(this::deleteBlobAfterCommit);
+        }
         logger.info(String.format("Deleted file: %s ", filename));
     }
 
-    public byte[] downloadFile(String authToken, String filename) {
+    @Transactional
+    public File downloadFile(String authToken, String filename) {
         User user = getUserByToken(authToken);
         if (user == null) {
             logger.error("User is not found, no authorization!");
@@ -119,27 +314,197 @@ public class FileService {
             logger.error("File not found, incorrect input data! ");
             throw new InputDataExceptionError();
         }
-        byte[] fileContent = file.getFileContent();
-        if (fileContent == null) {
+        if (file.getBlobKey() == null) {
+            file.setBlobKey(blobMigrationService.migrateFile(file.getId()));
+        }
+        if (file.getBlobKey() == null) {
             logger.error("Error loading file.");
             throw new UploadFileExceptionError();
         }
         logger.info(String.format("Download file: %s ", filename));
-        return fileContent;
+        return file;
+    }
+
+    @Transactional
+    public File downloadFileVersion(String authToken, String filename, int version) {
+        User user = getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        FileVersion fileVersion = fileRepository.findVersionByUserAndFilename(user, filename, version);
+        if (fileVersion != null) {
+            logger.info(String.format("Download file: %s, version %d ", filename, version));
+            return new File(filename, fileVersion.getCreatedAt(), fileVersion.getSize(), fileVersion.getBlobKey(),
+                    user);
+        }
+        Integer currentVersion = fileRepository.findCurrentVersion(user.getId(), filename);
+        if (currentVersion == null || currentVersion != version) {
+            logger.error("File version not found, incorrect input data! ");
+            throw new InputDataExceptionError();
+        }
+        return downloadFile(authToken, filename);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ResponseFileVersion> getVersions(String authToken, String filename) {
+        User user = getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        List<FileVersionItem> versions = fileRepository.findVersionsByUser(user, filename);
+        if (versions.isEmpty()) {
+            logger.error("File not found, incorrect input data! ");
+            throw new InputDataExceptionError();
+        }
+        int currentVersion = versions.get(0).getVersion();
+        return versions.stream().map(x -> new ResponseFileVersion(x.getVersion(), x.getSize(), x.getEditedAt(),
+                x.getVersion() == currentVersion)).toList();
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void writeContent(File file, long offset, long length, OutputStream out) throws IOException {
+        Path path = blobStore.localPath(file.getBlobKey());
+        if (path != null) {
+            transfer(path, offset, length, out);
+            return;
+        }
+        try (InputStream content = blobStore.open(file.getBlobKey())) {
+            content.skipNBytes(offset);
+            copy(content, length, out, file.getBlobKey());
+        }
+    }
+
+    public Path getLocalPath(File file) {
+        return blobStore.localPath(file.getBlobKey());
+    }
+
+    public String getStoredEncoding(File file) {
+        return blobStore.storedEncoding(file.getBlobKey());
     }
 
+    public Path getStoredPath(File file) {
+        return blobStore.storedPath(file.getBlobKey());
+    }
+
+    public long getEncodedLength(File file, String encoding) throws IOException {
+        return blobStore.encodedSize(file.getBlobKey(), encoding);
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void writeEncodedContent(File file, String encoding, OutputStream out) throws IOException {
+        long length = blobStore.encodedSize(file.getBlobKey(), encoding);
+        if (encoding.equals(blobStore.storedEncoding(file.getBlobKey()))) {
+            Path path = blobStore.storedPath(file.getBlobKey());
+            if (path != null) {
+                transfer(path, 0, length, out);
+                return;
+            }
+        }
+        try (InputStream content = blobStore.openEncoded(file.getBlobKey(), encoding)) {
+            copy(content, length, out, file.getBlobKey());
+        }
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ResponseFileSignature getSignature(File file, Integer blockSize) throws IOException {
+        int size = blockSize != null ? blockSize : signatureBlockSize(file.getSize());
+        if (size < DeltaInputStream.MIN_BLOCK_SIZE || size > DeltaInputStream.MAX_BLOCK_SIZE) {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        HexFormat hex = HexFormat.of();
+        RollingChecksum checksum = new RollingChecksum();
+        List<ResponseBlockSignature> blocks = new ArrayList<>();
+        byte[] block = new byte[size];
+        try (InputStream content = blobStore.open(file.getBlobKey())) {
+            for (int read = content.readNBytes(block, 0, size); read > 0; read = content.readNBytes(block, 0, size)) {
+                md5.update(block, 0, read);
+                blocks.add(new ResponseBlockSignature(checksum.reset(block, 0, read).getValue(),
+                        hex.formatHex(md5.digest())));
+            }
+        }
+        logger.info(String.format("File signature: %s, %d blocks ", file.getFilename(), blocks.size()));
+        return new ResponseFileSignature(size, file.getSize(), blocks);
+    }
+
+    public void uploadFileDelta(String authToken, File basis, int blockSize, String hash, InputStream delta) {
+        User user = getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        if (blockSize < DeltaInputStream.MIN_BLOCK_SIZE || blockSize > DeltaInputStream.MAX_BLOCK_SIZE) {
+            logger.error("Invalid input data!");
+            throw new InputDataExceptionError();
+        }
+        String blobKey;
+        long size;
+        try (CountingInputStream content = new CountingInputStream(new DeltaInputStream(delta, blobStore,
+                basis.getBlobKey(), basis.getSize(), blockSize))) {
+            blobKey = blobStore.save(content);
+            size = content.getCount();
+        } catch (IOException e) {
+            logger.error("uploadFileDelta warn: ", e);
+            throw new InputDataExceptionError();
+        }
+        if (!isSameHash(hash, blobKey)) {
+            logger.error(String.format("uploadFileDelta hash mismatch: %s ", basis.getFilename()));
+            blobService.releaseUnreferenced(blobKey, size);
+            throw new InputDataExceptionError();
+        }
+        Boolean replaced;
+        try {
+            replaced = transactionTemplate.execute(status -> {
+                boolean updated;
+                if (versioningEnabled) {
+                    updated = fileRepository.replaceContentKeepingVersion(user, basis.getFilename(),
+                            basis.getBlobKey(), blobKey, size, LocalDateTime.now()) != null;
+                } else {
+                    updated = fileRepository.replaceContent(user, basis.getFilename(), basis.getBlobKey(), blobKey,
+                            size, LocalDateTime.now()) > 0;
+                }
+                if (updated) {
+                    blobService.addReference(blobKey, size);
+                    releaseBlobOnRollback(blobKey, size);
+                    if (!versioningEnabled && !blobService.removeReference(basis.getBlobKey())) {
+                        deleteBlobAfterCommit(basis.getBlobKey());
+                    }
+                }
+                return updated;
+            });
+        } catch (RuntimeException e) {
+            blobService.releaseUnreferenced(blobKey, size);
+            throw e;
+        }
+        if (!Boolean.TRUE.equals(replaced)) {
+            logger.error(String.format("File was changed during delta upload: %s ", basis.getFilename()));
+            blobService.releaseUnreferenced(blobKey, size);
+            throw new PreconditionFailedExceptionError();
+        }
+        logger.info(String.format("uploadFileDelta: %s ", basis.getFilename()));
+    }
+
+    @Transactional
     public void editFileName(String authToken, String filename, RequestEditFileName requestEditFileName) {
         User user = getUserByToken(authToken);
         if (user == null) {
             logger.error("User is not found, no authorization!");
             throw new UnauthorizedExceptionError();
         }
-        File file = fileRepository.findByUserAndFilename(user, filename);
-        if (file == null) {
+        int updatedCount = fileRepository.setNewFilenameByUserAndFilename(requestEditFileName.getFilename(), user,
+                filename);
+        if (updatedCount == 0) {
             logger.error("File not found, incorrect input data!");
             throw new InputDataExceptionError();
         }
-        fileRepository.setNewFilenameByUserAndFilename(requestEditFileName.getFilename(), user, filename);
         if (filename.equals(requestEditFileName.getFilename())) {
             logger.error("File name has not changed, file download error!");
             throw new UploadFileExceptionError();
@@ -147,28 +512,124 @@ public class FileService {
         logger.info(String.format("Edit file name: %s ", filename));
     }
 
-    public List<ResponseFile> getAllFiles(String authToken, Integer limit) {
+    @Transactional(readOnly = true)
+    public ResponseFilePage getAllFiles(String authToken, Integer limit, String sort, String cursor) {
         User user = getUserByToken(authToken);
         if (user == null) {
             logger.warn("User is not found, no authorization!");
             throw new UnauthorizedExceptionError();
         }
-        if (limit == 0) {
+        if (limit == null || limit <= 0) {
             logger.error("Invalid input data!");
             throw new InputDataExceptionError();
         }
-        List<File> allFilesByUser = fileRepository.findAllByUser(user);
-        if (allFilesByUser == null) {
+        FileListCursor position;
+        try {
+            position = cursor != null ? FileListCursor.decode(cursor) : FileListCursor.parseSort(sort);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid list cursor or sort!");
+            throw new InputDataExceptionError();
+        }
+        int pageSize = Math.min(limit, maxListLimit);
+        List<FileListItem> items = fileRepository.findPageByUser(user, position, pageSize + 1);
+        if (items == null) {
             logger.error("Error when retrieving a list of files!");
             throw new GettingFileListExceptionError();
         }
-        return allFilesByUser.stream().map(x -> new ResponseFile(x.getFilename(), x.getSize())).toList();
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            nextCursor = FileListCursor.after(position, items.get(pageSize - 1)).encode();
+        }
+        List<ResponseFile> files = items.stream().map(x -> new ResponseFile(x.getFilename(), x.getSize())).toList();
+        return new ResponseFilePage(files, nextCursor);
     }
 
     public User getUserByToken(String authToken) {
         if (authToken.startsWith("Bearer ")) {
             String tokenWithoutBearer = authToken.substring(7);
-            return authRepository.getAuthenticationUserByToken(tokenWithoutBearer);
+            Long userId = authRepository.getAuthenticationUserIdByToken(tokenWithoutBearer);
+            return userId != null ? userRepository.getReferenceById(userId) : null;
         } else return null;
     }
+
+    void deleteBlobAfterCommit(String blobKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            blobStore.delete(blobKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                blobStore.delete(blobKey);
+            }
+        });
+    }
+
+    private Integer replaceKeepingVersion(User user, String filename, String blobKey, long size) {
+        Integer version = fileRepository.replaceContentKeepingVersion(user, filename, null, blobKey, size,
+                LocalDateTime.now());
+        if (version != null) {
+            return version;
+        }
+        File file = fileRepository.findByUserAndFilename(user, filename);
+        if (file == null || file.getBlobKey() != null || blobMigrationService.migrateFile(file.getId()) == null) {
+            return null;
+        }
+        return fileRepository.replaceContentKeepingVersion(user, filename, null, blobKey, size, LocalDateTime.now());
+    }
+
+    private void releaseBlobOnRollback(String blobKey, long size) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    blobService.releaseUnreferenced(blobKey, size);
+                }
+            }
+        });
+    }
+
+    private static void transfer(Path path, long offset, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new EOFException("Unexpected end of blob: " + path);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static void copy(InputStream content, long length, OutputStream out, String blobKey) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of blob: " + blobKey);
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    static int signatureBlockSize(long size) {
+        long blockSize = ((long) Math.ceil(Math.sqrt(size)) + 1023) / 1024 * 1024;
+        return (int) Math.max(MIN_SIGNATURE_BLOCK_SIZE, Math.min(MAX_SIGNATURE_BLOCK_SIZE, blockSize));
+    }
+
+    static boolean isSameHash(String hash, String blobKey) {
+        if (hash == null || !SHA256_HEX.matcher(hash).matches()) {
+            return true;
+        }
+        return hash.equalsIgnoreCase(blobKey);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package ru.netology.cloudstorage.services;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс FileVersionService удаляет прежние версии файлов (таблица file_versions) по правилам хранения.
+ * <p>
+ * - pruneVersions: запускается по расписанию (files.versioning.prune.delay) и удаляет версии, которые больше не
+ * нужно хранить. Правило files.versioning.keep-days хранит версии, замененные более новыми не раньше, чем
+ * keep-days дней назад, а правило files.versioning.keep-versions хранит keep-versions последних прежних версий
+ * каждого файла (нулевое значение отключает правило). Если включены оба правила, версия хранится, пока ее хранит
+ * хотя бы одно из них, то есть удаляется только версия, которую разрешают удалить оба правила. Версии удаляются
+ * пачками по files.versioning.prune.batch-size строк: каждая пачка удаляется одним запросом DELETE ... RETURNING
+ * в своей короткой транзакции, и в ней же одним пакетом снимаются ссылки на содержимое удаленных версий
+ * (BlobService.removeReferences). Содержимое, которое не учитывается в таблице blobs, удаляется из BlobStore после
+ * фиксации транзакции, остальное удалит сборщик BlobService, когда на него не останется ссылок.
+ * <p>
+ * Каждое правило выбирает версии своим индексом, без условий OR и без сравнения по всей таблице:
+ * - только keep-days: версии выбираются по индексу на archived_at в порядке archived_at, удаленные строки из
+ * индекса уходят, поэтому следующая пачка продолжает с того же места.
+ * - keep-versions (с keep-days или без него): файлы обходятся по первичному ключу начиная с файла, на котором
+ * остановилась предыдущая пачка, а лишние версии каждого файла выбираются по индексу (file_id, version) как версии
+ * с номером меньше, чем номер текущей версии файла минус keep-versions (номера версий файла идут подряд). Если
+ * включено и правило keep-days, из них удаляются только версии с archived_at раньше границы keep-days. Так за
+ * один запуск pruneVersions каждый файл просматривается один раз.
+ * <p>
+ * - pruneBatch: удаляет одну пачку версий, начиная с файла fromFileId (для правила keep-versions), и возвращает
+ * удаленные версии (идентификатор файла и ключ содержимого).
+ */
+@Service
+public class FileVersionService {
+    final static Logger logger = Logger.getLogger(FileVersionService.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobService blobService;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${files.versioning.keep-versions:0}")
+    private int keepVersions = 0;
+
+    @Value("${files.versioning.keep-days:0}")
+    private int keepDays = 0;
+
+    @Value("${files.versioning.prune.batch-size:100}")
+    private int batchSize = 100;
+
+    @Autowired
+    public FileVersionService(JdbcTemplate jdbcTemplate, BlobService blobService, FileService fileService,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobService = blobService;
+        this.fileService = fileService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(initialDelayString = "${files.versioning.prune.delay:3600000}",
+            fixedDelayString = "${files.versioning.prune.delay:3600000}")
+    public void pruneVersions() {
+        if (keepVersions <= 0 && keepDays <= 0) {
+            return;
+        }
+        int total = 0;
+        long fromFileId = 0;
+        List<PrunedVersion> pruned;
+        do {
+            pruned = pruneBatch(fromFileId);
+            total += pruned.size();
+            for (PrunedVersion version : pruned) {
+                fromFileId = Math.max(fromFileId, version.fileId());
+            }
+        } while (pruned.size() == batchSize);
+        if (total > 0) {
+            logger.info(String.format("Pruned file versions: %d ", total));
+        }
+    }
+
+    List<PrunedVersion> pruneBatch(long fromFileId) {
+        String sql;
+        List<Object> arguments = new ArrayList<>();
+        if (keepVersions > 0) {
+            arguments.add(keepVersions);
+            String age = "";
+            if (keepDays > 0) {
+                age = " AND v.archived_at < ?";
+                arguments.add(LocalDateTime.now().minusDays(keepDays));
+            }
+            arguments.add(fromFileId);
+            sql = "DELETE FROM file_versions WHERE id IN (SELECT v.id FROM files f JOIN file_versions v "
+                    + "ON v.file_id = f.id AND v.version < f.version - ?" + age + " WHERE f.id >= ? "
+                    + "ORDER BY f.id LIMIT ?) RETURNING file_id, blob_key";
+        } else {
+            arguments.add(LocalDateTime.now().minusDays(keepDays));
+            sql = "DELETE FROM file_versions WHERE id IN (SELECT v.id FROM file_versions v "
+                    + "WHERE v.archived_at < ? ORDER BY v.archived_at LIMIT ?) RETURNING file_id, blob_key";
+        }
+        arguments.add(batchSize);
+        List<PrunedVersion> pruned = transactionTemplate.execute(status -> {
+            List<PrunedVersion> versions = jdbcTemplate.query(sql, (rs, rowNum) ->
+                    new PrunedVersion(rs.getLong("file_id"), rs.getString("blob_key")), arguments.toArray());
+            if (!versions.isEmpty()) {
+                blobService.removeReferences(versions.stream().map(PrunedVersion::blobKey).toList())
+                        .forEach(fileService::deleteBlobAfterCommit);
+            }
+            return versions;
+        });
+        return pruned != null ? pruned : List.of();
+    }
+
+    record PrunedVersion(long fileId, String blobKey) {
+    }
+}
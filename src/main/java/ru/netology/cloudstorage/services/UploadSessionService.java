@@ -0,0 +1,374 @@
+package ru.netology.cloudstorage.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.netology.cloudstorage.cache.ExpiringCache;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
+import ru.netology.cloudstorage.exceptions.UploadFileExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.UploadPart;
+import ru.netology.cloudstorage.models.UploadSession;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.UploadPartRepository;
+import ru.netology.cloudstorage.repositories.UploadSessionRepository;
+import ru.netology.cloudstorage.response.ResponseUploadPart;
+import ru.netology.cloudstorage.response.ResponseUploadSession;
+import ru.netology.cloudstorage.storage.BlobStore;
+import ru.netology.cloudstorage.storage.CountingInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Класс UploadSessionService реализует загрузку больших файлов по частям с возможностью продолжения после сбоя.
+ * Части загружаются независимо, в любом порядке и параллельно (в нескольких соединениях), поэтому обрыв сети
+ * приводит к повторной загрузке только одной части, а не всего файла.
+ * <p>
+ * - initiate: открывает сессию загрузки UploadSession для файла с заданным именем. Если имя уже занято,
+ * выбрасывается исключение ErrorInputData.
+ * <p>
+ * - uploadPart: принимает часть с номером от 1 до uploads.max-parts. Содержимое части записывается в BlobStore
+ * потоком вне транзакции, затем в короткой транзакции (под блокировкой строки сессии) сохраняется строка
+ * upload_parts и ссылка на содержимое в таблице blobs. Повторная загрузка части с тем же номером заменяет ее, а
+ * ссылка на прежнее содержимое снимается. Каждая принятая часть продлевает срок жизни сессии на
+ * uploads.session-ttl миллисекунд.
+ * <p>
+ * Пока части приходят по порядку номеров, по ним сразу во время загрузки считается SHA-256 начала файла: для каждой
+ * сессии в памяти хранится хэш частей 1..k вместе с их ключами (PartsDigest), и часть с номером k + 1 хэшируется
+ * его копией. Повторная загрузка уже учтенной части сбрасывает хэш сессии, а часть, пришедшая не по порядку,
+ * хэшируется позже, при сборке. Хэш сессии обновляется только после фиксации транзакции, в которой сохранена часть,
+ * поэтому откаченная часть его не меняет. Хэши хранятся только в памяти узла, который принял части (ExpiringCache):
+ * запись живет uploads.session-ttl миллисекунд после последней принятой части, как и сама сессия, а количество
+ * записей ограничено свойством uploads.digests.max-entries. Если части сессии принимали разные узлы, хэш был
+ * вытеснен или приложение перезапущено, при сборке части просто читаются и хэшируются заново.
+ * <p>
+ * - getSession: возвращает сессию со списком принятых частей, по которому клиент определяет, что осталось загрузить.
+ * <p>
+ * - complete: собирает файл из частей с номерами 1..N без пропусков методом BlobStore.concat. Если ключи частей
+ * совпадают с ключами, по которым посчитан хэш сессии, хранилище получает этот хэш и дописывает такие части в файл
+ * без повторного чтения ради хэша (FileSystemBlobStore копирует их средствами ядра), а остальные части читаются один
+ * раз. Если часть одна, ее содержимое используется как есть, без копирования. Затем в
+ * одной транзакции проверяется, что части не изменились во время сборки, создается строка files, а сессия и ее
+ * части удаляются вместе со ссылками на содержимое частей (само содержимое удалит сборщик BlobService, если на него
+ * больше никто не ссылается).
+ * <p>
+ * - abort: отменяет сессию и освобождает содержимое ее частей.
+ * <p>
+ * - expireSessions: запускается по расписанию (uploads.gc.delay) и удаляет сессии, срок жизни которых истек,
+ * пачками по uploads.gc.batch-size, так же как abort.
+ * <p>
+ * Сессия доступна только пользователю, который ее открыл. Неизвестная, чужая или истекшая сессия считается
+ * некорректными входными данными (ErrorInputData).
+ */
+@Service
+public class UploadSessionService {
+    final static Logger logger = Logger.getLogger(UploadSessionService.class);
+
+    private final FileService fileService;
+    private final FileRepository fileRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadPartRepository uploadPartRepository;
+    private final BlobStore blobStore;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExpiringCache<String, PartsDigest> partsDigests = new ExpiringCache<>();
+
+    @Value("${uploads.max-parts:10000}")
+    private int maxParts = 10000;
+
+    @Value("${uploads.session-ttl:86400000}")
+    private long sessionTtl = 86400000;
+
+    @Value("${uploads.digests.max-entries:10000}")
+    private int maxDigests = 10000;
+
+    @Value("${uploads.gc.batch-size:100}")
+    private int gcBatchSize = 100;
+
+    @Autowired
+    public UploadSessionService(FileService fileService, FileRepository fileRepository,
+                                UploadSessionRepository uploadSessionRepository,
+                                UploadPartRepository uploadPartRepository, BlobStore blobStore,
+                                BlobService blobService, PlatformTransactionManager transactionManager) {
+        this.fileService = fileService;
+        this.fileRepository = fileRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadPartRepository = uploadPartRepository;
+        this.blobStore = blobStore;
+        this.blobService = blobService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public ResponseUploadSession initiate(String authToken, String filename) {
+        User user = getUser(authToken);
+        if (StringUtils.isEmpty(filename) || !fileRepository.findExistingFilenames(user, List.of(filename)).isEmpty()) {
+            logger.error("Invalid input data or file already exists!");
+            throw new InputDataExceptionError();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), user, filename, now,
+                now.plus(sessionTtl, ChronoUnit.MILLIS));
+        uploadSessionRepository.save(session);
+        logger.info(String.format("Upload session %s started: %s ", session.getId(), filename));
+        return new ResponseUploadSession(session.getId(), filename, session.getExpiresAt(), List.of());
+    }
+
+    public ResponseUploadPart uploadPart(String authToken, String uploadId, int partNumber, InputStream content) {
+        User user = getUser(authToken);
+        if (partNumber < 1 || partNumber > maxParts) {
+            logger.error(String.format("Invalid part number %d, maximum %d ", partNumber, maxParts));
+            throw new InputDataExceptionError();
+        }
+        findSession(user, uploadId);
+        PartsDigest prefix = partsDigests.get(uploadId, System.currentTimeMillis());
+        MessageDigest digest = partNumber == digestedParts(prefix) + 1
+                ? (prefix != null ? copy(prefix.digest()) : sha256()) : null;
+        String blobKey;
+        long size;
+        try {
+            CountingInputStream countingContent = new CountingInputStream(
+                    digest != null ? new DigestInputStream(content, digest) : content);
+            blobKey = blobStore.save(countingContent);
+            size = countingContent.getCount();
+        } catch (IOException e) {
+            logger.error("uploadPart warn: ", e);
+            throw new InputDataExceptionError();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                UploadSession session = lockSession(user, uploadId);
+                String previousKey = uploadPartRepository.findById(new UploadPart.Key(uploadId, partNumber))
+                        .map(UploadPart::getBlobKey).orElse(null);
+                blobService.addReference(blobKey, size);
+                uploadPartRepository.save(new UploadPart(uploadId, partNumber, blobKey, size));
+                if (previousKey != null) {
+                    blobService.removeReferences(List.of(previousKey));
+                }
+                session.setExpiresAt(LocalDateTime.now().plus(sessionTtl, ChronoUnit.MILLIS));
+                updateDigestAfterCommit(uploadId, partNumber, blobKey, prefix, digest);
+            });
+        } catch (RuntimeException e) {
+            blobService.releaseUnreferenced(blobKey, size);
+            throw e;
+        }
+        logger.info(String.format("Upload session %s, part %d: %d bytes ", uploadId, partNumber, size));
+        return new ResponseUploadPart(partNumber, size);
+    }
+
+    public ResponseUploadSession getSession(String authToken, String uploadId) {
+        UploadSession session = findSession(getUser(authToken), uploadId);
+        List<ResponseUploadPart> parts = uploadPartRepository.findAllBySessionIdOrderByPartNumber(uploadId).stream()
+                .map(part -> new ResponseUploadPart(part.getPartNumber(), part.getSize()))
+                .toList();
+        return new ResponseUploadSession(uploadId, session.getFilename(), session.getExpiresAt(), parts);
+    }
+
+    public void complete(String authToken, String uploadId) {
+        User user = getUser(authToken);
+        findSession(user, uploadId);
+        List<UploadPart> parts = uploadPartRepository.findAllBySessionIdOrderByPartNumber(uploadId);
+        if (parts.isEmpty()) {
+            logger.error(String.format("Upload session %s has no parts ", uploadId));
+            throw new InputDataExceptionError();
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).getPartNumber() != i + 1) {
+                logger.error(String.format("Upload session %s: part %d is missing ", uploadId, i + 1));
+                throw new InputDataExceptionError();
+            }
+        }
+        List<String> partKeys = parts.stream().map(UploadPart::getBlobKey).toList();
+        String blobKey;
+        long size;
+        if (parts.size() == 1) {
+            blobKey = parts.get(0).getBlobKey();
+            size = parts.get(0).getSize();
+        } else {
+            PartsDigest prefix = partsDigests.get(uploadId, System.currentTimeMillis());
+            boolean digested = prefix != null && prefix.blobKeys().size() <= partKeys.size()
+                    && prefix.blobKeys().equals(partKeys.subList(0, prefix.blobKeys().size()));
+            try {
+                blobKey = blobStore.concat(partKeys, digested ? copy(prefix.digest()) : sha256(),
+                        digested ? prefix.blobKeys().size() : 0);
+                size = parts.stream().mapToLong(UploadPart::getSize).sum();
+            } catch (IOException | UncheckedIOException e) {
+                logger.error("Error assembling uploaded parts: ", e);
+                throw new UploadFileExceptionError();
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                UploadSession session = lockSession(user, uploadId);
+                if (!partKeys.equals(uploadPartRepository.findBlobKeysBySessionId(uploadId))) {
+                    logger.error(String.format("Upload session %s: parts changed during completion ", uploadId));
+                    throw new InputDataExceptionError();
+                }
+                blobService.addReference(blobKey, size);
+                fileRepository.save(new File(session.getFilename(), LocalDateTime.now(), size, blobKey, user));
+                removeSession(session);
+            });
+        } catch (DataIntegrityViolationException e) {
+            logger.error(String.format("Upload session %s: file already exists ", uploadId));
+            releaseAssembled(parts, blobKey, size);
+            throw new InputDataExceptionError();
+        } catch (RuntimeException e) {
+            releaseAssembled(parts, blobKey, size);
+            throw e;
+        }
+        logger.info(String.format("Upload session %s completed: %d parts, %d bytes ", uploadId, parts.size(), size));
+    }
+
+    public void abort(String authToken, String uploadId) {
+        User user = getUser(authToken);
+        transactionTemplate.executeWithoutResult(status -> removeSession(lockSession(user, uploadId)));
+        logger.info(String.format("Upload session %s aborted ", uploadId));
+    }
+
+    @Scheduled(initialDelayString = "${uploads.gc.delay:600000}", fixedDelayString = "${uploads.gc.delay:600000}")
+    public void expireSessions() {
+        int total = 0;
+        List<String> expired;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            expired = uploadSessionRepository.findExpiredIds(now, PageRequest.of(0, gcBatchSize));
+            for (String uploadId : expired) {
+                Boolean removed = transactionTemplate.execute(status -> {
+                    UploadSession session = uploadSessionRepository.findForUpdate(uploadId);
+                    if (session == null || !session.getExpiresAt().isBefore(now)) {
+                        return false;
+                    }
+                    removeSession(session);
+                    return true;
+                });
+                if (Boolean.TRUE.equals(removed)) {
+                    total++;
+                }
+            }
+        } while (expired.size() == gcBatchSize);
+        if (total > 0) {
+            logger.info(String.format("Expired upload sessions removed: %d ", total));
+        }
+    }
+
+    private void removeSession(UploadSession session) {
+        partsDigests.remove(session.getId());
+        List<String> partKeys = uploadPartRepository.findBlobKeysBySessionId(session.getId());
+        uploadPartRepository.deleteBySessionId(session.getId());
+        uploadSessionRepository.delete(session);
+        if (!partKeys.isEmpty()) {
+            blobService.removeReferences(partKeys);
+        }
+    }
+
+    private void releaseAssembled(List<UploadPart> parts, String blobKey, long size) {
+        if (parts.size() > 1) {
+            blobService.releaseUnreferenced(blobKey, size);
+        }
+    }
+
+    private void updateDigestAfterCommit(String uploadId, int partNumber, String blobKey, PartsDigest prefix,
+                                         MessageDigest digest) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            updateDigest(uploadId, partNumber, blobKey, prefix, digest);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                updateDigest(uploadId, partNumber, blobKey, prefix, digest);
+            }
+        });
+    }
+
+    private void updateDigest(String uploadId, int partNumber, String blobKey, PartsDigest prefix,
+                              MessageDigest digest) {
+        long now = System.currentTimeMillis();
+        PartsDigest current = partsDigests.get(uploadId, now);
+        if (current != null && partNumber <= digestedParts(current)) {
+            partsDigests.remove(uploadId, current);
+        }
+        if (digest != null) {
+            partsDigests.replace(uploadId, prefix, new PartsDigest(append(prefix, blobKey), digest),
+                    now + sessionTtl, maxDigests);
+        }
+    }
+
+    private static int digestedParts(PartsDigest digest) {
+        return digest != null ? digest.blobKeys().size() : 0;
+    }
+
+    private static List<String> append(PartsDigest prefix, String blobKey) {
+        List<String> blobKeys = new ArrayList<>(prefix != null ? prefix.blobKeys() : List.of());
+        blobKeys.add(blobKey);
+        return List.copyOf(blobKeys);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private UploadSession findSession(User user, String uploadId) {
+        return checkSession(user, uploadId, uploadSessionRepository.findById(uploadId).orElse(null));
+    }
+
+    private UploadSession lockSession(User user, String uploadId) {
+        return checkSession(user, uploadId, uploadSessionRepository.findForUpdate(uploadId));
+    }
+
+    private static UploadSession checkSession(User user, String uploadId, UploadSession session) {
+        if (session == null || !session.getUser().getId().equals(user.getId())
+                || session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            logger.error(String.format("Upload session is not found: %s ", uploadId));
+            throw new InputDataExceptionError();
+        }
+        return session;
+    }
+
+    private User getUser(String authToken) {
+        User user = fileService.getUserByToken(authToken);
+        if (user == null) {
+            logger.error("User is not found, no authorization!");
+            throw new UnauthorizedExceptionError();
+        }
+        return user;
+    }
+
+    /**
+     * Хэш SHA-256 частей 1..k сессии, загруженных по порядку, и ключи содержимого этих частей.
+     */
+    private record PartsDigest(List<String> blobKeys, MessageDigest digest) {
+    }
+}
@@ -0,0 +1,30 @@
+package ru.netology.cloudstorage.services;
+
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import ru.netology.cloudstorage.models.UserChangedEvent;
+
+/**
+ * Данный класс UserBulkChangeAspect является аспектом UserRepository для массовых операций (deleteAllInBatch,
+ * deleteAllByIdInBatch и запросы @Modifying). Они выполняются одним SQL-запросом, и JPA не вызывает для них
+ * обработчики событий отдельных сущностей (UserEntityListener). Поэтому после успешного вызова такого метода аспект
+ * публикует событие UserChangedEvent.allUsers(), и UserService очищает кэш принципалов целиком.
+ */
+@Aspect
+@Component
+public class UserBulkChangeAspect {
+    private final ApplicationEventPublisher eventPublisher;
+
+    public UserBulkChangeAspect(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @AfterReturning("this(ru.netology.cloudstorage.repositories.UserRepository) "
+            + "&& (execution(* *InBatch(..)) "
+            + "|| @annotation(org.springframework.data.jpa.repository.Modifying))")
+    public void changedAll() {
+        eventPublisher.publishEvent(UserChangedEvent.allUsers());
+    }
+}
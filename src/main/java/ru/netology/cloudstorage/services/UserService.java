@@ -1,14 +1,29 @@
 package ru.netology.cloudstorage.services;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.netology.cloudstorage.cache.ExpiringCache;
 import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
 
 import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.models.UserChangedEvent;
 import ru.netology.cloudstorage.repositories.UserRepository;
+import ru.netology.cloudstorage.security.UserPrincipal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Данный класс UserService является сервисом, который реализует интерфейс UserDetailsService из Spring Security.
@@ -34,12 +49,51 @@ import ru.netology.cloudstorage.repositories.UserRepository;
  * исключение ErrorUnauthorized, которое обрабатывается в другом месте приложения.
  * - return user; - возвращается найденный пользователь. Объект пользователя должен реализовывать интерфейс UserDetails,
  * который предоставляет информацию о пользователе для аутентификации и авторизации в приложении.
+ * <p>
+ * - loadPrincipal(String login) - метод, который использует JWTFilter на каждом запросе. Он возвращает облегченный
+ * принципал UserPrincipal (только id и логин) из кэша принципалов, а при промахе выбирает из базы только эти два
+ * столбца (findPrincipalByLogin), не загружая файлы пользователя. Кэш является ExpiringCache (чтение без
+ * блокировок) и ограничен по размеру свойством auth.principal-cache.max-size (при переполнении вытесняются давно не
+ * использованные записи, 0 отключает кэш) и по времени жизни записи свойством auth.principal-cache.ttl
+ * (в миллисекундах). Если пользователь не найден, выбрасывается
+ * исключение UnauthorizedExceptionError.
+ * - invalidatePrincipal(Long id, String login) - удаляет принципал пользователя из кэша.
+ * - invalidateAllPrincipals() - очищает кэш принципалов.
+ * - onUserChanged(UserChangedEvent event) - обработчик события, которое публикуют UserEntityListener после
+ * изменения (например, смены пароля) или удаления пользователя и UserBulkChangeAspect после массовых изменений
+ * пользователей. Обработчики JPA вызываются при сбросе изменений в базу, то есть до фиксации транзакции:
+ * параллельный запрос, успевший до фиксации прочитать старую строку, снова положил бы ее в кэш. Поэтому в
+ * транзакции принципал удаляется из кэша сразу и еще раз после ее фиксации (afterCommit). Изменения, сделанные в
+ * обход приложения (например, SQL-запросом в базе), становятся видны после истечения auth.principal-cache.ttl.
+ * <p>
+ * Каждая инвалидация увеличивает номер поколения кэша. loadPrincipal запоминает номер поколения до чтения из базы,
+ * а после добавления принципала в кэш сравнивает его с текущим: если за время чтения прошла инвалидация, прочитанный
+ * принципал мог устареть, и его запись удаляется из кэша (только если это та же запись). Инвалидация, пришедшая
+ * после добавления, удаляет запись сама, поэтому устаревший принципал не остается в кэше до истечения ttl.
+ * - getPrincipalCacheHits(), getPrincipalCacheMisses(), getPrincipalCacheSize() - счетчики попаданий и промахов
+ * кэша и текущее количество записей в нем.
+ * - bindTo(MeterRegistry registry) - публикует эти значения как метрики cloud.principal.cache.gets (тег result: hit
+ * или miss) и cloud.principal.cache.size. Сервис является MeterBinder, поэтому Spring Boot вызывает метод сам, а
+ * значения читаются из счетчиков в момент сбора метрик.
  */
 
 @Service
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, MeterBinder {
+    final static Logger logger = Logger.getLogger(UserService.class);
+    public static final String PRINCIPAL_CACHE_GETS = "cloud.principal.cache.gets";
+    public static final String PRINCIPAL_CACHE_SIZE = "cloud.principal.cache.size";
 
     private final UserRepository userRepository;
+    private final ExpiringCache<String, UserPrincipal> principalCache = new ExpiringCache<>();
+    private final LongAdder principalCacheHits = new LongAdder();
+    private final LongAdder principalCacheMisses = new LongAdder();
+    private final AtomicLong principalCacheGeneration = new AtomicLong();
+
+    @Value("${auth.principal-cache.max-size:10000}")
+    private int principalCacheMaxSize = 10000;
+
+    @Value("${auth.principal-cache.ttl:60000}")
+    private long principalCacheTtl = 60000;
 
     @Autowired
     public UserService(UserRepository userRepository) {
@@ -54,4 +108,86 @@ public class UserService implements UserDetailsService {
         }
         return user;
     }
-}
\ No newline at end of file
+
+    public UserPrincipal loadPrincipal(String login) {
+        long now = System.currentTimeMillis();
+        UserPrincipal cached = principalCache.get(login, now);
+        if (cached != null) {
+            principalCacheHits.increment();
+            return cached;
+        }
+        principalCacheMisses.increment();
+        long generation = principalCacheGeneration.get();
+        UserPrincipal principal = userRepository.findPrincipalByLogin(login);
+        if (principal == null) {
+            logger.warn(String.format("Principal is not found: %s ", login));
+            throw new UnauthorizedExceptionError();
+        }
+        if (principalCacheMaxSize > 0) {
+            principalCache.put(login, principal, now + principalCacheTtl, principalCacheMaxSize);
+            if (principalCacheGeneration.get() != generation) {
+                principalCache.remove(login, principal);
+            }
+        }
+        return principal;
+    }
+
+    public void invalidatePrincipal(Long id, String login) {
+        principalCacheGeneration.incrementAndGet();
+        if (login != null) {
+            principalCache.remove(login);
+        }
+        if (id != null) {
+            principalCache.removeIf(principal -> id.equals(principal.getId()));
+        }
+        logger.info(String.format("Principal cache invalidated for user: %s ", login));
+    }
+
+    public void invalidateAllPrincipals() {
+        principalCacheGeneration.incrementAndGet();
+        principalCache.clear();
+        logger.info("Principal cache invalidated for all users");
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        Runnable invalidation = event.isAllUsers() ? this::invalidateAllPrincipals
+                : () -> invalidatePrincipal(event.userId(), event.login());
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(PRINCIPAL_CACHE_GETS, principalCacheHits, LongAdder::sum)
+                .description("Principal cache lookups in JWTFilter")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder(PRINCIPAL_CACHE_GETS, principalCacheMisses, LongAdder::sum)
+                .description("Principal cache lookups in JWTFilter")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder(PRINCIPAL_CACHE_SIZE, principalCache, ExpiringCache::size)
+                .description("Entries in the principal cache")
+                .register(registry);
+    }
+
+    public long getPrincipalCacheHits() {
+        return principalCacheHits.sum();
+    }
+
+    public long getPrincipalCacheMisses() {
+        return principalCacheMisses.sum();
+    }
+
+    public int getPrincipalCacheSize() {
+        return principalCache.size();
+    }
+}
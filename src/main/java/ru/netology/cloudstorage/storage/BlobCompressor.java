@@ -0,0 +1,129 @@
+package ru.netology.cloudstorage.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Класс BlobCompressor решает, нужно ли сжимать загружаемое содержимое, и создает поток, который его сжимает.
+ * <p>
+ * - shouldCompress: принимает начало содержимого (не больше SAMPLE_SIZE байт) и возвращает true, если сжатие
+ * включено (storage.compression.enabled), содержимое не меньше storage.compression.min-size байт, не начинается
+ * с сигнатуры уже сжатого формата (zip и основанные на нем docx/jar/apk, gzip, bzip2, xz, zstd, 7z, rar, jpeg, png,
+ * gif, webp, mp4/mov, mkv/webm, mp3, ogg, flac, woff2) и пробное быстрое сжатие образца уменьшает его хотя бы на
+ * долю storage.compression.min-savings. Проверка образца стоит намного дешевле, чем сжатие всего файла впустую.
+ * Проверка сигнатуры isCompressedFormat используется и при сборке ZIP-архива, чтобы не сжимать такие файлы повторно.
+ * <p>
+ * - open: создает ParallelGzipOutputStream с уровнем сжатия storage.compression.level. Содержимое больше
+ * storage.compression.chunk-size сжимается блоками параллельно в пуле из storage.compression.threads потоков
+ * (0 - по числу процессоров). Пул общий для всех загрузок, поэтому сжатие не занимает больше ядер, чем задано.
+ */
+@Component
+public class BlobCompressor {
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int TRIAL_LEVEL = 1;
+    private static final byte[][] COMPRESSED_SIGNATURES = {
+            {'P', 'K', 3, 4},
+            {0x1f, (byte) 0x8b},
+            {'B', 'Z', 'h'},
+            {(byte) 0xfd, '7', 'z', 'X', 'Z', 0},
+            {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd},
+            {'7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c},
+            {'R', 'a', 'r', '!'},
+            {(byte) 0xff, (byte) 0xd8, (byte) 0xff},
+            {(byte) 0x89, 'P', 'N', 'G'},
+            {'G', 'I', 'F', '8'},
+            {0x1a, 0x45, (byte) 0xdf, (byte) 0xa3},
+            {'I', 'D', '3'},
+            {'O', 'g', 'g', 'S'},
+            {'f', 'L', 'a', 'C'},
+            {'w', 'O', 'F', '2'}};
+
+    private final boolean enabled;
+    private final int level;
+    private final int minSize;
+    private final double minSavings;
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+
+    @Autowired
+    public BlobCompressor(@Value("${storage.compression.enabled:false}") boolean enabled,
+                          @Value("${storage.compression.level:6}") int level,
+                          @Value("${storage.compression.min-size:4096}") int minSize,
+                          @Value("${storage.compression.min-savings:0.1}") double minSavings,
+                          @Value("${storage.compression.chunk-size:1048576}") int chunkSize,
+                          @Value("${storage.compression.threads:0}") int threads) {
+        this.enabled = enabled;
+        this.level = level;
+        this.minSize = minSize;
+        this.minSavings = minSavings;
+        this.chunkSize = chunkSize;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = enabled && this.threads > 1 ? Executors.newFixedThreadPool(this.threads, daemonThreads()) : null;
+    }
+
+    public static BlobCompressor disabled() {
+        return new BlobCompressor(false, Deflater.DEFAULT_COMPRESSION, 0, 0, SAMPLE_SIZE, 1);
+    }
+
+    public boolean shouldCompress(byte[] sample, int length) {
+        if (!enabled || length < minSize || length == 0 || isCompressedFormat(sample, length)) {
+            return false;
+        }
+        int compressed = ParallelGzipOutputStream.deflate(sample, length, true, TRIAL_LEVEL).length;
+        return compressed <= length * (1 - minSavings);
+    }
+
+    ParallelGzipOutputStream open(OutputStream out) throws IOException {
+        return new ParallelGzipOutputStream(out, level, chunkSize, executor, threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public static boolean isCompressedFormat(byte[] sample, int length) {
+        for (byte[] signature : COMPRESSED_SIGNATURES) {
+            if (startsWith(sample, length, 0, signature)) {
+                return true;
+            }
+        }
+        return startsWith(sample, length, 4, new byte[]{'f', 't', 'y', 'p'})
+                || (startsWith(sample, length, 0, new byte[]{'R', 'I', 'F', 'F'})
+                && startsWith(sample, length, 8, new byte[]{'W', 'E', 'B', 'P'}));
+    }
+
+    private static boolean startsWith(byte[] sample, int length, int offset, byte[] signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (sample[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger number = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "blob-compressor-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
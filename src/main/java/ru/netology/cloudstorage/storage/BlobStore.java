@@ -0,0 +1,106 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Интерфейс BlobStore описывает хранилище содержимого файлов (blob). В таблице files хранятся только метаданные
+ * файла и ключ blob_key, а сами байты файла находятся в реализации данного интерфейса.
+ * <p>
+ * - save: сохраняет содержимое из переданного потока и возвращает ключ, по которому его можно получить. Ключ
+ * является хэшем SHA-256 содержимого, поэтому одинаковое содержимое сохраняется под одним ключом один раз, а
+ * учет ссылок на него ведет BlobService.
+ * - open: открывает поток для чтения содержимого по ключу.
+ * - size: возвращает размер сохраненного содержимого в байтах.
+ * - exists: проверяет, существует ли содержимое с указанным ключом.
+ * - delete: удаляет содержимое по ключу. Возвращает true, если содержимое было удалено.
+ * - localPath: возвращает путь к файлу с содержимым, если хранилище держит его в локальной файловой системе.
+ * По этому пути содержимое можно отдать клиенту без копирования через кучу (sendfile, FileChannel.transferTo).
+ * Реализация по умолчанию возвращает null, и тогда содержимое читается через open.
+ * - concat: сохраняет новое содержимое, составленное из содержимого blobKeys подряд, и возвращает его ключ. В digest
+ * уже посчитан SHA-256 первых digested частей (например, по мере их загрузки), и реализация может не читать эти части
+ * повторно ради хэша. Реализация по умолчанию читает все части одним потоком и передает его в save, не используя
+ * digest.
+ * - setSaveGuard: задает обработчик, который save вызывает с ключом содержимого после того, как содержимое прочитано,
+ * но до проверки, хранится ли уже содержимое с таким ключом. BlobService через него не дает сборщику удалить
+ * содержимое без ссылок, которое сохраняется заново. Реализация по умолчанию обработчик не вызывает.
+ * <p>
+ * Хранилище может держать содержимое в сжатом виде. Методы open, size и localPath всегда работают с исходным
+ * (несжатым) содержимым, поэтому для сжатого содержимого localPath возвращает null. Для отдачи содержимого
+ * клиенту без распаковки служат:
+ * - storedEncoding: кодирование, в котором хранится содержимое ("gzip"), или null, если оно хранится как есть.
+ * - storedSize: сколько байтов содержимое реально занимает в хранилище.
+ * - storedPath: путь к локальному файлу с содержимым в том виде, в каком оно хранится (или null).
+ * - encodedSize и openEncoded: размер и поток содержимого в кодировании для заголовка Content-Encoding
+ * ("gzip" или "deflate"), полученные из хранимых байтов без распаковки и повторного сжатия.
+ */
+public interface BlobStore {
+
+    String save(InputStream content) throws IOException;
+
+    InputStream open(String blobKey) throws IOException;
+
+    long size(String blobKey) throws IOException;
+
+    boolean exists(String blobKey);
+
+    boolean delete(String blobKey);
+
+    default String concat(List<String> blobKeys, MessageDigest digest, int digested) throws IOException {
+        Iterator<String> iterator = blobKeys.iterator();
+        try (InputStream content = new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return open(iterator.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        })) {
+            return save(content);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    default void setSaveGuard(Consumer<String> saveGuard) {
+    }
+
+    default Path localPath(String blobKey) {
+        return null;
+    }
+
+    default String storedEncoding(String blobKey) {
+        return null;
+    }
+
+    default long storedSize(String blobKey) throws IOException {
+        return size(blobKey);
+    }
+
+    default Path storedPath(String blobKey) {
+        return localPath(blobKey);
+    }
+
+    default long encodedSize(String blobKey, String encoding) throws IOException {
+        throw new IOException("Blob is not stored encoded: " + blobKey);
+    }
+
+    default InputStream openEncoded(String blobKey, String encoding) throws IOException {
+        throw new IOException("Blob is not stored encoded: " + blobKey);
+    }
+}
@@ -0,0 +1,554 @@
+package ru.netology.cloudstorage.storage;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Класс ChunkedBlobStore является реализацией BlobStore, которая хранит содержимое не целиком, а блоками, границы
+ * которых определяет само содержимое (FastCdcChunker). Включается свойством storage.chunking.enabled=true и тогда
+ * заменяет FileSystemBlobStore (@Primary).
+ * <p>
+ * Каждый блок хранится один раз в отдельном FileSystemBlobStore (каталог chunks внутри storage.root) под ключом,
+ * равным его хэшу SHA-256, - это индекс блоков по хэшу. Для содержимого файла сохраняется только манифест:
+ * упорядоченный список ключей и длин его блоков (каталог manifests). Ключ содержимого по-прежнему равен SHA-256
+ * всего содержимого, поэтому строки files, учет ссылок в таблице blobs, "мгновенная" загрузка, загрузка дельты и
+ * сборщик BlobService работают без изменений, а похожие файлы и версии одного файла (образы виртуальных машин,
+ * дописываемые журналы) делят общие блоки.
+ * <p>
+ * - save: читает содержимое в буфер размером 2 * maxSize, отрезает блоки FastCdcChunker и записывает только те,
+ * которых еще нет в индексе; у уже существующего блока обновляется время изменения. Ключ блока уже посчитан при
+ * разбиении, поэтому новый блок пишется сразу во временный файл каталога chunks/tmp, без повторного хэширования,
+ * без попытки сжатия и без force на каждый блок. Барьер записи один на все содержимое: перед записью манифеста все
+ * новые блоки сбрасываются на диск (force), переименовываются под своими ключами, и затем сбрасываются на диск их
+ * каталоги. Поэтому под ключом блока всегда лежит полностью записанное содержимое, а манифест ссылается только на
+ * сохраненные блоки. Манифест пишется последним и атомарно (временный файл, force и переименование), поэтому
+ * читатель никогда не увидит неполный манифест. Если такое содержимое уже хранится (манифестом или целиком),
+ * манифест не пишется, а временные файлы новых блоков удаляются без сброса на диск. Как и в FileSystemBlobStore,
+ * перед проверкой существования манифеста вызывается обработчик setSaveGuard.
+ * - open: отдает содержимое потоком, последовательно открывая блоки манифеста. Пропуск байтов (skip) пропускает
+ * целые блоки без чтения, поэтому Range-запросы и чтение базы дельты не читают лишнего.
+ * - size и exists: по манифесту.
+ * - delete: удаляет только манифест. Блоки удаляет collectGarbage.
+ * Содержимое, сохраненное до включения режима, хранится целиком, и для него все методы передаются
+ * FileSystemBlobStore, поэтому включить режим можно на существующем хранилище.
+ * <p>
+ * - collectGarbage: запускается по расписанию (storage.chunking.gc.delay) и удаляет блоки, на которые не ссылается
+ * ни один манифест и которые не изменялись дольше storage.chunking.gc.grace-period миллисекунд. Сначала без
+ * блокировок выбираются такие старые блоки, запоминаются закрепленные блоки и читаются все манифесты, и из
+ * кандидатов исключаются блоки, на которые ссылается манифест или закрепление. Закрепленные блоки запоминаются до
+ * чтения манифестов: содержимое, которое снимает закрепление после этого, уже записало манифест, и сборщик его
+ * прочитает. Блокировка записи gcLock берется только на удаление оставшихся кандидатов: для каждого из них еще раз
+ * проверяется, что его не использует сохраняемое сейчас содержимое и время его изменения не обновилось. Блок,
+ * который сохранение начало использовать после чтения манифестов, либо закреплен, либо его время изменения уже
+ * обновлено (storeChunk под блокировкой чтения), поэтому повторного чтения манифестов под блокировкой не нужно.
+ * <p>
+ * save закрепляет (pinnedChunks) каждый блок сохраняемого содержимого до проверки его существования и снимает
+ * закрепление только после записи манифеста (или ошибки сохранения), а проверка существования и обновление времени
+ * изменения блока (storeChunk) выполняются под блокировкой чтения gcLock. Поэтому сборщик либо удаляет блок раньше
+ * этой проверки, и тогда save записывает его заново, либо видит закрепление или уже записанный манифест и блок не
+ * удаляет, даже если содержимое сохраняется дольше grace-period. Блокировка записи берется только на время
+ * удаления кандидатов, и параллельные сохранения друг друга не блокируют.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "storage.chunking.enabled", havingValue = "true")
+public class ChunkedBlobStore implements BlobStore {
+    final static Logger logger = Logger.getLogger(ChunkedBlobStore.class);
+    private static final Pattern BLOB_KEY_PATTERN = Pattern.compile("[0-9a-f]{32,128}");
+    private static final String CHUNKS_DIRECTORY = "chunks";
+    private static final String MANIFESTS_DIRECTORY = "manifests";
+    private static final String TMP_DIRECTORY = "tmp";
+    private static final int MANIFEST_MAGIC = 0x43444331;
+    private static final int KEY_BYTES = 32;
+
+    private final FileSystemBlobStore wholeStore;
+    private final FileSystemBlobStore chunkStore;
+    private final Path manifests;
+    private final Path tmp;
+    private final Path chunkTmp;
+    private final FastCdcChunker chunker;
+    private final Map<String, Integer> pinnedChunks = new ConcurrentHashMap<>();
+    private final ReadWriteLock gcLock = new ReentrantReadWriteLock();
+    private volatile Consumer<String> saveGuard = blobKey -> {
+    };
+
+    @Value("${storage.chunking.gc.grace-period:3600000}")
+    private long gracePeriod = 3600000;
+
+    @Autowired
+    public ChunkedBlobStore(FileSystemBlobStore wholeStore, @Value("${storage.root:storage}") String root,
+                            BlobCompressor compressor,
+                            @Value("${storage.chunking.min-size:16384}") int minSize,
+                            @Value("${storage.chunking.avg-size:65536}") int avgSize,
+                            @Value("${storage.chunking.max-size:262144}") int maxSize) throws IOException {
+        this.wholeStore = wholeStore;
+        Path rootPath = Paths.get(root).toAbsolutePath().normalize();
+        this.chunkStore = new FileSystemBlobStore(rootPath.resolve(CHUNKS_DIRECTORY).toString(), compressor);
+        this.manifests = rootPath.resolve(MANIFESTS_DIRECTORY);
+        this.tmp = manifests.resolve(TMP_DIRECTORY);
+        this.chunkTmp = rootPath.resolve(CHUNKS_DIRECTORY).resolve(TMP_DIRECTORY);
+        this.chunker = new FastCdcChunker(minSize, avgSize, maxSize);
+        Files.createDirectories(tmp);
+        Files.createDirectories(chunkTmp);
+        logger.info(String.format("Chunked blob storage, chunk sizes %d/%d/%d ", minSize, avgSize, maxSize));
+    }
+
+    @Override
+    public String save(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        MessageDigest chunkDigest = sha256();
+        HexFormat hex = HexFormat.of();
+        List<Chunk> chunks = new ArrayList<>();
+        Map<String, Path> written = new LinkedHashMap<>();
+        byte[] buffer = new byte[chunker.getMaxSize() * 2];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        long size = 0;
+        try {
+            while (true) {
+                if (!eof && end - start < chunker.getMaxSize()) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    while (!eof && end < buffer.length) {
+                        int read = content.read(buffer, end, buffer.length - end);
+                        if (read < 0) {
+                            eof = true;
+                        } else {
+                            end += read;
+                        }
+                    }
+                }
+                if (start == end) {
+                    break;
+                }
+                int length = chunker.cut(buffer, start, end - start);
+                digest.update(buffer, start, length);
+                chunkDigest.update(buffer, start, length);
+                String chunkKey = hex.formatHex(chunkDigest.digest());
+                pin(chunkKey);
+                chunks.add(new Chunk(chunkKey, length));
+                storeChunk(chunkKey, buffer, start, length, written);
+                size += length;
+                start += length;
+            }
+            String blobKey = hex.formatHex(digest.digest());
+            saveGuard.accept(blobKey);
+            if (!Files.isRegularFile(resolveManifest(blobKey)) && !wholeStore.exists(blobKey)) {
+                commitChunks(written);
+                writeManifest(blobKey, size, chunks);
+            }
+            return blobKey;
+        } finally {
+            for (Path temp : written.values()) {
+                Files.deleteIfExists(temp);
+            }
+            chunks.forEach(chunk -> unpin(chunk.key()));
+        }
+    }
+
+    @Override
+    public void setSaveGuard(Consumer<String> saveGuard) {
+        this.saveGuard = saveGuard;
+    }
+
+    @Override
+    public InputStream open(String blobKey) throws IOException {
+        List<Chunk> chunks = readManifest(blobKey);
+        return chunks != null ? new ChunkSequenceInputStream(chunks) : wholeStore.open(blobKey);
+    }
+
+    @Override
+    public long size(String blobKey) throws IOException {
+        Path manifest = resolveManifest(blobKey);
+        if (!Files.isRegularFile(manifest)) {
+            return wholeStore.size(blobKey);
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(manifest))) {
+            checkMagic(in.readInt(), blobKey);
+            return in.readLong();
+        }
+    }
+
+    @Override
+    public boolean exists(String blobKey) {
+        return Files.isRegularFile(resolveManifest(blobKey)) || wholeStore.exists(blobKey);
+    }
+
+    @Override
+    public boolean delete(String blobKey) {
+        try {
+            boolean deleted = Files.deleteIfExists(resolveManifest(blobKey));
+            return wholeStore.delete(blobKey) || deleted;
+        } catch (IOException e) {
+            logger.error(String.format("Error deleting blob: %s ", blobKey), e);
+            return false;
+        }
+    }
+
+    @Override
+    public Path localPath(String blobKey) {
+        return Files.isRegularFile(resolveManifest(blobKey)) ? null : wholeStore.localPath(blobKey);
+    }
+
+    @Override
+    public String storedEncoding(String blobKey) {
+        return Files.isRegularFile(resolveManifest(blobKey)) ? null : wholeStore.storedEncoding(blobKey);
+    }
+
+    @Override
+    public long storedSize(String blobKey) throws IOException {
+        return Files.isRegularFile(resolveManifest(blobKey)) ? size(blobKey) : wholeStore.storedSize(blobKey);
+    }
+
+    @Override
+    public Path storedPath(String blobKey) {
+        return Files.isRegularFile(resolveManifest(blobKey)) ? null : wholeStore.storedPath(blobKey);
+    }
+
+    @Override
+    public long encodedSize(String blobKey, String encoding) throws IOException {
+        return wholeStore.encodedSize(blobKey, encoding);
+    }
+
+    @Override
+    public InputStream openEncoded(String blobKey, String encoding) throws IOException {
+        return wholeStore.openEncoded(blobKey, encoding);
+    }
+
+    @Scheduled(initialDelayString = "${storage.chunking.gc.delay:3600000}",
+            fixedDelayString = "${storage.chunking.gc.delay:3600000}")
+    public void collectGarbage() {
+        try {
+            int deleted = collectGarbage(System.currentTimeMillis() - gracePeriod);
+            if (deleted > 0) {
+                logger.info(String.format("Reclaimed unreferenced chunks: %d ", deleted));
+            }
+        } catch (IOException e) {
+            logger.error("Error collecting unreferenced chunks", e);
+        }
+    }
+
+    int collectGarbage(long olderThan) throws IOException {
+        List<Path> candidates = new ArrayList<>();
+        Path chunks = manifests.resolveSibling(CHUNKS_DIRECTORY);
+        try (Stream<Path> paths = Files.walk(chunks)) {
+            paths.filter(path -> !path.getParent().endsWith(TMP_DIRECTORY) && Files.isRegularFile(path))
+                    .filter(path -> !path.getFileName().toString().endsWith(FileSystemBlobStore.INDEX_SUFFIX))
+                    .filter(path -> modifiedBefore(path, olderThan))
+                    .forEach(candidates::add);
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Set<String> referenced = new HashSet<>(pinnedChunks.keySet());
+        referenced.addAll(referencedChunks());
+        candidates.removeIf(path -> referenced.contains(chunkKey(path)));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        gcLock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (Path path : candidates) {
+                String chunkKey = chunkKey(path);
+                if (!pinnedChunks.containsKey(chunkKey) && modifiedBefore(path, olderThan)
+                        && chunkStore.delete(chunkKey)) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        } finally {
+            gcLock.writeLock().unlock();
+        }
+    }
+
+    private static String chunkKey(Path path) {
+        return path.getFileName().toString().split("\\.", 2)[0];
+    }
+
+    private Set<String> referencedChunks() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        try (Stream<Path> paths = Files.walk(manifests)) {
+            for (Path manifest : (Iterable<Path>) paths::iterator) {
+                String blobKey = manifest.getFileName().toString();
+                if (!Files.isRegularFile(manifest) || !BLOB_KEY_PATTERN.matcher(blobKey).matches()) {
+                    continue;
+                }
+                List<Chunk> manifestChunks = readManifest(blobKey);
+                if (manifestChunks != null) {
+                    manifestChunks.forEach(chunk -> referenced.add(chunk.key()));
+                }
+            }
+        }
+        return referenced;
+    }
+
+    private void storeChunk(String chunkKey, byte[] buffer, int off, int len, Map<String, Path> written)
+            throws IOException {
+        if (written.containsKey(chunkKey)) {
+            return;
+        }
+        gcLock.readLock().lock();
+        try {
+            Path stored = chunkStore.exists(chunkKey) ? chunkStore.storedPath(chunkKey) : null;
+            if (stored != null) {
+                try {
+                    Files.setLastModifiedTime(stored, FileTime.fromMillis(System.currentTimeMillis()));
+                    return;
+                } catch (NoSuchFileException e) {
+                    logger.warn(String.format("Chunk removed while saving, writing again: %s ", chunkKey));
+                }
+            }
+        } finally {
+            gcLock.readLock().unlock();
+        }
+        Path temp = Files.createTempFile(chunkTmp, "chunk", ".part");
+        written.put(chunkKey, temp);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, off, len);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    private void commitChunks(Map<String, Path> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        for (Path temp : written.values()) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Map.Entry<String, Path> chunk : written.entrySet()) {
+            Path target = chunkStore.resolve(chunk.getKey());
+            Files.createDirectories(target.getParent());
+            Files.move(chunk.getValue(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            directories.add(target.getParent());
+        }
+        written.clear();
+        for (Path directory : directories) {
+            forceDirectory(directory);
+        }
+    }
+
+    private void pin(String chunkKey) {
+        pinnedChunks.merge(chunkKey, 1, Integer::sum);
+    }
+
+    private void unpin(String chunkKey) {
+        pinnedChunks.computeIfPresent(chunkKey, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void writeManifest(String blobKey, long size, List<Chunk> chunks) throws IOException {
+        HexFormat hex = HexFormat.of();
+        Path temp = Files.createTempFile(tmp, "manifest", ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeLong(size);
+                out.writeInt(chunks.size());
+                for (Chunk chunk : chunks) {
+                    out.write(hex.parseHex(chunk.key()));
+                    out.writeInt(chunk.length());
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Path target = resolveManifest(blobKey);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    List<Chunk> readManifest(String blobKey) throws IOException {
+        Path manifest = resolveManifest(blobKey);
+        InputStream stored;
+        try {
+            stored = Files.newInputStream(manifest);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        HexFormat hex = HexFormat.of();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stored))) {
+            checkMagic(in.readInt(), blobKey);
+            in.readLong();
+            int count = in.readInt();
+            List<Chunk> chunks = new ArrayList<>(count);
+            byte[] key = new byte[KEY_BYTES];
+            for (int i = 0; i < count; i++) {
+                in.readFully(key);
+                chunks.add(new Chunk(hex.formatHex(key), in.readInt()));
+            }
+            return chunks;
+        }
+    }
+
+    private Path resolveManifest(String blobKey) {
+        if (blobKey == null || !BLOB_KEY_PATTERN.matcher(blobKey).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + blobKey);
+        }
+        return manifests.resolve(blobKey.substring(0, 2)).resolve(blobKey.substring(2, 4)).resolve(blobKey);
+    }
+
+    private static void checkMagic(int magic, String blobKey) throws IOException {
+        if (magic != MANIFEST_MAGIC) {
+            throw new IOException("Invalid chunk manifest: " + blobKey);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug(String.format("Directory cannot be forced: %s ", directory));
+        }
+    }
+
+    private static boolean modifiedBefore(Path path, long millis) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis() < millis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Блок содержимого в манифесте: ключ в индексе блоков и длина в байтах.
+     */
+    record Chunk(String key, int length) {
+    }
+
+    /**
+     * Поток содержимого, который по очереди читает блоки манифеста и пропускает целые блоки без чтения.
+     */
+    private class ChunkSequenceInputStream extends InputStream {
+        private final List<Chunk> chunks;
+        private int index;
+        private long chunkRemaining;
+        private InputStream current;
+
+        ChunkSequenceInputStream(List<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (chunkRemaining == 0) {
+                if (!nextChunk()) {
+                    return -1;
+                }
+            }
+            if (current == null) {
+                current = chunkStore.open(chunks.get(index - 1).key());
+            }
+            int read = current.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of chunk: " + chunks.get(index - 1).key());
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n) {
+                if (chunkRemaining == 0 && !nextChunk()) {
+                    break;
+                }
+                long step = Math.min(n - skipped, chunkRemaining);
+                if (current != null) {
+                    current.skipNBytes(step);
+                } else if (step < chunkRemaining) {
+                    current = chunkStore.open(chunks.get(index - 1).key());
+                    current.skipNBytes(step);
+                }
+                chunkRemaining -= step;
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            close();
+            if (index == chunks.size()) {
+                return false;
+            }
+            chunkRemaining = chunks.get(index++).length();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Класс DeltaInputStream восстанавливает новую версию файла из дельты (как в rsync) и хранимой версии (базы),
+ * отдавая ее как обычный входной поток. Поток передается в BlobStore.save, поэтому новая версия собирается на лету
+ * и целиком в памяти не держится.
+ * <p>
+ * Дельта - это последовательность команд в двоичном виде (целые числа big-endian):
+ * - 'C' int startBlock int count: скопировать count блоков базы, начиная с блока startBlock. Последний блок базы
+ * может быть короче blockSize;
+ * - 'L' int length, затем length байтов: вставить переданные байты как есть;
+ * - 'E': конец дельты. Если поток закончился раньше этой команды, тело запроса было обрезано, и чтение
+ * завершается исключением EOFException, чтобы неполная версия не была сохранена.
+ * <p>
+ * Если база лежит в локальном файле (BlobStore.localPath), блоки читаются через FileChannel по позиции, иначе поток
+ * базы открывается заново только при переходе назад и пропускает байты при переходе вперед. Для сжатой базы пропуск
+ * выполняет SeekableGzipInputStream по индексу блоков, поэтому переход стоит не больше одного блока. Номера блоков
+ * и длины проверяются, и некорректная дельта завершается исключением IOException.
+ */
+public class DeltaInputStream extends InputStream {
+    public static final int COPY = 'C';
+    public static final int LITERAL = 'L';
+    public static final int END = 'E';
+    public static final int MIN_BLOCK_SIZE = 512;
+    public static final int MAX_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private final DataInputStream delta;
+    private final BlobStore blobStore;
+    private final String basisKey;
+    private final long basisSize;
+    private final int blockSize;
+    private final FileChannel channel;
+    private InputStream basis;
+    private long basisPosition;
+    private long copyPosition;
+    private long copyRemaining;
+    private long literalRemaining;
+    private boolean ended;
+
+    public DeltaInputStream(InputStream delta, BlobStore blobStore, String basisKey, long basisSize, int blockSize)
+            throws IOException {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.delta = new DataInputStream(delta);
+        this.blobStore = blobStore;
+        this.basisKey = basisKey;
+        this.basisSize = basisSize;
+        this.blockSize = blockSize;
+        Path path = blobStore.localPath(basisKey);
+        this.channel = path != null ? FileChannel.open(path, StandardOpenOption.READ) : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (literalRemaining > 0) {
+                int read = delta.read(b, off, (int) Math.min(len, literalRemaining));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of delta");
+                }
+                literalRemaining -= read;
+                return read;
+            }
+            if (copyRemaining > 0) {
+                int read = readBasis(b, off, (int) Math.min(len, copyRemaining));
+                copyPosition += read;
+                copyRemaining -= read;
+                return read;
+            }
+            if (ended) {
+                return -1;
+            }
+            nextCommand();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (InputStream ignored = delta; InputStream basisStream = basis; FileChannel basisChannel = channel) {
+            basis = null;
+        }
+    }
+
+    private void nextCommand() throws IOException {
+        int command = delta.read();
+        switch (command) {
+            case COPY -> {
+                long startBlock = delta.readInt() & 0xffffffffL;
+                long count = delta.readInt() & 0xffffffffL;
+                long blocks = (basisSize + blockSize - 1) / blockSize;
+                if (count == 0 || startBlock + count > blocks) {
+                    throw new IOException(String.format("Invalid block range: %d+%d of %d", startBlock, count,
+                            blocks));
+                }
+                copyPosition = startBlock * blockSize;
+                copyRemaining = Math.min(count * blockSize, basisSize - copyPosition);
+            }
+            case LITERAL -> {
+                int length = delta.readInt();
+                if (length < 0) {
+                    throw new IOException("Invalid literal length: " + length);
+                }
+                literalRemaining = length;
+            }
+            case END -> ended = true;
+            case -1 -> throw new EOFException("Unexpected end of delta");
+            default -> throw new IOException("Unknown delta command: " + command);
+        }
+    }
+
+    private int readBasis(byte[] b, int off, int len) throws IOException {
+        int read;
+        if (channel != null) {
+            read = channel.read(ByteBuffer.wrap(b, off, len), copyPosition);
+        } else {
+            if (basis == null || basisPosition > copyPosition) {
+                if (basis != null) {
+                    basis.close();
+                }
+                basis = blobStore.open(basisKey);
+                basisPosition = 0;
+            }
+            basis.skipNBytes(copyPosition - basisPosition);
+            read = basis.read(b, off, len);
+            basisPosition = copyPosition + Math.max(read, 0);
+        }
+        if (read <= 0) {
+            throw new EOFException("Unexpected end of blob: " + basisKey);
+        }
+        return read;
+    }
+}
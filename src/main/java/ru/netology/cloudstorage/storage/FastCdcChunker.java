@@ -0,0 +1,83 @@
+package ru.netology.cloudstorage.storage;
+
+import java.util.SplittableRandom;
+
+/**
+ * Класс FastCdcChunker делит содержимое на блоки переменной длины по самому содержимому (content-defined chunking)
+ * по алгоритму FastCDC. Граница блока ставится там, где скользящий хэш Gear последних байтов (fp = (fp << 1) +
+ * GEAR[байт]) имеет нулевые старшие биты под маской. Поэтому вставка или удаление байтов в середине файла сдвигает
+ * только соседние границы, а остальные блоки новой версии совпадают с блоками прежней и хранятся один раз.
+ * <p>
+ * Как в FastCDC, первые minSize байтов блока не проверяются вовсе, до avgSize действует более строгая маска (на два
+ * бита больше), а после - более слабая (на два бита меньше). Это нормализует длины блоков вокруг avgSize, а блок
+ * не бывает длиннее maxSize. Таблица GEAR строится из фиксированного зерна, поэтому границы блоков одинакового
+ * содержимого не зависят от запуска приложения.
+ * <p>
+ * - cut: возвращает длину очередного блока, начинающегося с off. Передавать нужно не меньше maxSize байтов, если
+ * содержимое еще не закончилось, иначе граница может оказаться не там, где ее нашел бы проход по всему содержимому.
+ */
+public class FastCdcChunker {
+    private static final long GEAR_SEED = 0x5eed_cdc0_2024_0001L;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(GEAR_SEED);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskS;
+    private final long maskL;
+
+    public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize || Integer.bitCount(avgSize) != 1) {
+            throw new IllegalArgumentException(String.format("Invalid chunk sizes: %d/%d/%d", minSize, avgSize,
+                    maxSize));
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.maskS = -1L << (64 - bits - 2);
+        this.maskL = -1L << (64 - Math.max(bits - 2, 1));
+    }
+
+    public int cut(byte[] data, int off, int len) {
+        if (len <= minSize) {
+            return len;
+        }
+        int end = Math.min(len, maxSize);
+        int normal = Math.min(avgSize, end);
+        long fp = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fp = (fp << 1) + GEAR[data[off + i] & 0xff];
+            if ((fp & maskS) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            fp = (fp << 1) + GEAR[data[off + i] & 0xff];
+            if ((fp & maskL) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
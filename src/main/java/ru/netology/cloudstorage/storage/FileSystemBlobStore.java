@@ -0,0 +1,350 @@
+package ru.netology.cloudstorage.storage;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Класс FileSystemBlobStore является реализацией BlobStore, которая хранит содержимое файлов в локальной
+ * файловой системе.
+ * <p>
+ * Корневой каталог задается свойством storage.root. Внутри него содержимое раскладывается по подкаталогам
+ * по первым символам ключа (например, ключ "ab12cd..." будет сохранен как "ab/12/ab12cd..."), чтобы в одном
+ * каталоге не оказывалось слишком много файлов.
+ * <p>
+ * Содержимое копируется через буфер фиксированного размера BUFFER_SIZE, поэтому запись файла любого размера
+ * не требует памяти, пропорциональной размеру файла. Запись выполняется атомарно: содержимое сначала пишется
+ * во временный файл в каталоге tmp, сбрасывается на диск (force), и только затем временный файл
+ * переименовывается в итоговый путь. Поэтому читатель никогда не увидит
+ * недописанный blob, а после сбоя в каталоге tmp могут остаться лишь временные файлы.
+ * <p>
+ * Ключом содержимого служит его хэш SHA-256 (в шестнадцатеричном виде), который вычисляется во время записи
+ * временного файла. Поэтому одинаковое содержимое всегда получает один и тот же ключ и хранится один раз: при
+ * повторной записи временный файл просто заменяет уже существующий (атомарно и с тем же содержимым). Ключи
+ * файлов, записанных до перехода на хэши (UUID без дефисов), по-прежнему поддерживаются. Ключ проверяется
+ * регулярным выражением при каждом обращении, чтобы через ключ нельзя было выйти за пределы корневого каталога.
+ * Если содержимое с таким ключом уже хранится, временный файл удаляется, а сохраненное содержимое не переписывается.
+ * Перед этой проверкой вызывается обработчик setSaveGuard: он выполняется, когда ключ уже известен, а решение,
+ * записывать ли содержимое, еще не принято, поэтому сборщик BlobService либо успевает удалить старое содержимое до
+ * проверки (и тогда оно записывается заново), либо уже не удаляет его.
+ * <p>
+ * Содержимое может храниться сжатым. По началу содержимого (BlobCompressor.SAMPLE_SIZE байт) BlobCompressor решает,
+ * стоит ли его сжимать, и тогда содержимое сжимается прямо во время записи временного файла (большие файлы -
+ * параллельно блоками) и сохраняется в формате GzipBlobFormat рядом с обычным путем, с суффиксом ".gz". Если сжатый
+ * файл оказался не меньше исходного содержимого, он распаковывается обратно и хранится как есть. Методы open и size
+ * возвращают исходное содержимое и его размер, а storedPath и openEncoded позволяют отдать сжатые байты клиенту
+ * без распаковки.
+ * <p>
+ * Метод concat собирает содержимое из уже хранимых частей (загрузка по частям). Если все части хранятся без сжатия,
+ * они дописываются во временный файл напрямую: части, хэш которых уже посчитан, копируются средствами ядра
+ * (FileChannel.transferTo) без чтения в память приложения, а остальные читаются один раз, и по ним досчитывается
+ * хэш. Если хотя бы одна часть сжата, содержимое собирается потоком через save.
+ * <p>
+ * Вместе со сжатым файлом сохраняется индекс его блоков (суффикс ".gz.idx", см. GzipBlobFormat). Индекс переносится
+ * в итоговый каталог раньше сжатого файла и удаляется после него. Для сжатого содержимого open возвращает
+ * SeekableGzipInputStream, у которого пропуск байтов переходит сразу к нужному блоку, поэтому Range-запрос к концу
+ * большого файла не распаковывает весь файл. Сжатое содержимое, сохраненное без индекса, читается обычной
+ * распаковкой. Отдать исходное содержимое без копирования через кучу (localPath, sendfile) можно только для
+ * несжатого содержимого, поэтому сжатие по умолчанию выключено (storage.compression.enabled=false).
+ */
+@Component
+public class FileSystemBlobStore implements BlobStore {
+    final static Logger logger = Logger.getLogger(FileSystemBlobStore.class);
+    private static final Pattern BLOB_KEY_PATTERN = Pattern.compile("[0-9a-f]{32,128}");
+    private static final String TMP_DIRECTORY = "tmp";
+    private static final String TMP_SUFFIX = ".part";
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path tmp;
+    private final BlobCompressor compressor;
+    private volatile Consumer<String> saveGuard = blobKey -> {
+    };
+
+    public FileSystemBlobStore(String root) throws IOException {
+        this(root, BlobCompressor.disabled());
+    }
+
+    @Autowired
+    public FileSystemBlobStore(@Value("${storage.root:storage}") String root, BlobCompressor compressor)
+            throws IOException {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.tmp = this.root.resolve(TMP_DIRECTORY);
+        this.compressor = compressor;
+        Files.createDirectories(this.tmp);
+        logger.info(String.format("Blob storage root: %s ", this.root));
+    }
+
+    @Override
+    public String save(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(tmp, "blob", TMP_SUFFIX);
+        Path tempIndex = null;
+        String blobKey;
+        try {
+            byte[] sample = content.readNBytes(BlobCompressor.SAMPLE_SIZE);
+            digest.update(sample);
+            boolean compressed = compressor.shouldCompress(sample, sample.length);
+            boolean smaller = true;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                if (compressed) {
+                    ParallelGzipOutputStream gzip = compressor.open(out);
+                    gzip.write(sample);
+                    copy(content, gzip, digest);
+                    gzip.finish();
+                    GzipBlobFormat.patch(channel, gzip.getAdler(), gzip.getCount());
+                    smaller = channel.size() < gzip.getCount();
+                    if (smaller) {
+                        tempIndex = Files.createTempFile(tmp, "blob", TMP_SUFFIX);
+                        GzipBlobFormat.writeIndex(tempIndex, gzip.getCount(), gzip.getChunkSize(),
+                                gzip.getChunkOffsets());
+                    }
+                } else {
+                    out.write(sample);
+                    copy(content, out, digest);
+                }
+                channel.force(true);
+            }
+            if (compressed && !smaller) {
+                temp = decompress(temp);
+                compressed = false;
+            }
+            blobKey = HexFormat.of().formatHex(digest.digest());
+            saveGuard.accept(blobKey);
+            if (exists(blobKey)) {
+                Files.delete(temp);
+                return blobKey;
+            }
+            Path target = compressed ? resolveCompressed(blobKey) : resolve(blobKey);
+            Files.createDirectories(target.getParent());
+            if (compressed) {
+                Files.move(tempIndex, resolveIndex(blobKey), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            if (tempIndex != null) {
+                Files.deleteIfExists(tempIndex);
+            }
+        }
+        return blobKey;
+    }
+
+    @Override
+    public String concat(List<String> blobKeys, MessageDigest digest, int digested) throws IOException {
+        List<Path> paths = new ArrayList<>(blobKeys.size());
+        for (String blobKey : blobKeys) {
+            Path path = localPath(blobKey);
+            if (path == null || !Files.isRegularFile(path)) {
+                return BlobStore.super.concat(blobKeys, digest, digested);
+            }
+            paths.add(path);
+        }
+        Path temp = Files.createTempFile(tmp, "blob", TMP_SUFFIX);
+        String blobKey;
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                for (int i = 0; i < paths.size(); i++) {
+                    try (FileChannel in = FileChannel.open(paths.get(i), StandardOpenOption.READ)) {
+                        if (i < digested) {
+                            transfer(in, out);
+                        } else {
+                            copy(in, out, digest, buffer);
+                        }
+                    }
+                }
+                out.force(true);
+            }
+            blobKey = HexFormat.of().formatHex(digest.digest());
+            saveGuard.accept(blobKey);
+            if (exists(blobKey)) {
+                Files.delete(temp);
+                return blobKey;
+            }
+            Path target = resolve(blobKey);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return blobKey;
+    }
+
+    @Override
+    public void setSaveGuard(Consumer<String> saveGuard) {
+        this.saveGuard = saveGuard;
+    }
+
+    @Override
+    public InputStream open(String blobKey) throws IOException {
+        Path path = resolve(blobKey);
+        if (Files.isRegularFile(path)) {
+            return Files.newInputStream(path);
+        }
+        Path index = resolveIndex(blobKey);
+        if (Files.isRegularFile(index)) {
+            return new SeekableGzipInputStream(resolveCompressed(blobKey), GzipBlobFormat.readIndex(index));
+        }
+        return GzipBlobFormat.decompress(Files.newInputStream(resolveCompressed(blobKey)));
+    }
+
+    @Override
+    public long size(String blobKey) throws IOException {
+        Path path = resolve(blobKey);
+        if (Files.isRegularFile(path)) {
+            return Files.size(path);
+        }
+        try (InputStream stored = Files.newInputStream(resolveCompressed(blobKey))) {
+            return GzipBlobFormat.readSize(stored);
+        }
+    }
+
+    @Override
+    public boolean exists(String blobKey) {
+        return Files.isRegularFile(resolve(blobKey)) || Files.isRegularFile(resolveCompressed(blobKey));
+    }
+
+    @Override
+    public boolean delete(String blobKey) {
+        try {
+            boolean deleted = Files.deleteIfExists(resolve(blobKey));
+            deleted = Files.deleteIfExists(resolveCompressed(blobKey)) || deleted;
+            Files.deleteIfExists(resolveIndex(blobKey));
+            return deleted;
+        } catch (IOException e) {
+            logger.error(String.format("Error deleting blob: %s ", blobKey), e);
+            return false;
+        }
+    }
+
+    @Override
+    public Path localPath(String blobKey) {
+        Path path = resolve(blobKey);
+        return Files.isRegularFile(resolveCompressed(blobKey)) && !Files.isRegularFile(path) ? null : path;
+    }
+
+    @Override
+    public String storedEncoding(String blobKey) {
+        return localPath(blobKey) == null ? GzipBlobFormat.GZIP : null;
+    }
+
+    @Override
+    public long storedSize(String blobKey) throws IOException {
+        return Files.size(storedPath(blobKey));
+    }
+
+    @Override
+    public Path storedPath(String blobKey) {
+        Path path = localPath(blobKey);
+        return path != null ? path : resolveCompressed(blobKey);
+    }
+
+    @Override
+    public long encodedSize(String blobKey, String encoding) throws IOException {
+        if (storedEncoding(blobKey) == null) {
+            throw new IOException("Blob is not stored encoded: " + blobKey);
+        }
+        return GzipBlobFormat.encodedSize(storedSize(blobKey), encoding);
+    }
+
+    @Override
+    public InputStream openEncoded(String blobKey, String encoding) throws IOException {
+        long storedSize = encodedSize(blobKey, GzipBlobFormat.GZIP);
+        return GzipBlobFormat.encode(Files.newInputStream(resolveCompressed(blobKey)), storedSize, encoding);
+    }
+
+    private static void copy(InputStream content, OutputStream out, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) >= 0) {
+            digest.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static void transfer(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        for (long position = 0; position < size; ) {
+            position += in.transferTo(position, size - position, out);
+        }
+    }
+
+    private static void copy(FileChannel in, FileChannel out, MessageDigest digest, ByteBuffer buffer)
+            throws IOException {
+        while (in.read(buffer.clear()) >= 0) {
+            buffer.flip();
+            digest.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    private Path decompress(Path compressed) throws IOException {
+        Path raw = Files.createTempFile(tmp, "blob", TMP_SUFFIX);
+        try (InputStream in = GzipBlobFormat.decompress(Files.newInputStream(compressed));
+             FileChannel channel = FileChannel.open(raw, StandardOpenOption.WRITE)) {
+            in.transferTo(Channels.newOutputStream(channel));
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(raw);
+            throw e;
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+        return raw;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Path resolve(String blobKey) {
+        if (blobKey == null || !BLOB_KEY_PATTERN.matcher(blobKey).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + blobKey);
+        }
+        return root.resolve(blobKey.substring(0, 2)).resolve(blobKey.substring(2, 4)).resolve(blobKey);
+    }
+
+    Path resolveCompressed(String blobKey) {
+        Path path = resolve(blobKey);
+        return path.resolveSibling(blobKey + COMPRESSED_SUFFIX);
+    }
+
+    Path resolveIndex(String blobKey) {
+        Path path = resolve(blobKey);
+        return path.resolveSibling(blobKey + COMPRESSED_SUFFIX + INDEX_SUFFIX);
+    }
+}
@@ -0,0 +1,185 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Класс GzipBlobFormat описывает формат, в котором FileSystemBlobStore хранит сжатое содержимое. Это обычный
+ * файл gzip (RFC 1952) из одного члена, поэтому его можно отдать клиенту как есть с заголовком
+ * Content-Encoding: gzip.
+ * <p>
+ * В заголовке gzip всегда есть поле FEXTRA с подполем "CS" длиной 12 байт: контрольная сумма Adler-32 исходного
+ * содержимого (4 байта) и его размер (8 байт, в отличие от поля ISIZE в конце файла не ограничен 4 ГБ). Заголовок
+ * поэтому всегда занимает HEADER_LENGTH байт. Оба значения становятся известны только после записи всего
+ * содержимого, поэтому они дописываются в заголовок методом patch.
+ * <p>
+ * Сумма Adler-32 нужна, чтобы отдать содержимое клиенту с Content-Encoding: deflate (формат zlib, RFC 1950) без
+ * распаковки и повторного сжатия: сжатые данные внутри gzip и внутри zlib одинаковы, различаются только заголовок
+ * и контрольная сумма в конце (toDeflate).
+ * <p>
+ * Рядом со сжатым файлом хранится индекс (writeIndex, readIndex): размер исходного содержимого, размер блока
+ * ParallelGzipOutputStream и смещения начала каждого сжатого блока в файле. По нему SeekableGzipInputStream начинает
+ * распаковку с блока, в котором находится нужная позиция, а не с начала файла.
+ */
+final class GzipBlobFormat {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final int HEADER_LENGTH = 28;
+    static final int TRAILER_LENGTH = 8;
+    private static final int EXTRA_OFFSET = 16;
+    private static final int INDEX_MAGIC = 0x475a4931;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff,
+            16, 0, 'C', 'S', 12, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+
+    private GzipBlobFormat() {
+    }
+
+    static byte[] header() {
+        return HEADER.clone();
+    }
+
+    static void patch(FileChannel channel, long adler, long size) throws IOException {
+        ByteBuffer extra = ByteBuffer.allocate(HEADER_LENGTH - EXTRA_OFFSET).putInt((int) adler).putLong(size).flip();
+        long position = EXTRA_OFFSET;
+        while (extra.hasRemaining()) {
+            position += channel.write(extra, position);
+        }
+    }
+
+    static void writeIndex(Path path, long size, int chunkSize, long[] offsets) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(size);
+            out.writeInt(chunkSize);
+            out.writeInt(offsets.length);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    static Index readIndex(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Unsupported compressed blob index: " + path);
+            }
+            long size = in.readLong();
+            int chunkSize = in.readInt();
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+            return new Index(size, chunkSize, offsets);
+        }
+    }
+
+    static long readSize(InputStream stored) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(readHeader(stored), EXTRA_OFFSET + 4, 8)).readLong();
+    }
+
+    static InputStream decompress(InputStream stored) throws IOException {
+        return new GZIPInputStream(stored, BUFFER_SIZE);
+    }
+
+    static long encodedSize(long storedSize, String encoding) {
+        if (GZIP.equals(encoding)) {
+            return storedSize;
+        }
+        if (DEFLATE.equals(encoding)) {
+            return ZLIB_HEADER.length + storedSize - HEADER_LENGTH - TRAILER_LENGTH + 4;
+        }
+        throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+
+    static InputStream encode(InputStream stored, long storedSize, String encoding) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return stored;
+        }
+        if (DEFLATE.equals(encoding)) {
+            return toDeflate(stored, storedSize);
+        }
+        throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+
+    private static InputStream toDeflate(InputStream stored, long storedSize) throws IOException {
+        byte[] adler = Arrays.copyOfRange(readHeader(stored), EXTRA_OFFSET, EXTRA_OFFSET + 4);
+        InputStream data = new LimitedInputStream(stored, storedSize - HEADER_LENGTH - TRAILER_LENGTH);
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(ZLIB_HEADER), data, new ByteArrayInputStream(adler))));
+    }
+
+    private static byte[] readHeader(InputStream stored) throws IOException {
+        byte[] header = stored.readNBytes(HEADER_LENGTH);
+        if (header.length != HEADER_LENGTH || !Arrays.equals(header, 0, EXTRA_OFFSET, HEADER, 0, EXTRA_OFFSET)) {
+            stored.close();
+            throw new IOException("Unsupported compressed blob header");
+        }
+        return header;
+    }
+
+    /**
+     * Индекс сжатого файла: размер исходного содержимого, размер блока и смещения начала сжатых блоков в файле.
+     */
+    record Index(long size, int chunkSize, long[] offsets) {
+    }
+
+    /**
+     * Поток, который читает из исходного потока не больше заданного количества байтов.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value >= 0) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Класс ParallelGzipOutputStream сжимает записываемое содержимое в формат GzipBlobFormat, распределяя работу по
+ * нескольким потокам (как это делает pigz).
+ * <p>
+ * Содержимое делится на блоки по chunkSize байт. Каждый блок сжимается отдельным Deflater в пуле executor и
+ * завершается SYNC_FLUSH, а последний блок - FINISH, поэтому сжатые блоки, записанные друг за другом, образуют один
+ * корректный поток deflate. Результаты записываются в исходном порядке, а одновременно сжимается не больше
+ * maxInFlight блоков, чтобы память на загрузку не зависела от размера файла. Контрольные суммы CRC-32 (для gzip) и
+ * Adler-32 (для отдачи в формате deflate) считаются в вызывающем потоке по мере записи.
+ * <p>
+ * Каждый блок сжимается без словаря предыдущих блоков и заканчивается на границе байта, поэтому распаковку можно
+ * начать с начала любого блока. Смещения сжатых блоков от начала файла запоминаются (getChunkOffsets), и
+ * FileSystemBlobStore сохраняет их в индекс, по которому SeekableGzipInputStream переходит к нужному блоку.
+ * <p>
+ * Если executor не задан или содержимое помещается в один блок, сжатие выполняется в вызывающем потоке.
+ * Метод finish дописывает последний блок и окончание gzip, но не закрывает исходный поток: после него
+ * FileSystemBlobStore дописывает в заголовок сумму Adler-32 и размер содержимого.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int level;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final Adler32 adler = new Adler32();
+    private final List<Long> chunkOffsets = new ArrayList<>();
+    private long written;
+    private byte[] chunk;
+    private int chunkLength;
+    private long count;
+    private boolean finished;
+
+    ParallelGzipOutputStream(OutputStream out, int level, int chunkSize, ExecutorService executor, int maxInFlight)
+            throws IOException {
+        this.out = out;
+        this.level = level;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.chunk = new byte[chunkSize];
+        out.write(GzipBlobFormat.header());
+        this.written = GzipBlobFormat.HEADER_LENGTH;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream is finished");
+        }
+        crc.update(b, off, len);
+        adler.update(b, off, len);
+        count += len;
+        while (len > 0) {
+            int copied = Math.min(len, chunkSize - chunkLength);
+            System.arraycopy(b, off, chunk, chunkLength, copied);
+            chunkLength += copied;
+            off += copied;
+            len -= copied;
+            if (chunkLength == chunkSize) {
+                submit(chunk, chunkLength);
+                chunk = new byte[chunkSize];
+                chunkLength = 0;
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        while (!pending.isEmpty()) {
+            writeChunk(await(pending.poll()));
+        }
+        writeChunk(deflate(chunk, chunkLength, true, level));
+        chunk = null;
+        byte[] trailer = new byte[GzipBlobFormat.TRAILER_LENGTH];
+        writeIntLE(trailer, 0, crc.getValue());
+        writeIntLE(trailer, 4, count);
+        out.write(trailer);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+            out.close();
+        }
+    }
+
+    public long getAdler() {
+        return adler.getValue();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long[] getChunkOffsets() {
+        return chunkOffsets.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void writeChunk(byte[] compressed) throws IOException {
+        chunkOffsets.add(written);
+        out.write(compressed);
+        written += compressed.length;
+    }
+
+    private void submit(byte[] data, int length) throws IOException {
+        if (executor == null) {
+            writeChunk(deflate(data, length, false, level));
+            return;
+        }
+        pending.add(executor.submit(() -> deflate(data, length, false, level)));
+        while (pending.size() > maxInFlight || (!pending.isEmpty() && pending.peek().isDone())) {
+            writeChunk(await(pending.poll()));
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    static byte[] deflate(byte[] data, int length, boolean last, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int written;
+                do {
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, written);
+                } while (written == buffer.length || !deflater.needsInput());
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLE(byte[] target, int offset, long value) {
+        for (int i = 0; i < 4; i++) {
+            target[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
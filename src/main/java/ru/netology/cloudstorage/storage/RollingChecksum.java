@@ -0,0 +1,41 @@
+package ru.netology.cloudstorage.storage;
+
+/**
+ * Класс RollingChecksum вычисляет слабую контрольную сумму блока в том виде, в каком ее использует rsync:
+ * a - сумма байтов блока, b - сумма байтов, умноженных на их расстояние до конца блока (len - i), обе по модулю
+ * 2^16, а значение суммы равно (b << 16) | a.
+ * <p>
+ * Сумму можно "прокатить" на один байт вперед методом roll за O(1), не пересчитывая весь блок: так клиент ищет
+ * совпадения блоков хранимого файла на каждой позиции своего файла, а сервер публикует эти суммы в сигнатуре
+ * файла (см. FileService.getSignature). Значение возвращается как беззнаковое 32-битное число.
+ */
+public final class RollingChecksum {
+    private int a;
+    private int b;
+    private int length;
+
+    public RollingChecksum reset(byte[] data, int off, int len) {
+        a = 0;
+        b = 0;
+        for (int i = 0; i < len; i++) {
+            int value = data[off + i] & 0xff;
+            a += value;
+            b += (len - i) * value;
+        }
+        length = len;
+        return this;
+    }
+
+    public void roll(byte out, byte in) {
+        a += (in & 0xff) - (out & 0xff);
+        b += a - length * (out & 0xff);
+    }
+
+    public long getValue() {
+        return ((long) (b & 0xffff) << 16) | (a & 0xffff);
+    }
+
+    public static long of(byte[] data, int off, int len) {
+        return new RollingChecksum().reset(data, off, len).getValue();
+    }
+}
@@ -0,0 +1,116 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Класс SeekableGzipInputStream читает исходное содержимое из файла в формате GzipBlobFormat, у которого есть индекс
+ * сжатых блоков.
+ * <p>
+ * Чтение идет как у обычного потока распаковки. Пропуск байтов (skip) не распаковывает пропускаемое содержимое
+ * целиком: если новая позиция находится в одном из следующих блоков, распаковка начинается заново со смещения этого
+ * блока в файле, и распаковываются только байты от начала блока до новой позиции (не больше размера блока).
+ * Поэтому Range-запросы и переходы по базе дельты стоят не больше одного блока, а не всего предшествующего
+ * содержимого. Окончание gzip (CRC-32 и размер) не проверяется, так как при переходах читается не все содержимое.
+ */
+class SeekableGzipInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final GzipBlobFormat.Index index;
+    private final Inflater inflater = new Inflater(true);
+    private InputStream inflated;
+    private long position;
+    private byte[] skipBuffer;
+
+    SeekableGzipInputStream(Path stored, GzipBlobFormat.Index index) throws IOException {
+        this.channel = FileChannel.open(stored, StandardOpenOption.READ);
+        this.index = index;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= index.size()) {
+            return -1;
+        }
+        if (inflated == null) {
+            seek(position);
+        }
+        int read = inflated.read(b, off, (int) Math.min(len, index.size() - position));
+        if (read < 0) {
+            throw new EOFException("Unexpected end of compressed blob");
+        }
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long target = Math.min(index.size(), position + n);
+        long skipped = target - position;
+        if (inflated == null || chunkOf(target) > chunkOf(position)) {
+            seek(target);
+            return skipped;
+        }
+        discard(skipped);
+        position = target;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private void seek(long target) throws IOException {
+        int chunk = chunkOf(target);
+        inflater.reset();
+        channel.position(index.offsets()[chunk]);
+        inflated = new InflaterInputStream(Channels.newInputStream(channel), inflater, BUFFER_SIZE);
+        position = (long) chunk * index.chunkSize();
+        discard(target - position);
+        position = target;
+    }
+
+    private void discard(long length) throws IOException {
+        if (skipBuffer == null && length > 0) {
+            skipBuffer = new byte[BUFFER_SIZE];
+        }
+        while (length > 0) {
+            int read = inflated.read(skipBuffer, 0, (int) Math.min(skipBuffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of compressed blob");
+            }
+            length -= read;
+        }
+    }
+
+    private int chunkOf(long target) {
+        return (int) Math.min(target / index.chunkSize(), index.offsets().length - 1);
+    }
+}
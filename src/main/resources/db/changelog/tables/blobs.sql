@@ -0,0 +1,9 @@
+create table blobs
+(
+    blob_key    varchar(128) primary key,
+    size        bigint  not null,
+    ref_count   integer not null,
+    orphaned_at timestamp
+);
+
+create index blobs_orphaned_at_idx on blobs (orphaned_at) where ref_count = 0;
@@ -0,0 +1,5 @@
+alter table blobs add column stored_size bigint;
+
+update blobs set stored_size = size;
+
+alter table blobs alter column stored_size set not null;
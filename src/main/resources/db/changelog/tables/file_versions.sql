@@ -0,0 +1,16 @@
+alter table files
+    add column version integer not null default 1;
+
+create table file_versions
+(
+    id          bigserial primary key,
+    file_id     bigint       not null references files (id),
+    version     integer      not null,
+    blob_key    varchar(128) not null,
+    size        bigint       not null,
+    created_at  timestamp,
+    archived_at timestamp    not null,
+    unique (file_id, version)
+);
+
+create index file_versions_archived_at_idx on file_versions (archived_at);
@@ -0,0 +1,5 @@
+alter table files
+    add column blob_key varchar(128);
+
+alter table files
+    alter column file_content drop not null;
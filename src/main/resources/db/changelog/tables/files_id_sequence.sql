@@ -0,0 +1 @@
+alter sequence files_id_seq increment by 50;
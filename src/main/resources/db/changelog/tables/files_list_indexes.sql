@@ -0,0 +1,10 @@
+update files
+set edited_at = timestamp '1970-01-01 00:00:00'
+where edited_at is null;
+
+alter table files
+    alter column edited_at set not null;
+
+create index files_user_filename_idx on files (user_id, filename, id);
+create index files_user_size_idx on files (user_id, size, id);
+create index files_user_edited_at_idx on files (user_id, edited_at, id);
@@ -0,0 +1,5 @@
+alter table files
+    drop constraint files_filename_key;
+
+alter table files
+    add constraint files_user_filename_key unique (user_id, filename);
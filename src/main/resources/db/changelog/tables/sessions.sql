@@ -0,0 +1,8 @@
+create table sessions
+(
+    token_hash varchar(64) primary key,
+    user_id    bigint    not null references users (id) on delete cascade,
+    expires_at timestamp not null
+);
+
+create index sessions_expires_at_idx on sessions (expires_at);
@@ -0,0 +1,19 @@
+create table upload_sessions
+(
+    id         varchar(36) primary key,
+    user_id    bigint       not null references users (id) on delete cascade,
+    filename   varchar(256) not null,
+    created_at timestamp    not null,
+    expires_at timestamp    not null
+);
+
+create index upload_sessions_expires_at_idx on upload_sessions (expires_at);
+
+create table upload_parts
+(
+    session_id  varchar(36)  not null references upload_sessions (id) on delete cascade,
+    part_number integer      not null,
+    blob_key    varchar(128) not null,
+    size        bigint       not null,
+    primary key (session_id, part_number)
+);
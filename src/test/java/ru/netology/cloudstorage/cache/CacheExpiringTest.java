@@ -0,0 +1,114 @@
+package ru.netology.cloudstorage.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Класс тестов CacheExpiringTest проверяет ExpiringCache: просроченная запись не возвращается и удаляется,
+ * при переполнении вытесняется запись, к которой дольше всего не обращались, а для большого кэша вытесняется
+ * сразу около 10% записей. Также проверяется, что условное удаление и условная замена (replace) не затрагивают
+ * запись с другим значением, что просроченная запись для replace считается отсутствующей и что
+ * одновременные чтения и добавления из нескольких потоков не превышают ограничение размера.
+ */
+public class CacheExpiringTest {
+    public static final long NOW = System.currentTimeMillis();
+    public static final long EXPIRES_AT = NOW + 60_000L;
+
+    private ExpiringCache<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ExpiringCache<>();
+    }
+
+    @Test
+    void expiredEntry() {
+        cache.put("a", "1", NOW, 10);
+        cache.put("b", "2", EXPIRES_AT, 10);
+        Assertions.assertNull(cache.get("a", NOW));
+        Assertions.assertEquals("2", cache.get("b", NOW));
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(1, cache.removeExpired(EXPIRES_AT));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        cache.put("a", "1", EXPIRES_AT, 2);
+        cache.put("b", "2", EXPIRES_AT, 2);
+        cache.get("a", NOW);
+        Assertions.assertEquals(1, cache.put("c", "3", EXPIRES_AT, 2));
+        Assertions.assertNull(cache.get("b", NOW));
+        Assertions.assertEquals("1", cache.get("a", NOW));
+        Assertions.assertEquals("3", cache.get("c", NOW));
+    }
+
+    @Test
+    void evictInBatches() {
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value", EXPIRES_AT, 100);
+        }
+        Assertions.assertEquals(11, cache.put("key100", "value", EXPIRES_AT, 100));
+        Assertions.assertEquals(90, cache.size());
+        Assertions.assertNull(cache.get("key0", NOW));
+        Assertions.assertEquals("value", cache.get("key100", NOW));
+    }
+
+    @Test
+    void removeByValue() {
+        String value = new String("1");
+        cache.put("a", value, EXPIRES_AT, 10);
+        Assertions.assertFalse(cache.remove("a", new String("1")));
+        Assertions.assertTrue(cache.remove("a", value));
+        Assertions.assertNull(cache.get("a", NOW));
+        cache.put("b", "2", EXPIRES_AT, 10);
+        cache.put("c", "3", EXPIRES_AT, 10);
+        Assertions.assertEquals(1, cache.removeIf("2"::equals));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void replaceExpected() {
+        String value = new String("1");
+        Assertions.assertTrue(cache.replace("a", null, value, EXPIRES_AT, 10));
+        Assertions.assertFalse(cache.replace("a", null, "2", EXPIRES_AT, 10));
+        Assertions.assertFalse(cache.replace("a", new String("1"), "2", EXPIRES_AT, 10));
+        Assertions.assertTrue(cache.replace("a", value, "2", EXPIRES_AT, 10));
+        Assertions.assertEquals("2", cache.get("a", NOW));
+        cache.put("b", "3", NOW, 10);
+        Assertions.assertTrue(cache.replace("b", null, "4", EXPIRES_AT, 10));
+        Assertions.assertEquals("4", cache.get("b", NOW));
+    }
+
+    @Test
+    void concurrentAccess() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        String key = "key" + (i * 8 + offset) % 5_000;
+                        if (cache.get(key, NOW) == null) {
+                            cache.put(key, key, EXPIRES_AT, 1_000);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(cache.size() <= 1_000, String.valueOf(cache.size()));
+    }
+}
@@ -0,0 +1,244 @@
+package ru.netology.cloudstorage.controller;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.response.ResponseFile;
+import ru.netology.cloudstorage.response.ResponseFilePage;
+import ru.netology.cloudstorage.services.FileArchiveService;
+import ru.netology.cloudstorage.services.FileBatchService;
+import ru.netology.cloudstorage.services.FileService;
+import ru.netology.cloudstorage.services.UploadSessionService;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Класс тестов ControllerFileTest проверяет отдачу файла методом GET /file контроллера FileStorageController
+ * с помощью MockMvc без запуска приложения: сервис FileService заменен заглушкой Mockito.
+ * <p>
+ * Проверяется полная отдача файла с заголовками Content-Length и Accept-Ranges, частичная отдача по заголовку
+ * Range (206 и Content-Range), ответ 416 для диапазона за пределами файла и отдача файла целиком, если
+ * условие If-Range не совпадает с Last-Modified. Для содержимого, которое хранится сжатым, проверяется отдача
+ * сжатых байтов как есть с Content-Encoding: gzip и отдача несжатого диапазона, если клиент запросил Range.
+ * <p>
+ * Условные запросы: ответ содержит ETag по ключу содержимого, запросы с совпадающим If-None-Match или
+ * If-Modified-Since получают 304 без обращения к содержимому, а список файлов GET /list с неизменным ETag
+ * возвращает 304 с пустым телом.
+ * <p>
+ * Загрузка дельты PUT /file/delta передается сервису только при совпадающем If-Match, иначе возвращается 412.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ControllerFileTest {
+    public static final String BEARER_TOKEN = "Bearer Token";
+    public static final String FILENAME_1 = "Filename1";
+    public static final byte[] FILE_CONTENT_1 = "0123456789".getBytes();
+    public static final byte[] GZIP_CONTENT_1 = {0x1f, (byte) 0x8b, 8, 4, 1, 2, 3};
+    public static final LocalDateTime EDITED_AT = LocalDateTime.of(2024, 1, 15, 10, 30, 0);
+    public static final User USER_1 = new User(101L, "Auth_Username1", "Auth_Password1", null);
+    public static final File FILE_1 = new File(1L, FILENAME_1, EDITED_AT, (long) FILE_CONTENT_1.length,
+            "0123456789abcdef0123456789abcdef", USER_1);
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private FileBatchService fileBatchService;
+
+    @Mock
+    private FileArchiveService fileArchiveService;
+
+    @Mock
+    private UploadSessionService uploadSessionService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mockMvc = MockMvcBuilders.standaloneSetup(new FileStorageController(fileService, fileBatchService,
+                fileArchiveService, uploadSessionService)).build();
+        Mockito.when(fileService.downloadFile(BEARER_TOKEN, FILENAME_1)).thenReturn(FILE_1);
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(3);
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            out.write(FILE_CONTENT_1, (int) offset, (int) length);
+            return null;
+        }).when(fileService).writeContent(Mockito.eq(FILE_1), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void downloadFile() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, FILE_CONTENT_1.length))
+                .andExpect(content().bytes(FILE_CONTENT_1));
+    }
+
+    @Test
+    void downloadFileCompressed() throws Exception {
+        Mockito.when(fileService.getStoredEncoding(FILE_1)).thenReturn("gzip");
+        Mockito.when(fileService.getEncodedLength(FILE_1, "gzip")).thenReturn((long) GZIP_CONTENT_1.length);
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write(GZIP_CONTENT_1);
+            return null;
+        }).when(fileService).writeEncodedContent(Mockito.eq(FILE_1), Mockito.eq("gzip"), Mockito.any());
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "deflate;q=0.5, gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, GZIP_CONTENT_1.length))
+                .andExpect(content().bytes(GZIP_CONTENT_1));
+    }
+
+    @Test
+    void downloadFileCompressedRange() throws Exception {
+        Mockito.when(fileService.getStoredEncoding(FILE_1)).thenReturn("gzip");
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(Arrays.copyOfRange(FILE_CONTENT_1, 2, 6)));
+    }
+
+    @Test
+    void acceptedEncoding() {
+        Assertions.assertEquals("gzip", FileStorageController.acceptedEncoding("gzip, deflate, br"));
+        Assertions.assertEquals("deflate", FileStorageController.acceptedEncoding("deflate, gzip;q=0"));
+        Assertions.assertEquals("gzip", FileStorageController.acceptedEncoding("*"));
+        Assertions.assertNull(FileStorageController.acceptedEncoding("br, identity"));
+        Assertions.assertNull(FileStorageController.acceptedEncoding(null));
+    }
+
+    @Test
+    void downloadFileNotModifiedByETag() throws Exception {
+        String etag = "\"" + FILE_1.getBlobKey() + "\"";
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1))
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        Mockito.clearInvocations(fileService);
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+        Mockito.verify(fileService, Mockito.never()).getStoredEncoding(Mockito.any());
+        Mockito.verify(fileService, Mockito.never())
+                .writeContent(Mockito.any(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void downloadFileNotModifiedSince() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 01 Jan 2001 00:00:00 GMT"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 01 Jan 2100 00:00:00 GMT"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void uploadFileDeltaIfMatch() throws Exception {
+        MockMvc mockMvcWithAdvice = MockMvcBuilders.standaloneSetup(new FileStorageController(fileService,
+                fileBatchService, fileArchiveService, uploadSessionService))
+                .setControllerAdvice(new ExceptionController()).build();
+        mockMvcWithAdvice.perform(put("/file/delta").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .param("blockSize", "1024").header(HttpHeaders.IF_MATCH, "\"other\"").content(new byte[]{'E'}))
+                .andExpect(status().isPreconditionFailed());
+        Mockito.verify(fileService, Mockito.never()).uploadFileDelta(Mockito.any(), Mockito.any(), Mockito.anyInt(),
+                Mockito.any(), Mockito.any());
+        mockMvcWithAdvice.perform(put("/file/delta").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .param("blockSize", "1024").header(HttpHeaders.IF_MATCH, "\"" + FILE_1.getBlobKey() + "\"")
+                        .content(new byte[]{'E'}))
+                .andExpect(status().isOk());
+        Mockito.verify(fileService, Mockito.times(1)).uploadFileDelta(Mockito.eq(BEARER_TOKEN), Mockito.eq(FILE_1),
+                Mockito.eq(1024), Mockito.isNull(), Mockito.any(InputStream.class));
+    }
+
+    @Test
+    void listNotModified() throws Exception {
+        Mockito.when(fileService.getAllFiles(BEARER_TOKEN, 3, null, null)).thenReturn(
+                new ResponseFilePage(List.of(new ResponseFile(FILENAME_1, FILE_CONTENT_1.length)), null));
+        String etag = mockMvc.perform(get("/list").header("auth-token", BEARER_TOKEN).param("limit", "3"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assertions.assertNotNull(etag);
+        mockMvc.perform(get("/list").header("auth-token", BEARER_TOKEN).param("limit", "3")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void downloadFileRange() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().bytes(Arrays.copyOfRange(FILE_CONTENT_1, 2, 6)));
+    }
+
+    @Test
+    void downloadFileSuffixRange() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().bytes(Arrays.copyOfRange(FILE_CONTENT_1, 7, 10)));
+    }
+
+    @Test
+    void downloadFileRangeNotSatisfiable() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void downloadFileIfRangeMatches() throws Exception {
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(ZonedDateTime.of(EDITED_AT, ZoneId.systemDefault()).withZoneSameInstant(ZoneId.of("GMT")));
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, lastModified))
+                .andExpect(status().isPartialContent());
+    }
+
+    @Test
+    void downloadFileIfRangeChanged() throws Exception {
+        mockMvc.perform(get("/file").header("auth-token", BEARER_TOKEN).param("filename", FILENAME_1)
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "Mon, 01 Jan 2001 00:00:00 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(FILE_CONTENT_1));
+    }
+}
@@ -0,0 +1,238 @@
+package ru.netology.cloudstorage.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.UserRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Нагрузочный тест ControllerListLatencyTest проверяет, что медленные клиенты, скачивающие и загружающие файлы,
+ * не задерживают запросы списка файлов GET /list. Приложение запускается целиком на случайном порту с базой данных
+ * из application.properties (как в тестах репозиториев) и пулом из POOL_SIZE соединений.
+ * <p>
+ * SLOW_CLIENTS клиентов (больше, чем соединений в пуле) скачивают файл размером FILE_SIZE, читая по SLOW_CHUNK
+ * байтов каждые SLOW_PAUSE миллисекунд через сокет с маленьким буфером приема, и столько же клиентов так же медленно
+ * загружают файлы. GET /list выполняется LIST_REQUESTS раз без нагрузки (базовая задержка на этой машине) и
+ * столько же раз, пока медленные клиенты передают данные. Под нагрузкой каждый запрос должен завершиться успешно
+ * быстрее CONNECTION_TIMEOUT (connection-timeout пула), а медиана задержки не должна превышать медиану без
+ * нагрузки больше чем в MAX_SLOWDOWN раз. Если бы передача содержимого удерживала соединение с базой данных,
+ * запросам /list не хватило бы соединений, и они ждали бы соединение до connection-timeout или завершались бы
+ * ошибкой. Граница задается относительно измеренной базовой задержки, а не абсолютным числом миллисекунд, поэтому
+ * тест не зависит от скорости машины. Sendfile в Tomcat отключен, чтобы скачивание шло через
+ * FileService.writeContent, а задержки /list без нагрузки и под нагрузкой записываются в журнал для сравнения.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.hikari.maximum-pool-size=" + ControllerListLatencyTest.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=" + ControllerListLatencyTest.CONNECTION_TIMEOUT,
+        "storage.compression.enabled=false",
+        "spring.jpa.show-sql=false"})
+public class ControllerListLatencyTest {
+    final static Logger logger = Logger.getLogger(ControllerListLatencyTest.class);
+    public static final int POOL_SIZE = 4;
+    public static final long CONNECTION_TIMEOUT = 2000;
+    public static final int SLOW_CLIENTS = 8;
+    public static final int FILE_SIZE = 16 * 1024 * 1024;
+    public static final int SLOW_CHUNK = 1024;
+    public static final long SLOW_PAUSE = 20;
+    public static final int LIST_REQUESTS = 50;
+    public static final long MAX_SLOWDOWN = 10;
+    public static final String PASSWORD = "password";
+
+    @TempDir
+    static Path storageRoot;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private User user;
+    private String authToken;
+    private String filename;
+
+    @DynamicPropertySource
+    static void storageProperties(DynamicPropertyRegistry registry) {
+        registry.add("storage.root", () -> storageRoot.toString());
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String login = "latency_" + UUID.randomUUID();
+        user = userRepository.save(new User(null, login, passwordEncoder.encode(PASSWORD), null));
+        HttpResponse<String> response = client.send(request("/login")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(String.format("{\"login\":\"%s\",\"password\":\"%s\"}",
+                        login, PASSWORD))).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        authToken = "Bearer " + new ObjectMapper().readTree(response.body()).get("auth-token").asText();
+
+        filename = "latency_" + UUID.randomUUID() + ".bin";
+        byte[] content = new byte[FILE_SIZE];
+        new Random(1).nextBytes(content);
+        HttpResponse<String> upload = client.send(request("/file?filename=" + filename)
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content)).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, upload.statusCode());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.send(request("/file?filename=" + filename).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        client.send(request("/logout").POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        userRepository.deleteById(user.getId());
+    }
+
+    @Test
+    void listLatencyWithSlowTransfers() throws Exception {
+        List<Long> baseline = measureList();
+
+        ExecutorService clients = Executors.newFixedThreadPool(SLOW_CLIENTS * 2);
+        CountDownLatch started = new CountDownLatch(SLOW_CLIENTS * 2);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> transfers = new ArrayList<>();
+        List<Long> loaded;
+        try {
+            for (int i = 0; i < SLOW_CLIENTS; i++) {
+                transfers.add(clients.submit(() -> slowDownload(started, stop)));
+                String uploadName = filename + ".upload" + i;
+                transfers.add(clients.submit(() -> slowUpload(uploadName, started, stop)));
+            }
+            Assertions.assertTrue(started.await(30, TimeUnit.SECONDS));
+            loaded = measureList();
+        } finally {
+            stop.set(true);
+            clients.shutdown();
+        }
+        for (Future<?> transfer : transfers) {
+            transfer.get(30, TimeUnit.SECONDS);
+        }
+
+        String latencies = String.format("/list latency, ms: idle median %d max %d; "
+                        + "%d slow downloads and uploads median %d max %d", median(baseline), max(baseline),
+                SLOW_CLIENTS, median(loaded), max(loaded));
+        logger.info(latencies);
+        Assertions.assertTrue(max(loaded) < CONNECTION_TIMEOUT, latencies);
+        Assertions.assertTrue(median(loaded) <= Math.max(median(baseline), 1) * MAX_SLOWDOWN, latencies);
+    }
+
+    private List<Long> measureList() throws Exception {
+        List<Long> latencies = new ArrayList<>(LIST_REQUESTS);
+        for (int i = 0; i < LIST_REQUESTS; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = client.send(request("/list?limit=100").GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            Assertions.assertEquals(200, response.statusCode());
+        }
+        return latencies;
+    }
+
+    private Void slowDownload(CountDownLatch started, AtomicBoolean stop) throws IOException, InterruptedException {
+        try (Socket socket = openSocket()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(String.format("GET /file?filename=%s HTTP/1.1\r\nHost: localhost\r\nauth-token: %s\r\n"
+                    + "Connection: close\r\n\r\n", filename, authToken).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[SLOW_CHUNK];
+            Assertions.assertTrue(in.readNBytes(buffer, 0, SLOW_CHUNK) > 0);
+            started.countDown();
+            while (!stop.get() && in.readNBytes(buffer, 0, SLOW_CHUNK) > 0) {
+                Thread.sleep(SLOW_PAUSE);
+            }
+        }
+        return null;
+    }
+
+    private Void slowUpload(String uploadName, CountDownLatch started, AtomicBoolean stop)
+            throws IOException, InterruptedException {
+        try (Socket socket = openSocket()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(String.format("POST /file?filename=%s HTTP/1.1\r\nHost: localhost\r\nauth-token: %s\r\n"
+                    + "Content-Type: application/octet-stream\r\nContent-Length: %d\r\nConnection: close\r\n\r\n",
+                    uploadName, authToken, FILE_SIZE).getBytes(StandardCharsets.UTF_8));
+            byte[] chunk = new byte[SLOW_CHUNK];
+            out.write(chunk);
+            out.flush();
+            started.countDown();
+            for (long sent = SLOW_CHUNK; !stop.get() && sent < FILE_SIZE; sent += SLOW_CHUNK) {
+                out.write(chunk);
+                out.flush();
+                Thread.sleep(SLOW_PAUSE);
+            }
+        }
+        return null;
+    }
+
+    private Socket openSocket() throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(SLOW_CHUNK);
+        socket.connect(new InetSocketAddress("localhost", port));
+        return socket;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        return authToken != null ? builder.header("auth-token", authToken) : builder;
+    }
+
+    private static long median(List<Long> latencies) {
+        return latencies.stream().sorted().toList().get(latencies.size() / 2);
+    }
+
+    private static long max(List<Long> latencies) {
+        return latencies.stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    @TestConfiguration
+    static class NoSendfileConfiguration {
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> noSendfile() {
+            return factory -> factory.addConnectorCustomizers(connector -> connector.setProperty("useSendfile",
+                    "false"));
+        }
+    }
+}
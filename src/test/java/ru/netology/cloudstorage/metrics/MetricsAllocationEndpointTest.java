@@ -0,0 +1,40 @@
+package ru.netology.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.netology.cloudstorage.response.ResponseAllocation;
+
+import java.util.List;
+
+/**
+ * Класс тестов MetricsAllocationEndpointTest проверяет сводку AllocationEndpoint по памяти, выделенной при
+ * обработке запросов: конечные точки упорядочены по убыванию суммарного объема, количество конечных точек
+ * ограничено параметром limit, а для каждой возвращаются количество запросов, средний и наибольший объем.
+ */
+public class MetricsAllocationEndpointTest {
+    private CloudStorageMetrics metrics;
+    private AllocationEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        metrics = new CloudStorageMetrics(registry);
+        endpoint = new AllocationEndpoint(registry);
+    }
+
+    @Test
+    void allocations() {
+        metrics.recordAllocation("GET", "/list", 1000);
+        metrics.recordAllocation("GET", "/list", 3000);
+        metrics.recordAllocation("POST", "/file", 10000);
+        metrics.recordAllocation("DELETE", "/file", 100);
+
+        List<ResponseAllocation> allocations = endpoint.allocations(2);
+        Assertions.assertEquals(List.of(new ResponseAllocation("POST /file", 1, 10000, 10000, 10000),
+                new ResponseAllocation("GET /list", 2, 4000, 2000, 3000)), allocations);
+        Assertions.assertEquals(3, endpoint.allocations(null).size());
+    }
+}
@@ -0,0 +1,143 @@
+package ru.netology.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс тестов MetricsFilterTest проверяет учет операций фильтром OperationMetricsFilter в метриках
+ * CloudStorageMetrics.
+ * <p>
+ * Проверяется сопоставление HTTP-методов и путей с операциями, подсчет байтов тела запроса и ответа (в том числе
+ * ответа, отданного через sendfile), результат операции из атрибута ExceptionController и по коду ответа, а также
+ * то, что запросы вне API файлов и аутентификации не измеряются. Также проверяется, что память, выделенная за время
+ * запроса, записывается по шаблону пути обработчика, а запросы, не дошедшие до контроллера, не учитываются.
+ * Повторные записи с теми же тегами попадают в одну и ту же метрику.
+ */
+public class MetricsFilterTest {
+    public static final byte[] CONTENT = "file content".getBytes(StandardCharsets.UTF_8);
+
+    private MeterRegistry registry;
+    private OperationMetricsFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        filter = new OperationMetricsFilter(new CloudStorageMetrics(registry));
+    }
+
+    @Test
+    void recordReusesMeters() {
+        CloudStorageMetrics metrics = new CloudStorageMetrics(registry);
+        metrics.recordOperation("list", "input_data", 1000, 0, 10);
+        metrics.recordOperation("list", "input_data", 2000, 0, 20);
+        metrics.recordOperation("list", CloudStorageMetrics.SUCCESS, 3000, 0, 30);
+        Assertions.assertEquals(2, registry.find(CloudStorageMetrics.OPERATION_TIMER).timers().size());
+        Assertions.assertEquals(2, registry.get(CloudStorageMetrics.OPERATION_TIMER).tag("outcome", "input_data")
+                .timer().count());
+        Assertions.assertEquals(2, registry.get(CloudStorageMetrics.OPERATION_ERRORS).counter().count());
+        Assertions.assertEquals(60, registry.get(CloudStorageMetrics.BYTES_OUT).counter().count());
+    }
+
+    @Test
+    void operation() {
+        Assertions.assertEquals("upload", CloudStorageMetrics.operation("POST", "/file"));
+        Assertions.assertEquals("download", CloudStorageMetrics.operation("GET", "/file"));
+        Assertions.assertEquals("rename", CloudStorageMetrics.operation("PUT", "/file"));
+        Assertions.assertEquals("delete", CloudStorageMetrics.operation("DELETE", "/file"));
+        Assertions.assertEquals("upload", CloudStorageMetrics.operation("PUT", "/uploads/1/parts/2"));
+        Assertions.assertEquals("list", CloudStorageMetrics.operation("GET", "/list"));
+        Assertions.assertEquals("login", CloudStorageMetrics.operation("POST", "/login"));
+        Assertions.assertEquals("logout", CloudStorageMetrics.operation("POST", "/logout"));
+        Assertions.assertNull(CloudStorageMetrics.operation("GET", "/actuator/prometheus"));
+        Assertions.assertNull(CloudStorageMetrics.operation("GET", "/uploadsx"));
+    }
+
+    @Test
+    void uploadCountsBytes() throws Exception {
+        MockHttpServletRequest request = request("POST", "/file");
+        request.setContent(CONTENT);
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.getInputStream().readAllBytes();
+            res.getOutputStream().write(new byte[3]);
+        });
+        Assertions.assertEquals(1, registry.get(CloudStorageMetrics.OPERATION_TIMER).tag("operation", "upload")
+                .tag("outcome", CloudStorageMetrics.SUCCESS).timer().count());
+        Assertions.assertEquals(CONTENT.length, registry.get(CloudStorageMetrics.BYTES_IN).tag("operation", "upload")
+                .counter().count());
+        Assertions.assertEquals(3, registry.get(CloudStorageMetrics.BYTES_OUT).tag("operation", "upload")
+                .counter().count());
+        Assertions.assertNull(registry.find(CloudStorageMetrics.OPERATION_ERRORS).counter());
+    }
+
+    @Test
+    void downloadSendfileBytes() throws Exception {
+        MockHttpServletRequest request = request("GET", "/file");
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute("org.apache.tomcat.sendfile.filename", "/storage/blob");
+            req.setAttribute("org.apache.tomcat.sendfile.start", 10L);
+            req.setAttribute("org.apache.tomcat.sendfile.end", 110L);
+        });
+        Assertions.assertEquals(100, registry.get(CloudStorageMetrics.BYTES_OUT).tag("operation", "download")
+                .counter().count());
+    }
+
+    @Test
+    void errorOutcome() throws Exception {
+        filter.doFilter(request("DELETE", "/file"), new MockHttpServletResponse(), (req, res) -> {
+            CloudStorageMetrics.setOutcome((HttpServletRequest) req, "input_data");
+            ((HttpServletResponse) res).setStatus(400);
+        });
+        filter.doFilter(request("GET", "/list"), new MockHttpServletResponse(),
+                (req, res) -> ((HttpServletResponse) res).setStatus(403));
+        Assertions.assertEquals(1, registry.get(CloudStorageMetrics.OPERATION_ERRORS).tag("operation", "delete")
+                .tag("outcome", "input_data").counter().count());
+        Assertions.assertEquals(1, registry.get(CloudStorageMetrics.OPERATION_TIMER).tag("operation", "list")
+                .tag("outcome", "http_403").timer().count());
+    }
+
+    @Test
+    void exceptionOutcome() {
+        Assertions.assertThrows(IllegalStateException.class, () -> filter.doFilter(request("PUT", "/file"),
+                new MockHttpServletResponse(), (req, res) -> {
+                    throw new IllegalStateException();
+                }));
+        Assertions.assertEquals(1, registry.get(CloudStorageMetrics.OPERATION_ERRORS).tag("operation", "rename")
+                .tag("outcome", CloudStorageMetrics.EXCEPTION).counter().count());
+    }
+
+    @Test
+    void otherRequestsNotMeasured() throws Exception {
+        filter.doFilter(request("GET", "/actuator/health"), new MockHttpServletResponse(), (req, res) -> {
+        });
+        Assertions.assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void allocationByEndpoint() throws Exception {
+        filter.doFilter(request("PUT", "/uploads/1/parts/2"), new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/uploads/{uploadId}/parts/{partNumber}");
+            res.getOutputStream().write(new byte[1024 * 1024]);
+        });
+        filter.doFilter(request("GET", "/list"), new MockHttpServletResponse(), (req, res) -> {
+        });
+        Assertions.assertTrue(registry.get(CloudStorageMetrics.ALLOCATED).tag("method", "PUT")
+                .tag("uri", "/uploads/{uploadId}/parts/{partNumber}").summary().totalAmount() >= 1024 * 1024);
+        Assertions.assertEquals(1, registry.find(CloudStorageMetrics.ALLOCATED).summaries().size());
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        return request;
+    }
+}
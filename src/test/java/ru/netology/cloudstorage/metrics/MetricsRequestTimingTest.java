@@ -0,0 +1,53 @@
+package ru.netology.cloudstorage.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Класс тестов MetricsRequestTimingTest проверяет разбивку времени запроса по этапам в RequestTiming.
+ * <p>
+ * Проверяется, что время вложенного этапа не учитывается во внешнем этапе, что вызовы без открытого контекста ничего
+ * не делают, а идентификатор пользователя сохраняется только в контексте текущего запроса.
+ */
+public class MetricsRequestTimingTest {
+    public static final long PAUSE = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @AfterEach
+    void tearDown() {
+        RequestTiming.close();
+    }
+
+    @Test
+    void nestedPhases() {
+        RequestTiming timing = RequestTiming.open();
+        RequestTiming.begin(RequestTiming.Phase.AUTH);
+        RequestTiming.begin(RequestTiming.Phase.METADATA);
+        LockSupport.parkNanos(PAUSE);
+        RequestTiming.end();
+        RequestTiming.end();
+        RequestTiming.begin(RequestTiming.Phase.BLOB_IO);
+        LockSupport.parkNanos(PAUSE);
+        RequestTiming.end();
+        RequestTiming.setUserId(1L);
+
+        Assertions.assertTrue(timing.getNanos(RequestTiming.Phase.METADATA) >= PAUSE);
+        Assertions.assertTrue(timing.getNanos(RequestTiming.Phase.BLOB_IO) >= PAUSE);
+        Assertions.assertTrue(timing.getNanos(RequestTiming.Phase.AUTH) < PAUSE);
+        Assertions.assertEquals(0, timing.getNanos(RequestTiming.Phase.SERIALIZATION));
+        Assertions.assertEquals(1L, (long) timing.getUserId());
+    }
+
+    @Test
+    void withoutContext() {
+        RequestTiming.begin(RequestTiming.Phase.METADATA);
+        RequestTiming.end();
+        RequestTiming.setUserId(1L);
+        RequestTiming timing = RequestTiming.open();
+        Assertions.assertNull(timing.getUserId());
+        Assertions.assertEquals(0, timing.getNanos(RequestTiming.Phase.METADATA));
+    }
+}
@@ -0,0 +1,98 @@
+package ru.netology.cloudstorage.metrics;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.netology.cloudstorage.repositories.AuthRepository;
+import ru.netology.cloudstorage.repositories.BlobRepository;
+import ru.netology.cloudstorage.repositories.BlobSizes;
+import ru.netology.cloudstorage.repositories.InMemorySessionStore;
+import ru.netology.cloudstorage.repositories.UserRepository;
+import ru.netology.cloudstorage.security.UserPrincipal;
+import ru.netology.cloudstorage.services.BlobService;
+import ru.netology.cloudstorage.services.UserService;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+/**
+ * Класс тестов MetricsServiceTest проверяет, что сервисы публикуют счетчики кэша принципалов (UserService), сессий
+ * (AuthRepository) и экономии места (BlobService) в формате Prometheus (тот же PrometheusMeterRegistry, который
+ * отдает /actuator/prometheus) и что значения читаются из сервисов в момент сбора, а не в момент регистрации.
+ * Количество действующих сессий метрика показывает на момент последнего удаления просроченных сессий, а
+ * коэффициенты дедупликации и сжатия - на момент последнего обновления суммарных размеров (refreshSizes).
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class MetricsServiceTest {
+    public static final String LOGIN = "Auth_Username1";
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private BlobRepository blobRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private UserService userService;
+    private AuthRepository authRepository;
+    private BlobService blobService;
+    private PrometheusMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        userService = new UserService(userRepository);
+        userService.bindTo(registry);
+        authRepository = new AuthRepository(new InMemorySessionStore());
+        authRepository.bindTo(registry);
+        blobService = new BlobService(blobRepository, blobStore, transactionManager, jdbcTemplate);
+        blobService.bindTo(registry);
+    }
+
+    @Test
+    void scrape() {
+        Mockito.when(userRepository.findPrincipalByLogin(LOGIN)).thenReturn(new UserPrincipal(101L, LOGIN));
+        userService.loadPrincipal(LOGIN);
+        userService.loadPrincipal(LOGIN);
+        userService.loadPrincipal(LOGIN);
+        long now = System.currentTimeMillis();
+        authRepository.saveAuthenticationUser("Token1", 101L, now + 60000);
+        authRepository.saveAuthenticationUser("Token2", 101L, now + 60000);
+        authRepository.saveAuthenticationUser("Token3", 101L, now - 1000);
+        authRepository.sweepExpired();
+        Mockito.when(blobRepository.sumSizes()).thenReturn(new BlobSizes(300L, 200L, 100L));
+        blobService.refreshSizes();
+
+        String scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("cloud_principal_cache_gets_total{result=\"hit\",} 2.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_principal_cache_gets_total{result=\"miss\",} 1.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_principal_cache_size 1.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_sessions_live 2.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_sessions_expired_total 1.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_sessions_evicted_total 0.0"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_blobs_dedup_ratio 1.5"), scrape);
+        Assertions.assertTrue(scrape.contains("cloud_blobs_compression_ratio 2.0"), scrape);
+
+        authRepository.deleteAuthenticationUserByToken("Token1");
+        Assertions.assertEquals(2, registry.get(AuthRepository.SESSIONS_LIVE).gauge().value());
+        authRepository.sweepExpired();
+        Assertions.assertEquals(1, registry.get(AuthRepository.SESSIONS_LIVE).gauge().value());
+    }
+}
@@ -2,8 +2,8 @@ package ru.netology.cloudstorage.repositories;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import ru.netology.cloudstorage.models.User;
 import org.junit.jupiter.api.Assertions;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,26 +12,31 @@ import java.util.concurrent.ConcurrentHashMap;
  * Класс теста RepAuthTest предназначен для проверки функциональности класса AuthRepository, который отвечает за
  * хранение и управление аутентификационными данными пользователей.
  * <p>
- * Перед каждым тестом выполняется метод authUp(), который создает экземпляр класса AuthRepository и сохраняет в
- * нем аутентификационные данные пользователя с токеном AUTH_TOKEN_1 и объектом USER_1. Также очищается и заполняется
- * tokensUser, который представляет собой мапу, где ключом является токен, а значением - объект пользователя.
+ * Перед каждым тестом выполняется метод authUp(), который создает экземпляр класса AuthRepository с хранилищем
+ * сессий InMemorySessionStore и сохраняет в
+ * нем сессию пользователя с токеном AUTH_TOKEN_1 и id AUTH_USER_ID_1. Также очищается и заполняется
+ * tokensUser, который представляет собой мапу, где ключом является токен, а значением - id пользователя.
  * <p>
- * Тест getUserByAuthToken() проверяет, что метод getAuthenticationUserByToken() возвращает ожидаемого пользователя
+ * Тест getUserByAuthToken() проверяет, что метод getAuthenticationUserIdByToken() возвращает ожидаемого пользователя
  * по заданному токену. С помощью метода Assertions.assertEquals() сравниваются значения, полученные из tokensUser и
- * из authRep.getAuthenticationUserByToken(AUTH_TOKEN_1).
+ * из authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1).
  * <p>
  * Тест deleteAuthUserByToken() проверяет, что метод deleteAuthenticationUserByToken() удаляет пользователя из
  * репозитория по заданному токену. Сначала получаем пользователя до удаления с помощью метода
- * getAuthenticationUserByToken() и убеждаемся, что он не равен null. Затем вызываем метод
+ * getAuthenticationUserIdByToken() и убеждаемся, что он не равен null. Затем вызываем метод
  * deleteAuthenticationUserByToken() для удаления пользователя. После этого снова вызываем
- * getAuthenticationUserByToken() и убеждаемся, что получаем null, что означает успешное удаление пользователя.
+ * getAuthenticationUserIdByToken() и убеждаемся, что получаем null, что означает успешное удаление пользователя.
  * <p>
  * Тест setAuthTokenAndUser() проверяет, что метод saveAuthenticationUser() сохраняет пользователя в
  * репозитории по заданному токену. Сначала получаем пользователя до сохранения с помощью метода
- * getAuthenticationUserByToken() и убеждаемся, что он равен null. Затем вызываем метод saveAuthenticationUser()
- * для сохранения пользователя. После этого снова вызываем getAuthenticationUserByToken() и убеждаемся,
+ * getAuthenticationUserIdByToken() и убеждаемся, что он равен null. Затем вызываем метод saveAuthenticationUser()
+ * для сохранения пользователя. После этого снова вызываем getAuthenticationUserIdByToken() и убеждаемся,
  * что получаем ожидаемого пользователя.
  * <p>
+ * Тест expiredSession() проверяет, что сессия с истекшим временем действия токена не возвращается, а метод
+ * sweepExpired() удаляет просроченные сессии. Тест evictLeastRecentlyUsed() проверяет, что при превышении
+ * максимального количества сессий вытесняется сессия, к которой дольше всего не обращались.
+ * <p>
  * Все тесты используют класс Assertions из библиотеки JUnit, чтобы проверить ожидаемые значения.
  * Если ожидаемые значения совпадают с фактическими, то тест считается успешным, в противном случае - проваленным.
  */
@@ -39,49 +44,70 @@ import java.util.concurrent.ConcurrentHashMap;
 public class RepAuthTest {
     public static final String AUTH_TOKEN_1 = "Auth_Token1";
     public static final Long AUTH_USER_ID_1 = 101L;
-    public static final String AUTH_USERNAME_1 = "Auth_Username1";
-    public static final String AUTH_PASSWORD_1 = "Auth_Password1";
-    public static final User USER_1 = new User(AUTH_USER_ID_1, AUTH_USERNAME_1, AUTH_PASSWORD_1, null);
-
     //-------------------------------------------------------------------------------------------------------
     public static final String AUTH_TOKEN_2 = "Auth_Token2";
     public static final Long AUTH_USER_ID_2 = 102L;
-    public static final String AUTH_USERNAME_2 = "Auth_Username2";
-    public static final String AUTH_PASSWORD_2 = "Auth_Password2";
-    public static final User USER_2 = new User(AUTH_USER_ID_2, AUTH_USERNAME_2, AUTH_PASSWORD_2, null);
     //-------------------------------------------------------------------------------------------------------
+    public static final String AUTH_TOKEN_3 = "Auth_Token3";
+    public static final Long AUTH_USER_ID_3 = 103L;
+    //-------------------------------------------------------------------------------------------------------
+    public static final long EXPIRES_AT = System.currentTimeMillis() + 60 * 60 * 1000;
+    public static final long EXPIRED_AT = System.currentTimeMillis() - 1000;
 
+    private InMemorySessionStore sessionStore;
     private AuthRepository authRep;
-    private final Map<String, User> tokensUser = new ConcurrentHashMap<>();
+    private final Map<String, Long> tokensUser = new ConcurrentHashMap<>();
 
     @BeforeEach
     void authUp() {
-        authRep = new AuthRepository();
-        authRep.saveAuthenticationUser(AUTH_TOKEN_1, USER_1);
+        sessionStore = new InMemorySessionStore();
+        authRep = new AuthRepository(sessionStore);
+        authRep.saveAuthenticationUser(AUTH_TOKEN_1, AUTH_USER_ID_1, EXPIRES_AT);
         tokensUser.clear();
-        tokensUser.put(AUTH_TOKEN_1, USER_1);
+        tokensUser.put(AUTH_TOKEN_1, AUTH_USER_ID_1);
     }
 
     @Test
     void getUserByAuthToken() {
-        Assertions.assertEquals(tokensUser.get(AUTH_TOKEN_1), authRep.getAuthenticationUserByToken(AUTH_TOKEN_1));
+        Assertions.assertEquals(tokensUser.get(AUTH_TOKEN_1), authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1));
     }
 
     @Test
     void deleteAuthUserByToken() {
-        User userBeforeDel = authRep.getAuthenticationUserByToken(AUTH_TOKEN_1);
+        Long userBeforeDel = authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1);
         Assertions.assertNotNull(userBeforeDel);
         authRep.deleteAuthenticationUserByToken(AUTH_TOKEN_1);
-        User userAfterDel = authRep.getAuthenticationUserByToken(AUTH_TOKEN_1);
+        Long userAfterDel = authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1);
         Assertions.assertNull(userAfterDel);
     }
 
     @Test
     void setAuthTokenAndUser() {
-        User userBeforeSet = authRep.getAuthenticationUserByToken(AUTH_TOKEN_2);
+        Long userBeforeSet = authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_2);
         Assertions.assertNull(userBeforeSet);
-        authRep.saveAuthenticationUser(AUTH_TOKEN_2, USER_2);
-        User userAfterSet = authRep.getAuthenticationUserByToken(AUTH_TOKEN_2);
-        Assertions.assertEquals(USER_2, userAfterSet);
+        authRep.saveAuthenticationUser(AUTH_TOKEN_2, AUTH_USER_ID_2, EXPIRES_AT);
+        Long userAfterSet = authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_2);
+        Assertions.assertEquals(AUTH_USER_ID_2, userAfterSet);
+    }
+
+    @Test
+    void expiredSession() {
+        authRep.saveAuthenticationUser(AUTH_TOKEN_2, AUTH_USER_ID_2, EXPIRED_AT);
+        authRep.saveAuthenticationUser(AUTH_TOKEN_3, AUTH_USER_ID_3, EXPIRED_AT);
+        Assertions.assertNull(authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_2));
+        authRep.sweepExpired();
+        Assertions.assertEquals(1, authRep.getLiveSessions());
+        Assertions.assertEquals(1, authRep.getExpiredSessions());
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        ReflectionTestUtils.setField(sessionStore, "maxEntries", 2);
+        authRep.saveAuthenticationUser(AUTH_TOKEN_2, AUTH_USER_ID_2, EXPIRES_AT);
+        authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1);
+        authRep.saveAuthenticationUser(AUTH_TOKEN_3, AUTH_USER_ID_3, EXPIRES_AT);
+        Assertions.assertNull(authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_2));
+        Assertions.assertEquals(AUTH_USER_ID_1, authRep.getAuthenticationUserIdByToken(AUTH_TOKEN_1));
+        Assertions.assertEquals(1, authRep.getEvictedSessions());
     }
 }
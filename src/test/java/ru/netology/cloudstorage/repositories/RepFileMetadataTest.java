@@ -0,0 +1,123 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Класс тестов RepFileMetadataTest проверяет, что вывод списка файлов, переименование и удаление работают только
+ * с метаданными файлов. Все SQL-запросы, выполненные Hibernate, собираются классом SqlStatementCollector,
+ * после чего проверяется, что ни один из них не обращается к столбцу file_content, а список файлов и
+ * переименование не выбирают и ключ содержимого blob_key и не соединяются с таблицей users.
+ * <p>
+ * Для страницы после курсора дополнительно проверяется план запроса (EXPLAIN): условие курсора должно быть
+ * сравнением строк, которое PostgreSQL использует как границу диапазона индекса (Index Cond), а не фильтром
+ * прочитанных строк.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "ru.netology.cloudstorage.repositories.SqlStatementCollector")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class RepFileMetadataTest {
+    public static final String FILENAME_1 = "metadata_file_1";
+    public static final String FILENAME_2 = "metadata_file_2";
+    public static final String NEW_FILENAME = "metadata_file_new";
+    public static final String BLOB_KEY = "0123456789abcdef0123456789abcdef";
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "metadata_login", "password", null));
+        fileRepository.save(new File(FILENAME_1, LocalDateTime.now(), 10, BLOB_KEY, user));
+        fileRepository.save(new File(FILENAME_2, LocalDateTime.now(), 20, BLOB_KEY, user));
+        entityManager.flush();
+        entityManager.clear();
+        SqlStatementCollector.clear();
+    }
+
+    @Test
+    void listSelectsMetadataOnly() {
+        List<FileListItem> files = fileRepository.findPageByUser(user, FileListCursor.parseSort("-size"), 10);
+        Assertions.assertEquals(List.of(FILENAME_2, FILENAME_1), files.stream().map(FileListItem::getFilename).toList());
+        assertNoContentColumns(true);
+    }
+
+    @Test
+    void listPagesByCursor() {
+        FileListCursor order = FileListCursor.parseSort("name");
+        List<FileListItem> first = fileRepository.findPageByUser(user, order, 1);
+        Assertions.assertEquals(FILENAME_1, first.get(0).getFilename());
+        FileListCursor cursor = FileListCursor.decode(FileListCursor.after(order, first.get(0)).encode());
+        List<FileListItem> second = fileRepository.findPageByUser(user, cursor, 10);
+        Assertions.assertEquals(List.of(FILENAME_2), second.stream().map(FileListItem::getFilename).toList());
+    }
+
+    @Test
+    void listCursorSeeksIndex() {
+        FileListCursor order = FileListCursor.parseSort("-size");
+        FileListItem last = fileRepository.findPageByUser(user, order, 1).get(0);
+        FileListCursor cursor = FileListCursor.after(order, last);
+        SqlStatementCollector.clear();
+        Assertions.assertEquals(List.of(FILENAME_1), fileRepository.findPageByUser(user, cursor, 10).stream()
+                .map(FileListItem::getFilename).toList());
+
+        String sql = SqlStatementCollector.getStatements().get(0);
+        Assertions.assertFalse(sql.toLowerCase().contains(" or "), sql);
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        Object[] args = sql.chars().filter(c -> c == '?').count() > 3
+                ? new Object[]{user.getId(), last.getSize(), last.getId(), 10}
+                : new Object[]{user.getId(), last.getSize(), last.getId()};
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, args));
+        Assertions.assertTrue(plan.contains("files_user_size_idx"), plan);
+        Assertions.assertTrue(plan.contains("Index Cond") && plan.contains("ROW(size, id) <"), plan);
+        Assertions.assertFalse(plan.contains("Filter:"), plan);
+    }
+
+    @Test
+    void renameSelectsMetadataOnly() {
+        Assertions.assertEquals(1, fileRepository.setNewFilenameByUserAndFilename(NEW_FILENAME, user, FILENAME_1));
+        assertNoContentColumns(true);
+    }
+
+    @Test
+    void deleteSelectsMetadataOnly() {
+        Assertions.assertEquals(BLOB_KEY, fileRepository.findBlobKeyByUserAndFilename(user, FILENAME_1));
+        Assertions.assertEquals(1, fileRepository.deleteByUserAndFilename(user, FILENAME_1));
+        assertNoContentColumns(false);
+    }
+
+    private static void assertNoContentColumns(boolean withoutBlobKey) {
+        List<String> statements = SqlStatementCollector.getStatements();
+        Assertions.assertFalse(statements.isEmpty());
+        for (String sql : statements) {
+            String lower = sql.toLowerCase();
+            Assertions.assertFalse(lower.contains("file_content"), sql);
+            Assertions.assertFalse(lower.contains("users"), sql);
+            if (withoutBlobKey) {
+                Assertions.assertFalse(lower.contains("blob_key"), sql);
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.junit4.SpringRunner;
 import ru.netology.cloudstorage.models.File;
 import ru.netology.cloudstorage.models.User;
@@ -17,6 +18,7 @@ import java.util.List;
 
 import static org.hibernate.validator.internal.util.Contracts.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * Класс тестов RepFileTest использует фреймворк Spring для проведения интеграционного тестирования репозитория
@@ -45,6 +47,9 @@ import static org.junit.Assert.assertEquals;
  * @Test метод deleteUserAndFilename() проверяет, что метод deleteByUserAndFilename() удаляет файл с определенным
  * пользователем и именем файла. Сначала проверяется, что файл существует, затем вызывается метод
  * deleteByUserAndFilename() и проверяется, что количество удаленных строк равно 1.
+ * @Test метод sameFilenameForDifferentUsers() проверяет, что другой пользователь может сохранить файл с тем же
+ * именем, что findExistingFilenames() находит только имена файлов указанного пользователя и что второй файл с тем же
+ * именем у одного пользователя нарушает ограничение unique (user_id, filename).
  * <p>
  * Таким образом, класс тестов RepFileTest проверяет работу методов репозитория FileRepository.
  */
@@ -68,7 +73,7 @@ public class RepFileTest {
         userRepSave = userRepository.save(user);
 
         File file = new File(RandomUtils.nextLong(), "file_name", LocalDateTime.now(),
-                RandomUtils.nextLong(), "".getBytes(), userRepSave);
+                RandomUtils.nextLong(), "0123456789abcdef0123456789abcdef", userRepSave);
         fileRepSave = fileRepository.save(file);
     }
 
@@ -89,4 +94,17 @@ public class RepFileTest {
         int delRows = fileRepository.deleteByUserAndFilename(userRepSave, fileRepSave.getFilename());
         Assert.assertEquals(delRows, 1);
     }
+
+    @Test
+    void sameFilenameForDifferentUsers() {
+        User other = userRepository.save(new User(RandomUtils.nextLong(), "login2", "password2", null));
+        fileRepository.saveAndFlush(new File(fileRepSave.getFilename(), LocalDateTime.now(), 1L,
+                "0123456789abcdef0123456789abcdef", other));
+
+        assertEquals(List.of(fileRepSave.getFilename()),
+                fileRepository.findExistingFilenames(other, List.of(fileRepSave.getFilename(), "other_name")));
+        assertEquals(List.of(), fileRepository.findExistingFilenames(userRepSave, List.of("other_name")));
+        assertThrows(DataIntegrityViolationException.class, () -> fileRepository.saveAndFlush(new File(
+                fileRepSave.getFilename(), LocalDateTime.now(), 1L, "0123456789abcdef0123456789abcdef", other)));
+    }
 }
@@ -0,0 +1,75 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс тестов RepJdbcSessionStoreTest проверяет ближний кэш JdbcSessionStore с заглушкой JdbcTemplate вместо
+ * базы данных.
+ * <p>
+ * Тест findUserIdCached() проверяет, что повторный поиск той же сессии берется из ближнего кэша и не выполняет
+ * запрос к таблице sessions. Тест deleteNotifiesOtherNodes() проверяет, что при выходе сессия удаляется из
+ * таблицы, в канал session_logout отправляется уведомление с хэшем токена, а следующий поиск снова обращается
+ * к базе. Тест evictLocal() проверяет удаление сессии из ближнего кэша по уведомлению другого узла.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class RepJdbcSessionStoreTest {
+    public static final String TOKEN_HASH = AuthRepository.hash("Auth_Token1");
+    public static final Long USER_ID = 101L;
+    public static final long EXPIRES_AT = System.currentTimeMillis() + 60 * 60 * 1000;
+    public static final String SELECT_SESSION =
+            "SELECT user_id, expires_at FROM sessions WHERE token_hash = ? AND expires_at > ?";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcSessionStore sessionStore;
+
+    @BeforeEach
+    void setUp() {
+        sessionStore = new JdbcSessionStore(jdbcTemplate);
+        Mockito.when(jdbcTemplate.queryForList(Mockito.eq(SELECT_SESSION), Mockito.eq(TOKEN_HASH), Mockito.any()))
+                .thenReturn(List.of(Map.of("user_id", USER_ID, "expires_at", new Timestamp(EXPIRES_AT))));
+    }
+
+    @Test
+    void findUserIdCached() {
+        Assertions.assertEquals(USER_ID, sessionStore.findUserId(TOKEN_HASH));
+        Assertions.assertEquals(USER_ID, sessionStore.findUserId(TOKEN_HASH));
+        Mockito.verify(jdbcTemplate, Mockito.times(1))
+                .queryForList(Mockito.eq(SELECT_SESSION), Mockito.eq(TOKEN_HASH), Mockito.any());
+    }
+
+    @Test
+    void deleteNotifiesOtherNodes() {
+        sessionStore.findUserId(TOKEN_HASH);
+        sessionStore.delete(TOKEN_HASH);
+        Mockito.verify(jdbcTemplate).update("DELETE FROM sessions WHERE token_hash = ?", TOKEN_HASH);
+        Mockito.verify(jdbcTemplate).queryForList("SELECT pg_notify(?, ?)", JdbcSessionStore.LOGOUT_CHANNEL, TOKEN_HASH);
+        sessionStore.findUserId(TOKEN_HASH);
+        Mockito.verify(jdbcTemplate, Mockito.times(2))
+                .queryForList(Mockito.eq(SELECT_SESSION), Mockito.eq(TOKEN_HASH), Mockito.any());
+    }
+
+    @Test
+    void evictLocal() {
+        sessionStore.findUserId(TOKEN_HASH);
+        sessionStore.evictLocal(TOKEN_HASH);
+        sessionStore.findUserId(TOKEN_HASH);
+        Mockito.verify(jdbcTemplate, Mockito.times(2))
+                .queryForList(Mockito.eq(SELECT_SESSION), Mockito.eq(TOKEN_HASH), Mockito.any());
+    }
+}
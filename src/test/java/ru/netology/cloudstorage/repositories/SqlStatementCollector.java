@@ -0,0 +1,28 @@
+package ru.netology.cloudstorage.repositories;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Класс SqlStatementCollector запоминает все SQL-запросы, которые Hibernate отправляет в базу данных.
+ * Подключается в тестах свойством spring.jpa.properties.hibernate.session_factory.statement_inspector.
+ */
+public class SqlStatementCollector implements StatementInspector {
+    private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        statements.add(sql);
+        return sql;
+    }
+
+    public static void clear() {
+        statements.clear();
+    }
+
+    public static List<String> getStatements() {
+        return List.copyOf(statements);
+    }
+}
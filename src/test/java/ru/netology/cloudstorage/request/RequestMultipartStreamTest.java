@@ -0,0 +1,194 @@
+package ru.netology.cloudstorage.request;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.AuthRepository;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.UserRepository;
+import ru.netology.cloudstorage.services.BlobMigrationService;
+import ru.netology.cloudstorage.services.BlobService;
+import ru.netology.cloudstorage.services.FileService;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Класс тестов RequestMultipartStreamTest проверяет потоковый разбор тела multipart/form-data классом
+ * MultipartStreamReader и потоковую загрузку файла через FileService.
+ * <p>
+ * Тест readFieldsAndFile() проверяет разбор текстового поля и файловой части.
+ * Тест readFileLargerThanBuffer() проверяет файл, который больше буфера чтения, так что разделитель частей
+ * оказывается разрезан между двумя чтениями.
+ * Тест readFileInSmallReads() читает файл, в содержимом которого встречаются начала разделителя, мелкими
+ * порциями, которые не совпадают с границами буфера.
+ * Тест uploadFileLargerThanHeap() пропускает через MultipartStreamReader и FileService.uploadFile
+ * сгенерированный на лету файл, размер которого больше максимального размера кучи (-Xmx). Если бы загрузка
+ * собирала файл в памяти, тест завершился бы OutOfMemoryError. Размер кучи тестов ограничен в maven-surefire-plugin
+ * (-Xmx256m), чтобы тест не зависел от объема памяти машины, на которой он запускается.
+ */
+public class RequestMultipartStreamTest {
+    public static final String BOUNDARY = "----CloudStorageBoundary7MA4YWxkTrZu0gW";
+    public static final String HASH = "0123456789abcdef";
+    public static final String FILENAME = "Filename1";
+    public static final String BEARER_TOKEN = "Bearer Token";
+    public static final User USER = new User(101L, "Auth_Username1", "Auth_Password1", null);
+
+    @Test
+    void readFieldsAndFile() throws IOException {
+        byte[] content = "File content".getBytes(StandardCharsets.UTF_8);
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(multipartBody(content)), BOUNDARY);
+
+        MultipartStreamReader.Part hash = reader.nextPart();
+        Assertions.assertEquals("hash", hash.getName());
+        Assertions.assertEquals(HASH, hash.readString(64));
+
+        MultipartStreamReader.Part file = reader.nextPart();
+        Assertions.assertEquals("file", file.getName());
+        Assertions.assertEquals(FILENAME, file.getFilename());
+        Assertions.assertArrayEquals(content, file.getContent().readAllBytes());
+
+        Assertions.assertNull(reader.nextPart());
+    }
+
+    @Test
+    void readFileLargerThanBuffer() throws IOException {
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(multipartBody(content)), BOUNDARY);
+
+        reader.nextPart();
+        Assertions.assertArrayEquals(content, reader.nextPart().getContent().readAllBytes());
+        Assertions.assertNull(reader.nextPart());
+    }
+
+    @Test
+    void readFileInSmallReads() throws IOException {
+        ByteArrayOutputStream generated = new ByteArrayOutputStream();
+        Random random = new Random(7);
+        while (generated.size() < 300 * 1024) {
+            generated.write(random.nextInt(256));
+            if (random.nextInt(1000) == 0) {
+                String prefix = "\r\n--" + BOUNDARY;
+                byte[] partial = prefix.substring(0, random.nextInt(prefix.length())).getBytes(StandardCharsets.UTF_8);
+                generated.writeBytes(partial);
+                generated.write(0);
+            }
+        }
+        byte[] content = generated.toByteArray();
+        MultipartStreamReader reader = new MultipartStreamReader(
+                new ByteArrayInputStream(multipartBody(content)), BOUNDARY);
+
+        reader.nextPart();
+        InputStream file = reader.nextPart().getContent();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        for (int count = file.read(buffer); count >= 0; count = file.read(buffer)) {
+            read.write(buffer, 0, count);
+        }
+        Assertions.assertArrayEquals(content, read.toByteArray());
+        Assertions.assertNull(reader.nextPart());
+    }
+
+    @Test
+    void boundaryOf() {
+        Assertions.assertEquals(BOUNDARY,
+                MultipartStreamReader.boundaryOf("multipart/form-data; boundary=\"" + BOUNDARY + "\""));
+    }
+
+    @Test
+    void uploadFileLargerThanHeap() throws IOException {
+        long size = Runtime.getRuntime().maxMemory() + 64L * 1024 * 1024;
+        AuthRepository authRepository = Mockito.mock(AuthRepository.class);
+        FileRepository fileRepository = Mockito.mock(FileRepository.class);
+        BlobStore blobStore = Mockito.mock(BlobStore.class);
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(authRepository.getAuthenticationUserIdByToken("Token")).thenReturn(USER.getId());
+        Mockito.when(userRepository.getReferenceById(USER.getId())).thenReturn(USER);
+        long[] stored = new long[1];
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(0);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                stored[0] += read;
+            }
+            return "0123456789abcdef0123456789abcdef";
+        });
+        FileService fileService = new FileService(authRepository, userRepository, fileRepository, blobStore,
+                Mockito.mock(BlobMigrationService.class), Mockito.mock(BlobService.class),
+                Mockito.mock(PlatformTransactionManager.class));
+
+        MultipartStreamReader reader = new MultipartStreamReader(new GeneratedMultipartStream(size), BOUNDARY);
+        MultipartStreamReader.Part file = reader.nextPart();
+        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME, file.getContent()));
+
+        Assertions.assertEquals(size, stored[0]);
+        Mockito.verify(fileRepository).save(Mockito.argThat((File saved) -> saved.getSize() == size));
+    }
+
+    private static byte[] multipartBody(byte[] content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"hash\"\r\n\r\n"
+                + HASH + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + FILENAME + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    /**
+     * Поток тела multipart/form-data с одной файловой частью заданного размера, который генерируется при чтении
+     * и не хранится в памяти.
+     */
+    private static class GeneratedMultipartStream extends InputStream {
+        private final byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + FILENAME + "\"\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8);
+        private final byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        private final long total;
+        private long position;
+
+        private GeneratedMultipartStream(long contentSize) {
+            this.total = head.length + contentSize + tail.length;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= total) {
+                return -1;
+            }
+            int count = (int) Math.min(len, total - position);
+            long contentEnd = total - tail.length;
+            for (int i = 0; i < count; i++, position++) {
+                if (position < head.length) {
+                    b[off + i] = head[(int) position];
+                } else if (position < contentEnd) {
+                    b[off + i] = (byte) (position * 31);
+                } else {
+                    b[off + i] = tail[(int) (position - contentEnd)];
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.netology.cloudstorage.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+/**
+ * Класс тестов SecurityJWTUtilsTest проверяет однократную проверку JWT токена методом JWTUtils.verifyToken.
+ * <p>
+ * Проверяется, что повторная проверка того же токена возвращает объект из кэша, что токен с чужой подписью и
+ * токен с истекшим сроком действия отклоняются и не попадают в кэш, а isValidateToken сравнивает имя
+ * пользователя из проверенного токена с именем пользователя UserDetails. Проверка по заранее вычисленному хэшу
+ * (TokenDigest.remember, как в JWTFilter) использует тот же ключ кэша, что и verifyToken(String token).
+ */
+public class SecurityJWTUtilsTest {
+    public static final String SECRET = "secret";
+    public static final UserPrincipal PRINCIPAL = new UserPrincipal(1L, "Auth_Username1");
+    public static final UserPrincipal OTHER_PRINCIPAL = new UserPrincipal(2L, "Auth_Username2");
+
+    private JWTUtils jwtUtils;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtils = new JWTUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+    }
+
+    @Test
+    void verifyTokenCached() {
+        String token = jwtUtils.generateToken(PRINCIPAL);
+        VerifiedToken verified = jwtUtils.verifyToken(token);
+        Assertions.assertEquals(PRINCIPAL.getUsername(), verified.getUsername());
+        Assertions.assertSame(verified, jwtUtils.verifyToken(token));
+        Assertions.assertTrue(jwtUtils.isValidateToken(verified, PRINCIPAL));
+        Assertions.assertFalse(jwtUtils.isValidateToken(verified, OTHER_PRINCIPAL));
+    }
+
+    @Test
+    void verifyTokenByDigest() {
+        String token = jwtUtils.generateToken(PRINCIPAL);
+        String digest = TokenDigest.remember(token);
+        try {
+            Assertions.assertEquals(digest, TokenDigest.of(token));
+            VerifiedToken verified = jwtUtils.verifyToken(token, digest);
+            Assertions.assertSame(verified, jwtUtils.verifyToken(token));
+        } finally {
+            TokenDigest.clear();
+        }
+        Assertions.assertEquals(digest, TokenDigest.of(token));
+    }
+
+    @Test
+    void verifyTokenWrongSignature() {
+        String token = Jwts.builder().setSubject(PRINCIPAL.getUsername())
+                .setExpiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(SignatureAlgorithm.HS512, "other secret").compact();
+        Assertions.assertThrows(SignatureException.class, () -> jwtUtils.verifyToken(token));
+        Assertions.assertThrows(SignatureException.class, () -> jwtUtils.verifyToken(token));
+    }
+
+    @Test
+    void verifyTokenExpired() {
+        String token = Jwts.builder().setSubject(PRINCIPAL.getUsername())
+                .setExpiration(new Date(System.currentTimeMillis() - 60000))
+                .signWith(SignatureAlgorithm.HS512, SECRET).compact();
+        Assertions.assertThrows(ExpiredJwtException.class, () -> jwtUtils.verifyToken(token));
+    }
+}
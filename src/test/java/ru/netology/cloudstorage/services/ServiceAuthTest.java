@@ -17,6 +17,7 @@ import ru.netology.cloudstorage.repositories.UserRepository;
 import ru.netology.cloudstorage.request.RequestAuth;
 import ru.netology.cloudstorage.response.JwtTokenResponse;
 import ru.netology.cloudstorage.security.JWTUtils;
+import ru.netology.cloudstorage.security.VerifiedToken;
 
 /**
  * Класс тестов ServiceAuthTest использует фреймворк Mockito для проведения модульного тестирования
@@ -39,8 +40,8 @@ import ru.netology.cloudstorage.security.JWTUtils;
  * Также проверяется, что методы authRepository.saveAuthenticationUser() и authenticationManager.authenticate()
  * вызываются один раз.
  * @Test метод logout() проверяет, что метод logout() возвращает пользователя при успешном выходе из системы.
- * Заглушка authRepository.getAuthenticationUserByToken() задает ожидаемое значение для вызова этого метода.
- * Затем вызывается метод logout() и сравнивается ожидаемый результат (USER_5).
+ * Заглушка authRepository.getAuthenticationUserIdByToken() задает ожидаемое значение для вызова этого метода.
+ * Затем вызывается метод logout() и проверяется, что сессия удаляется по токену без префикса "Bearer ".
  * <p>
  * Таким образом, класс тестов ServiceAuthTest проверяет работу методов сервиса AuthenticationService,
  * связанных с аутентификацией и выходом из системы.
@@ -54,6 +55,8 @@ public class ServiceAuthTest {
     public static final String AUTH_USERNAME_5 = "Auth_Username5";
     public static final String AUTH_PASSWORD_5 = "Auth_Password5";
     public static final User USER_5 = new User(AUTH_USER_ID_5, AUTH_USERNAME_5, AUTH_PASSWORD_5, null);
+    public static final long EXPIRATION_5 = 4102444800000L;
+    public static final VerifiedToken VERIFIED_TOKEN_5 = new VerifiedToken(AUTH_USERNAME_5, EXPIRATION_5);
     public static final JwtTokenResponse JWT_TOKEN_RESPONSE = new JwtTokenResponse(TOKEN_5);
     public static final RequestAuth REQUEST_AUTH = new RequestAuth(AUTH_USERNAME_5, AUTH_PASSWORD_5);
     public static final UsernamePasswordAuthenticationToken USERNAME_PASS_AUTH_TOKEN
@@ -86,15 +89,18 @@ public class ServiceAuthTest {
 
         Mockito.when(userRepository.findUserByLogin(AUTH_USERNAME_5)).thenReturn(USER_5);
         Mockito.when(jwtUtils.generateToken(USER_5)).thenReturn(TOKEN_5);
+        Mockito.when(jwtUtils.verifyToken(TOKEN_5)).thenReturn(VERIFIED_TOKEN_5);
         Mockito.when(userService.loadUserByUsername(AUTH_USERNAME_5)).thenReturn(USER_5);
         Assertions.assertEquals(JWT_TOKEN_RESPONSE, authenticationService.login(REQUEST_AUTH));
-        Mockito.verify(authRepository, Mockito.times(1)).saveAuthenticationUser(TOKEN_5, USER_5);
+        Mockito.verify(authRepository, Mockito.times(1)).saveAuthenticationUser(TOKEN_5, AUTH_USER_ID_5, EXPIRATION_5);
         Mockito.verify(authenticationManager, Mockito.times(1))
                 .authenticate(USERNAME_PASS_AUTH_TOKEN);
     }
 
     @Test
     void logout() {
-        Mockito.when(authRepository.getAuthenticationUserByToken(BEARER_TOKEN_SUB_7)).thenReturn(USER_5);
+        Mockito.when(authRepository.getAuthenticationUserIdByToken(BEARER_TOKEN_SUB_7)).thenReturn(AUTH_USER_ID_5);
+        authenticationService.logout(BEARER_TOKEN);
+        Mockito.verify(authRepository, Mockito.times(1)).deleteAuthenticationUserByToken(BEARER_TOKEN_SUB_7);
     }
 }
@@ -0,0 +1,139 @@
+package ru.netology.cloudstorage.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.netology.cloudstorage.repositories.BlobRepository;
+import ru.netology.cloudstorage.storage.FileSystemBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс тестов ServiceBlobTest проверяет, что сборщик BlobService.reclaimOrphans не удаляет содержимое, которое в это
+ * время сохраняет загрузка. Используются база данных и FileSystemBlobStore во временном каталоге, а каждый шаг
+ * выполняется в своей транзакции, как в приложении.
+ * <p>
+ * Тест saveMovesOrphanOutOfCollector() проверяет, что повторное сохранение уже хранимого содержимого без ссылок
+ * сдвигает orphaned_at, и сборщик, выбравший это содержимое раньше, его уже не удаляет. Тест saveWaitsForCollector()
+ * проверяет обратный порядок: сборщик удалил строку и файл, но еще не зафиксировал транзакцию, - сохранение ждет ее
+ * на блокировке строки и записывает содержимое заново. Тест addReferenceToMissingBlob() проверяет, что ссылка на
+ * отсутствующее в хранилище содержимое не сохраняется.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ServiceBlobTest {
+
+    @TempDir
+    Path root;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private FileSystemBlobStore blobStore;
+    private BlobService blobService;
+    private TransactionTemplate transactionTemplate;
+    private byte[] content;
+    private String blobKey;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        blobStore = new FileSystemBlobStore(root.toString());
+        blobService = new BlobService(blobRepository, blobStore, transactionManager, jdbcTemplate);
+        blobService.registerSaveGuard();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        content = ("blob service test " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        blobKey = blobStore.save(new ByteArrayInputStream(content));
+        transactionTemplate.executeWithoutResult(status ->
+                blobRepository.addOrphan(blobKey, content.length, content.length));
+        jdbcTemplate.update("UPDATE blobs SET orphaned_at = now() - interval '2 hours' WHERE blob_key = ?", blobKey);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM blobs WHERE blob_key = ?", blobKey);
+    }
+
+    @Test
+    void saveMovesOrphanOutOfCollector() throws Exception {
+        LocalDateTime before = LocalDateTime.now().minusHours(1);
+        Assertions.assertTrue(blobRepository.findOrphanKeys(before, 100).contains(blobKey));
+        Assertions.assertEquals(blobKey, blobStore.save(new ByteArrayInputStream(content)));
+
+        Integer deleted = transactionTemplate.execute(status -> blobRepository.deleteOrphan(blobKey, before));
+        Assertions.assertEquals(0, deleted);
+        blobService.reclaimOrphans();
+        transactionTemplate.executeWithoutResult(status -> blobService.addReference(blobKey, content.length));
+        Assertions.assertTrue(blobStore.exists(blobKey));
+        Assertions.assertEquals(1, refCount());
+    }
+
+    @Test
+    void saveWaitsForCollector() throws Exception {
+        CountDownLatch collected = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Integer> collector = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(status -> {
+            int deleted = blobRepository.deleteOrphan(blobKey, LocalDateTime.now().minusHours(1));
+            blobStore.delete(blobKey);
+            collected.countDown();
+            try {
+                commit.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return deleted;
+        }));
+        Assertions.assertTrue(collected.await(10, TimeUnit.SECONDS));
+        CompletableFuture<String> upload = CompletableFuture.supplyAsync(() -> {
+            try {
+                return blobStore.save(new ByteArrayInputStream(content));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        Assertions.assertFalse(upload.isDone());
+        commit.countDown();
+
+        Assertions.assertEquals(1, collector.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(blobKey, upload.get(10, TimeUnit.SECONDS));
+        transactionTemplate.executeWithoutResult(status -> blobService.addReference(blobKey, content.length));
+        Assertions.assertTrue(blobStore.exists(blobKey));
+        Assertions.assertEquals(1, refCount());
+    }
+
+    @Test
+    void addReferenceToMissingBlob() {
+        blobStore.delete(blobKey);
+        Assertions.assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(
+                status -> blobService.addReference(blobKey, content.length)));
+        Assertions.assertEquals(0, refCount());
+    }
+
+    private int refCount() {
+        return jdbcTemplate.queryForObject("SELECT ref_count FROM blobs WHERE blob_key = ?", Integer.class, blobKey);
+    }
+}
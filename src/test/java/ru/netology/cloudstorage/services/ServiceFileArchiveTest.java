@@ -0,0 +1,136 @@
+package ru.netology.cloudstorage.services;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Класс тестов ServiceFileArchiveTest использует фреймворк Mockito для проведения модульного тестирования сборки
+ * ZIP-архива в сервисе FileArchiveService.
+ * <p>
+ * Проверяется, что архив содержит файлы в порядке запроса с исходным содержимым, что уже сжатый файл (png)
+ * записывается записью STORED, а текстовый - DEFLATED, и что отсутствующее имя файла отклоняется до записи архива.
+ * Уже сжатый файл больше буфера записывается записью DEFLATED без повторного сжатия, а содержимое каждого файла
+ * читается из хранилища один раз. Имена записей не выходят за пределы каталога распаковки ("..", начальный "/")
+ * и не повторяются.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ServiceFileArchiveTest {
+    public static final String BEARER_TOKEN = "Bearer Token";
+    public static final User USER_1 = new User(101L, "Auth_Username1", "Auth_Password1", null);
+    public static final LocalDateTime EDITED_AT = LocalDateTime.of(2024, 1, 15, 10, 30, 0);
+    public static final byte[] TEXT_CONTENT = "Text content, text content, text content".getBytes(StandardCharsets.UTF_8);
+    public static final byte[] PNG_CONTENT = {(byte) 0x89, 'P', 'N', 'G', 13, 10, 26, 10, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    public static final File TEXT_FILE = new File(1L, "docs/Text.txt", EDITED_AT, (long) TEXT_CONTENT.length,
+            "textKey", USER_1);
+    public static final File PNG_FILE = new File(2L, "docs/Image.png", EDITED_AT, (long) PNG_CONTENT.length,
+            "pngKey", USER_1);
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private BlobMigrationService blobMigrationService;
+
+    private FileArchiveService fileArchiveService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileArchiveService = new FileArchiveService(fileService, fileRepository, blobStore, blobMigrationService);
+        Mockito.when(fileService.getUserByToken(BEARER_TOKEN)).thenReturn(USER_1);
+        Mockito.when(fileRepository.findAllByUserAndFilenameIn(Mockito.eq(USER_1), Mockito.any()))
+                .thenReturn(List.of(PNG_FILE, TEXT_FILE));
+        Mockito.when(blobStore.open("textKey")).thenAnswer(invocation -> new ByteArrayInputStream(TEXT_CONTENT));
+        Mockito.when(blobStore.open("pngKey")).thenAnswer(invocation -> new ByteArrayInputStream(PNG_CONTENT));
+    }
+
+    @Test
+    void writeArchive() throws IOException {
+        List<File> files = fileArchiveService.findFiles(BEARER_TOKEN,
+                List.of(TEXT_FILE.getFilename(), PNG_FILE.getFilename(), TEXT_FILE.getFilename()), null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        fileArchiveService.writeArchive(files, out);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry text = zip.getNextEntry();
+            Assertions.assertEquals(TEXT_FILE.getFilename(), text.getName());
+            Assertions.assertEquals(ZipEntry.DEFLATED, text.getMethod());
+            Assertions.assertArrayEquals(TEXT_CONTENT, zip.readAllBytes());
+            ZipEntry png = zip.getNextEntry();
+            Assertions.assertEquals(PNG_FILE.getFilename(), png.getName());
+            Assertions.assertEquals(ZipEntry.STORED, png.getMethod());
+            Assertions.assertArrayEquals(PNG_CONTENT, zip.readAllBytes());
+            Assertions.assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    void writeArchiveLargeCompressedAndUnsafeNames() throws IOException {
+        byte[] bigPng = new byte[200 * 1024];
+        new Random(7).nextBytes(bigPng);
+        System.arraycopy(PNG_CONTENT, 0, bigPng, 0, 8);
+        Mockito.when(blobStore.open("bigKey")).thenAnswer(invocation -> new ByteArrayInputStream(bigPng));
+        List<File> files = List.of(
+                new File(3L, "../../etc/Big.png", EDITED_AT, (long) bigPng.length, "bigKey", USER_1),
+                new File(4L, "/docs/Text.txt", EDITED_AT, (long) TEXT_CONTENT.length, "textKey", USER_1),
+                new File(5L, "docs\\.\\Text.txt", EDITED_AT, (long) TEXT_CONTENT.length, "textKey", USER_1),
+                new File(6L, "..", EDITED_AT, (long) PNG_CONTENT.length, "pngKey", USER_1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        fileArchiveService.writeArchive(files, out);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry big = zip.getNextEntry();
+            Assertions.assertEquals("etc/Big.png", big.getName());
+            Assertions.assertEquals(ZipEntry.DEFLATED, big.getMethod());
+            Assertions.assertArrayEquals(bigPng, zip.readAllBytes());
+            Assertions.assertEquals("docs/Text.txt", zip.getNextEntry().getName());
+            Assertions.assertArrayEquals(TEXT_CONTENT, zip.readAllBytes());
+            Assertions.assertEquals("docs/Text (1).txt", zip.getNextEntry().getName());
+            Assertions.assertArrayEquals(TEXT_CONTENT, zip.readAllBytes());
+            Assertions.assertEquals("file", zip.getNextEntry().getName());
+            Assertions.assertArrayEquals(PNG_CONTENT, zip.readAllBytes());
+            Assertions.assertNull(zip.getNextEntry());
+        }
+        Assertions.assertTrue(out.size() > bigPng.length);
+        Mockito.verify(blobStore, Mockito.times(1)).open("bigKey");
+        Mockito.verify(blobStore, Mockito.times(1)).open("pngKey");
+    }
+
+    @Test
+    void findFilesMissingFilename() {
+        assertThrows(InputDataExceptionError.class, () -> fileArchiveService.findFiles(BEARER_TOKEN,
+                List.of(TEXT_FILE.getFilename(), "Unknown"), null));
+    }
+}
@@ -0,0 +1,251 @@
+package ru.netology.cloudstorage.services;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.request.MultipartStreamReader;
+import ru.netology.cloudstorage.request.RequestRenameFile;
+import ru.netology.cloudstorage.request.RequestRenameFiles;
+import ru.netology.cloudstorage.response.ResponseFileResult;
+import ru.netology.cloudstorage.response.ResponseUploadFile;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Класс тестов ServiceFileBatchTest использует фреймворк Mockito для проведения модульного тестирования пакетной
+ * загрузки файлов в сервисе FileBatchService.
+ * <p>
+ * Проверяется, что все файлы тела multipart сохраняются одной пачкой (saveAll и addReferences), что результат
+ * возвращается по каждому файлу в порядке частей, что занятое имя и неверный хэш отклоняются только для своего
+ * файла, а их содержимое освобождается, и что при сбое пакетной вставки файлы сохраняются по одному.
+ * <p>
+ * Для пакетного удаления и переименования проверяется, что файлы обрабатываются одним запросом репозитория, что
+ * результат возвращается по каждому имени, что правило префикса разворачивается в список пар имен и что при
+ * конфликте имен пакетного UPDATE файлы переименовываются по одному.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ServiceFileBatchTest {
+    public static final String BOUNDARY = "----CloudStorageBatchBoundary";
+    public static final String BEARER_TOKEN = "Bearer Token";
+    public static final User USER_1 = new User(101L, "Auth_Username1", "Auth_Password1", null);
+    public static final String FILENAME_1 = "Filename1";
+    public static final String FILENAME_2 = "Filename2";
+    public static final String FILENAME_3 = "Filename3";
+    public static final String BLOB_KEY = "0123456789abcdef0123456789abcdef";
+    public static final String NEW_FILENAME_1 = "NewFilename1";
+    public static final String NEW_FILENAME_2 = "NewFilename2";
+    public static final String NEW_FILENAME_3 = "NewFilename3";
+    public static final String OTHER_SHA256 = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FileBatchService fileBatchService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileBatchService = new FileBatchService(fileService, fileRepository, blobStore, blobService,
+                transactionManager);
+        Mockito.when(fileService.getUserByToken(BEARER_TOKEN)).thenReturn(USER_1);
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenAnswer(invocation -> {
+            ((InputStream) invocation.getArgument(0)).readAllBytes();
+            return BLOB_KEY;
+        });
+    }
+
+    @Test
+    void uploadFiles() throws IOException {
+        List<ResponseUploadFile> results = fileBatchService.uploadFiles(BEARER_TOKEN,
+                reader(FILENAME_1, FILENAME_2, FILENAME_3));
+
+        Assertions.assertEquals(List.of(FILENAME_1, FILENAME_2, FILENAME_3),
+                results.stream().map(ResponseUploadFile::getFilename).toList());
+        Assertions.assertTrue(results.stream().allMatch(ResponseUploadFile::isUploaded));
+        Mockito.verify(fileRepository, Mockito.times(1)).saveAll(Mockito.argThat(
+                (List<File> files) -> files.size() == 3));
+        Mockito.verify(blobService, Mockito.times(1)).addReferences(Mockito.argThat(files -> files.size() == 3));
+        Mockito.verify(fileRepository, Mockito.never()).save(Mockito.any(File.class));
+    }
+
+    @Test
+    void uploadFilesRejectsTakenNameAndBadHash() throws IOException {
+        Mockito.when(fileRepository.findExistingFilenames(Mockito.any(), Mockito.any()))
+                .thenReturn(List.of(FILENAME_2));
+        byte[] body = body(part(FILENAME_1), hashPart(OTHER_SHA256), part(FILENAME_2 + "_bad"), part(FILENAME_2),
+                part(FILENAME_3));
+
+        List<ResponseUploadFile> results = fileBatchService.uploadFiles(BEARER_TOKEN,
+                new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY));
+
+        Assertions.assertEquals(4, results.size());
+        Assertions.assertTrue(results.get(0).isUploaded());
+        Assertions.assertEquals(FileBatchService.ERROR_INPUT_DATA, results.get(1).getError());
+        Assertions.assertEquals(FileBatchService.ERROR_FILE_EXISTS, results.get(2).getError());
+        Assertions.assertTrue(results.get(3).isUploaded());
+        Mockito.verify(fileRepository).saveAll(Mockito.argThat((List<File> files) -> files.size() == 2));
+        Mockito.verify(blobService, Mockito.times(2)).releaseUnreferenced(Mockito.eq(BLOB_KEY), Mockito.anyLong());
+    }
+
+    @Test
+    void uploadFilesFallsBackToSingleInserts() throws IOException {
+        Mockito.when(fileRepository.saveAll(Mockito.any())).thenThrow(new DataIntegrityViolationException("dup"));
+        Mockito.when(fileRepository.save(Mockito.argThat((File file) -> FILENAME_2.equals(file.getFilename()))))
+                .thenThrow(new DataIntegrityViolationException("dup"));
+
+        List<ResponseUploadFile> results = fileBatchService.uploadFiles(BEARER_TOKEN,
+                reader(FILENAME_1, FILENAME_2, FILENAME_3));
+
+        Assertions.assertTrue(results.get(0).isUploaded());
+        Assertions.assertEquals(FileBatchService.ERROR_UPLOAD_FILE, results.get(1).getError());
+        Assertions.assertTrue(results.get(2).isUploaded());
+        Mockito.verify(blobService, Mockito.times(2)).addReference(Mockito.eq(BLOB_KEY), Mockito.anyLong());
+        Mockito.verify(blobService, Mockito.times(1)).releaseUnreferenced(Mockito.eq(BLOB_KEY), Mockito.anyLong());
+    }
+
+    @Test
+    void uploadFilesUnauthorized() {
+        assertThrows(UnauthorizedExceptionError.class,
+                () -> fileBatchService.uploadFiles("Bearer Unknown", reader(FILENAME_1)));
+    }
+
+    @Test
+    void deleteFiles() {
+        Map<String, String> deleted = new HashMap<>();
+        deleted.put(FILENAME_1, BLOB_KEY);
+        deleted.put(FILENAME_2, null);
+        Mockito.when(fileRepository.deleteByUserAndFilenames(Mockito.eq(USER_1), Mockito.any())).thenReturn(deleted);
+        Mockito.when(blobService.removeReferences(List.of(BLOB_KEY))).thenReturn(List.of(BLOB_KEY));
+
+        List<ResponseFileResult> results = fileBatchService.deleteFiles(BEARER_TOKEN,
+                List.of(FILENAME_1, FILENAME_2, "", FILENAME_1, FILENAME_3));
+
+        Assertions.assertTrue(results.get(0).isSuccess());
+        Assertions.assertTrue(results.get(1).isSuccess());
+        Assertions.assertEquals(FileBatchService.ERROR_INPUT_DATA, results.get(2).getError());
+        Assertions.assertEquals(FileBatchService.ERROR_DELETE_FILE, results.get(3).getError());
+        Assertions.assertEquals(FileBatchService.ERROR_DELETE_FILE, results.get(4).getError());
+        Mockito.verify(fileRepository, Mockito.times(1)).deleteByUserAndFilenames(Mockito.eq(USER_1),
+                Mockito.argThat((List<String> names) -> names.size() == 3));
+        Mockito.verify(fileService, Mockito.times(1)).deleteBlobAfterCommit(BLOB_KEY);
+    }
+
+    @Test
+    void renameFiles() {
+        Mockito.when(fileRepository.findExistingFilenames(Mockito.any(), Mockito.any()))
+                .thenReturn(List.of(NEW_FILENAME_3));
+        Mockito.when(fileRepository.renameByUser(USER_1, List.of(FILENAME_1, "Filename4"),
+                List.of(NEW_FILENAME_1, "NewFilename4"))).thenReturn(List.of(FILENAME_1));
+        RequestRenameFiles request = new RequestRenameFiles(List.of(
+                new RequestRenameFile(FILENAME_1, NEW_FILENAME_1),
+                new RequestRenameFile(FILENAME_2, FILENAME_2),
+                new RequestRenameFile(FILENAME_3, NEW_FILENAME_3),
+                new RequestRenameFile("Filename4", "NewFilename4")), null, null);
+
+        List<ResponseFileResult> results = fileBatchService.renameFiles(BEARER_TOKEN, request);
+
+        Assertions.assertTrue(results.get(0).isSuccess());
+        Assertions.assertEquals(FileBatchService.ERROR_INPUT_DATA, results.get(1).getError());
+        Assertions.assertEquals(FileBatchService.ERROR_FILE_EXISTS, results.get(2).getError());
+        Assertions.assertEquals(FileBatchService.ERROR_INPUT_DATA, results.get(3).getError());
+        Mockito.verify(fileRepository, Mockito.never()).setNewFilenameByUserAndFilename(Mockito.any(), Mockito.any(),
+                Mockito.any());
+    }
+
+    @Test
+    void renameFilesByPrefix() {
+        Mockito.when(fileRepository.findFilenamesByUserAndPattern(Mockito.eq(USER_1), Mockito.eq("dir!_1/%"),
+                Mockito.any())).thenReturn(List.of("dir_1/" + FILENAME_1, "dir_1/" + FILENAME_2));
+        Mockito.when(fileRepository.renameByUser(Mockito.eq(USER_1), Mockito.any(), Mockito.any()))
+                .thenReturn(List.of("dir_1/" + FILENAME_1, "dir_1/" + FILENAME_2));
+
+        List<ResponseFileResult> results = fileBatchService.renameFiles(BEARER_TOKEN,
+                new RequestRenameFiles(null, "dir_1/", "dir_2/"));
+
+        Assertions.assertTrue(results.stream().allMatch(ResponseFileResult::isSuccess));
+        Mockito.verify(fileRepository).renameByUser(USER_1, List.of("dir_1/" + FILENAME_1, "dir_1/" + FILENAME_2),
+                List.of("dir_2/" + FILENAME_1, "dir_2/" + FILENAME_2));
+    }
+
+    @Test
+    void renameFilesFallsBackToSingleUpdates() {
+        Mockito.when(fileRepository.renameByUser(Mockito.eq(USER_1), Mockito.any(), Mockito.any()))
+                .thenThrow(new DuplicateKeyException("dup"));
+        Mockito.when(fileRepository.setNewFilenameByUserAndFilename(NEW_FILENAME_1, USER_1, FILENAME_1))
+                .thenReturn(1);
+        Mockito.when(fileRepository.setNewFilenameByUserAndFilename(NEW_FILENAME_2, USER_1, FILENAME_2))
+                .thenThrow(new DataIntegrityViolationException("dup"));
+        RequestRenameFiles request = new RequestRenameFiles(List.of(
+                new RequestRenameFile(FILENAME_1, NEW_FILENAME_1),
+                new RequestRenameFile(FILENAME_2, NEW_FILENAME_2)), null, null);
+
+        List<ResponseFileResult> results = fileBatchService.renameFiles(BEARER_TOKEN, request);
+
+        Assertions.assertTrue(results.get(0).isSuccess());
+        Assertions.assertEquals(FileBatchService.ERROR_FILE_EXISTS, results.get(1).getError());
+    }
+
+    private static MultipartStreamReader reader(String... filenames) throws IOException {
+        String[] parts = new String[filenames.length];
+        for (int i = 0; i < filenames.length; i++) {
+            parts[i] = part(filenames[i]);
+        }
+        return new MultipartStreamReader(new ByteArrayInputStream(body(parts)), BOUNDARY);
+    }
+
+    private static String part(String filename) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n\r\n"
+                + "Content of " + filename + "\r\n";
+    }
+
+    private static String hashPart(String hash) {
+        return "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"hash\"\r\n\r\n"
+                + hash + "\r\n";
+    }
+
+    private static byte[] body(String... parts) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (String part : parts) {
+            body.write(part.getBytes(StandardCharsets.UTF_8));
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+}
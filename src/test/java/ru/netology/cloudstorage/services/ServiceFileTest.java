@@ -4,28 +4,45 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
-import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import ru.netology.cloudstorage.exceptions.DeleteFileExceptionError;
 import ru.netology.cloudstorage.exceptions.GettingFileListExceptionError;
 import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.exceptions.PreconditionFailedExceptionError;
 import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
 import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.FileVersion;
 import ru.netology.cloudstorage.models.User;
 import ru.netology.cloudstorage.repositories.AuthRepository;
+import ru.netology.cloudstorage.repositories.FileListCursor;
+import ru.netology.cloudstorage.repositories.FileListItem;
 import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.FileSort;
+import ru.netology.cloudstorage.repositories.FileVersionItem;
 import ru.netology.cloudstorage.repositories.UserRepository;
 import ru.netology.cloudstorage.request.RequestEditFileName;
 import ru.netology.cloudstorage.response.ResponseFile;
-
+import ru.netology.cloudstorage.response.ResponseFilePage;
+import ru.netology.cloudstorage.response.ResponseFileVersion;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -51,6 +68,18 @@ public class ServiceFileTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private BlobMigrationService blobMigrationService;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     //----------------------------------------------------------------------------------------------------------
     public static final String TOKEN_1 = "Auth_Token1";
     public static final String FILENAME_1 = "Filename1";
@@ -64,8 +93,9 @@ public class ServiceFileTest {
     public static final Long FILE_ID_1 = 1L;
     public static final Long SIZE_1 = 100L;
     public static final byte[] FILE_CONTENT_1 = FILENAME_1.getBytes();
+    public static final String BLOB_KEY_1 = "0123456789abcdef0123456789abcdef";
     public static final File FILE_1 = new File(FILE_ID_1, FILENAME_1, LocalDateTime.now(),
-            SIZE_1, FILE_CONTENT_1, USER_1);
+            SIZE_1, BLOB_KEY_1, USER_1);
 
     //----------------------------------------------------------------------------------------------------------
     public static final String FILENAME_2 = "Filename2";
@@ -77,9 +107,11 @@ public class ServiceFileTest {
     public static final Long FILE_ID_2 = 2L;
     public static final Long SIZE_2 = 200L;
     public static final byte[] FILE_CONTENT_2 = FILENAME_2.getBytes();
-    public static final MultipartFile MULTIPART_FILE = new MockMultipartFile(FILENAME_2, FILE_CONTENT_2);
+    public static final String BLOB_KEY_2 = "fedcba9876543210fedcba9876543210";
+    public static final String SHA256_KEY = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    public static final String OTHER_SHA256_KEY = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
     public static final File FILE_2 =
-            new File(FILE_ID_2, FILENAME_2, LocalDateTime.now(), SIZE_2, FILE_CONTENT_2, USER_2);
+            new File(FILE_ID_2, FILENAME_2, LocalDateTime.now(), SIZE_2, BLOB_KEY_2, USER_2);
 
     // -----------------------------------------------------------------------------------------------------------
     public static final String BEARER_TOKEN = "Bearer Token";
@@ -89,40 +121,184 @@ public class ServiceFileTest {
     public static final String NEW_FILENAME = "Filename_New";
     public static final String FILENAME_EMPTY = null;
     public static final File FILE_NULL = null;
-    public static final List<File> FILE_LIST_NULL = null;
     public static final Integer LIMIT_NULL = 0;
     public static final Integer LIMIT = 100;
     public static final RequestEditFileName REQUEST_EDIT_FILE_NAME = new RequestEditFileName(NEW_FILENAME);
     public static final ResponseFile RESPONSE_FILE_1 = new ResponseFile(FILENAME_1, SIZE_1);
     public static final ResponseFile RESPONSE_FILE_2 = new ResponseFile(FILENAME_2, SIZE_2);
     public static final List<ResponseFile> RESPONSE_FILE_LIST = List.of(RESPONSE_FILE_1, RESPONSE_FILE_2);
-    public static final List<File> FILE_LIST = List.of(FILE_1, FILE_2);
+    public static final List<FileListItem> FILE_LIST_ITEMS = List.of(
+            new FileListItem(1L, RESPONSE_FILE_1.getFilename(), RESPONSE_FILE_1.getSize(), LocalDateTime.now()),
+            new FileListItem(2L, RESPONSE_FILE_2.getFilename(), RESPONSE_FILE_2.getSize(), LocalDateTime.now()));
     // -----------------------------------------------------------------------------------------------------------
 
 
     @BeforeEach
     void setUp() {
-        Mockito.when(authRepository.getAuthenticationUserByToken(BEARER_TOKEN_SPLIT)).thenReturn(USER_1);
+        Mockito.when(authRepository.getAuthenticationUserIdByToken(BEARER_TOKEN_SPLIT)).thenReturn(AUTH_USER_ID_1);
+        Mockito.when(userRepository.getReferenceById(AUTH_USER_ID_1)).thenReturn(USER_1);
         Mockito.when(userRepository.findUserByLogin(AUTH_USERNAME_1)).thenReturn(USER_1);
     }
 
     @Test
-    void uploadFile() {
-        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME_1, MULTIPART_FILE));
+    void uploadFile() throws IOException {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME_1,
+                new ByteArrayInputStream(FILE_CONTENT_2)));
+        Mockito.verify(fileRepository, Mockito.times(1)).save(Mockito.argThat(file ->
+                BLOB_KEY_2.equals(file.getBlobKey()) && FILENAME_1.equals(file.getFilename())));
+        Mockito.verify(blobService, Mockito.times(1)).addReference(BLOB_KEY_2, FILE_CONTENT_2.length);
+    }
+
+    @Test
+    void uploadFileReleasesBlobWhenSaveFails() throws IOException {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Mockito.when(fileRepository.save(Mockito.any(File.class))).thenThrow(new IllegalStateException());
+        assertThrows(IllegalStateException.class,
+                () -> fileService.uploadFile(BEARER_TOKEN, FILENAME_1, new ByteArrayInputStream(FILE_CONTENT_2)));
+        Mockito.verify(blobService, Mockito.times(1)).releaseUnreferenced(BLOB_KEY_2, FILE_CONTENT_2.length);
+        Mockito.verify(blobStore, Mockito.never()).delete(BLOB_KEY_2);
+    }
+
+    @Test
+    void uploadFileHashMismatch() throws IOException {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(SHA256_KEY);
+        assertThrows(InputDataExceptionError.class, () -> fileService.uploadFile(BEARER_TOKEN, FILENAME_1,
+                OTHER_SHA256_KEY, new ByteArrayInputStream(FILE_CONTENT_2)));
+        Mockito.verify(fileRepository, Mockito.never()).save(Mockito.any(File.class));
+        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME_1,
+                SHA256_KEY.toUpperCase(), new ByteArrayInputStream(FILE_CONTENT_2)));
+    }
+
+    @Test
+    void uploadFileNewVersion() throws IOException {
+        ReflectionTestUtils.setField(fileService, "versioningEnabled", true);
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Mockito.when(fileRepository.replaceContentKeepingVersion(Mockito.eq(USER_1), Mockito.eq(FILENAME_1),
+                Mockito.isNull(), Mockito.eq(BLOB_KEY_2), Mockito.anyLong(), Mockito.any(LocalDateTime.class)))
+                .thenReturn(2);
+        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME_1,
+                new ByteArrayInputStream(FILE_CONTENT_2)));
+        Mockito.verify(fileRepository, Mockito.never()).save(Mockito.any(File.class));
+        Mockito.verify(blobService, Mockito.times(1)).addReference(BLOB_KEY_2, FILE_CONTENT_2.length);
+        Mockito.verify(blobService, Mockito.never()).removeReference(Mockito.anyString());
+    }
+
+    @Test
+    void uploadFileFirstVersion() throws IOException {
+        ReflectionTestUtils.setField(fileService, "versioningEnabled", true);
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Assertions.assertTrue(fileService.uploadFile(BEARER_TOKEN, FILENAME_1,
+                new ByteArrayInputStream(FILE_CONTENT_2)));
+        Mockito.verify(fileRepository, Mockito.times(1)).save(Mockito.argThat(file ->
+                BLOB_KEY_2.equals(file.getBlobKey()) && FILENAME_1.equals(file.getFilename())));
+    }
+
+    @Test
+    void uploadFileByHash() {
+        Mockito.when(blobService.addExistingReference(SHA256_KEY, SIZE_1)).thenReturn(true);
+        Assertions.assertTrue(fileService.uploadFileByHash(BEARER_TOKEN, FILENAME_1, SHA256_KEY.toUpperCase(), SIZE_1));
+        Mockito.verify(fileRepository, Mockito.times(1)).save(Mockito.argThat(file ->
+                SHA256_KEY.equals(file.getBlobKey()) && SIZE_1.equals(file.getSize())));
+    }
+
+    @Test
+    void uploadFileByHashUnknownContent() {
+        Mockito.when(blobService.addExistingReference(SHA256_KEY, SIZE_1)).thenReturn(false);
+        Assertions.assertFalse(fileService.uploadFileByHash(BEARER_TOKEN, FILENAME_1, SHA256_KEY, SIZE_1));
+        Mockito.verify(fileRepository, Mockito.never()).save(Mockito.any(File.class));
+    }
+
+    @Test
+    void uploadFileByHashInputDataException() {
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.uploadFileByHash(BEARER_TOKEN, FILENAME_1, BLOB_KEY_1, SIZE_1));
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.uploadFileByHash(BEARER_TOKEN, FILENAME_1, SHA256_KEY, null));
     }
 
     @Test
     void uploadFileUnauthorizedException() {
         assertThrows(UnauthorizedExceptionError.class,
-                () -> fileService.uploadFile(TOKEN_1, FILENAME_1, MULTIPART_FILE));
+                () -> fileService.uploadFile(TOKEN_1, FILENAME_1, new ByteArrayInputStream(FILE_CONTENT_2)));
+    }
+
+    @Test
+    void uploadFileDelta() throws IOException {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Mockito.when(fileRepository.replaceContent(Mockito.eq(USER_1), Mockito.eq(FILENAME_1), Mockito.eq(BLOB_KEY_1),
+                Mockito.eq(BLOB_KEY_2), Mockito.anyLong(), Mockito.any(LocalDateTime.class))).thenReturn(1);
+        Mockito.when(blobService.removeReference(BLOB_KEY_1)).thenReturn(true);
+        fileService.uploadFileDelta(BEARER_TOKEN, FILE_1, 1024, null, new ByteArrayInputStream(new byte[]{'E'}));
+        Mockito.verify(blobService, Mockito.times(1)).addReference(Mockito.eq(BLOB_KEY_2), Mockito.anyLong());
+        Mockito.verify(blobService, Mockito.times(1)).removeReference(BLOB_KEY_1);
+        Mockito.verify(blobService, Mockito.never()).releaseUnreferenced(Mockito.eq(BLOB_KEY_2), Mockito.anyLong());
+    }
+
+    @Test
+    void uploadFileDeltaPreconditionFailed() throws IOException {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Mockito.when(fileRepository.replaceContent(Mockito.eq(USER_1), Mockito.eq(FILENAME_1), Mockito.eq(BLOB_KEY_1),
+                Mockito.eq(BLOB_KEY_2), Mockito.anyLong(), Mockito.any(LocalDateTime.class))).thenReturn(0);
+        assertThrows(PreconditionFailedExceptionError.class, () -> fileService.uploadFileDelta(BEARER_TOKEN, FILE_1,
+                1024, null, new ByteArrayInputStream(new byte[]{'E'})));
+        Mockito.verify(blobService, Mockito.times(1)).releaseUnreferenced(Mockito.eq(BLOB_KEY_2), Mockito.anyLong());
+        Mockito.verify(blobService, Mockito.never()).removeReference(BLOB_KEY_1);
+    }
+
+    @Test
+    void uploadFileDeltaKeepsVersion() throws IOException {
+        ReflectionTestUtils.setField(fileService, "versioningEnabled", true);
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenReturn(BLOB_KEY_2);
+        Mockito.when(fileRepository.replaceContentKeepingVersion(Mockito.eq(USER_1), Mockito.eq(FILENAME_1),
+                Mockito.eq(BLOB_KEY_1), Mockito.eq(BLOB_KEY_2), Mockito.anyLong(), Mockito.any(LocalDateTime.class)))
+                .thenReturn(3);
+        fileService.uploadFileDelta(BEARER_TOKEN, FILE_1, 1024, null, new ByteArrayInputStream(new byte[]{'E'}));
+        Mockito.verify(blobService, Mockito.times(1)).addReference(Mockito.eq(BLOB_KEY_2), Mockito.anyLong());
+        Mockito.verify(blobService, Mockito.never()).removeReference(BLOB_KEY_1);
+        Mockito.verify(fileRepository, Mockito.never()).replaceContent(Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void signatureBlockSize() {
+        Assertions.assertEquals(2048, FileService.signatureBlockSize(0));
+        Assertions.assertEquals(23552, FileService.signatureBlockSize(500L * 1024 * 1024));
+        Assertions.assertEquals(1024 * 1024, FileService.signatureBlockSize(1L << 42));
     }
 
     @Test
     void deleteFile() {
+        Mockito.when(fileRepository.findBlobKeyByUserAndFilename(USER_1, FILENAME_1)).thenReturn(BLOB_KEY_1);
         Mockito.when(fileRepository.deleteByUserAndFilename(USER_1, FILENAME_1)).thenReturn(1);
         fileService.deleteFile(BEARER_TOKEN, FILENAME_1);
         Mockito.verify(fileRepository,
                 Mockito.times(1)).deleteByUserAndFilename(USER_1, FILENAME_1);
+        Mockito.verify(blobStore, Mockito.times(1)).delete(BLOB_KEY_1);
+    }
+
+    @Test
+    void deleteFileSharedBlob() {
+        Mockito.when(fileRepository.findBlobKeyByUserAndFilename(USER_1, FILENAME_1)).thenReturn(BLOB_KEY_1);
+        Mockito.when(fileRepository.deleteByUserAndFilename(USER_1, FILENAME_1)).thenReturn(1);
+        Mockito.when(blobService.removeReference(BLOB_KEY_1)).thenReturn(true);
+        fileService.deleteFile(BEARER_TOKEN, FILENAME_1);
+        Mockito.verify(blobService, Mockito.times(1)).removeReference(BLOB_KEY_1);
+        Mockito.verify(blobStore, Mockito.never()).delete(BLOB_KEY_1);
+    }
+
+    @Test
+    void deleteFileWithVersions() {
+        Mockito.when(fileRepository.findBlobKeyByUserAndFilename(USER_1, FILENAME_1)).thenReturn(BLOB_KEY_1);
+        Mockito.when(fileRepository.deleteVersionsByUserAndFilenames(USER_1, List.of(FILENAME_1)))
+                .thenReturn(List.of(BLOB_KEY_2, SHA256_KEY));
+        Mockito.when(fileRepository.deleteByUserAndFilename(USER_1, FILENAME_1)).thenReturn(1);
+        Mockito.when(blobService.removeReference(BLOB_KEY_1)).thenReturn(true);
+        Mockito.when(blobService.removeReferences(List.of(BLOB_KEY_2, SHA256_KEY))).thenReturn(List.of(BLOB_KEY_2));
+        fileService.deleteFile(BEARER_TOKEN, FILENAME_1);
+        Mockito.verify(blobStore, Mockito.times(1)).delete(BLOB_KEY_2);
+        Mockito.verify(blobStore, Mockito.never()).delete(SHA256_KEY);
+        Mockito.verify(blobStore, Mockito.never()).delete(BLOB_KEY_1);
     }
 
     @Test
@@ -147,6 +323,61 @@ public class ServiceFileTest {
         assertThrows(UnauthorizedExceptionError.class, () -> fileService.downloadFile(TOKEN_1, FILENAME_1));
     }
 
+    @Test
+    void downloadFile() {
+        Mockito.when(fileRepository.findByUserAndFilename(USER_1, FILENAME_1)).thenReturn(FILE_1);
+        Assertions.assertEquals(FILE_1, fileService.downloadFile(BEARER_TOKEN, FILENAME_1));
+    }
+
+    @Test
+    void writeContentRange() throws IOException {
+        Mockito.when(blobStore.open(BLOB_KEY_1)).thenReturn(new ByteArrayInputStream(FILE_CONTENT_1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileService.writeContent(FILE_1, 2, 4, out);
+        Assertions.assertArrayEquals(Arrays.copyOfRange(FILE_CONTENT_1, 2, 6), out.toByteArray());
+    }
+
+    @Test
+    void writeContentFromLocalFile(@TempDir Path directory) throws IOException {
+        Path blob = Files.write(directory.resolve(BLOB_KEY_1), FILE_CONTENT_1);
+        Mockito.when(blobStore.localPath(BLOB_KEY_1)).thenReturn(blob);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileService.writeContent(FILE_1, 1, FILE_CONTENT_1.length - 1, out);
+        Assertions.assertArrayEquals(Arrays.copyOfRange(FILE_CONTENT_1, 1, FILE_CONTENT_1.length), out.toByteArray());
+    }
+
+    @Test
+    void downloadFileVersion() {
+        LocalDateTime createdAt = LocalDateTime.now().minusDays(1);
+        Mockito.when(fileRepository.findVersionByUserAndFilename(USER_1, FILENAME_1, 1))
+                .thenReturn(new FileVersion(5L, FILE_1, 1, BLOB_KEY_2, SIZE_2, createdAt, LocalDateTime.now()));
+        File version = fileService.downloadFileVersion(BEARER_TOKEN, FILENAME_1, 1);
+        Assertions.assertEquals(BLOB_KEY_2, version.getBlobKey());
+        Assertions.assertEquals(SIZE_2, version.getSize());
+        Assertions.assertEquals(createdAt, version.getEditedAt());
+        Assertions.assertEquals(FILENAME_1, version.getFilename());
+    }
+
+    @Test
+    void downloadFileCurrentVersion() {
+        Mockito.when(fileRepository.findCurrentVersion(AUTH_USER_ID_1, FILENAME_1)).thenReturn(2);
+        Mockito.when(fileRepository.findByUserAndFilename(USER_1, FILENAME_1)).thenReturn(FILE_1);
+        Assertions.assertEquals(FILE_1, fileService.downloadFileVersion(BEARER_TOKEN, FILENAME_1, 2));
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.downloadFileVersion(BEARER_TOKEN, FILENAME_1, 3));
+    }
+
+    @Test
+    void getVersions() {
+        LocalDateTime editedAt = LocalDateTime.now();
+        Mockito.when(fileRepository.findVersionsByUser(USER_1, FILENAME_1)).thenReturn(List.of(
+                new FileVersionItem(2, SIZE_2, editedAt), new FileVersionItem(1, SIZE_1, editedAt.minusDays(1))));
+        Assertions.assertEquals(List.of(new ResponseFileVersion(2, SIZE_2, editedAt, true),
+                        new ResponseFileVersion(1, SIZE_1, editedAt.minusDays(1), false)),
+                fileService.getVersions(BEARER_TOKEN, FILENAME_1));
+        assertThrows(InputDataExceptionError.class, () -> fileService.getVersions(BEARER_TOKEN, FILENAME_2));
+    }
+
     @Test
     void downloadFileInputDataException() {
         Mockito.when(fileRepository.findByUserAndFilename(USER_1, FILENAME_1)).thenReturn(FILE_1);
@@ -155,7 +386,7 @@ public class ServiceFileTest {
 
     @Test
     void editFileName() {
-        Mockito.when(fileRepository.findByUserAndFilename(USER_1, FILENAME_1)).thenReturn(FILE_1);
+        Mockito.when(fileRepository.setNewFilenameByUserAndFilename(NEW_FILENAME, USER_1, FILENAME_1)).thenReturn(1);
         fileService.editFileName(BEARER_TOKEN, FILENAME_1, REQUEST_EDIT_FILE_NAME);
         Mockito.verify(fileRepository, Mockito.times(1))
                 .setNewFilenameByUserAndFilename(NEW_FILENAME, USER_1, FILENAME_1);
@@ -169,31 +400,57 @@ public class ServiceFileTest {
 
     @Test
     void editFileNameInputDataException() {
-        Mockito.when(fileRepository.findByUserAndFilename(USER_1, FILENAME_1)).thenReturn(FILE_NULL);
+        Mockito.when(fileRepository.setNewFilenameByUserAndFilename(NEW_FILENAME, USER_1, FILENAME_1)).thenReturn(0);
         assertThrows(InputDataExceptionError.class,
                 () -> fileService.editFileName(BEARER_TOKEN, FILENAME_1, REQUEST_EDIT_FILE_NAME));
     }
 
     @Test
     void getAllFiles() {
-        Mockito.when(fileRepository.findAllByUser(USER_1)).thenReturn(FILE_LIST);
-        Assertions.assertEquals(RESPONSE_FILE_LIST, fileService.getAllFiles(BEARER_TOKEN, LIMIT));
+        Mockito.when(fileRepository.findPageByUser(Mockito.eq(USER_1), Mockito.any(), Mockito.eq(LIMIT + 1)))
+                .thenReturn(FILE_LIST_ITEMS);
+        ResponseFilePage page = fileService.getAllFiles(BEARER_TOKEN, LIMIT, null, null);
+        Assertions.assertEquals(RESPONSE_FILE_LIST, page.getFiles());
+        Assertions.assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getAllFilesNextCursor() {
+        Mockito.when(fileRepository.findPageByUser(Mockito.eq(USER_1), Mockito.any(), Mockito.eq(2)))
+                .thenReturn(FILE_LIST_ITEMS);
+        ResponseFilePage page = fileService.getAllFiles(BEARER_TOKEN, 1, "-size", null);
+        Assertions.assertEquals(List.of(RESPONSE_FILE_1), page.getFiles());
+        FileListCursor cursor = FileListCursor.decode(page.getNextCursor());
+        Assertions.assertEquals(FileSort.SIZE, cursor.getSort());
+        Assertions.assertTrue(cursor.isDescending());
+        Assertions.assertEquals(FILE_LIST_ITEMS.get(0).getSize(), cursor.getValue());
+        Assertions.assertEquals(FILE_LIST_ITEMS.get(0).getId(), cursor.getId());
     }
 
     @Test
     void getAllFilesUnauthorizedException() {
-        Mockito.when(fileRepository.findAllByUser(USER_1)).thenReturn(FILE_LIST);
-        assertThrows(UnauthorizedExceptionError.class, () -> fileService.getAllFiles(TOKEN_1, LIMIT));
+        assertThrows(UnauthorizedExceptionError.class, () -> fileService.getAllFiles(TOKEN_1, LIMIT, null, null));
     }
 
     @Test
     void getAllFilesInputDataException() {
-        assertThrows(InputDataExceptionError.class, () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT_NULL));
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT_NULL, null, null));
+    }
+
+    @Test
+    void getAllFilesInvalidCursorException() {
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT, null, "not a cursor"));
+        assertThrows(InputDataExceptionError.class,
+                () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT, "owner", null));
     }
 
     @Test
     void getAllFilesErrorGettingFileListException() {
-        Mockito.when(fileRepository.findAllByUser(USER_1)).thenReturn(FILE_LIST_NULL);
-        assertThrows(GettingFileListExceptionError.class, () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT));
+        Mockito.when(fileRepository.findPageByUser(Mockito.eq(USER_1), Mockito.any(), Mockito.anyInt()))
+                .thenReturn(null);
+        assertThrows(GettingFileListExceptionError.class,
+                () -> fileService.getAllFiles(BEARER_TOKEN, LIMIT, null, null));
     }
 }
@@ -0,0 +1,103 @@
+package ru.netology.cloudstorage.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.netology.cloudstorage.services.FileVersionService.PrunedVersion;
+
+import java.util.List;
+
+/**
+ * Класс тестов ServiceFileVersionTest использует фреймворк Mockito для проведения модульного тестирования удаления
+ * прежних версий файлов в сервисе FileVersionService.
+ * <p>
+ * Проверяется, что без правил хранения запросы к базе не выполняются, что версии удаляются пачками, пока пачка
+ * заполнена целиком, ссылки на содержимое удаленных версий снимаются, а содержимое, не учитываемое в таблице blobs,
+ * удаляется, что следующая пачка правила keep-versions продолжает с файла, на котором остановилась предыдущая,
+ * и что в запрос попадают только включенные правила, а при двух правилах версия удаляется, только если ее
+ * разрешают удалить оба (условие AND, а не OR).
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ServiceFileVersionTest {
+    public static final String BLOB_KEY_1 = "0123456789abcdef0123456789abcdef";
+    public static final String BLOB_KEY_2 = "fedcba9876543210fedcba9876543210";
+    public static final String BLOB_KEY_3 = "00112233445566778899aabbccddeeff";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FileVersionService fileVersionService;
+
+    @BeforeEach
+    void setUp() {
+        fileVersionService = new FileVersionService(jdbcTemplate, blobService, fileService, transactionManager);
+        ReflectionTestUtils.setField(fileVersionService, "batchSize", 2);
+    }
+
+    @Test
+    void pruneVersionsDisabled() {
+        fileVersionService.pruneVersions();
+        Mockito.verifyNoInteractions(jdbcTemplate, blobService);
+    }
+
+    @Test
+    void pruneVersionsInBatches() {
+        ReflectionTestUtils.setField(fileVersionService, "keepVersions", 5);
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<PrunedVersion>>any(),
+                Mockito.any(Object[].class))).thenReturn(
+                List.of(new PrunedVersion(7L, BLOB_KEY_1), new PrunedVersion(9L, BLOB_KEY_2)),
+                List.of(new PrunedVersion(9L, BLOB_KEY_3)));
+        Mockito.when(blobService.removeReferences(List.of(BLOB_KEY_1, BLOB_KEY_2))).thenReturn(List.of());
+        Mockito.when(blobService.removeReferences(List.of(BLOB_KEY_3))).thenReturn(List.of(BLOB_KEY_3));
+        fileVersionService.pruneVersions();
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).query(Mockito.anyString(),
+                Mockito.<RowMapper<PrunedVersion>>any(), Mockito.eq(5), Mockito.eq(0L), Mockito.eq(2));
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).query(Mockito.anyString(),
+                Mockito.<RowMapper<PrunedVersion>>any(), Mockito.eq(5), Mockito.eq(9L), Mockito.eq(2));
+        Mockito.verify(fileService, Mockito.times(1)).deleteBlobAfterCommit(BLOB_KEY_3);
+        Mockito.verify(fileService, Mockito.never()).deleteBlobAfterCommit(BLOB_KEY_1);
+    }
+
+    @Test
+    void pruneVersionsByAge() {
+        ReflectionTestUtils.setField(fileVersionService, "keepDays", 30);
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<PrunedVersion>>any(),
+                Mockito.any(Object[].class))).thenReturn(List.of());
+        fileVersionService.pruneVersions();
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).query(Mockito.argThat((String sql) ->
+                        sql.contains("v.archived_at < ?") && !sql.contains("f.version")),
+                Mockito.<RowMapper<PrunedVersion>>any(), Mockito.any(Object[].class));
+        Mockito.verifyNoInteractions(blobService);
+    }
+
+    @Test
+    void pruneVersionsByBothRules() {
+        ReflectionTestUtils.setField(fileVersionService, "keepVersions", 5);
+        ReflectionTestUtils.setField(fileVersionService, "keepDays", 30);
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<PrunedVersion>>any(),
+                Mockito.any(Object[].class))).thenReturn(List.of());
+        fileVersionService.pruneVersions();
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).query(Mockito.argThat((String sql) ->
+                        sql.contains("v.version < f.version - ? AND v.archived_at < ?") && !sql.contains(" OR ")),
+                Mockito.<RowMapper<PrunedVersion>>any(), Mockito.any(Object[].class));
+    }
+}
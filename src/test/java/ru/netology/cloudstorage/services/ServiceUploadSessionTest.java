@@ -0,0 +1,208 @@
+package ru.netology.cloudstorage.services;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.netology.cloudstorage.exceptions.InputDataExceptionError;
+import ru.netology.cloudstorage.models.File;
+import ru.netology.cloudstorage.models.UploadPart;
+import ru.netology.cloudstorage.models.UploadSession;
+import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.repositories.FileRepository;
+import ru.netology.cloudstorage.repositories.UploadPartRepository;
+import ru.netology.cloudstorage.repositories.UploadSessionRepository;
+import ru.netology.cloudstorage.response.ResponseUploadPart;
+import ru.netology.cloudstorage.response.ResponseUploadSession;
+import ru.netology.cloudstorage.storage.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Класс тестов ServiceUploadSessionTest использует фреймворк Mockito для проведения модульного тестирования
+ * загрузки файлов по частям в сервисе UploadSessionService.
+ * <p>
+ * Проверяется открытие сессии (и отказ, если имя файла занято), замена части при повторной загрузке с тем же номером
+ * (ссылка на прежнее содержимое снимается), сборка файла из частей в порядке номеров, передача хранилищу хэша
+ * частей, посчитанного во время их загрузки по порядку, завершение сессии из одной
+ * части без копирования содержимого, отказ при пропущенной части и недоступность чужой сессии.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ServiceUploadSessionTest {
+    public static final String BEARER_TOKEN = "Bearer Token";
+    public static final User USER_1 = new User(101L, "Auth_Username1", "Auth_Password1", null);
+    public static final User USER_2 = new User(102L, "Auth_Username2", "Auth_Password2", null);
+    public static final String FILENAME_1 = "Filename1";
+    public static final String UPLOAD_ID = "5f0c6f4e-3a2b-4c1d-9e8f-7a6b5c4d3e2f";
+    public static final byte[] PART_1 = "Hello, ".getBytes(StandardCharsets.UTF_8);
+    public static final byte[] PART_2 = "world".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private UploadPartRepository uploadPartRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UploadSessionService uploadSessionService;
+    private UploadSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploadSessionService = new UploadSessionService(fileService, fileRepository, uploadSessionRepository,
+                uploadPartRepository, blobStore, blobService, transactionManager);
+        session = new UploadSession(UPLOAD_ID, USER_1, FILENAME_1, LocalDateTime.now(),
+                LocalDateTime.now().plusHours(1));
+        Mockito.when(fileService.getUserByToken(BEARER_TOKEN)).thenReturn(USER_1);
+        Mockito.when(uploadSessionRepository.findById(UPLOAD_ID)).thenReturn(Optional.of(session));
+        Mockito.when(uploadSessionRepository.findForUpdate(UPLOAD_ID)).thenReturn(session);
+        Mockito.when(blobStore.open("key1")).thenAnswer(invocation -> new ByteArrayInputStream(PART_1));
+        Mockito.when(blobStore.open("key2")).thenAnswer(invocation -> new ByteArrayInputStream(PART_2));
+    }
+
+    @Test
+    void initiate() {
+        ResponseUploadSession response = uploadSessionService.initiate(BEARER_TOKEN, FILENAME_1);
+
+        Assertions.assertNotNull(response.getUploadId());
+        Assertions.assertEquals(FILENAME_1, response.getFilename());
+        Assertions.assertTrue(response.getParts().isEmpty());
+        Mockito.verify(uploadSessionRepository).save(Mockito.any(UploadSession.class));
+    }
+
+    @Test
+    void initiateExistingFilename() {
+        Mockito.when(fileRepository.findExistingFilenames(Mockito.any(), Mockito.eq(List.of(FILENAME_1))))
+                .thenReturn(List.of(FILENAME_1));
+
+        assertThrows(InputDataExceptionError.class, () -> uploadSessionService.initiate(BEARER_TOKEN, FILENAME_1));
+    }
+
+    @Test
+    void uploadPartReplacesPrevious() throws IOException {
+        Mockito.when(uploadPartRepository.findById(new UploadPart.Key(UPLOAD_ID, 1)))
+                .thenReturn(Optional.of(new UploadPart(UPLOAD_ID, 1, "oldKey", 3L)));
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenAnswer(invocation -> {
+            ((InputStream) invocation.getArgument(0)).readAllBytes();
+            return "key1";
+        });
+
+        ResponseUploadPart part = uploadSessionService.uploadPart(BEARER_TOKEN, UPLOAD_ID, 1,
+                new ByteArrayInputStream(PART_1));
+
+        Assertions.assertEquals(PART_1.length, part.getSize());
+        Mockito.verify(blobService).addReference("key1", PART_1.length);
+        Mockito.verify(uploadPartRepository).save(new UploadPart(UPLOAD_ID, 1, "key1", (long) PART_1.length));
+        Mockito.verify(blobService).removeReferences(List.of("oldKey"));
+    }
+
+    @Test
+    void completeAssemblesPartsInOrder() throws IOException {
+        Mockito.when(uploadPartRepository.findAllBySessionIdOrderByPartNumber(UPLOAD_ID)).thenReturn(List.of(
+                new UploadPart(UPLOAD_ID, 1, "key1", (long) PART_1.length),
+                new UploadPart(UPLOAD_ID, 2, "key2", (long) PART_2.length)));
+        Mockito.when(uploadPartRepository.findBlobKeysBySessionId(UPLOAD_ID)).thenReturn(List.of("key1", "key2"));
+        Mockito.when(blobStore.concat(Mockito.any(), Mockito.any(), Mockito.anyInt())).thenCallRealMethod();
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenAnswer(invocation -> {
+            assembled.write(((InputStream) invocation.getArgument(0)).readAllBytes());
+            return "fileKey";
+        });
+
+        uploadSessionService.complete(BEARER_TOKEN, UPLOAD_ID);
+
+        Assertions.assertEquals("Hello, world", assembled.toString(StandardCharsets.UTF_8));
+        Mockito.verify(blobService).addReference("fileKey", PART_1.length + PART_2.length);
+        Mockito.verify(fileRepository).save(Mockito.argThat((File file) -> FILENAME_1.equals(file.getFilename())
+                && "fileKey".equals(file.getBlobKey())));
+        Mockito.verify(uploadSessionRepository).delete(session);
+        Mockito.verify(blobService).removeReferences(List.of("key1", "key2"));
+    }
+
+    @Test
+    void completeWithPartsHashedOnUpload() throws Exception {
+        Mockito.when(blobStore.save(Mockito.any(InputStream.class))).thenAnswer(invocation ->
+                Arrays.equals(PART_1, ((InputStream) invocation.getArgument(0)).readAllBytes()) ? "key1" : "key2");
+        uploadSessionService.uploadPart(BEARER_TOKEN, UPLOAD_ID, 1, new ByteArrayInputStream(PART_1));
+        uploadSessionService.uploadPart(BEARER_TOKEN, UPLOAD_ID, 2, new ByteArrayInputStream(PART_2));
+        Mockito.when(uploadPartRepository.findAllBySessionIdOrderByPartNumber(UPLOAD_ID)).thenReturn(List.of(
+                new UploadPart(UPLOAD_ID, 1, "key1", (long) PART_1.length),
+                new UploadPart(UPLOAD_ID, 2, "key2", (long) PART_2.length)));
+        Mockito.when(uploadPartRepository.findBlobKeysBySessionId(UPLOAD_ID)).thenReturn(List.of("key1", "key2"));
+        byte[][] hash = new byte[1][];
+        Mockito.when(blobStore.concat(Mockito.eq(List.of("key1", "key2")), Mockito.any(), Mockito.eq(2)))
+                .thenAnswer(invocation -> {
+                    hash[0] = ((MessageDigest) invocation.getArgument(1)).digest();
+                    return "fileKey";
+                });
+
+        uploadSessionService.complete(BEARER_TOKEN, UPLOAD_ID);
+
+        Assertions.assertArrayEquals(MessageDigest.getInstance("SHA-256")
+                .digest("Hello, world".getBytes(StandardCharsets.UTF_8)), hash[0]);
+        Mockito.verify(blobService).addReference("fileKey", PART_1.length + PART_2.length);
+    }
+
+    @Test
+    void completeSinglePartWithoutCopy() throws IOException {
+        Mockito.when(uploadPartRepository.findAllBySessionIdOrderByPartNumber(UPLOAD_ID)).thenReturn(List.of(
+                new UploadPart(UPLOAD_ID, 1, "key1", (long) PART_1.length)));
+        Mockito.when(uploadPartRepository.findBlobKeysBySessionId(UPLOAD_ID)).thenReturn(List.of("key1"));
+
+        uploadSessionService.complete(BEARER_TOKEN, UPLOAD_ID);
+
+        Mockito.verify(blobStore, Mockito.never()).save(Mockito.any(InputStream.class));
+        Mockito.verify(blobService).addReference("key1", PART_1.length);
+        Mockito.verify(fileRepository).save(Mockito.any(File.class));
+    }
+
+    @Test
+    void completeMissingPart() {
+        Mockito.when(uploadPartRepository.findAllBySessionIdOrderByPartNumber(UPLOAD_ID)).thenReturn(List.of(
+                new UploadPart(UPLOAD_ID, 1, "key1", (long) PART_1.length),
+                new UploadPart(UPLOAD_ID, 3, "key2", (long) PART_2.length)));
+
+        assertThrows(InputDataExceptionError.class, () -> uploadSessionService.complete(BEARER_TOKEN, UPLOAD_ID));
+        Mockito.verify(fileRepository, Mockito.never()).save(Mockito.any(File.class));
+    }
+
+    @Test
+    void uploadPartForeignSession() {
+        session.setUser(USER_2);
+
+        assertThrows(InputDataExceptionError.class, () -> uploadSessionService.uploadPart(BEARER_TOKEN, UPLOAD_ID,
+                1, new ByteArrayInputStream(PART_1)));
+    }
+}
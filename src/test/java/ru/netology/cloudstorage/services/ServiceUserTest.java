@@ -11,8 +11,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import ru.netology.cloudstorage.models.User;
+import ru.netology.cloudstorage.models.UserChangedEvent;
 import ru.netology.cloudstorage.repositories.UserRepository;
 import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
+import ru.netology.cloudstorage.security.UserPrincipal;
 
 /**
  * Данный класс является юнит-тестом для класса UserService. В нем используется фреймворк Mockito для создания
@@ -28,6 +30,12 @@ import ru.netology.cloudstorage.exceptions.UnauthorizedExceptionError;
  * AUTH_USERNAME_4 будет выброшено исключение UnauthorizedExceptionError.
  * Метод loadUserByName() тестирует ситуацию, когда пользователь авторизован. Он использует метод assertEquals()
  * для проверки, что при вызове метода loadUserByUsername() с аргументом AUTH_USERNAME_3 будет возвращен объект USER_3.
+ * Методы loadPrincipal*() проверяют кэш принципалов: повторная загрузка берется из кэша без обращения к
+ * репозиторию, после invalidatePrincipal() принципал загружается заново, а для неизвестного логина выбрасывается
+ * исключение UnauthorizedExceptionError. Тест loadPrincipalInvalidatedDuringLoad() проверяет, что принципал,
+ * прочитанный из базы до инвалидации, которая прошла во время его загрузки, в кэше не остается, а
+ * loadPrincipalAfterInvalidateAll() - что invalidateAllPrincipals() очищает кэш. Тест onUserChanged() проверяет,
+ * что событие UserChangedEvent удаляет из кэша принципал измененного пользователя, а событие allUsers() - все.
  */
 
 @ExtendWith(MockitoExtension.class)
@@ -41,6 +49,8 @@ public class ServiceUserTest {
     //-------------------------------------------------------------------------------------------------------
     public static final String AUTH_USERNAME_4 = "Auth_Username4";
     //-------------------------------------------------------------------------------------------------------
+    public static final UserPrincipal PRINCIPAL_3 = new UserPrincipal(AUTH_USER_ID_3, AUTH_USERNAME_3);
+    //-------------------------------------------------------------------------------------------------------
 
     @InjectMocks
     private UserService userService;
@@ -50,6 +60,7 @@ public class ServiceUserTest {
     @BeforeEach
     void setUp() {
         Mockito.when(userRep.findUserByLogin(AUTH_USERNAME_3)).thenReturn(USER_3);
+        Mockito.when(userRep.findPrincipalByLogin(AUTH_USERNAME_3)).thenReturn(PRINCIPAL_3);
     }
 
     @Test
@@ -62,4 +73,63 @@ public class ServiceUserTest {
     void loadUserByName() {
         Assertions.assertEquals(USER_3, userService.loadUserByUsername(AUTH_USERNAME_3));
     }
+
+    @Test
+    void loadPrincipalCached() {
+        Assertions.assertEquals(PRINCIPAL_3, userService.loadPrincipal(AUTH_USERNAME_3));
+        Assertions.assertEquals(PRINCIPAL_3, userService.loadPrincipal(AUTH_USERNAME_3));
+        Mockito.verify(userRep, Mockito.times(1)).findPrincipalByLogin(AUTH_USERNAME_3);
+        Mockito.verify(userRep, Mockito.never()).findUserByLogin(AUTH_USERNAME_3);
+        Assertions.assertEquals(1, userService.getPrincipalCacheHits());
+        Assertions.assertEquals(1, userService.getPrincipalCacheMisses());
+    }
+
+    @Test
+    void loadPrincipalAfterInvalidate() {
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        userService.invalidatePrincipal(AUTH_USER_ID_3, AUTH_USERNAME_3);
+        Assertions.assertEquals(0, userService.getPrincipalCacheSize());
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        Mockito.verify(userRep, Mockito.times(2)).findPrincipalByLogin(AUTH_USERNAME_3);
+    }
+
+    @Test
+    void loadPrincipalInvalidatedDuringLoad() {
+        Mockito.when(userRep.findPrincipalByLogin(AUTH_USERNAME_3)).thenAnswer(invocation -> {
+            userService.invalidatePrincipal(AUTH_USER_ID_3, AUTH_USERNAME_3);
+            return PRINCIPAL_3;
+        }).thenReturn(PRINCIPAL_3);
+        Assertions.assertEquals(PRINCIPAL_3, userService.loadPrincipal(AUTH_USERNAME_3));
+        Assertions.assertEquals(0, userService.getPrincipalCacheSize());
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        Assertions.assertEquals(1, userService.getPrincipalCacheSize());
+        Mockito.verify(userRep, Mockito.times(2)).findPrincipalByLogin(AUTH_USERNAME_3);
+    }
+
+    @Test
+    void loadPrincipalAfterInvalidateAll() {
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        userService.invalidateAllPrincipals();
+        Assertions.assertEquals(0, userService.getPrincipalCacheSize());
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        Mockito.verify(userRep, Mockito.times(2)).findPrincipalByLogin(AUTH_USERNAME_3);
+    }
+
+    @Test
+    void onUserChanged() {
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        userService.onUserChanged(new UserChangedEvent(AUTH_USER_ID_3, AUTH_USERNAME_3));
+        Assertions.assertEquals(0, userService.getPrincipalCacheSize());
+        userService.loadPrincipal(AUTH_USERNAME_3);
+        userService.onUserChanged(UserChangedEvent.allUsers());
+        Assertions.assertEquals(0, userService.getPrincipalCacheSize());
+        Mockito.verify(userRep, Mockito.times(2)).findPrincipalByLogin(AUTH_USERNAME_3);
+    }
+
+    @Test
+    void loadPrincipalNotAuthorizedException() {
+        Assertions.assertThrows(UnauthorizedExceptionError.class,
+                () -> userService.loadPrincipal(AUTH_USERNAME_4));
+    }
 }
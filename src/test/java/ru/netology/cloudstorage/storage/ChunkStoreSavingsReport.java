@@ -0,0 +1,152 @@
+package ru.netology.cloudstorage.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Отчет об экономии места при хранении блоками (ChunkedBlobStore) по сравнению с хранением файлов целиком
+ * (FileSystemBlobStore) на синтетическом наборе версий файлов.
+ * <p>
+ * Набор состоит из трех файлов по versions версий каждый:
+ * - vm-image: двоичный образ, в каждой версии которого перезаписываются участки по 4 КБ и вставляются и удаляются
+ * короткие фрагменты (сдвигающие все последующие байты);
+ * - app-log: текстовый журнал, к которому в каждой версии дописываются новые строки;
+ * - document: документ, в котором в каждой версии правится несколько мест.
+ * <p>
+ * Каждая версия сохраняется в оба хранилища (сжатие выключено, чтобы сравнивалась только дедупликация), затем
+ * для каждого файла выводятся суммарный размер версий, место в каталоге каждого хранилища и экономия. Содержимое
+ * каждой версии читается обратно из ChunkedBlobStore и сверяется с исходным.
+ * <p>
+ * Запуск: mvn test-compile, затем запуск метода main этого класса с тестовым classpath. Необязательные аргументы:
+ * количество версий и размер образа в мегабайтах.
+ */
+public class ChunkStoreSavingsReport {
+    private static final int MB = 1024 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        int versions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int imageSize = (args.length > 1 ? Integer.parseInt(args[1]) : 64) * MB;
+        Random random = new Random(42);
+        System.out.printf("%-10s %8s %14s %14s %14s %8s%n", "corpus", "versions", "logical", "whole-file",
+                "chunked", "saved");
+        report("vm-image", vmImage(random, imageSize, versions));
+        report("app-log", appLog(random, versions));
+        report("document", document(random, versions));
+    }
+
+    private static void report(String name, List<byte[]> versions) throws IOException {
+        Path wholeRoot = Files.createTempDirectory("whole");
+        Path chunkedRoot = Files.createTempDirectory("chunked");
+        try {
+            FileSystemBlobStore wholeStore = new FileSystemBlobStore(wholeRoot.toString());
+            ChunkedBlobStore chunkedStore = new ChunkedBlobStore(new FileSystemBlobStore(chunkedRoot.toString()),
+                    chunkedRoot.toString(), BlobCompressor.disabled(), 16 * 1024, 64 * 1024, 256 * 1024);
+            long logical = 0;
+            for (byte[] version : versions) {
+                logical += version.length;
+                wholeStore.save(new ByteArrayInputStream(version));
+                String blobKey = chunkedStore.save(new ByteArrayInputStream(version));
+                try (InputStream content = chunkedStore.open(blobKey)) {
+                    if (!Arrays.equals(version, content.readAllBytes())) {
+                        throw new IllegalStateException("Content mismatch: " + name);
+                    }
+                }
+            }
+            long whole = storedBytes(wholeRoot);
+            long chunked = storedBytes(chunkedRoot);
+            System.out.printf("%-10s %8d %14d %14d %14d %7.1f%%%n", name, versions.size(), logical, whole, chunked,
+                    100.0 * (whole - chunked) / whole);
+        } finally {
+            delete(wholeRoot);
+            delete(chunkedRoot);
+        }
+    }
+
+    private static List<byte[]> vmImage(Random random, int size, int versions) {
+        List<byte[]> result = new ArrayList<>();
+        byte[] image = new byte[size];
+        random.nextBytes(image);
+        Arrays.fill(image, size / 4, size / 2, (byte) 0);
+        result.add(image);
+        for (int v = 1; v < versions; v++) {
+            image = image.clone();
+            for (int i = 0; i < 32; i++) {
+                byte[] block = new byte[4096];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, image, random.nextInt(image.length - block.length), block.length);
+            }
+            for (int i = 0; i < 4; i++) {
+                image = splice(image, random.nextInt(image.length - 512), random.nextInt(256), random.nextInt(256),
+                        random);
+            }
+            result.add(image);
+        }
+        return result;
+    }
+
+    private static List<byte[]> appLog(Random random, int versions) {
+        List<byte[]> result = new ArrayList<>();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        for (int v = 0; v < versions; v++) {
+            for (int line = 0; line < 20000; line++) {
+                log.writeBytes(String.format("2024-01-%02d 10:%02d:%02d INFO request id=%08x user=%d took %d ms%n",
+                        v + 1, line / 60 % 60, line % 60, random.nextInt(), random.nextInt(1000),
+                        random.nextInt(500)).getBytes(StandardCharsets.UTF_8));
+            }
+            result.add(log.toByteArray());
+        }
+        return result;
+    }
+
+    private static List<byte[]> document(Random random, int versions) {
+        List<byte[]> result = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        String[] words = {"storage", "chunk", "version", "file", "block", "hash", "manifest", "content", "user"};
+        while (text.length() < 4 * MB) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? ".\n" : " ");
+        }
+        byte[] document = text.toString().getBytes(StandardCharsets.UTF_8);
+        result.add(document);
+        for (int v = 1; v < versions; v++) {
+            for (int i = 0; i < 8; i++) {
+                document = splice(document, random.nextInt(document.length - 512), random.nextInt(64),
+                        random.nextInt(64), random);
+            }
+            result.add(document);
+        }
+        return result;
+    }
+
+    private static byte[] splice(byte[] data, int offset, int removed, int inserted, Random random) {
+        byte[] insert = new byte[inserted];
+        random.nextBytes(insert);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + inserted);
+        out.write(data, 0, offset);
+        out.writeBytes(insert);
+        out.write(data, offset + removed, data.length - offset - removed);
+        return out.toByteArray();
+    }
+
+    private static long storedBytes(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package ru.netology.cloudstorage.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Класс тестов StorageChunkTest проверяет хранение содержимого блоками: FastCdcChunker режет содержимое на блоки
+ * в пределах minSize..maxSize, а вставка байтов в начало меняет только первые блоки; ChunkedBlobStore на временном
+ * каталоге (@TempDir) читает сохраненное содержимое обратно без изменений (в том числе с пропуском байтов), две
+ * версии файла делят общие блоки, после сохранения под ключами лежат ровно блоки манифеста и не остается временных
+ * файлов, содержимое, сохраненное целиком до включения режима, по-прежнему читается (новые блоки для него не
+ * сохраняются), а collectGarbage после удаления версии удаляет только блоки, на которые больше не ссылается ни один
+ * манифест.
+ * Сборка мусора во время сохранения не удаляет блоки, которые сохраняемое содержимое уже использовало, даже если
+ * манифест еще не записан и время изменения блоков старше порога.
+ */
+public class StorageChunkTest {
+    public static final int MIN_SIZE = 1024;
+    public static final int AVG_SIZE = 4096;
+    public static final int MAX_SIZE = 16384;
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore wholeStore;
+    private ChunkedBlobStore blobStore;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        wholeStore = new FileSystemBlobStore(root.toString());
+        blobStore = new ChunkedBlobStore(wholeStore, root.toString(), BlobCompressor.disabled(), MIN_SIZE, AVG_SIZE,
+                MAX_SIZE);
+        content = new byte[256 * 1024];
+        new Random(7).nextBytes(content);
+    }
+
+    @Test
+    void chunkSizes() {
+        FastCdcChunker chunker = new FastCdcChunker(MIN_SIZE, AVG_SIZE, MAX_SIZE);
+        List<Integer> original = chunkLengths(chunker, content);
+        for (int i = 0; i < original.size() - 1; i++) {
+            Assertions.assertTrue(original.get(i) >= MIN_SIZE && original.get(i) <= MAX_SIZE);
+        }
+        Assertions.assertEquals(content.length, original.stream().mapToInt(Integer::intValue).sum());
+
+        byte[] shifted = new byte[content.length + 10];
+        System.arraycopy(content, 0, shifted, 10, content.length);
+        List<Integer> changed = chunkLengths(chunker, shifted);
+        Assertions.assertEquals(original.subList(2, original.size()), changed.subList(2, changed.size()));
+    }
+
+    @Test
+    void saveAndOpen() throws IOException {
+        String blobKey = blobStore.save(new ByteArrayInputStream(content));
+        Assertions.assertEquals(wholeStore.save(new ByteArrayInputStream(content)), blobKey);
+        wholeStore.delete(blobKey);
+        Assertions.assertTrue(blobStore.exists(blobKey));
+        Assertions.assertEquals(content.length, blobStore.size(blobKey));
+        Assertions.assertNull(blobStore.localPath(blobKey));
+        Assertions.assertNull(blobStore.storedEncoding(blobKey));
+        try (InputStream stored = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(content, stored.readAllBytes());
+        }
+        Assertions.assertEquals(chunkKeys(blobKey), storedChunkKeys());
+        Assertions.assertEquals(0, temporaryChunks());
+        try (InputStream stored = blobStore.open(blobKey)) {
+            stored.skipNBytes(100000);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 100000, 100100), stored.readNBytes(100));
+        }
+    }
+
+    @Test
+    void versionsShareChunks() throws IOException {
+        String first = blobStore.save(new ByteArrayInputStream(content));
+        Set<String> firstChunks = chunkKeys(first);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(content, 0, 128 * 1024);
+        edited.writeBytes("inserted".getBytes());
+        edited.write(content, 128 * 1024, content.length - 128 * 1024);
+        String second = blobStore.save(new ByteArrayInputStream(edited.toByteArray()));
+        Set<String> shared = new HashSet<>(chunkKeys(second));
+        shared.retainAll(firstChunks);
+        Assertions.assertTrue(shared.size() >= firstChunks.size() - 2);
+        try (InputStream stored = blobStore.open(second)) {
+            Assertions.assertArrayEquals(edited.toByteArray(), stored.readAllBytes());
+        }
+    }
+
+    @Test
+    void wholeContentFallback() throws IOException {
+        String blobKey = wholeStore.save(new ByteArrayInputStream(content));
+        Assertions.assertEquals(blobKey, blobStore.save(new ByteArrayInputStream(content)));
+        Assertions.assertEquals(Set.of(), storedChunkKeys());
+        Assertions.assertEquals(0, temporaryChunks());
+        Assertions.assertNotNull(blobStore.localPath(blobKey));
+        try (InputStream stored = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(content, stored.readAllBytes());
+        }
+    }
+
+    @Test
+    void collectGarbage() throws IOException {
+        String kept = blobStore.save(new ByteArrayInputStream(Arrays.copyOf(content, content.length / 2)));
+        String removed = blobStore.save(new ByteArrayInputStream(content));
+        Set<String> keptChunks = chunkKeys(kept);
+        Assertions.assertTrue(blobStore.delete(removed));
+        Assertions.assertFalse(blobStore.exists(removed));
+        Assertions.assertTrue(blobStore.collectGarbage(Long.MAX_VALUE) > 0);
+        Assertions.assertEquals(keptChunks, storedChunkKeys());
+        try (InputStream stored = blobStore.open(kept)) {
+            Assertions.assertArrayEquals(Arrays.copyOf(content, content.length / 2), stored.readAllBytes());
+        }
+        Assertions.assertEquals(0, blobStore.collectGarbage(Long.MAX_VALUE));
+    }
+
+    @Test
+    void collectGarbageDuringSave() throws Exception {
+        String blobKey = blobStore.save(new ByteArrayInputStream(content));
+        Assertions.assertTrue(blobStore.delete(blobKey));
+        CountDownLatch paused = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        InputStream slow = new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos >= content.length / 2 && paused.getCount() > 0) {
+                    paused.countDown();
+                    try {
+                        resume.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.read(b, off, Math.min(len, 4096));
+            }
+        };
+        CompletableFuture<String> save = CompletableFuture.supplyAsync(() -> {
+            try {
+                return blobStore.save(slow);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assertions.assertTrue(paused.await(10, TimeUnit.SECONDS));
+        blobStore.collectGarbage(Long.MAX_VALUE);
+        resume.countDown();
+
+        Assertions.assertEquals(blobKey, save.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, blobStore.collectGarbage(Long.MAX_VALUE));
+        try (InputStream stored = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(content, stored.readAllBytes());
+        }
+    }
+
+    private Set<String> chunkKeys(String blobKey) throws IOException {
+        return blobStore.readManifest(blobKey).stream().map(ChunkedBlobStore.Chunk::key).collect(Collectors.toSet());
+    }
+
+    private Set<String> storedChunkKeys() throws IOException {
+        try (Stream<Path> paths = Files.walk(root.resolve("chunks"))) {
+            return paths.filter(path -> Files.isRegularFile(path) && !path.getParent().endsWith("tmp"))
+                    .map(path -> path.getFileName().toString())
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    private long temporaryChunks() throws IOException {
+        try (Stream<Path> paths = Files.list(root.resolve("chunks").resolve("tmp"))) {
+            return paths.count();
+        }
+    }
+
+    private static List<Integer> chunkLengths(FastCdcChunker chunker, byte[] data) {
+        List<Integer> lengths = new ArrayList<>();
+        for (int offset = 0; offset < data.length; ) {
+            int length = chunker.cut(data, offset, data.length - offset);
+            lengths.add(length);
+            offset += length;
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.netology.cloudstorage.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Класс тестов StorageDeltaTest проверяет загрузку дельты: DeltaInputStream восстанавливает новую версию из блоков
+ * хранимой версии в FileSystemBlobStore и переданных байтов (и при чтении базы через FileChannel, и через поток),
+ * обрезанная дельта и ссылка на несуществующий блок завершаются исключением, а скользящая контрольная сумма
+ * RollingChecksum после сдвига на байт совпадает с суммой, вычисленной заново.
+ */
+public class StorageDeltaTest {
+    public static final int BLOCK_SIZE = 512;
+    public static final byte[] LITERAL = "changed".getBytes();
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore blobStore;
+    private byte[] basis;
+    private String basisKey;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new FileSystemBlobStore(root.toString());
+        basis = new byte[BLOCK_SIZE * 3 + 100];
+        new Random(1).nextBytes(basis);
+        basisKey = blobStore.save(new ByteArrayInputStream(basis));
+    }
+
+    @Test
+    void rebuildFromLocalFile() throws IOException {
+        Assertions.assertNotNull(blobStore.localPath(basisKey));
+        Assertions.assertArrayEquals(expected(), rebuild(blobStore, delta(true)));
+    }
+
+    @Test
+    void rebuildFromStream() throws IOException {
+        BlobStore streamOnly = new BlobStore() {
+            @Override
+            public String save(InputStream content) throws IOException {
+                return blobStore.save(content);
+            }
+
+            @Override
+            public InputStream open(String blobKey) throws IOException {
+                return blobStore.open(blobKey);
+            }
+
+            @Override
+            public long size(String blobKey) throws IOException {
+                return blobStore.size(blobKey);
+            }
+
+            @Override
+            public boolean exists(String blobKey) {
+                return blobStore.exists(blobKey);
+            }
+
+            @Override
+            public boolean delete(String blobKey) {
+                return blobStore.delete(blobKey);
+            }
+        };
+        Assertions.assertArrayEquals(expected(), rebuild(streamOnly, delta(true)));
+    }
+
+    @Test
+    void truncatedDelta() {
+        assertThrows(EOFException.class, () -> rebuild(blobStore, delta(false)));
+    }
+
+    @Test
+    void invalidBlockRange() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream delta = new DataOutputStream(bytes);
+        delta.write(DeltaInputStream.COPY);
+        delta.writeInt(3);
+        delta.writeInt(2);
+        delta.write(DeltaInputStream.END);
+        assertThrows(IOException.class, () -> rebuild(blobStore, bytes.toByteArray()));
+    }
+
+    @Test
+    void rollingChecksum() {
+        RollingChecksum checksum = new RollingChecksum().reset(basis, 0, BLOCK_SIZE);
+        for (int i = 0; i + BLOCK_SIZE < basis.length; i++) {
+            checksum.roll(basis[i], basis[i + BLOCK_SIZE]);
+            Assertions.assertEquals(RollingChecksum.of(basis, i + 1, BLOCK_SIZE), checksum.getValue());
+        }
+    }
+
+    private byte[] rebuild(BlobStore store, byte[] delta) throws IOException {
+        try (InputStream content = new DeltaInputStream(new ByteArrayInputStream(delta), store, basisKey,
+                basis.length, BLOCK_SIZE)) {
+            return content.readAllBytes();
+        }
+    }
+
+    private byte[] delta(boolean complete) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream delta = new DataOutputStream(bytes);
+        delta.write(DeltaInputStream.COPY);
+        delta.writeInt(2);
+        delta.writeInt(2);
+        delta.write(DeltaInputStream.LITERAL);
+        delta.writeInt(LITERAL.length);
+        delta.write(LITERAL);
+        delta.write(DeltaInputStream.COPY);
+        delta.writeInt(0);
+        delta.writeInt(1);
+        if (complete) {
+            delta.write(DeltaInputStream.END);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] expected() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(basis, BLOCK_SIZE * 2, basis.length - BLOCK_SIZE * 2);
+        bytes.write(LITERAL, 0, LITERAL.length);
+        bytes.write(basis, 0, BLOCK_SIZE);
+        return bytes.toByteArray();
+    }
+}
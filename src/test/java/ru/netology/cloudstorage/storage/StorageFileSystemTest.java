@@ -0,0 +1,245 @@
+package ru.netology.cloudstorage.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Класс тестов StorageFileSystemTest проверяет работу FileSystemBlobStore на временном каталоге (@TempDir).
+ * <p>
+ * Проверяется, что сохраненное содержимое читается обратно без изменений и раскладывается по подкаталогам
+ * по первым символам ключа, что после записи во временном каталоге не остается файлов, что ключ равен SHA-256
+ * содержимого и одинаковое содержимое сохраняется под одним ключом, что удаление работает и что ключ, ведущий за
+ * пределы корневого каталога, отклоняется. Метод concat собирает содержимое из частей, используя уже посчитанный
+ * хэш первых частей, и получает тот же ключ, что и save всего содержимого, а если одна из частей хранится сжатой,
+ * собирает содержимое потоком.
+ * <p>
+ * Тесты со сжатием используют FileSystemBlobStore с BlobCompressor: хорошо сжимаемое содержимое хранится в формате
+ * gzip и читается обратно без изменений, его сжатые байты без распаковки декодируются как gzip и как deflate (zlib),
+ * содержимое больше блока сжимается параллельно, а содержимое с сигнатурой сжатого формата (jpeg) и случайные
+ * байты хранятся как есть. Пропуск байтов в сжатом содержимом переходит к нужному блоку по индексу и читает те же
+ * байты, что и исходное содержимое, в том числе на границах блоков, а без индекса содержимое читается распаковкой
+ * с начала.
+ */
+public class StorageFileSystemTest {
+    public static final byte[] CONTENT = "File content".getBytes();
+    public static final String CONTENT_SHA256 = "f0ca7ef61aed3763f9bec72e14379549179c5d31cc25f23a6e62fcdc43f3374c";
+    public static final String BAD_BLOB_KEY = "../../etc/passwd";
+
+    @TempDir
+    Path root;
+
+    private FileSystemBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new FileSystemBlobStore(root.toString());
+    }
+
+    @Test
+    void saveAndOpen() throws IOException {
+        String blobKey = blobStore.save(new ByteArrayInputStream(CONTENT));
+        try (InputStream content = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(CONTENT, content.readAllBytes());
+        }
+        Assertions.assertEquals(CONTENT.length, blobStore.size(blobKey));
+        Assertions.assertTrue(Files.isRegularFile(root.resolve(blobKey.substring(0, 2))
+                .resolve(blobKey.substring(2, 4)).resolve(blobKey)));
+    }
+
+    @Test
+    void saveLeavesNoTempFiles() throws IOException {
+        blobStore.save(new ByteArrayInputStream(CONTENT));
+        try (Stream<Path> tmp = Files.list(root.resolve("tmp"))) {
+            Assertions.assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    void saveSameContentOnce() throws IOException {
+        String blobKey = blobStore.save(new ByteArrayInputStream(CONTENT));
+        Assertions.assertEquals(CONTENT_SHA256, blobKey);
+        Assertions.assertEquals(blobKey, blobStore.save(new ByteArrayInputStream(CONTENT)));
+        try (InputStream content = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(CONTENT, content.readAllBytes());
+        }
+    }
+
+    @Test
+    void delete() throws IOException {
+        String blobKey = blobStore.save(new ByteArrayInputStream(CONTENT));
+        Assertions.assertTrue(blobStore.exists(blobKey));
+        Assertions.assertTrue(blobStore.delete(blobKey));
+        Assertions.assertFalse(blobStore.exists(blobKey));
+        Assertions.assertFalse(blobStore.delete(blobKey));
+    }
+
+    @Test
+    void concat() throws Exception {
+        byte[] first = "First part, ".getBytes();
+        byte[] second = "second part".getBytes();
+        List<String> parts = List.of(blobStore.save(new ByteArrayInputStream(first)),
+                blobStore.save(new ByteArrayInputStream(second)));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(first);
+        byte[] whole = (new String(first) + new String(second)).getBytes();
+
+        String blobKey = blobStore.concat(parts, digest, 1);
+        Assertions.assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(whole)),
+                blobKey);
+        try (InputStream content = blobStore.open(blobKey)) {
+            Assertions.assertArrayEquals(whole, content.readAllBytes());
+        }
+        try (Stream<Path> tmp = Files.list(root.resolve("tmp"))) {
+            Assertions.assertEquals(0, tmp.count());
+        }
+
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] text = textContent(100 * 1024);
+        List<String> compressedParts = List.of(compressing.save(new ByteArrayInputStream(text)), parts.get(1));
+        String compressedKey = compressing.concat(compressedParts, MessageDigest.getInstance("SHA-256"), 0);
+        try (InputStream content = compressing.open(compressedKey)) {
+            byte[] expected = Arrays.copyOf(text, text.length + second.length);
+            System.arraycopy(second, 0, expected, text.length, second.length);
+            Assertions.assertArrayEquals(expected, content.readAllBytes());
+        }
+    }
+
+    @Test
+    void saveCompressed() throws IOException {
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] content = textContent(200 * 1024);
+        String blobKey = compressing.save(new ByteArrayInputStream(content));
+
+        Assertions.assertEquals("gzip", compressing.storedEncoding(blobKey));
+        Assertions.assertNull(compressing.localPath(blobKey));
+        Assertions.assertEquals(content.length, compressing.size(blobKey));
+        Assertions.assertTrue(compressing.storedSize(blobKey) < content.length);
+        try (InputStream stored = compressing.open(blobKey)) {
+            Assertions.assertArrayEquals(content, stored.readAllBytes());
+        }
+        try (InputStream gzip = new GZIPInputStream(compressing.openEncoded(blobKey, "gzip"))) {
+            Assertions.assertArrayEquals(content, gzip.readAllBytes());
+        }
+        byte[] deflate;
+        try (InputStream encoded = compressing.openEncoded(blobKey, "deflate")) {
+            deflate = encoded.readAllBytes();
+        }
+        Assertions.assertEquals(compressing.encodedSize(blobKey, "deflate"), deflate.length);
+        Assertions.assertArrayEquals(content,
+                new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+        Assertions.assertTrue(compressing.delete(blobKey));
+        Assertions.assertFalse(compressing.exists(blobKey));
+    }
+
+    @Test
+    void saveCompressedInParallelChunks() throws IOException {
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] content = textContent(3 * 1024 * 1024 + 17);
+        String blobKey = compressing.save(new ByteArrayInputStream(content));
+        Assertions.assertEquals("gzip", compressing.storedEncoding(blobKey));
+        try (InputStream stored = compressing.open(blobKey)) {
+            Assertions.assertArrayEquals(content, stored.readAllBytes());
+        }
+        Assertions.assertEquals(blobKey, compressing.save(new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    void skipCompressedByIndex() throws IOException {
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] content = textContent(3 * 1024 * 1024 + 17);
+        String blobKey = compressing.save(new ByteArrayInputStream(content));
+        Path index = compressing.resolveIndex(blobKey);
+        Assertions.assertTrue(Files.isRegularFile(index));
+
+        for (int offset : new int[]{0, 100, 256 * 1024, 256 * 1024 + 1, 2 * 1024 * 1024 + 5, content.length - 3}) {
+            try (InputStream stored = compressing.open(blobKey)) {
+                stored.skipNBytes(offset);
+                byte[] expected = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 1000));
+                Assertions.assertArrayEquals(expected, stored.readNBytes(1000));
+            }
+        }
+        try (InputStream stored = compressing.open(blobKey)) {
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 10, 20), readAt(stored, 10, 10));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 20, 30), readAt(stored, 0, 10));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 3 * 256 * 1024, 3 * 256 * 1024 + 10),
+                    readAt(stored, 3 * 256 * 1024 - 30, 10));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, content.length - 1, content.length),
+                    readAt(stored, content.length - 1 - (3 * 256 * 1024 + 10), 10));
+            Assertions.assertEquals(-1, stored.read());
+            assertThrows(EOFException.class, () -> stored.skipNBytes(content.length));
+        }
+        Assertions.assertTrue(compressing.delete(blobKey));
+        Assertions.assertFalse(Files.exists(index));
+    }
+
+    @Test
+    void openCompressedWithoutIndex() throws IOException {
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] content = textContent(600 * 1024);
+        String blobKey = compressing.save(new ByteArrayInputStream(content));
+        Files.delete(compressing.resolveIndex(blobKey));
+        try (InputStream stored = compressing.open(blobKey)) {
+            stored.skipNBytes(300 * 1024);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 300 * 1024, content.length), stored.readAllBytes());
+        }
+    }
+
+    @Test
+    void saveIncompressibleAsIs() throws IOException {
+        FileSystemBlobStore compressing = new FileSystemBlobStore(root.toString(), compressor());
+        byte[] jpeg = textContent(100 * 1024);
+        jpeg[0] = (byte) 0xff;
+        jpeg[1] = (byte) 0xd8;
+        jpeg[2] = (byte) 0xff;
+        byte[] random = new byte[100 * 1024];
+        new Random(42).nextBytes(random);
+        for (byte[] content : new byte[][]{jpeg, random}) {
+            String blobKey = compressing.save(new ByteArrayInputStream(content));
+            Assertions.assertNull(compressing.storedEncoding(blobKey));
+            Assertions.assertNotNull(compressing.localPath(blobKey));
+            Assertions.assertEquals(content.length, compressing.storedSize(blobKey));
+        }
+    }
+
+    @Test
+    void invalidBlobKey() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.open(BAD_BLOB_KEY));
+    }
+
+    private static BlobCompressor compressor() {
+        return new BlobCompressor(true, 6, 4096, 0.1, 256 * 1024, 4);
+    }
+
+    private static byte[] readAt(InputStream stored, long skip, int length) throws IOException {
+        stored.skipNBytes(skip);
+        return stored.readNBytes(length);
+    }
+
+    private static byte[] textContent(int size) {
+        StringBuilder text = new StringBuilder(size + 32);
+        Random random = new Random(7);
+        while (text.length() < size) {
+            text.append("line ").append(random.nextInt(1000)).append(" of a text file\n");
+        }
+        return text.substring(0, size).getBytes();
+    }
+}